@@ -32,6 +32,8 @@ import java.util.Set;
 import java.util.Stack;
 
 import procope.data.ProteinSet;
+import procope.data.networks.FrozenNetwork;
+import procope.data.networks.NetworkBuilder;
 import procope.data.networks.ProteinNetwork;
 import procope.methods.scores.ComplexScoreCalculator;
 import procope.tools.ProCopeException;
@@ -411,7 +413,7 @@ public class ComplexSet implements Iterable<Complex>, ProteinSet {
 	 */
 	public ProteinNetwork getComplexInducedNetwork() {
 		
-		ProteinNetwork result = new ProteinNetwork(false);
+		NetworkBuilder builder = new NetworkBuilder(false);
 		// iterate over all complexes
 		for (Complex complex : complexes) {
 			// iterate over all pairwise proteins
@@ -419,12 +421,12 @@ public class ComplexSet implements Iterable<Complex>, ProteinSet {
 			for (int i=0; i<proteins.length; i++) {
 				for (int j=i+1; j<proteins.length; j++) {
 					// set the edge
-					result.setEdge(proteins[i], proteins[j]);
+					builder.addEdge(proteins[i], proteins[j]);
 				}
 			}
 		}
 		
-		return result;
+		return builder.build();
 		
 	}
 
@@ -449,6 +451,11 @@ public class ComplexSet implements Iterable<Complex>, ProteinSet {
 		
 		ComplexSet result = new ComplexSet();
 		
+		// read-only snapshot for fast neighbor access
+		FrozenNetwork frozen = scores.freeze();
+		int[] neighbors = frozen.getNeighbors();
+		float[] weights = frozen.getWeights();
+		
 		// iterate over complexes
 		for (Complex complex : complexes) {
 			// create DFS array
@@ -467,14 +474,16 @@ public class ComplexSet implements Iterable<Complex>, ProteinSet {
 				int current = stack.pop();
 				int prot = complex.getMember(current);
 				// add neighbors
-				for (int neighbor : scores.getNeighborArray(prot)) {
+				int end = frozen.getNeighborEnd(prot);
+				for (int n=frozen.getNeighborStart(prot); n<end; n++) {
+					int neighbor = neighbors[n];
 					// neighbor is in the complex?
 					int neighborIndex = complex.indexOf(neighbor);
 					if (neighborIndex >= 0) {
 						// only check unvisited nodes
 						if (!visited[neighborIndex]) {
 							// sufficient edge?
-							if (scores.getEdge(prot, neighbor) >= cutoff) {
+							if (weights[n] >= cutoff) {
 								// visit this one next
 								stack.push(neighborIndex);
 								visited[neighborIndex] = true;
@@ -0,0 +1,544 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.data.networks;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import procope.tools.IntSet;
+import procope.tools.Tools;
+
+/**
+ * Internal class, used by ProteinNetwork. Stores edge annotations column-wise:
+ * each annotated edge gets a slot number and each annotation key has one 
+ * typed column which holds the values of all slots along with a bitmap of the
+ * slots for which the key is set. 
+ */
+class EdgeAnnotationStore {
+	
+	// edge => slot index, same bucket structure as in SparseMatrixFloat
+	private int[][] keys;
+	private int[][] slots;
+	private int bucketSizes[];
+	private int bucketMaxSizes[];
+	private int resizeStep = 50;
+	private boolean symmetrical;
+	
+	private static int mainResizeStep = 5000;
+	private int mainSize=0;
+	
+	int count=0;
+	private IntSet firstPartners;
+	
+	// slot => edge
+	private int[] slotFirst;
+	private int[] slotSecond;
+	private BitSet usedSlots;
+	private int slotCount=0;
+	// released slots which can be reused
+	private int[] freeSlots;
+	private int freeCount=0;
+	
+	// one column per annotation key
+	private Map<String, Column> columns;
+	
+	EdgeAnnotationStore(boolean symmetrical) { 
+		// initialize
+		keys = new int[0][];
+		slots = new int[0][]; 
+		bucketSizes = new int[0];
+		bucketMaxSizes = new int[0];
+		
+		firstPartners = new IntSet();
+		
+		slotFirst = new int[16];
+		slotSecond = new int[16];
+		usedSlots = new BitSet();
+		freeSlots = new int[16];
+		columns = new HashMap<String, Column>();
+		
+		this.symmetrical = symmetrical;
+	}
+	
+	/**
+	 * Sets an annotation of an edge, returns whether the edge is new
+	 */
+	public boolean add(int x, int y, String key, Object value)  {
+		
+		int i,j;
+		if (symmetrical) {
+			i = Math.min(x, y);
+			j = Math.max(x, y);
+		} else {
+			i = x;
+			j = y;
+		}
+		
+		if (i >= mainSize || j >= mainSize) 
+			resizeMain(Math.max(i, j));
+		
+		// already existing?
+		boolean isNew;
+		int slot;
+		int index = findIndex(i, j);
+		if (index >= 0) {
+			// add to existing
+			slot = slots[i][index];
+			isNew = false;
+		} else {
+			// create new
+			// need to enlarge bucket?
+			if (bucketSizes[i]+1 > bucketMaxSizes[i]) 
+				enlargeBucket(i);
+			// insert value
+			slot = allocateSlot(i, j);
+			insertIntoBucket(i, j, slot, -index-1);  
+			bucketSizes[i]++;
+			
+			count++;
+			firstPartners.add(i);
+			isNew = true;
+		}
+		
+		Column column = columns.get(key);
+		if (column == null) {
+			column = new Column();
+			columns.put(key, column);
+		}
+		column.set(slot, value);
+		return isNew;
+	
+	}
+	
+	public Object get(int x, int y, String key) {
+		int slot = findSlot(x, y);
+		if (slot < 0)
+			return null;
+		Column column = columns.get(key);
+		if (column == null)
+			return null;
+		else
+			return column.get(slot);
+	}
+	
+	/**
+	 * Returns a new map containing all annotations of an edge, {@code null} 
+	 * if the edge has no annotations entry
+	 */
+	public Map<String, Object> getAll(int x, int y) {
+		int slot = findSlot(x, y);
+		if (slot < 0)
+			return null;
+		Map<String, Object> result = new HashMap<String, Object>();
+		fillAnnotations(slot, result);
+		return result;
+	}
+	
+	/**
+	 * Checks whether there is an annotations entry for a given edge
+	 */
+	public boolean contains(int x, int y) {
+		return findSlot(x, y) >= 0;
+	}
+	
+	/**
+	 * Removes all annotations of an edge but keeps the edge entry
+	 */
+	public void clear(int x, int y) {
+		int slot = findSlot(x, y);
+		if (slot >= 0) {
+			for (Column column : columns.values())
+				column.remove(slot);
+		}
+	}
+	
+	public IntSet getFirstPartners() {
+		return firstPartners;
+	}
+	
+	public boolean removeSingle(int x, int y, String key) {
+		int slot = findSlot(x, y);
+		if (slot < 0)
+			return false;
+		Column column = columns.get(key);
+		boolean removed = (column != null) && column.remove(slot);
+		// no annotations left?
+		boolean empty = true;
+		for (Column other : columns.values()) {
+			if (other.has(slot)) {
+				empty = false;
+				break;
+			}
+		}
+		if (empty) 
+			delete(x,y);
+		
+		return removed;
+	}
+
+	public boolean delete(int x, int y) {
+
+		if (x >= mainSize || y >= mainSize)
+			return false;
+		
+		int i,j;
+		if (symmetrical) {
+			i = Math.min(x, y);
+			j = Math.max(x, y);
+		} else {
+			i = x;
+			j = y;
+		}	
+
+		// search index
+		int index = findIndex(i, j);
+
+		if (index < 0) 
+			return false;
+		else {
+			releaseSlot(slots[i][index]);
+
+			// shift array beyond that index
+			for (int k=index; k<bucketSizes[i]-1; k++) {
+				keys[i][k] = keys[i][k+1];
+				slots[i][k] = slots[i][k+1];
+			}
+			// reduce bucketsize
+			bucketSizes[i]--;
+			count--;
+
+			// downsize array?
+			if (bucketSizes[i] % resizeStep == 0) {
+				keys[i] = Tools.arrCopyOf(keys[i], bucketSizes[i]);
+				slots[i] = Tools.arrCopyOf(slots[i], bucketSizes[i]);
+				bucketMaxSizes[i] = bucketSizes[i];
+			}
+
+			return true;
+		}
+	}
+	
+	/*
+	 * slot-wise access, used for sequential scans over all annotated edges
+	 */
+	
+	/**
+	 * Returns the number of slots, slot numbers are below this value 
+	 */
+	int getSlotCount() {
+		return slotCount;
+	}
+	
+	/**
+	 * Checks whether a slot belongs to an edge
+	 */
+	boolean isUsed(int slot) {
+		return usedSlots.get(slot);
+	}
+	
+	/**
+	 * Returns the first protein of the edge of a slot
+	 */
+	int getSlotFirst(int slot) {
+		return slotFirst[slot];
+	}
+	
+	/**
+	 * Returns the second protein of the edge of a slot
+	 */
+	int getSlotSecond(int slot) {
+		return slotSecond[slot];
+	}
+	
+	/**
+	 * Puts all annotations of a slot into a given map
+	 */
+	void fillAnnotations(int slot, Map<String, Object> target) {
+		for (Map.Entry<String, Column> entry : columns.entrySet()) {
+			Column column = entry.getValue();
+			if (column.has(slot))
+				target.put(entry.getKey(), column.get(slot));
+		}
+	}
+	
+	/*
+	 * internal helpers
+	 */
+	
+	private int findSlot(int x, int y) {
+		if (x >= mainSize || y >= mainSize) 
+			return -1;
+		
+		int i,j;
+		if (symmetrical) {
+			i = Math.min(x, y);
+			j = Math.max(x, y);
+		} else {
+			i = x;
+			j = y;
+		}	
+		
+		int index = findIndex(i, j);
+		if (index >= 0) 
+			return slots[i][index];
+		else
+			return -1;
+	}
+	
+	private int allocateSlot(int i, int j) {
+		int slot;
+		if (freeCount > 0) 
+			slot = freeSlots[--freeCount];
+		else {
+			slot = slotCount++;
+			if (slot >= slotFirst.length) {
+				int newLength = slotFirst.length + (slotFirst.length >> 1);
+				slotFirst = Tools.arrCopyOf(slotFirst, newLength);
+				slotSecond = Tools.arrCopyOf(slotSecond, newLength);
+			}
+		}
+		slotFirst[slot] = i;
+		slotSecond[slot] = j;
+		usedSlots.set(slot);
+		return slot;
+	}
+	
+	private void releaseSlot(int slot) {
+		for (Column column : columns.values())
+			column.remove(slot);
+		usedSlots.clear(slot);
+		if (freeCount == freeSlots.length)
+			freeSlots = Tools.arrCopyOf(freeSlots, freeSlots.length*2);
+		freeSlots[freeCount++] = slot;
+	}
+	
+	private void resizeMain(int max) {
+		 int newMainSize = (max+1+mainResizeStep)/mainResizeStep*mainResizeStep;
+		 keys = Tools.arrCopyOf(keys, newMainSize);
+		 slots = Tools.arrCopyOf(slots, newMainSize);
+		 bucketSizes = Tools.arrCopyOf(bucketSizes, newMainSize);
+		 bucketMaxSizes = Tools.arrCopyOf(bucketMaxSizes, newMainSize);
+		 mainSize = newMainSize;
+	}
+	
+	private void enlargeBucket(int bucket) {
+		
+		// new size
+		bucketMaxSizes[bucket] += resizeStep;
+		// copy or create new?
+		int[] newSlots;
+		int[] newKeys;
+		if (slots[bucket] != null) {
+			// copy
+			newSlots = Tools.arrCopyOf(slots[bucket], bucketMaxSizes[bucket]);
+			newKeys = Tools.arrCopyOf(keys[bucket], bucketMaxSizes[bucket]);
+		} else {
+			// create new
+			newSlots = new int[bucketMaxSizes[bucket]];
+			newKeys = new int[bucketMaxSizes[bucket]];
+		}
+		// set new references
+		slots[bucket] = newSlots;
+		keys[bucket] = newKeys;
+	}
+	
+	// do kind of insertion sort step, has to copy part of the array :-(
+	private void insertIntoBucket(int bucket, int key, int slot, int insertion) {
+		
+		// shift rest
+		for (int j=bucketSizes[bucket]; j>insertion; j--) {
+			keys[bucket][j] = keys[bucket][j-1];
+			slots[bucket][j] = slots[bucket][j-1];
+		}
+		// set new
+		keys[bucket][insertion] = key;
+		slots[bucket][insertion] = slot;
+		
+	}
+	
+	// do binary search to find key, return -insertion pos otherwise
+	private int findIndex(int bucket, int key) {
+		int[] keysub = keys[bucket];
+		if (keysub == null) return -1;
+		int low = 0;
+		int high = bucketSizes[bucket] - 1;
+		int mid;
+
+		while( low <= high ) {
+			mid = (low + high) / 2;
+
+			if(key > keysub[mid])
+				low = mid + 1;
+			else if(key < keysub[mid])
+				high = mid - 1;
+			else
+				return mid;
+		}
+
+		return -(low+1);     
+	}
+	
+	/**
+	 * Values of one annotation key for all slots. The type of the column is
+	 * determined by the first value, floats and integers are stored in 
+	 * primitive arrays, strings as codes of a dictionary. Lists and columns 
+	 * with mixed types are stored as objects.
+	 */
+	private static class Column {
+		
+		private static final byte FLOAT = 0;
+		private static final byte INT = 1;
+		private static final byte STRING = 2;
+		private static final byte OBJECT = 3;
+		
+		private byte type = -1;
+		private BitSet present = new BitSet();
+		
+		private float[] floats;
+		private int[] ints;
+		private Object[] objects;
+		
+		// string dictionary
+		private Map<String, Integer> codes;
+		private String[] dictionary;
+		private int dictionarySize=0;
+		
+		boolean has(int slot) {
+			return present.get(slot);
+		}
+		
+		void set(int slot, Object value) {
+			if (type == -1) 
+				initialize(value);
+			else if (type != OBJECT && type != typeOf(value)) 
+				convertToObjects();
+			ensureCapacity(slot+1);
+			
+			switch (type) {
+			case FLOAT:
+				floats[slot] = (Float)value;
+				break;
+			case INT:
+				ints[slot] = (Integer)value;
+				break;
+			case STRING:
+				ints[slot] = encode((String)value);
+				break;
+			default:
+				objects[slot] = value;
+			}
+			present.set(slot);
+		}
+		
+		Object get(int slot) {
+			if (!present.get(slot))
+				return null;
+			switch (type) {
+			case FLOAT:
+				return floats[slot];
+			case INT:
+				return ints[slot];
+			case STRING:
+				return dictionary[ints[slot]];
+			default:
+				return objects[slot];
+			}
+		}
+		
+		boolean remove(int slot) {
+			if (!present.get(slot))
+				return false;
+			present.clear(slot);
+			if (type == OBJECT)
+				objects[slot] = null;
+			return true;
+		}
+		
+		private static byte typeOf(Object value) {
+			if (value instanceof Float)
+				return FLOAT;
+			else if (value instanceof Integer)
+				return INT;
+			else if (value instanceof String)
+				return STRING;
+			else
+				return OBJECT; // lists
+		}
+		
+		private void initialize(Object value) {
+			type = typeOf(value);
+			if (type == FLOAT)
+				floats = new float[16];
+			else if (type == INT)
+				ints = new int[16];
+			else if (type == STRING) {
+				ints = new int[16];
+				codes = new HashMap<String, Integer>();
+				dictionary = new String[16];
+			} else
+				objects = new Object[16];
+		}
+		
+		private void convertToObjects() {
+			int capacity = (type == FLOAT) ? floats.length : ints.length;
+			Object[] newObjects = new Object[capacity];
+			for (int slot=present.nextSetBit(0); slot>=0; slot=present.nextSetBit(slot+1))
+				newObjects[slot] = get(slot);
+			objects = newObjects;
+			floats = null;
+			ints = null;
+			codes = null;
+			dictionary = null;
+			type = OBJECT;
+		}
+		
+		private void ensureCapacity(int capacity) {
+			int length;
+			switch (type) {
+			case FLOAT: length = floats.length; break;
+			case INT: case STRING: length = ints.length; break;
+			default: length = objects.length;
+			}
+			if (capacity <= length)
+				return;
+			int newLength = Math.max(capacity, length + (length >> 1));
+			switch (type) {
+			case FLOAT: floats = Tools.arrCopyOf(floats, newLength); break;
+			case INT: case STRING: ints = Tools.arrCopyOf(ints, newLength); break;
+			default: objects = Tools.arrCopyOf(objects, newLength);
+			}
+		}
+		
+		private int encode(String value) {
+			Integer code = codes.get(value);
+			if (code == null) {
+				code = dictionarySize;
+				if (dictionarySize == dictionary.length)
+					dictionary = Tools.arrCopyOf(dictionary, dictionarySize*2);
+				dictionary[dictionarySize++] = value;
+				codes.put(value, code);
+			}
+			return code;
+		}
+	}
+	
+}
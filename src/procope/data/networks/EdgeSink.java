@@ -0,0 +1,42 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.data.networks;
+
+/**
+ * Receives a stream of weighted edges, e.g. to collect them in a 
+ * {@link NetworkBuilder} or to write them directly to a file using a
+ * {@link NetworkStreamWriter}.
+ * 
+ * @author Jan Krumsiek
+ * @see NetworkGenerator#generateEdges(procope.methods.scores.ScoresCalculator, float, int, EdgeSink, boolean)
+ */
+public interface EdgeSink {
+	
+	/**
+	 * Adds a weighted edge between two proteins.
+	 * 
+	 * @param prot1 first protein
+	 * @param prot2 second protein
+	 * @param weight weight of the edge
+	 */
+	public void addEdge(int prot1, int prot2, float weight);
+
+}
@@ -0,0 +1,283 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.data.networks;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import procope.data.ProteinSet;
+
+/**
+ * Immutable snapshot of the edges of a {@link ProteinNetwork} in 
+ * <i>compressed sparse row</i> format. Created by 
+ * {@link ProteinNetwork#freeze()}. The neighbors of all proteins are stored 
+ * consecutively in one large array along with the weights of the 
+ * corresponding edges. An offsets array indexed by the internal protein IDs 
+ * determines where the neighbors of each protein begin. Thus the neighbors 
+ * of a protein can be accessed in constant time without copying any data.
+ * <p>The neighbors of each protein are sorted ascendingly. Each undirected 
+ * edge is contained twice, once in the row of each protein. Edges without a 
+ * weight (edges which only have annotations) have the weight 
+ * {@code Float.NaN}. Edge annotations are not contained in the snapshot.
+ * <p>For directed networks, the row of a protein contains all neighbors 
+ * regardless of the direction of the edges (like 
+ * {@link ProteinNetwork#getNeighborArray(int)}), the weight at a position
+ * is the weight of the edge from the protein of the row to the neighbor.
+ * 
+ * <p>Iterating over the neighbors of a given protein works like this:
+ * <pre>  FrozenNetwork frozen = net.freeze();
+ *  int[] neighbors = frozen.getNeighbors();
+ *  float[] weights = frozen.getWeights();
+ *  int end = frozen.getNeighborEnd(protein);
+ *  for (int i=frozen.getNeighborStart(protein); i&lt;end; i++) {
+ *      int neighbor = neighbors[i];
+ *      float weight = weights[i];
+ *      // do something with the edge
+ *  }</pre>
+ * <p><b>Note:</b> The snapshot does not reflect any changes made to the 
+ * original network after its creation.
+ *
+ * @author Jan Krumsiek
+ */
+public class FrozenNetwork implements ProteinSet {
+	
+	private boolean directed;
+	private int edgeCount;
+	
+	private int[] offsets;
+	private int[] neighbors;
+	private float[] weights;
+	private int[] proteins;
+	
+	private Set<Integer> proteinSet = null;
+	
+	/**
+	 * Creates the snapshot from the prepared arrays, package-private
+	 */
+	FrozenNetwork(boolean directed, int edgeCount, int[] offsets, int[] neighbors, 
+			float[] weights, int[] proteins) {
+		this.directed = directed;
+		this.edgeCount = edgeCount;
+		this.offsets = offsets;
+		this.neighbors = neighbors;
+		this.weights = weights;
+		this.proteins = proteins;
+	}
+	
+	/**
+	 * Returns whether the original network is directed
+	 * 
+	 * @return {@code true} for directed networks
+	 */
+	public boolean isDirected() {
+		return directed;
+	}
+	
+	/**
+	 * Returns the number of edges of the original network
+	 * 
+	 * @return number of edges
+	 */
+	public int getEdgeCount() {
+		return edgeCount;
+	}
+	
+	/**
+	 * Returns the number of nodes in the network
+	 * 
+	 * @return number of nodes
+	 */
+	public int getNodeCount() {
+		return proteins.length;
+	}
+	
+	/**
+	 * Returns the highest internal protein ID in the network. All arrays 
+	 * indexed by protein IDs need a size of {@code getHighestID()+1}
+	 * 
+	 * @return highest internal ID
+	 */
+	public int getHighestID() {
+		return offsets.length - 2;
+	}
+	
+	/**
+	 * Returns the sorted array of all proteins in the network. <b>Note:</b> 
+	 * The returned array is the internal array of the snapshot and must not
+	 * be modified.
+	 * 
+	 * @return sorted array of the internal IDs of all nodes
+	 */
+	public int[] getProteinArray() {
+		return proteins;
+	}
+	
+	/**
+	 * Returns the set of all proteins in the network. The set is created on
+	 * the first call and cannot be modified.
+	 */
+	public Set<Integer> getProteins() {
+		if (proteinSet == null) {
+			Set<Integer> set = new HashSet<Integer>();
+			for (int protein : proteins)
+				set.add(protein);
+			proteinSet = Collections.unmodifiableSet(set);
+		}
+		return proteinSet;
+	}
+	
+	/**
+	 * Returns the offsets array. The neighbors of protein {@code p} are 
+	 * located at the positions {@code offsets[p] <= i < offsets[p+1]} of the
+	 * neighbors and weights arrays. <b>Note:</b> The returned array is the 
+	 * internal array of the snapshot and must not be modified.
+	 * 
+	 * @return offsets array of length {@code getHighestID()+2}
+	 */
+	public int[] getOffsets() {
+		return offsets;
+	}
+	
+	/**
+	 * Returns the array of neighbors of all proteins. <b>Note:</b> The 
+	 * returned array is the internal array of the snapshot and must not be 
+	 * modified.
+	 * 
+	 * @return array with the neighbors of all proteins
+	 */
+	public int[] getNeighbors() {
+		return neighbors;
+	}
+	
+	/**
+	 * Returns the array of edge weights which corresponds to the 
+	 * {@link #getNeighbors() neighbors array}. <b>Note:</b> The returned 
+	 * array is the internal array of the snapshot and must not be modified.
+	 * 
+	 * @return array with the weights of all edges
+	 */
+	public float[] getWeights() {
+		return weights;
+	}
+	
+	/**
+	 * Returns the position of the first neighbor of a protein in the 
+	 * neighbors array.
+	 * 
+	 * @param protein the protein
+	 * @return start position of the row of this protein
+	 */
+	public int getNeighborStart(int protein) {
+		if (protein < 0 || protein >= offsets.length-1)
+			return 0;
+		return offsets[protein];
+	}
+	
+	/**
+	 * Returns the position after the last neighbor of a protein in the 
+	 * neighbors array.
+	 * 
+	 * @param protein the protein
+	 * @return end position (exclusive) of the row of this protein
+	 */
+	public int getNeighborEnd(int protein) {
+		if (protein < 0 || protein >= offsets.length-1)
+			return 0;
+		return offsets[protein+1];
+	}
+	
+	/**
+	 * Returns the number of neighbors of a given protein
+	 * 
+	 * @param protein the protein
+	 * @return number of neighbors
+	 */
+	public int getDegree(int protein) {
+		return getNeighborEnd(protein) - getNeighborStart(protein);
+	}
+	
+	/**
+	 * Returns a copy of the neighbors of a given protein, equal to 
+	 * {@link ProteinNetwork#getNeighborArray(int)}.
+	 * 
+	 * @param protein the protein
+	 * @return sorted array of neighbors
+	 */
+	public int[] getNeighborArray(int protein) {
+		int start = getNeighborStart(protein);
+		int[] result = new int[getNeighborEnd(protein) - start];
+		System.arraycopy(neighbors, start, result, 0, result.length);
+		return result;
+	}
+	
+	/**
+	 * Checks whether there is an edge between two given proteins. For 
+	 * directed networks the edge must lead from {@code prot1} to 
+	 * {@code prot2}, the rows also contain the reverse edges but without a
+	 * weight.
+	 * 
+	 * @param prot1 first protein
+	 * @param prot2 second protein
+	 * @return {@code true} if there is an edge between the two proteins
+	 */
+	public boolean hasEdge(int prot1, int prot2) {
+		if (directed)
+			return !Float.isNaN(getEdge(prot1, prot2));
+		return findIndex(prot1, prot2) >= 0;
+	}
+	
+	/**
+	 * Returns the weight of the edge between two given proteins.
+	 * 
+	 * @param prot1 first protein
+	 * @param prot2 second protein
+	 * @return weight of the edge or {@code Float.NaN} if no weighted edge
+	 *         exists between those proteins
+	 */
+	public float getEdge(int prot1, int prot2) {
+		int index = findIndex(prot1, prot2);
+		if (index >= 0)
+			return weights[index];
+		else
+			return Float.NaN;
+	}
+	
+	/**
+	 * Returns the position of an edge in the neighbors array, does binary 
+	 * search in the row of the first protein, -1 if not existing
+	 */
+	private int findIndex(int prot1, int prot2) {
+		int low = getNeighborStart(prot1);
+		int high = getNeighborEnd(prot1) - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (prot2 > neighbors[mid])
+				low = mid + 1;
+			else if (prot2 < neighbors[mid])
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+	
+}
@@ -0,0 +1,278 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.data.networks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import procope.tools.ProCopeException;
+import procope.tools.Tools;
+
+/**
+ * Builds {@link ProteinNetwork networks} from large numbers of edges. The 
+ * edges are collected in primitive buffers and sorted only once when the 
+ * network is {@link #build() built}. This is much faster than inserting the
+ * edges one by one using {@link ProteinNetwork#setEdge(int, int, float)} 
+ * which has to keep the internal data structures sorted after each insertion.
+ * <p>Edges which are added more than once will get the weight of the last
+ * insertion, just like repeated calls of 
+ * {@link ProteinNetwork#setEdge(int, int, float)}. Edge annotations are 
+ * stored separately and added to the network after the edge weights.
+ * <p>Example:
+ * <pre>  NetworkBuilder builder = new NetworkBuilder(false);
+ *  builder.addEdge(protein1, protein2, 0.5f);
+ *  // ... add more edges
+ *  ProteinNetwork net = builder.build();</pre>
+ * 
+ * @author Jan Krumsiek
+ */
+public class NetworkBuilder implements EdgeSink {
+	
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private boolean directed;
+	
+	// edge buffer, each edge is stored as packed pair of protein IDs
+	private long[] pairs;
+	private float[] weights;
+	private int count=0;
+	
+	// annotations which will be added after the weights
+	private List<PendingAnnotations> annotations;
+	
+	/**
+	 * Creates a builder for an undirected network.
+	 */
+	public NetworkBuilder() {
+		this(false);
+	}
+	
+	/**
+	 * Creates a builder for a network.
+	 * 
+	 * @param directed specifies if this will be a directed or an undirected network
+	 */
+	public NetworkBuilder(boolean directed) {
+		this(directed, INITIAL_CAPACITY);
+	}
+	
+	/**
+	 * Creates a builder with an initial capacity for the given number of 
+	 * edges. The buffers grow automatically if more edges are added.
+	 * 
+	 * @param directed specifies if this will be a directed or an undirected network
+	 * @param expectedEdges expected number of edges
+	 */
+	public NetworkBuilder(boolean directed, int expectedEdges) {
+		this.directed = directed;
+		int capacity = Math.max(expectedEdges, 16);
+		pairs = new long[capacity];
+		weights = new float[capacity];
+		annotations = new ArrayList<PendingAnnotations>();
+	}
+	
+	/**
+	 * Adds a weighted edge between two given proteins.
+	 * 
+	 * @param prot1 first protein
+	 * @param prot2 second protein
+	 * @param weight weight to assign to the edge
+	 * @throws ProCopeException if {@code weight == Float.NaN}
+	 */
+	public void addEdge(int prot1, int prot2, float weight) throws ProCopeException {
+		if (weight!=weight)
+			throw new ProCopeException("Cannot set an edge to NaN");
+		
+		if (count == pairs.length) {
+			int newCapacity = pairs.length + (pairs.length >> 1);
+			pairs = Tools.arrCopyOf(pairs, newCapacity);
+			weights = Tools.arrCopyOf(weights, newCapacity);
+		}
+		pairs[count] = pack(prot1, prot2);
+		weights[count] = weight;
+		count++;
+	}
+	
+	/**
+	 * Adds an edge with the standard weight of 1.0 between two given proteins.
+	 * 
+	 * @param prot1 first protein
+	 * @param prot2 second protein
+	 */
+	public void addEdge(int prot1, int prot2) {
+		addEdge(prot1, prot2, 1.0f);
+	}
+	
+	/**
+	 * Adds a set of annotations to an edge. Like in 
+	 * {@link ProteinNetwork#setEdgeAnnotations(int, int, Map)} the edge will be
+	 * created if it does not exist.
+	 * 
+	 * @param prot1 first protein
+	 * @param prot2 second protein
+	 * @param annotations map of key=>value pairs to add to the edge
+	 */
+	public void addEdgeAnnotations(int prot1, int prot2, Map<String, Object> annotations) {
+		this.annotations.add(new PendingAnnotations(prot1, prot2, annotations));
+	}
+	
+	/**
+	 * Adds all edges and annotations of another builder to this builder. The
+	 * edges are appended as if they were added one by one in the order of
+	 * the other builder. The other builder is not changed.
+	 * 
+	 * @param other builder whose edges will be added
+	 * @throws ProCopeException if the builders differ in directedness
+	 */
+	public void addAll(NetworkBuilder other) throws ProCopeException {
+		if (other.directed != directed)
+			throw new ProCopeException("Cannot merge directed and undirected edges");
+		
+		int newCount = count + other.count;
+		if (newCount > pairs.length) {
+			int newCapacity = Math.max(newCount, pairs.length + (pairs.length >> 1));
+			pairs = Tools.arrCopyOf(pairs, newCapacity);
+			weights = Tools.arrCopyOf(weights, newCapacity);
+		}
+		System.arraycopy(other.pairs, 0, pairs, count, other.count);
+		System.arraycopy(other.weights, 0, weights, count, other.count);
+		count = newCount;
+		annotations.addAll(other.annotations);
+	}
+	
+	/**
+	 * Returns the number of weighted edges added to the builder so far. 
+	 * Edges which were added more than once are counted multiple times.
+	 * 
+	 * @return number of added weighted edges
+	 */
+	public int size() {
+		return count;
+	}
+	
+	/**
+	 * Creates the network from all edges added so far. The builder can still 
+	 * be used afterwards.
+	 * 
+	 * @return the new network
+	 */
+	public ProteinNetwork build() {
+		
+		// sort a copy of the buffers, stable so the last insertion of an edge wins
+		long[] sortedPairs = Tools.arrCopyOf(pairs, count);
+		float[] sortedWeights = Tools.arrCopyOf(weights, count);
+		mergeSort(sortedPairs, sortedWeights);
+		
+		// remove duplicates, keep the last one
+		int[] first = new int[count];
+		int[] second = new int[count];
+		int unique=0;
+		for (int i=0; i<count; i++) {
+			if (i < count-1 && sortedPairs[i] == sortedPairs[i+1])
+				continue;
+			first[unique] = (int)(sortedPairs[i] >>> 32);
+			second[unique] = (int)sortedPairs[i];
+			sortedWeights[unique] = sortedWeights[i];
+			unique++;
+		}
+		sortedPairs = null;
+		
+		ProteinNetwork net = new ProteinNetwork(directed);
+		net.loadEdges(first, second, sortedWeights, unique);
+		
+		// now add the annotations
+		for (PendingAnnotations pending : annotations)
+			net.setEdgeAnnotations(pending.prot1, pending.prot2, pending.annotations);
+		
+		return net;
+	}
+	
+	/**
+	 * packs two proteins into one long, undirected edges are stored with
+	 * the smaller protein first, the resulting longs sort like the pairs
+	 */
+	private long pack(int prot1, int prot2) {
+		if (!directed && prot2 < prot1) {
+			int swap = prot1;
+			prot1 = prot2;
+			prot2 = swap;
+		}
+		return ((long)prot1 << 32) | (prot2 & 0xffffffffL);
+	}
+	
+	/**
+	 * stable merge sort of the pairs array, the weights are sorted along
+	 */
+	private static void mergeSort(long[] keys, float[] values) {
+		long[] keyBuffer = new long[keys.length];
+		float[] valueBuffer = new float[values.length];
+		// bottom-up merging of runs with increasing width
+		long[] srcKeys = keys, dstKeys = keyBuffer;
+		float[] srcValues = values, dstValues = valueBuffer;
+		for (int width=1; width<keys.length; width*=2) {
+			for (int left=0; left<keys.length; left+=2*width) {
+				int mid = Math.min(left+width, keys.length);
+				int right = Math.min(left+2*width, keys.length);
+				int i=left, j=mid, k=left;
+				while (i < mid && j < right) {
+					if (srcKeys[j] < srcKeys[i]) {
+						dstKeys[k] = srcKeys[j];
+						dstValues[k++] = srcValues[j++];
+					} else {
+						dstKeys[k] = srcKeys[i];
+						dstValues[k++] = srcValues[i++];
+					}
+				}
+				while (i < mid) {
+					dstKeys[k] = srcKeys[i];
+					dstValues[k++] = srcValues[i++];
+				}
+				while (j < right) {
+					dstKeys[k] = srcKeys[j];
+					dstValues[k++] = srcValues[j++];
+				}
+			}
+			// swap source and destination
+			long[] tmpKeys = srcKeys; srcKeys = dstKeys; dstKeys = tmpKeys;
+			float[] tmpValues = srcValues; srcValues = dstValues; dstValues = tmpValues;
+		}
+		// result might be in the buffer
+		if (srcKeys != keys) {
+			System.arraycopy(srcKeys, 0, keys, 0, keys.length);
+			System.arraycopy(srcValues, 0, values, 0, values.length);
+		}
+	}
+	
+	/**
+	 * Annotations waiting to be added to the network
+	 */
+	private static class PendingAnnotations {
+		int prot1, prot2;
+		Map<String, Object> annotations;
+		PendingAnnotations(int prot1, int prot2, Map<String, Object> annotations) {
+			this.prot1 = prot1;
+			this.prot2 = prot2;
+			this.annotations = annotations;
+		}
+	}
+
+}
@@ -20,10 +20,16 @@
  */
 package procope.data.networks;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 
+import procope.methods.scores.CandidatePairs;
 import procope.methods.scores.ScoresCalculator;
+import procope.tools.ParallelTools;
+import procope.tools.ProCopeException;
 import procope.tools.Tools;
 
 
@@ -35,6 +41,10 @@ import procope.tools.Tools;
  */
 
 public class NetworkGenerator {
+	
+	// maximum number of protein pairs per block of rows in generateEdges, 
+	// bounds the memory of the finished blocks waiting to be written
+	private static final int MAX_BLOCK_PAIRS = 1 << 16;
 
 	// avoid instantiation
 	private NetworkGenerator() {
@@ -65,25 +75,180 @@ public class NetworkGenerator {
 	 * @return generated network
 	 */
 	public static ProteinNetwork generateNetwork(ScoresCalculator calculator, float cutOff) {
-
-		ProteinNetwork newNet = new ProteinNetwork(false);
+		return generateNetwork(calculator, cutOff, 1);
+	}
+	
+	/**
+	 * Generate a network from a given 
+	 * {@link ScoresCalculator scores calculator} using multiple threads. 
+	 * The rows of the all-pairs score matrix are distributed over the 
+	 * threads, each thread collects its accepted edges in its own buffer. 
+	 * The resulting network is the same as for the sequential calculation.
+	 * <p>Note that {@link ScoresCalculator#getScore(int, int)} will be called
+	 * concurrently, use more than one thread only if the calculator is 
+	 * thread-safe. All scores calculators in {@link procope.methods.scores}
+	 * are thread-safe once they are constructed.
+	 * <p>If the calculator implements {@link CandidatePairs} and its candidate
+	 * pairs are {@link CandidatePairs#candidatesComplete(float) complete} for
+	 * the given cut-off only the candidate pairs are scored.
+	 * 
+	 * @param calculator scores calculator from which the network 
+	 *                   will be calculated
+	 * @param cutOff only write scores greater than or equal to this value
+	 *               to the network
+	 * @param threads number of threads to use
+	 * @return generated network
+	 * @throws ProCopeException if {@code threads < 1}
+	 * @see ParallelTools#getDefaultThreads()
+	 */
+	public static ProteinNetwork generateNetwork(final ScoresCalculator calculator, 
+			final float cutOff, int threads) throws ProCopeException {
+		
+		if (threads < 1)
+			throw new ProCopeException("Number of threads must be at least 1");
 		
 		// get protein list and convert to array for convenience
-		Collection<Integer> colproteins = calculator.getProteins();
-		Integer[] proteins = colproteins.toArray(new Integer[0]);
-		int protcount = proteins.length;
-		// iterate over all pairwise proteins
-		for (int i=0; i<protcount; i++) {
-			for (int j=i+1; j<protcount; j++) {
-				float score = calculator.getScore(proteins[i], proteins[j]);
-				if (score != 0 && score >= cutOff) {
-					newNet.setEdge(proteins[i], proteins[j], score);
+		final int[] proteins = getProteinArray(calculator);
+		final RowScorer scorer = new RowScorer(calculator, cutOff, proteins, proteins);
+		
+		// each worker collects its edges in a builder of its own
+		final NetworkBuilder[] partial = new NetworkBuilder[threads];
+		ParallelTools.RangeTask[] workers = new ParallelTools.RangeTask[threads];
+		for (int t=0; t<threads; t++) {
+			final NetworkBuilder builder = new NetworkBuilder(false);
+			partial[t] = builder;
+			workers[t] = new ParallelTools.RangeTask() {
+				public void process(int from, int to) {
+					for (int i=from; i<to; i++)
+						scorer.scoreRow(i, builder);
 				}
-			}
-		//	System.out.println(i + " done");
+			};
 		}
+		ParallelTools.processRange(proteins.length, 
+				ParallelTools.getBlockSize(proteins.length, threads), workers);
 		
-		return newNet;
+		// merge the partial results
+		if (threads == 1)
+			return partial[0].build();
+		int total=0;
+		for (NetworkBuilder builder : partial)
+			total += builder.size();
+		NetworkBuilder merged = new NetworkBuilder(false, total);
+		for (int t=0; t<threads; t++) {
+			merged.addAll(partial[t]);
+			partial[t] = null;
+		}
+		return merged.build();
+	}
+	
+	/**
+	 * Calculates all scores of a given 
+	 * {@link ScoresCalculator scores calculator} like 
+	 * {@link #generateNetwork(ScoresCalculator, float, int)} but passes the 
+	 * accepted edges directly to an {@link EdgeSink} instead of building a
+	 * network. Together with a {@link NetworkStreamWriter} this allows to 
+	 * write huge score networks to disk in bounded memory.
+	 * <p>Each edge is passed to the sink exactly once, with the protein
+	 * having the smaller internal ID first. The sink is only called by one
+	 * thread at a time. If {@code ordered} is set, the edges arrive sorted 
+	 * by the first and then by the second protein, which is the same order
+	 * {@link NetworkWriter} uses for the corresponding network. Otherwise 
+	 * the rows of the score matrix are passed to the sink as soon as they
+	 * are finished, which avoids waiting for slow rows.
+	 * <p>The same thread-safety considerations as for 
+	 * {@link #generateNetwork(ScoresCalculator, float, int)} apply.
+	 * 
+	 * @param calculator scores calculator from which the edges 
+	 *                   will be calculated
+	 * @param cutOff only pass scores greater than or equal to this value
+	 *               to the sink
+	 * @param threads number of threads to use
+	 * @param sink receives the accepted edges
+	 * @param ordered pass the edges to the sink in sorted order
+	 * @throws ProCopeException if {@code threads < 1}
+	 */
+	public static void generateEdges(final ScoresCalculator calculator, float cutOff, 
+			int threads, final EdgeSink sink, final boolean ordered) throws ProCopeException {
+		
+		if (threads < 1)
+			throw new ProCopeException("Number of threads must be at least 1");
+		
+		// rows are processed in sorted order, but scores are calculated in
+		// the same argument order as for the network generation
+		int[] proteins = getProteinArray(calculator);
+		int[] sorted = proteins.clone();
+		Arrays.sort(sorted);
+		final RowScorer scorer = new RowScorer(calculator, cutOff, sorted, proteins);
+		
+		final int[] blockStarts = getBlockStarts(sorted.length, threads);
+		final BlockQueue queue = new BlockQueue(sink, ordered, threads*2);
+		ParallelTools.RangeTask[] workers = new ParallelTools.RangeTask[threads];
+		for (int t=0; t<threads; t++) {
+			workers[t] = new ParallelTools.RangeTask() {
+				public void process(int from, int to) {
+					try {
+						// a single worker gets all blocks at once
+						for (int block=from; block<to; block++) {
+							EdgeBuffer buffer = new EdgeBuffer();
+							for (int i=blockStarts[block]; i<blockStarts[block+1]; i++)
+								scorer.scoreRow(i, buffer);
+							queue.put(block, buffer);
+						}
+					} catch (RuntimeException e) {
+						// make sure no other worker waits for this one forever
+						queue.abort(e);
+						throw e;
+					} catch (Error e) {
+						queue.abort(e);
+						throw e;
+					}
+				}
+			};
+		}
+		try {
+			ParallelTools.processRange(blockStarts.length-1, 1, workers);
+		} catch (RuntimeException e) {
+			// the other workers only report the abort
+			queue.rethrowFailure();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Divides the rows of the upper triangle of the score matrix into 
+	 * blocks of consecutive rows. Each block contains at most 
+	 * MAX_BLOCK_PAIRS pairs (or a single row), independent of the number of
+	 * proteins, and there are some blocks per thread for load balancing. 
+	 * Returns the first row of each block followed by the number of rows.
+	 */
+	private static int[] getBlockStarts(int rows, int threads) {
+		long totalPairs = (long)rows * (rows-1) / 2;
+		long budget = Math.max(1, Math.min(MAX_BLOCK_PAIRS, totalPairs / (threads * 16)));
+		int[] starts = new int[rows+1];
+		int blocks=0;
+		long pairs=0;
+		for (int i=0; i<rows; i++) {
+			long rowPairs = rows-1-i;
+			if (i == 0 || pairs + rowPairs > budget) {
+				starts[blocks++] = i;
+				pairs = 0;
+			}
+			pairs += rowPairs;
+		}
+		starts[blocks] = rows;
+		return Tools.arrCopyOf(starts, blocks+1);
+	}
+	
+	/**
+	 * returns the proteins of the calculator in iteration order
+	 */
+	private static int[] getProteinArray(ScoresCalculator calculator) {
+		Collection<Integer> colproteins = calculator.getProteins();
+		int[] proteins = new int[colproteins.size()];
+		int index=0;
+		for (int protein : colproteins)
+			proteins[index++] = protein;
+		return proteins;
 	}
 	
 	/**
@@ -136,5 +301,181 @@ public class NetworkGenerator {
 		
 	}
 	
+	/**
+	 * Calculates the accepted scores of single rows of the all-pairs score
+	 * matrix. Row i contains the pairs of rows[i] with all proteins of 
+	 * higher rows. The order of the arguments for the scores calculator is
+	 * given by the order of the proteins in another array.
+	 */
+	private static class RowScorer {
+		
+		private ScoresCalculator calculator;
+		private CandidatePairs candidates;
+		private float cutOff;
+		private int[] rows;
+		// row of each protein, -1 if not present
+		private int[] rowOf;
+		// position of each protein in the argument order
+		private int[] argPosition;
+		
+		RowScorer(ScoresCalculator calculator, float cutOff, int[] rows, int[] argOrder) {
+			this.calculator = calculator;
+			this.cutOff = cutOff;
+			this.rows = rows;
+			
+			// can we restrict the calculation to candidate pairs?
+			if (calculator instanceof CandidatePairs && 
+					((CandidatePairs)calculator).candidatesComplete(cutOff))
+				candidates = (CandidatePairs)calculator;
+			
+			int maxProtein=0;
+			for (int protein : rows)
+				maxProtein = Math.max(maxProtein, protein);
+			rowOf = new int[maxProtein+1];
+			Arrays.fill(rowOf, -1);
+			for (int i=0; i<rows.length; i++)
+				rowOf[rows[i]] = i;
+			if (argOrder == rows)
+				argPosition = rowOf;
+			else {
+				argPosition = new int[maxProtein+1];
+				for (int i=0; i<argOrder.length; i++)
+					argPosition[argOrder[i]] = i;
+			}
+		}
+		
+		/**
+		 * scores one row, accepted edges are passed to the given sink
+		 */
+		void scoreRow(int i, EdgeSink sink) {
+			int prot1 = rows[i];
+			if (candidates != null) {
+				// only iterate over the candidate partners
+				for (int prot2 : candidates.getCandidatePartners(prot1)) {
+					if (prot2 < rowOf.length && rowOf[prot2] > i) 
+						score(prot1, prot2, sink);
+				}
+			} else {
+				// iterate over all pairwise proteins of this row
+				for (int j=i+1; j<rows.length; j++) 
+					score(prot1, rows[j], sink);
+			}
+		}
+		
+		private void score(int prot1, int prot2, EdgeSink sink) {
+			float score;
+			if (argPosition[prot1] < argPosition[prot2])
+				score = calculator.getScore(prot1, prot2);
+			else
+				score = calculator.getScore(prot2, prot1);
+			if (score != 0 && score >= cutOff) 
+				sink.addEdge(prot1, prot2, score);
+		}
+	}
+	
+	/**
+	 * Growable buffer for the edges of one block of rows.
+	 */
+	private static class EdgeBuffer implements EdgeSink {
+		
+		int[] first = new int[256];
+		int[] second = new int[256];
+		float[] weights = new float[256];
+		int count=0;
+		
+		public void addEdge(int prot1, int prot2, float weight) {
+			if (count == first.length) {
+				int newCapacity = count * 2;
+				first = Tools.arrCopyOf(first, newCapacity);
+				second = Tools.arrCopyOf(second, newCapacity);
+				weights = Tools.arrCopyOf(weights, newCapacity);
+			}
+			first[count] = prot1;
+			second[count] = prot2;
+			weights[count++] = weight;
+		}
+		
+		void writeTo(EdgeSink sink) {
+			for (int i=0; i<count; i++)
+				sink.addEdge(first[i], second[i], weights[i]);
+		}
+	}
+	
+	/**
+	 * Passes finished blocks of rows to the sink. In ordered mode blocks 
+	 * which finish early are held back until all previous blocks were 
+	 * written. To bound the memory usage, a worker which is too far ahead
+	 * of the next block to be written waits, as the blocks have a bounded
+	 * number of pairs this bounds the number of held back edges. This cannot deadlock as the 
+	 * blocks are handed out in increasing order, so the worker with the 
+	 * next block to be written never waits.
+	 */
+	private static class BlockQueue {
+		
+		private EdgeSink sink;
+		private boolean ordered;
+		private int maxPending;
+		private Map<Integer, EdgeBuffer> pending = new HashMap<Integer, EdgeBuffer>();
+		private int nextBlock=0;
+		private boolean aborted=false;
+		private Throwable failure=null;
+		
+		BlockQueue(EdgeSink sink, boolean ordered, int maxPending) {
+			this.sink = sink;
+			this.ordered = ordered;
+			this.maxPending = maxPending;
+		}
+		
+		synchronized void put(int block, EdgeBuffer buffer) {
+			if (!ordered) {
+				buffer.writeTo(sink);
+				return;
+			}
+			
+			// wait until we are close enough to the next block
+			while (block >= nextBlock + maxPending && !aborted) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					throw new ProCopeException("Score calculation was interrupted.");
+				}
+			}
+			if (aborted)
+				throw new ProCopeException("Score calculation was aborted.");
+			
+			// write all blocks which are ready
+			pending.put(block, buffer);
+			EdgeBuffer next;
+			boolean written=false;
+			while ((next = pending.remove(nextBlock)) != null) {
+				next.writeTo(sink);
+				nextBlock++;
+				written = true;
+			}
+			if (written)
+				notifyAll();
+		}
+		
+		/**
+		 * called if a worker failed, wakes up all waiting workers, only the
+		 * first failure is kept
+		 */
+		synchronized void abort(Throwable cause) {
+			if (!aborted)
+				failure = cause;
+			aborted = true;
+			notifyAll();
+		}
+		
+		/**
+		 * throws the failure which caused the abort, if any
+		 */
+		synchronized void rethrowFailure() {
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException)failure;
+			if (failure instanceof Error)
+				throw (Error)failure;
+		}
+	}
 
 }
@@ -137,8 +137,8 @@ public class NetworkReader {
 	public static ProteinNetwork readNetwork(InputStream input, boolean directed) {
 		try {
 
-			// create empty network
-			ProteinNetwork net = new ProteinNetwork(directed);
+			// collect edges, the network is built at once in the end
+			NetworkBuilder builder = new NetworkBuilder(directed);
 
 			// read file file, line by line
 			BufferedReader reader = new BufferedReader(new InputStreamReader(input));
@@ -157,18 +157,16 @@ public class NetworkReader {
 						score = 1.0f;
 				}
 				if (score == score) // NaN check
-					net.setEdge(prot1, prot2, score);
+					builder.addEdge(prot1, prot2, score);
 				// annotations
 				if (split.length > 3 && split[3].length() > 0) {
 					Map<String, Object> annotations = Tools.parseAnnotations(split[3]);
 					if (annotations.size() > 0)
-						net.setEdgeAnnotations(prot1, prot2, annotations);
+						builder.addEdgeAnnotations(prot1, prot2, annotations);
 				}
 			}
 
-
-
-			return net;
+			return builder.build();
 		
 		} catch (ProCopeException e) {
 			// just a trick so this type of exception is not caught by the block below
@@ -0,0 +1,135 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.data.networks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.zip.GZIPOutputStream;
+
+import procope.tools.ProCopeException;
+import procope.tools.namemapping.ProteinManager;
+
+/**
+ * Writes edges to a file or stream as soon as they are added, without 
+ * keeping them in memory. The output format is the same as the one of
+ * {@link NetworkWriter}, each line contains one edge:
+ * <pre>protein1[s]protein2[TAB]score</pre>
+ * <p>Errors during writing are reported as {@link ProCopeException}s.
+ * The writer is not thread-safe.
+ * 
+ * @author Jan Krumsiek
+ * @see NetworkGenerator#generateEdges(procope.methods.scores.ScoresCalculator, float, int, EdgeSink, boolean)
+ */
+public class NetworkStreamWriter implements EdgeSink {
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	private BufferedWriter writer;
+	private OutputStream stream;
+	private String separator;
+	private boolean ownStream;
+	
+	/**
+	 * Creates a writer which writes to a given output stream using TAB as a 
+	 * separator. The stream will not be closed by {@link #close()}.
+	 * 
+	 * @param outstream stream to which the edges will be written
+	 */
+	public NetworkStreamWriter(OutputStream outstream) {
+		this(outstream, NetworkWriter.DEFAULT_SEPARATOR);
+	}
+
+	/**
+	 * Creates a writer which writes to a given output stream. The stream will
+	 * not be closed by {@link #close()}.
+	 * 
+	 * @param outstream stream to which the edges will be written
+	 * @param separator separator between the two proteins of each edge
+	 */
+	public NetworkStreamWriter(OutputStream outstream, String separator) {
+		this.stream = outstream;
+		this.separator = separator;
+		this.ownStream = false;
+		writer = new BufferedWriter(new OutputStreamWriter(outstream), BUFFER_SIZE);
+	}
+	
+	/**
+	 * Creates a writer which writes to a given file, which will optionally 
+	 * be GZIP compressed.
+	 * 
+	 * @param outfile path of the output file
+	 * @param separator separator between the two proteins of each edge
+	 * @param gzip compress the output file using GZIP
+	 * @throws IOException if the file could not be opened
+	 */
+	public NetworkStreamWriter(File outfile, String separator, boolean gzip) throws IOException {
+		this(gzip ? new GZIPOutputStream(new FileOutputStream(outfile), BUFFER_SIZE)
+				: new FileOutputStream(outfile), separator);
+		this.ownStream = true;
+	}
+	
+	/**
+	 * Writes one edge to the output.
+	 * 
+	 * @throws ProCopeException if the edge could not be written
+	 */
+	public void addEdge(int prot1, int prot2, float weight) throws ProCopeException {
+		try {
+			writer.write(ProteinManager.getLabel(prot1));
+			writer.write(separator);
+			writer.write(ProteinManager.getLabel(prot2));
+			// like NetworkWriter, the score is always separated by TAB
+			writer.write('\t');
+			if (weight == weight) // NaN check
+				writer.write(Float.toString(weight));
+			// same line separator as NetworkWriter
+			writer.newLine();
+		} catch (IOException e) {
+			throw new ProCopeException("Could not write edge: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Flushes all buffered edges to the underlying stream.
+	 * 
+	 * @throws IOException if the stream could not be flushed
+	 */
+	public void flush() throws IOException {
+		writer.flush();
+	}
+	
+	/**
+	 * Flushes all buffered edges. If the writer was created for a file, the
+	 * file will be closed, otherwise the output stream stays open.
+	 * 
+	 * @throws IOException if the output could not be flushed or closed
+	 */
+	public void close() throws IOException {
+		writer.flush();
+		if (ownStream)
+			stream.close();
+	}
+
+}
@@ -20,9 +20,8 @@
  */
 package procope.data.networks;
 
-import java.util.HashSet;
-import java.util.Set;
 
+import procope.tools.IntSet;
 import procope.tools.Tools;
 
 /**
@@ -39,7 +38,7 @@ class PartnerList {
 	private int mainSize=0;
 	
 	
-	private Set<Integer> firstPartners;
+	private IntSet firstPartners;
 	
 	/**
 	 * Creates a new PartnerList
@@ -50,7 +49,7 @@ class PartnerList {
 		bucketSizes = new int[0];
 		bucketMaxSizes = new int[0];
 		
-		firstPartners = new HashSet<Integer>();
+		firstPartners = new IntSet();
 	}
 	
 	/**
@@ -157,10 +156,48 @@ class PartnerList {
 			return Tools.arrCopyOf(keys[firstPartner], bucketSizes[firstPartner]);
 	}
 	
-	public Set<Integer> getFirstPartners() {
+	public IntSet getFirstPartners() {
 		return firstPartners;
 	}
 	
+	/**
+	 * Bulk-loads partner lists given in compressed form. The partners of 
+	 * protein {@code i} are located at positions {@code rowStarts[i] <= k < 
+	 * rowStarts[i+1]}, they must be sorted and unique and must already 
+	 * contain both directions. Only allowed for an empty list.
+	 */
+	void loadRows(int[] rowStarts, int[] rowKeys, int maxIndex) {
+		if (maxIndex >= mainSize)
+			resizeMain(maxIndex);
+		for (int i=0; i<rowStarts.length-1; i++) {
+			int size = rowStarts[i+1] - rowStarts[i];
+			if (size > 0) {
+				keys[i] = new int[size];
+				System.arraycopy(rowKeys, rowStarts[i], keys[i], 0, size);
+				bucketSizes[i] = bucketMaxSizes[i] = size;
+				firstPartners.add(i);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of partners of a given protein
+	 */
+	int getPartnerCount(int firstPartner) {
+		if (mainSize <= firstPartner)
+			return 0;
+		else
+			return bucketSizes[firstPartner];
+	}
+	
+	/**
+	 * Returns the internal sorted partner array of a protein without copying,
+	 * only the first {@link #getPartnerCount(int)} entries are valid
+	 */
+	int[] getPartnersInternal(int firstPartner) {
+		return keys[firstPartner];
+	}
+	
 	public boolean delete(int x, int y) {
 		
 		if (x >= mainSize || y >= mainSize)
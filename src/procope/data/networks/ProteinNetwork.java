@@ -21,6 +21,7 @@
 package procope.data.networks;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -39,6 +40,7 @@ import procope.data.networks.CombinationRules.WeightMergePolicy;
 import procope.data.purifications.PurificationData;
 import procope.data.purifications.PurificationExperiment;
 import procope.tools.BooleanExpression;
+import procope.tools.IntSet;
 import procope.tools.ProCopeException;
 import procope.tools.Tools;
 import procope.tools.namemapping.ProteinManager;
@@ -112,14 +114,14 @@ import procope.tools.namemapping.ProteinManager;
 public class ProteinNetwork implements ProteinSet, Iterable<NetworkEdge> {
 
 	private SparseMatrixFloat interactionMatrix;
-	private SparseMatrixHashmap annotationMatrix;
+	private EdgeAnnotationStore annotationMatrix;
 	private PartnerList partnerList;
 
 	private boolean directed = false;
 	private boolean iterateTwice=false;
 	private int highestID = 0;
 
-	private Set<Integer> nodes;
+	private IntSet nodes;
 	private Set<String> annotationKeys;
 
 	int edges=0;
@@ -139,10 +141,10 @@ public class ProteinNetwork implements ProteinSet, Iterable<NetworkEdge> {
 	public ProteinNetwork(boolean directed) {
 		this.interactionMatrix = new SparseMatrixFloat(!directed);
 		this.directed = directed;
-		this.annotationMatrix = new SparseMatrixHashmap(!directed);
+		this.annotationMatrix = new EdgeAnnotationStore(!directed);
 		this.partnerList = new PartnerList();
 
-		nodes = new HashSet<Integer>();
+		nodes = new IntSet();
 		annotationKeys = new HashSet<String>();
 	}
 
@@ -185,7 +187,7 @@ public class ProteinNetwork implements ProteinSet, Iterable<NetworkEdge> {
 			throw new ProCopeException("Cannot set an edge to NaN");
 		
 		partnerList.set(prot1, prot2);
-		if (Float.isNaN(interactionMatrix.set(prot1, prot2, weight)) && annotationMatrix.getAll(prot1,prot2) == null) {
+		if (Float.isNaN(interactionMatrix.set(prot1, prot2, weight)) && !annotationMatrix.contains(prot1,prot2)) {
 			
 			// new edge
 			edges++;
@@ -210,6 +212,73 @@ public class ProteinNetwork implements ProteinSet, Iterable<NetworkEdge> {
 			setEdgeAnnotations(edge.getSource(), edge.getTarget(), annotations);
 	}
 
+	/**
+	 * Bulk-loads weighted edges into this empty network, used by 
+	 * {@link NetworkBuilder}. The edges must be unique and sorted by their
+	 * first and then by their second protein, for undirected networks the
+	 * first protein must be the smaller one. 
+	 */
+	void loadEdges(int[] first, int[] second, float[] weights, int count) {
+		
+		if (edges > 0)
+			throw new ProCopeException("Can only bulk-load edges into an empty network");
+		if (count == 0)
+			return;
+		
+		// determine highest ID and node list
+		int maxID = 0;
+		for (int i=0; i<count; i++) {
+			if (first[i] > maxID) maxID = first[i];
+			if (second[i] > maxID) maxID = second[i];
+		}
+		int size = maxID+1;
+		
+		// weight rows, edges are already sorted by rows
+		int[] rowStarts = new int[size+1];
+		for (int i=0; i<count; i++)
+			rowStarts[first[i]+1]++;
+		for (int i=0; i<size; i++)
+			rowStarts[i+1] += rowStarts[i];
+		interactionMatrix.loadRows(rowStarts, second, weights, maxID);
+		
+		// partner rows contain both directions
+		int[] partnerStarts = new int[size+1];
+		for (int i=0; i<count; i++) {
+			partnerStarts[first[i]+1]++;
+			if (first[i] != second[i])
+				partnerStarts[second[i]+1]++;
+		}
+		for (int i=0; i<size; i++)
+			partnerStarts[i+1] += partnerStarts[i];
+		int[] partners = new int[partnerStarts[size]];
+		int[] fillPos = Tools.arrCopyOf(partnerStarts, size);
+		for (int i=0; i<count; i++) {
+			partners[fillPos[first[i]]++] = second[i];
+			if (first[i] != second[i])
+				partners[fillPos[second[i]]++] = first[i];
+		}
+		// sort rows and remove duplicates (directed edges in both directions), compacting the rows 
+		int write=0;
+		int rowStart=0;
+		for (int row=0; row<size; row++) {
+			int rowEnd = partnerStarts[row+1];
+			Arrays.sort(partners, rowStart, rowEnd);
+			partnerStarts[row] = write;
+			for (int k=rowStart; k<rowEnd; k++) {
+				if (k == rowStart || partners[k] != partners[k-1])
+					partners[write++] = partners[k];
+			}
+			if (rowEnd > rowStart) 
+				nodes.add(row);
+			rowStart = rowEnd;
+		}
+		partnerStarts[size] = write;
+		partnerList.loadRows(partnerStarts, partners, maxID);
+		
+		highestID = maxID;
+		edges = count;
+	}
+
 	/**
 	 * keeps track of all nodes in the network and the highest internal ID
 	 */
@@ -299,7 +368,7 @@ public class ProteinNetwork implements ProteinSet, Iterable<NetworkEdge> {
 	 * Delete all annotations associated with an edge
 	 */
 	private void clearAnnotations(int i, int j) {
-		annotationMatrix.getAll(i, j).clear();
+		annotationMatrix.clear(i, j);
 	}
 
 	/**
@@ -387,6 +456,61 @@ public class ProteinNetwork implements ProteinSet, Iterable<NetworkEdge> {
 		return neighbors;
 	}
 
+	/**
+	 * Creates an immutable snapshot of this network in compressed sparse row
+	 * format. The snapshot provides constant time access to the neighbors of
+	 * each protein without copying any arrays and is therefore much faster 
+	 * for read-only algorithms which repeatedly access the neighbors and edge
+	 * weights of the network. Check out {@link FrozenNetwork} for more 
+	 * information.
+	 * <p><b>Note:</b> Later changes of this network are not reflected by the
+	 * snapshot.
+	 * 
+	 * @return read-only snapshot of this network
+	 */
+	public FrozenNetwork freeze() {
+		
+		// determine row offsets
+		int size = highestID+1;
+		int[] offsets = new int[size+1];
+		for (int protein=0; protein<size; protein++)
+			offsets[protein+1] = offsets[protein] + partnerList.getPartnerCount(protein);
+		
+		int[] neighbors = new int[offsets[size]];
+		float[] weights = new float[offsets[size]];
+		// next free position for the mirrored entries of each row (undirected case)
+		int[] mirrorPos = Tools.arrCopyOf(offsets, size);
+		
+		for (int protein=0; protein<size; protein++) {
+			int count = partnerList.getPartnerCount(protein);
+			if (count == 0) continue;
+			int start = offsets[protein];
+			int[] partners = partnerList.getPartnersInternal(protein);
+			System.arraycopy(partners, 0, neighbors, start, count);
+			// walk through the sorted weight row in parallel
+			int weightCount = interactionMatrix.getRowSize(protein);
+			int[] weightKeys = (weightCount > 0) ? interactionMatrix.getRowKeys(protein) : null;
+			float[] weightValues = (weightCount > 0) ? interactionMatrix.getRowValues(protein) : null;
+			int w=0;
+			for (int i=0; i<count; i++) {
+				int partner = partners[i];
+				// undirected weights are only stored for partner >= protein
+				if (!directed && partner < protein) 
+					continue;
+				while (w < weightCount && weightKeys[w] < partner)
+					w++;
+				float weight = (w < weightCount && weightKeys[w] == partner) ? weightValues[w] : Float.NaN;
+				weights[start+i] = weight;
+				if (!directed && partner != protein) {
+					// rows are filled in ascending order, so this is the next entry of the partner's row 
+					weights[mirrorPos[partner]++] = weight;
+				}
+			}
+		}
+		
+		return new FrozenNetwork(directed, edges, offsets, neighbors, weights, nodes.toArray());
+	}
+
 	/**
 	 * Returns an array containing all edges of the network. <b>Note:</b>
 	 * This method is intendend for high-performance iteration over the
@@ -406,7 +530,8 @@ public class ProteinNetwork implements ProteinSet, Iterable<NetworkEdge> {
 
 		// need to differentiate directed and undirected networks
 		// iterate over all interacting pairs
-		for (int first : partnerList.getFirstPartners()) {
+		IntSet firstPartners = partnerList.getFirstPartners();
+		for (int first=firstPartners.nextMember(0); first>=0; first=firstPartners.nextMember(first+1)) {
 			for (int partner : partnerList.getPartners(first)) {
 				// add to list (but just once!)
 				if ((!directed && (first <= partner))) {
@@ -415,8 +540,7 @@ public class ProteinNetwork implements ProteinSet, Iterable<NetworkEdge> {
 				}
 				else if (directed) {
 					float score = interactionMatrix.get(first, partner);
-					Map<String, Object> anno = annotationMatrix.getAll(first, partner);
-					if (score == score || anno != null) { // NaN check
+					if (score == score || annotationMatrix.contains(first, partner)) { // NaN check
 						result[index++] = first;
 						result[index++] = partner;
 					}
@@ -428,7 +552,8 @@ public class ProteinNetwork implements ProteinSet, Iterable<NetworkEdge> {
 	}
 
 	/**
-	 * Returns all annotations associated with a given edge.
+	 * Returns all annotations associated with a given edge. The returned map 
+	 * is a copy, changing it does not affect the network.
 	 * 
 	 * @param prot1 first protein
 	 * @param prot2 second protein
@@ -527,10 +652,12 @@ public class ProteinNetwork implements ProteinSet, Iterable<NetworkEdge> {
 	}
 
 	/**
-	 * Returns the set of proteins which are contained as nodes in this network
+	 * Returns the set of proteins which are contained as nodes in this network.
+	 * The returned set is a view of the internal node set and must not be 
+	 * modified.
 	 */
 	public Set<Integer> getProteins() {
-		return nodes;
+		return nodes.asSet();
 	}
 
 	/**
@@ -633,30 +760,49 @@ public class ProteinNetwork implements ProteinSet, Iterable<NetworkEdge> {
 	public ProteinNetwork getFilteredNetwork(BooleanExpression expression) {
 
 		// create new network with same directed-property as current one
-		ProteinNetwork newNet = new ProteinNetwork(directed);
-
-		// iterate over network
-		int[] edges = this.getEdgesArray();
-		for (int i=0; i<edges.length; i+=2) {
-			Map<String, Object> original = getEdgeAnnotations(edges[i], edges[i+1]);
-			Map<String, Object> annotations;
+		NetworkBuilder builder = new NetworkBuilder(directed);
+		Map<String, Object> values = new HashMap<String, Object>();
+
+		// 1. scan over all annotated edges, slot by slot
+		int slots = annotationMatrix.getSlotCount();
+		for (int slot=0; slot<slots; slot++) {
+			if (!annotationMatrix.isUsed(slot))
+				continue;
+			int protein1 = annotationMatrix.getSlotFirst(slot);
+			int protein2 = annotationMatrix.getSlotSecond(slot);
+			values.clear();
+			annotationMatrix.fillAnnotations(slot, values);
+			boolean hasAnnotations = values.size() > 0;
 			// add score if existing
-			float score = getEdge(edges[i], edges[i+1]);
-			if (score == score) { // not NaN
-				annotations = new HashMap<String, Object>(original);
-				annotations.put("@weight", score);
-			} else
-				annotations = original;
+			float score = interactionMatrix.get(protein1, protein2);
+			if (score == score)  // not NaN
+				values.put("@weight", score);
 			
-			if (expression.evaluate(annotations)) {
-				if (annotations.size() > 0) 
-					newNet.setAnnotations(edges[i], edges[i+1], original);
+			if (expression.evaluate(values)) {
+				if (hasAnnotations) 
+					builder.addEdgeAnnotations(protein1, protein2, annotationMatrix.getAll(protein1, protein2));
 				if (score==score) // NaN check
-					newNet.setEdge(edges[i], edges[i+1], score);
+					builder.addEdge(protein1, protein2, score);
+			}
+		}
+		
+		// 2. scan over all edges which only have a weight, row by row
+		IntSet rows = interactionMatrix.getFirstPartners();
+		for (int row=rows.nextMember(0); row>=0; row=rows.nextMember(row+1)) {
+			int rowSize = interactionMatrix.getRowSize(row);
+			int[] rowKeys = interactionMatrix.getRowKeys(row);
+			float[] rowValues = interactionMatrix.getRowValues(row);
+			for (int k=0; k<rowSize; k++) {
+				if (annotationMatrix.contains(row, rowKeys[k]))
+					continue; // already handled above
+				values.clear();
+				values.put("@weight", rowValues[k]);
+				if (expression.evaluate(values)) 
+					builder.addEdge(row, rowKeys[k], rowValues[k]);
 			}
 		}
 
-		return newNet;
+		return builder.build();
 	}
 
 	/**
@@ -664,7 +810,7 @@ public class ProteinNetwork implements ProteinSet, Iterable<NetworkEdge> {
 	 * @return set of proteins in the network
 	 */
 	public Set<Integer> getNodes() {
-		return nodes;
+		return nodes.asSet();
 	}
 
 
@@ -696,14 +842,16 @@ public class ProteinNetwork implements ProteinSet, Iterable<NetworkEdge> {
 	public Iterator<NetworkEdge> iterator() {
 		return new Iterator<NetworkEdge>() {
 
-			Iterator<Integer> partnerIterator;
+			private IntSet firstPartners;
+			private int nextPartner;
 			private Collection<NetworkEdge> nextList;
 			private Iterator<NetworkEdge> nextListIterator;
 
 			{
 				// intialisation of this anonymous inner class
-				// get iterator for first partners
-				partnerIterator = partnerList.getFirstPartners().iterator();
+				// get first of the first partners
+				firstPartners = partnerList.getFirstPartners();
+				nextPartner = firstPartners.nextMember(0);
 				prepareNextList();
 			}
 
@@ -711,11 +859,12 @@ public class ProteinNetwork implements ProteinSet, Iterable<NetworkEdge> {
 				// find the next non-empty list
 				nextList = null;
 				while (nextList == null || nextList.size() == 0) {
-					if (!partnerIterator.hasNext()) {
+					if (nextPartner < 0) {
 						nextList = null;
 						return;
 					}
-					nextList = getNeighbors(partnerIterator.next(), true, directed || !iterateTwice);
+					nextList = getNeighbors(nextPartner, true, directed || !iterateTwice);
+					nextPartner = firstPartners.nextMember(nextPartner+1);
 					nextListIterator = nextList.iterator();
 				}
 			}
@@ -1353,8 +1502,8 @@ public class ProteinNetwork implements ProteinSet, Iterable<NetworkEdge> {
 			}
 		} else {
 			// pool baits, all outgoing edges of one protein are treated as one purification experiment
-			Set<Integer> sources = interactionMatrix.getFirstPartners();
-			for (int source : sources) {
+			IntSet sources = interactionMatrix.getFirstPartners();
+			for (int source=sources.nextMember(0); source>=0; source=sources.nextMember(source+1)) {
 				PurificationExperiment exp = new PurificationExperiment(source);
 				for (int prey : interactionMatrix.getPartners(source))
 					exp.addPrey(prey);
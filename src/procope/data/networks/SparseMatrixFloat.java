@@ -20,9 +20,7 @@
  */
 package procope.data.networks;
 
-import java.util.HashSet;
-import java.util.Set;
-
+import procope.tools.IntSet;
 import procope.tools.Tools;
 
 /**
@@ -41,7 +39,7 @@ class SparseMatrixFloat {
 	private int mainSize=0;
 	
 	int count=0;
-	private Set<Integer> firstPartners;
+	private IntSet firstPartners;
 	
 	SparseMatrixFloat(boolean symmetrical) { 
 		// initialize
@@ -50,7 +48,7 @@ class SparseMatrixFloat {
 		bucketSizes = new int[0];
 		bucketMaxSizes = new int[0];
 		
-		firstPartners = new HashSet<Integer>();
+		firstPartners = new IntSet();
 		
 		this.symmetrical = symmetrical;
 	}
@@ -277,7 +275,55 @@ class SparseMatrixFloat {
 		return Tools.arrCopyOf(values[firstPartner], bucketSizes[firstPartner]);
 	}
 	
-	public Set<Integer> getFirstPartners() {
+	public IntSet getFirstPartners() {
 		return firstPartners;
 	}
+	
+	/**
+	 * Bulk-loads rows given in compressed form. The entries of row {@code i}
+	 * are located at positions {@code rowStarts[i] <= k < rowStarts[i+1]},
+	 * they must be sorted and unique. Only allowed for an empty matrix.
+	 */
+	void loadRows(int[] rowStarts, int[] rowKeys, float[] rowValues, int maxIndex) {
+		if (maxIndex >= mainSize)
+			resizeMain(maxIndex);
+		for (int i=0; i<rowStarts.length-1; i++) {
+			int size = rowStarts[i+1] - rowStarts[i];
+			if (size > 0) {
+				keys[i] = new int[size];
+				values[i] = new float[size];
+				System.arraycopy(rowKeys, rowStarts[i], keys[i], 0, size);
+				System.arraycopy(rowValues, rowStarts[i], values[i], 0, size);
+				bucketSizes[i] = bucketMaxSizes[i] = size;
+				count += size;
+				firstPartners.add(i);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of entries in a given row
+	 */
+	int getRowSize(int row) {
+		if (row >= mainSize)
+			return 0;
+		else
+			return bucketSizes[row];
+	}
+	
+	/**
+	 * Returns the internal sorted keys of a row without copying, only the
+	 * first {@link #getRowSize(int)} entries are valid
+	 */
+	int[] getRowKeys(int row) {
+		return keys[row];
+	}
+	
+	/**
+	 * Returns the internal values of a row without copying, only the
+	 * first {@link #getRowSize(int)} entries are valid
+	 */
+	float[] getRowValues(int row) {
+		return values[row];
+	}
 }
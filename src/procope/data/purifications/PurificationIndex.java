@@ -0,0 +1,169 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.data.purifications;
+
+import java.util.Arrays;
+
+import procope.tools.Tools;
+
+/**
+ * Inverted index which maps each protein to the purification experiments it
+ * occurs in, either as bait or as prey. Can be used to quickly enumerate all
+ * proteins which were co-purified with a given protein in at least one 
+ * experiment.
+ * <p>The index is built from one or more purification data sets in the 
+ * constructor and does not change afterwards. It does not reflect later 
+ * changes of the underlying data sets. All methods are thread-safe.
+ * 
+ * @author Jan Krumsiek
+ * @see PurificationData
+ */
+public class PurificationIndex {
+	
+	// members of each experiment (bait and preys, sorted, no duplicates)
+	private int[][] members;
+	
+	// experiments of each protein in compressed row format
+	private int[] expOffsets;
+	private int[] expIndices;
+	
+	/**
+	 * Creates the index for the given purification data sets. Experiments 
+	 * are numbered consecutively over all data sets in the given order.
+	 * 
+	 * @param data purification data sets to be indexed
+	 */
+	public PurificationIndex(PurificationData... data) {
+		
+		// collect members of all experiments
+		int expCount=0;
+		for (PurificationData set : data)
+			expCount += set.getNumberOfExperiments();
+		members = new int[expCount][];
+		int maxProtein=0;
+		int exp=0;
+		for (PurificationData set : data) {
+			for (PurificationExperiment experiment : set) {
+				int[] expMembers = new int[experiment.getPreys().size()+1];
+				int count=0;
+				expMembers[count++] = experiment.getBait();
+				for (int prey : experiment.getPreys()) 
+					expMembers[count++] = prey;
+				expMembers = sortUnique(expMembers, count);
+				members[exp++] = expMembers;
+				maxProtein = Math.max(maxProtein, expMembers[expMembers.length-1]);
+			}
+		}
+		
+		// count experiments of each protein
+		expOffsets = new int[maxProtein+2];
+		for (int[] expMembers : members)
+			for (int protein : expMembers)
+				expOffsets[protein+1]++;
+		for (int i=1; i<expOffsets.length; i++)
+			expOffsets[i] += expOffsets[i-1];
+		
+		// fill in the experiments, they will be sorted automatically
+		expIndices = new int[expOffsets[expOffsets.length-1]];
+		int[] fill = Tools.arrCopyOf(expOffsets, expOffsets.length-1);
+		for (int i=0; i<members.length; i++)
+			for (int protein : members[i])
+				expIndices[fill[protein]++] = i;
+	}
+	
+	/**
+	 * Returns the number of indexed experiments.
+	 * 
+	 * @return number of experiments
+	 */
+	public int getNumberOfExperiments() {
+		return members.length;
+	}
+	
+	/**
+	 * Returns the indices of all experiments the given protein occurs in.
+	 * 
+	 * @param protein protein to look up
+	 * @return sorted array of experiment indices, empty if the protein does
+	 *         not occur in any experiment
+	 */
+	public int[] getExperiments(int protein) {
+		if (protein < 0 || protein >= expOffsets.length-1)
+			return new int[0];
+		int from = expOffsets[protein];
+		int[] result = new int[expOffsets[protein+1]-from];
+		System.arraycopy(expIndices, from, result, 0, result.length);
+		return result;
+	}
+	
+	/**
+	 * Returns the members (bait and preys) of an experiment.
+	 * 
+	 * @param experiment index of the experiment
+	 * @return sorted array of the proteins in this experiment
+	 */
+	public int[] getMembers(int experiment) {
+		return members[experiment].clone();
+	}
+	
+	/**
+	 * Returns all proteins which occur together with the given protein in
+	 * at least one experiment. The protein itself is not contained in the 
+	 * result.
+	 * 
+	 * @param protein protein to look up
+	 * @return sorted array of co-purified proteins without duplicates
+	 */
+	public int[] getCoPurified(int protein) {
+		if (protein < 0 || protein >= expOffsets.length-1)
+			return new int[0];
+		int from = expOffsets[protein], to = expOffsets[protein+1];
+		
+		// concatenate all experiments of this protein
+		int total=0;
+		for (int i=from; i<to; i++)
+			total += members[expIndices[i]].length;
+		int[] result = new int[total];
+		int count=0;
+		for (int i=from; i<to; i++) {
+			for (int member : members[expIndices[i]]) {
+				if (member != protein)
+					result[count++] = member;
+			}
+		}
+		
+		return sortUnique(result, count);
+	}
+	
+	/**
+	 * sorts the first count values of the array and removes duplicates
+	 */
+	private static int[] sortUnique(int[] values, int count) {
+		Arrays.sort(values, 0, count);
+		int unique=0;
+		for (int i=0; i<count; i++) {
+			if (unique == 0 || values[i] != values[unique-1])
+				values[unique++] = values[i];
+		}
+		return unique == values.length ? values : Tools.arrCopyOf(values, unique);
+	}
+
+}
@@ -0,0 +1,283 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.evaluation.comparison;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Internal class, used by {@link ComplexSetComparison}. Calculates 1:1 
+ * mappings between two complex sets from the sparse matrix of their 
+ * non-zero overlaps.
+ * <p>The greedy matching repeatedly maps the pair of remaining complexes 
+ * with the largest overlap. All candidate pairs are put on a binary heap 
+ * ordered by decreasing overlap and increasing position in the row-wise 
+ * entry order; pairs whose complexes have already been mapped are simply 
+ * skipped when they are removed from the heap. This yields exactly the 
+ * mappings of an exhaustive search for the maximum in O(k log k) for 
+ * <i>k</i> candidate pairs.
+ * <p>The optimal matching maximizes the total overlap of all mappings. The 
+ * bipartite graph of candidate pairs is split into connected components 
+ * which are solved independently with the Hungarian algorithm. The running
+ * time is cubic and the memory quadratic in the size of the largest 
+ * component.
+ * 
+ * @author Jan Krumsiek
+ */
+class ComplexMatching {
+	
+	private static final long INFINITY = Long.MAX_VALUE / 4;
+	
+	// avoid instantiation of this class
+	private ComplexMatching() {
+	}
+	
+	/**
+	 * greedy 1:1 mapping, mappings are returned in the order they were found
+	 */
+	static ArrayList<ComplexMapping> mapGreedy(ComplexOverlaps overlaps, 
+			int overlapThreshold) {
+		
+		int[] columns = overlaps.getColumns();
+		int[] values = overlaps.getRowOverlaps();
+		int countA = overlaps.getCountA();
+		int countB = overlaps.getCountB();
+		
+		// row of each entry
+		int[] rowOf = new int[overlaps.getEntryCount()];
+		for (int i=0; i<countA; i++) {
+			for (int k=overlaps.getRowStart(i); k<overlaps.getRowEnd(i); k++)
+				rowOf[k] = i;
+		}
+		
+		// larger overlaps first, ties are resolved by the entry position
+		long[] heap = new long[rowOf.length];
+		int size=0;
+		for (int k=0; k<rowOf.length; k++) {
+			if (values[k] >= overlapThreshold)
+				heap[size++] = ((long)(Integer.MAX_VALUE - values[k]) << 32) | k;
+		}
+		for (int i=size/2-1; i>=0; i--)
+			siftDown(heap, i, size);
+		
+		ArrayList<ComplexMapping> mappings = new ArrayList<ComplexMapping>();
+		boolean[] removedA = new boolean[countA];
+		boolean[] removedB = new boolean[countB];
+		int maxMappings = Math.min(countA, countB);
+		while (size > 0 && mappings.size() < maxMappings) {
+			int k = (int)(heap[0] & 0xFFFFFFFFL);
+			heap[0] = heap[--size];
+			siftDown(heap, 0, size);
+			// lazy invalidation of pairs with already mapped complexes
+			int a = rowOf[k];
+			int b = columns[k];
+			if (removedA[a] || removedB[b]) continue;
+			mappings.add(new ComplexMapping(a, b, values[k]));
+			removedA[a] = true;
+			removedB[b] = true;
+		}
+		
+		return mappings;
+	}
+	
+	private static void siftDown(long[] heap, int pos, int size) {
+		long value = heap[pos];
+		int child;
+		while ((child = 2*pos+1) < size) {
+			if (child+1 < size && heap[child+1] < heap[child])
+				child++;
+			if (heap[child] >= value) break;
+			heap[pos] = heap[child];
+			pos = child;
+		}
+		heap[pos] = value;
+	}
+	
+	/**
+	 * 1:1 mapping with maximum total overlap, mappings are sorted by the
+	 * complexes of set A
+	 */
+	static ArrayList<ComplexMapping> mapOptimally(ComplexOverlaps overlaps, 
+			int overlapThreshold) {
+		
+		int[] columns = overlaps.getColumns();
+		int[] values = overlaps.getRowOverlaps();
+		int countA = overlaps.getCountA();
+		int countB = overlaps.getCountB();
+		
+		// connected components, complexes of B follow those of A
+		int[] parent = new int[countA+countB];
+		for (int i=0; i<parent.length; i++)
+			parent[i] = i;
+		for (int i=0; i<countA; i++) {
+			for (int k=overlaps.getRowStart(i); k<overlaps.getRowEnd(i); k++) {
+				if (values[k] >= overlapThreshold) {
+					int rootA = find(parent, i);
+					int rootB = find(parent, countA+columns[k]);
+					if (rootA != rootB)
+						parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+				}
+			}
+		}
+		
+		// group the complexes by component, the root is always the smallest
+		// node of a component and thus always a complex of A
+		int[] componentSize = new int[parent.length];
+		for (int i=0; i<parent.length; i++)
+			componentSize[find(parent, i)]++;
+		int[] componentStart = new int[parent.length+1];
+		for (int i=0; i<parent.length; i++)
+			componentStart[i+1] = componentStart[i] + componentSize[i];
+		int[] members = new int[parent.length];
+		int[] fill = new int[parent.length];
+		for (int i=0; i<parent.length; i++) {
+			int root = find(parent, i);
+			members[componentStart[root] + fill[root]++] = i;
+		}
+		
+		int[] mateA = new int[countA];
+		int[] overlapA = new int[countA];
+		Arrays.fill(mateA, -1);
+		int[] local = new int[parent.length];
+		for (int root=0; root<countA; root++) {
+			if (componentSize[root] < 2) continue;
+			// local indices of the complexes of this component
+			int rowCount=0, columnCount=0;
+			for (int m=componentStart[root]; m<componentStart[root+1]; m++) {
+				int node = members[m];
+				local[node] = (node < countA) ? rowCount++ : columnCount++;
+			}
+			int[] rowNodes = new int[rowCount];
+			int[] columnNodes = new int[columnCount];
+			for (int m=componentStart[root]; m<componentStart[root+1]; m++) {
+				int node = members[m];
+				if (node < countA)
+					rowNodes[local[node]] = node;
+				else
+					columnNodes[local[node]] = node - countA;
+			}
+			// dense weight matrix with no more rows than columns
+			boolean transposed = rowCount > columnCount;
+			int n = transposed ? columnCount : rowCount;
+			int m = transposed ? rowCount : columnCount;
+			int[] weights = new int[n*m];
+			for (int r=0; r<rowCount; r++) {
+				int i = rowNodes[r];
+				for (int k=overlaps.getRowStart(i); k<overlaps.getRowEnd(i); k++) {
+					if (values[k] >= overlapThreshold) {
+						int c = local[countA+columns[k]];
+						if (transposed)
+							weights[c*m + r] = values[k];
+						else
+							weights[r*m + c] = values[k];
+					}
+				}
+			}
+			int[] assignment = hungarian(weights, n, m);
+			for (int r=0; r<n; r++) {
+				int c = assignment[r];
+				int weight = weights[r*m + c];
+				// pairs without overlap are no mappings
+				if (weight == 0) continue;
+				int a = transposed ? rowNodes[c] : rowNodes[r];
+				int b = transposed ? columnNodes[r] : columnNodes[c];
+				mateA[a] = b;
+				overlapA[a] = weight;
+			}
+		}
+		
+		ArrayList<ComplexMapping> mappings = new ArrayList<ComplexMapping>();
+		for (int a=0; a<countA; a++) {
+			if (mateA[a] >= 0)
+				mappings.add(new ComplexMapping(a, mateA[a], overlapA[a]));
+		}
+		return mappings;
+	}
+	
+	private static int find(int[] parent, int node) {
+		while (parent[node] != node) {
+			parent[node] = parent[parent[node]];
+			node = parent[node];
+		}
+		return node;
+	}
+	
+	/**
+	 * Hungarian algorithm with potentials for a dense n x m matrix (n <= m), 
+	 * maximizes the total weight. Returns the column assigned to each row.
+	 */
+	private static int[] hungarian(int[] weights, int n, int m) {
+		// 1-based arrays, column 0 is a virtual column
+		long[] u = new long[n+1];
+		long[] v = new long[m+1];
+		int[] p = new int[m+1];
+		int[] way = new int[m+1];
+		long[] minv = new long[m+1];
+		boolean[] used = new boolean[m+1];
+		for (int i=1; i<=n; i++) {
+			p[0] = i;
+			int j0 = 0;
+			Arrays.fill(minv, INFINITY);
+			Arrays.fill(used, false);
+			do {
+				used[j0] = true;
+				int i0 = p[j0];
+				int rowOffset = (i0-1)*m - 1;
+				long delta = INFINITY;
+				int j1 = 0;
+				for (int j=1; j<=m; j++) {
+					if (!used[j]) {
+						long cur = -weights[rowOffset + j] - u[i0] - v[j];
+						if (cur < minv[j]) {
+							minv[j] = cur;
+							way[j] = j0;
+						}
+						if (minv[j] < delta) {
+							delta = minv[j];
+							j1 = j;
+						}
+					}
+				}
+				for (int j=0; j<=m; j++) {
+					if (used[j]) {
+						u[p[j]] += delta;
+						v[j] -= delta;
+					} else
+						minv[j] -= delta;
+				}
+				j0 = j1;
+			} while (p[j0] != 0);
+			// augment along the alternating path
+			do {
+				int j1 = way[j0];
+				p[j0] = p[j1];
+				j0 = j1;
+			} while (j0 != 0);
+		}
+		int[] assignment = new int[n];
+		for (int j=1; j<=m; j++) {
+			if (p[j] != 0)
+				assignment[p[j]-1] = j-1;
+		}
+		return assignment;
+	}
+
+}
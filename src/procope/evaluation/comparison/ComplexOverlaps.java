@@ -0,0 +1,375 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.evaluation.comparison;
+
+import java.util.Arrays;
+import java.util.List;
+
+import procope.data.complexes.Complex;
+import procope.data.complexes.ComplexSet;
+import procope.tools.ParallelTools;
+import procope.tools.ProCopeException;
+
+/**
+ * Sparse matrix of the protein overlaps between the complexes of two complex
+ * sets <i>A</i> and <i>B</i>. Only pairs of complexes which share at least 
+ * one protein are stored. The matrix is accessible both by rows (complexes 
+ * of <i>A</i>) and by columns (complexes of <i>B</i>), the entries of each
+ * row and column are sorted by complex index.
+ * <p>The overlaps are calculated using an inverted index which maps each 
+ * protein to the complexes of <i>A</i> it is contained in. For each complex
+ * of <i>B</i> only the complexes of <i>A</i> which actually share proteins 
+ * with it are visited, so the calculation time is proportional to the 
+ * number of co-memberships rather than to the number of complex pairs. The
+ * complexes of <i>B</i> are processed in parallel.
+ * <p>As with {@link ComplexSetComparison#complexSetsOverlap(ComplexSet, ComplexSet)}
+ * each protein is counted once per complex of <i>A</i>, but once per 
+ * occurrence in a complex of <i>B</i>.
+ * <p>Iterating over the overlaps of a complex of <i>A</i> works like this:
+ * <pre>  ComplexOverlaps overlaps = new ComplexOverlaps(setA, setB);
+ *  int[] columns = overlaps.getColumns();
+ *  int[] values = overlaps.getRowOverlaps();
+ *  for (int k=overlaps.getRowStart(a); k&lt;overlaps.getRowEnd(a); k++) {
+ *      int b = columns[k];
+ *      int overlap = values[k];
+ *      // do something with the overlap of a and b
+ *  }</pre>
+ * 
+ * @author Jan Krumsiek
+ * @see ComplexSetComparison
+ */
+public class ComplexOverlaps {
+	
+	private int countA;
+	private int countB;
+	
+	// entries by complexes of A
+	private int[] rowStarts;
+	private int[] columns;
+	private int[] rowOverlaps;
+	
+	// entries by complexes of B
+	private int[] columnStarts;
+	private int[] rows;
+	private int[] columnOverlaps;
+	
+	/**
+	 * Calculates the overlaps of two complex sets using the 
+	 * {@link ParallelTools#getDefaultThreads() default number of threads}.
+	 * 
+	 * @param setA first complex set (rows)
+	 * @param setB second complex set (columns)
+	 */
+	public ComplexOverlaps(ComplexSet setA, ComplexSet setB) {
+		this(setA, setB, ParallelTools.getDefaultThreads());
+	}
+	
+	/**
+	 * Calculates the overlaps of two complex sets using a given number of 
+	 * threads.
+	 * 
+	 * @param setA first complex set (rows)
+	 * @param setB second complex set (columns)
+	 * @param threads number of threads to use
+	 * @throws ProCopeException if {@code threads < 1}
+	 */
+	public ComplexOverlaps(ComplexSet setA, ComplexSet setB, int threads) throws ProCopeException {
+		
+		if (threads < 1)
+			throw new ProCopeException("Number of threads must be at least 1");
+		
+		final int[][] complexesA = toArrays(setA);
+		final int[][] complexesB = toArrays(setB);
+		countA = complexesA.length;
+		countB = complexesB.length;
+		
+		// inverted index: complexes of A for each protein, each complex once
+		int maxID=0;
+		for (int[] complex : complexesA)
+			for (int protein : complex)
+				maxID = Math.max(maxID, protein);
+		final int[] indexStarts = new int[maxID+2];
+		int[] last = new int[maxID+1];
+		Arrays.fill(last, -1);
+		for (int a=0; a<countA; a++) {
+			for (int protein : complexesA[a]) {
+				if (last[protein] != a) {
+					last[protein] = a;
+					indexStarts[protein+1]++;
+				}
+			}
+		}
+		for (int i=1; i<indexStarts.length; i++)
+			indexStarts[i] += indexStarts[i-1];
+		final int[] indexComplexes = new int[indexStarts[maxID+1]];
+		int[] fill = new int[maxID+1];
+		System.arraycopy(indexStarts, 0, fill, 0, maxID+1);
+		Arrays.fill(last, -1);
+		for (int a=0; a<countA; a++) {
+			for (int protein : complexesA[a]) {
+				if (last[protein] != a) {
+					last[protein] = a;
+					indexComplexes[fill[protein]++] = a;
+				}
+			}
+		}
+		last = null;
+		fill = null;
+		
+		// count the overlaps of each complex of B
+		final int[][] colRows = new int[countB][];
+		final int[][] colValues = new int[countB][];
+		final int maxProtein = maxID;
+		threads = Math.max(1, Math.min(threads, countB));
+		ParallelTools.RangeTask[] workers = new ParallelTools.RangeTask[threads];
+		for (int t=0; t<threads; t++) {
+			workers[t] = new ParallelTools.RangeTask() {
+				// overlap counters and list of touched complexes of A
+				private int[] counts = new int[countA];
+				private int[] touched = new int[countA];
+				public void process(int from, int to) {
+					for (int b=from; b<to; b++) {
+						int numTouched=0;
+						for (int protein : complexesB[b]) {
+							if (protein < 0 || protein > maxProtein)
+								continue;
+							for (int k=indexStarts[protein]; k<indexStarts[protein+1]; k++) {
+								int a = indexComplexes[k];
+								if (counts[a]++ == 0)
+									touched[numTouched++] = a;
+							}
+						}
+						Arrays.sort(touched, 0, numTouched);
+						int[] entryRows = new int[numTouched];
+						int[] entryValues = new int[numTouched];
+						for (int i=0; i<numTouched; i++) {
+							entryRows[i] = touched[i];
+							entryValues[i] = counts[touched[i]];
+							counts[touched[i]] = 0;
+						}
+						colRows[b] = entryRows;
+						colValues[b] = entryValues;
+					}
+				}
+			};
+		}
+		ParallelTools.processRange(countB, ParallelTools.getBlockSize(countB, threads), workers);
+		
+		// flatten the columns
+		columnStarts = new int[countB+1];
+		for (int b=0; b<countB; b++)
+			columnStarts[b+1] = columnStarts[b] + colRows[b].length;
+		int entries = columnStarts[countB];
+		rows = new int[entries];
+		columnOverlaps = new int[entries];
+		for (int b=0; b<countB; b++) {
+			System.arraycopy(colRows[b], 0, rows, columnStarts[b], colRows[b].length);
+			System.arraycopy(colValues[b], 0, columnOverlaps, columnStarts[b], colValues[b].length);
+			colRows[b] = null;
+			colValues[b] = null;
+		}
+		
+		// transpose, columns are visited in ascending order so the rows are sorted
+		rowStarts = new int[countA+1];
+		for (int i=0; i<entries; i++)
+			rowStarts[rows[i]+1]++;
+		for (int a=0; a<countA; a++)
+			rowStarts[a+1] += rowStarts[a];
+		columns = new int[entries];
+		rowOverlaps = new int[entries];
+		int[] pos = new int[countA];
+		System.arraycopy(rowStarts, 0, pos, 0, countA);
+		for (int b=0; b<countB; b++) {
+			for (int i=columnStarts[b]; i<columnStarts[b+1]; i++) {
+				int p = pos[rows[i]]++;
+				columns[p] = b;
+				rowOverlaps[p] = columnOverlaps[i];
+			}
+		}
+	}
+	
+	/**
+	 * converts the complexes of a set to arrays
+	 */
+	private static int[][] toArrays(ComplexSet set) {
+		List<Complex> complexes = set.getComplexes();
+		int[][] result = new int[complexes.size()][];
+		for (int i=0; i<result.length; i++) {
+			Complex complex = complexes.get(i);
+			result[i] = new int[complex.size()];
+			int count=0;
+			for (int protein : complex)
+				result[i][count++] = protein;
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the number of complexes in the first set
+	 * 
+	 * @return number of rows
+	 */
+	public int getCountA() {
+		return countA;
+	}
+	
+	/**
+	 * Returns the number of complexes in the second set
+	 * 
+	 * @return number of columns
+	 */
+	public int getCountB() {
+		return countB;
+	}
+	
+	/**
+	 * Returns the number of pairs of complexes with a non-zero overlap
+	 * 
+	 * @return number of stored entries
+	 */
+	public int getEntryCount() {
+		return columns.length;
+	}
+	
+	/**
+	 * Returns the overlap of two complexes.
+	 * 
+	 * @param a index of the complex in the first set
+	 * @param b index of the complex in the second set
+	 * @return overlap of the complexes, 0 if they do not share any protein
+	 */
+	public int getOverlap(int a, int b) {
+		// binary search within the row
+		int low = rowStarts[a], high = rowStarts[a+1]-1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (columns[mid] < b)
+				low = mid+1;
+			else if (columns[mid] > b)
+				high = mid-1;
+			else
+				return rowOverlaps[mid];
+		}
+		return 0;
+	}
+	
+	/**
+	 * Returns the position of the first entry of a complex of the first set
+	 * in the {@link #getColumns() columns} and {@link #getRowOverlaps() 
+	 * overlaps} arrays.
+	 * 
+	 * @param a index of the complex in the first set
+	 * @return start position of the row
+	 */
+	public int getRowStart(int a) {
+		return rowStarts[a];
+	}
+	
+	/**
+	 * Returns the position after the last entry of a complex of the first 
+	 * set.
+	 * 
+	 * @param a index of the complex in the first set
+	 * @return end position (exclusive) of the row
+	 */
+	public int getRowEnd(int a) {
+		return rowStarts[a+1];
+	}
+	
+	/**
+	 * Returns the complexes of the second set of all row entries. 
+	 * <b>Note:</b> This is the internal array which must not be modified.
+	 * 
+	 * @return column indices of all entries, ordered by rows
+	 */
+	public int[] getColumns() {
+		return columns;
+	}
+	
+	/**
+	 * Returns the overlaps corresponding to {@link #getColumns()}. 
+	 * <b>Note:</b> This is the internal array which must not be modified.
+	 * 
+	 * @return overlaps of all entries, ordered by rows
+	 */
+	public int[] getRowOverlaps() {
+		return rowOverlaps;
+	}
+	
+	/**
+	 * Returns the position of the first entry of a complex of the second set
+	 * in the {@link #getRows() rows} and {@link #getColumnOverlaps() 
+	 * overlaps} arrays.
+	 * 
+	 * @param b index of the complex in the second set
+	 * @return start position of the column
+	 */
+	public int getColumnStart(int b) {
+		return columnStarts[b];
+	}
+	
+	/**
+	 * Returns the position after the last entry of a complex of the second
+	 * set.
+	 * 
+	 * @param b index of the complex in the second set
+	 * @return end position (exclusive) of the column
+	 */
+	public int getColumnEnd(int b) {
+		return columnStarts[b+1];
+	}
+	
+	/**
+	 * Returns the complexes of the first set of all column entries. 
+	 * <b>Note:</b> This is the internal array which must not be modified.
+	 * 
+	 * @return row indices of all entries, ordered by columns
+	 */
+	public int[] getRows() {
+		return rows;
+	}
+	
+	/**
+	 * Returns the overlaps corresponding to {@link #getRows()}. 
+	 * <b>Note:</b> This is the internal array which must not be modified.
+	 * 
+	 * @return overlaps of all entries, ordered by columns
+	 */
+	public int[] getColumnOverlaps() {
+		return columnOverlaps;
+	}
+	
+	/**
+	 * Converts the sparse matrix to a dense overlap matrix.
+	 * 
+	 * @return matrix with {@code m[a][b]} being the overlap between complex
+	 *         {@code a} of the first and {@code b} of the second set
+	 */
+	public int[][] toMatrix() {
+		int[][] matrix = new int[countA][countB];
+		for (int a=0; a<countA; a++) {
+			for (int k=rowStarts[a]; k<rowStarts[a+1]; k++)
+				matrix[a][columns[k]] = rowOverlaps[k];
+		}
+		return matrix;
+	}
+
+}
@@ -25,7 +25,6 @@ import java.util.ArrayList;
 import procope.data.complexes.Complex;
 import procope.data.complexes.ComplexSet;
 import procope.tools.ProCopeException;
-import procope.tools.Tools;
 
 
 /**
@@ -62,23 +61,29 @@ public class ComplexSetComparison {
 		int countB = reference.getComplexCount();
 				
 		// calculate overlaps
-		int[][] overlaps = complexSetsOverlap(candidate, reference);
+		ComplexOverlaps overlaps = new ComplexOverlaps(candidate, reference);
 		
 		// *** SENSITIVITY
 		// calculate coverage of prediction in reference
+		int[] columnOverlaps = overlaps.getColumnOverlaps();
 		int totalN=0;
 		float sn_tot = 0;
 		for (int i=0; i<countB; i++) {
+			float size = (float)reference.getComplex(i).size();
 			float Sn_i_max = Float.NEGATIVE_INFINITY;
-			for (int j=0; j<countA; j++) {
-				float Sn_ij = (float)overlaps[j][i] / (float)reference.getComplex(i).size();
+			int start = overlaps.getColumnStart(i), end = overlaps.getColumnEnd(i);
+			// predicted clusters without any overlap
+			float Sn_zero = 0f / size;
+			if (end - start < countA && Sn_zero > Sn_i_max) Sn_i_max = Sn_zero;
+			for (int k=start; k<end; k++) {
+				float Sn_ij = (float)columnOverlaps[k] / size;
 				
 				// new maximum?
 				if (Sn_ij > Sn_i_max)	Sn_i_max = Sn_ij;
 				
 			}
 			// add to total weighted average
-			sn_tot += (  (float)reference.getComplex(i).size() * Sn_i_max  );
+			sn_tot += (  size * Sn_i_max  );
 			// increase N counter
 			totalN += reference.getComplex(i).size();
 		}
@@ -87,10 +92,11 @@ public class ComplexSetComparison {
 		
 		// *** PPV
 		// first calculate total overlap for each predicted cluster j
+		int[] rowOverlaps = overlaps.getRowOverlaps();
 		int[] totaloverlap = new int[countA];
 		for (int j=0; j<countA; j++) {
-			for (int i=0; i<countB; i++) {
-				totaloverlap[j] += overlaps[j][i];
+			for (int k=overlaps.getRowStart(j); k<overlaps.getRowEnd(j); k++) {
+				totaloverlap[j] += rowOverlaps[k];
 			}
 		}
 		
@@ -99,11 +105,12 @@ public class ComplexSetComparison {
 		int sumoverlap=0;
 		for (int j=0; j<countA; j++) {
 			float PPV_j_max = Float.NEGATIVE_INFINITY;
-			for (int i=0; i<countB; i++) {
-				// avoid divison by zero
-				float PPV_ij = (float)overlaps[j][i] / totaloverlap[j];
-				if (totaloverlap[j] > 0) PPV_ij = (float)overlaps[j][i] / totaloverlap[j];
-				else PPV_ij = 0;
+			int start = overlaps.getRowStart(j), end = overlaps.getRowEnd(j);
+			// reference complexes without any overlap have a PPV of zero
+			if (end - start < countB) PPV_j_max = 0;
+			for (int k=start; k<end; k++) {
+				// entries always have a positive total overlap
+				float PPV_ij = (float)rowOverlaps[k] / totaloverlap[j];
 				// directcly calc maximum PPV for this cluster
 				if (PPV_ij > PPV_j_max) PPV_j_max = PPV_ij;
 			}
@@ -143,35 +150,40 @@ public class ComplexSetComparison {
 		
 		ArrayList<ComplexMapping> mappings = new ArrayList<ComplexMapping>();
 
-		int[][] overlaps = complexSetsOverlap(setA, setB);
+		ComplexOverlaps overlaps = new ComplexOverlaps(setA, setB);
+		int[] columns = overlaps.getColumns();
+		int[] values = overlaps.getRowOverlaps();
+		int[] rows = overlaps.getRows();
+		int[] columnValues = overlaps.getColumnOverlaps();
 		
 		int countA = setA.getComplexCount();
-		int countB = setB.getComplexCount();
 		
 		// iterate over all complexes in a
 		for (int a=0; a<countA; a++) {
 			// check for complexes above the threshold, but there may only be one
 			int numMapped=0;
 			int mappedInB=-1;
-			for (int b=0; b<countB; b++) {
-				if (overlaps[a][b] >= overlapThreshold) {
+			int mappedOverlap=0;
+			for (int k=overlaps.getRowStart(a); k<overlaps.getRowEnd(a); k++) {
+				if (values[k] >= overlapThreshold) {
 					numMapped++;
-					mappedInB = b;
+					mappedInB = columns[k];
+					mappedOverlap = values[k];
 					if (numMapped > 1) break;
 				}
 			}
 			// if we found one in B, check that this complex also has no further overlap in A
 			if (numMapped == 1) {
 				boolean consistent = true;
-				for (int a2=0; a2<countA; a2++) {
-					if (overlaps[a2][mappedInB] >= overlapThreshold && a != a2) {
+				for (int k=overlaps.getColumnStart(mappedInB); k<overlaps.getColumnEnd(mappedInB); k++) {
+					if (columnValues[k] >= overlapThreshold && a != rows[k]) {
 						consistent = false;
 						break;
 					}
 				}
 				// add if everything was consistent
 				if (consistent)
-					mappings.add(new ComplexMapping(a,mappedInB,overlaps[a][mappedInB]));
+					mappings.add(new ComplexMapping(a,mappedInB,mappedOverlap));
 			}
 		}
 		
@@ -192,7 +204,9 @@ public class ComplexSetComparison {
 		
 		ArrayList<ComplexMapping> mappings = new ArrayList<ComplexMapping>();
 
-		int[][] overlaps = complexSetsOverlap(setA, setB);
+		ComplexOverlaps overlaps = new ComplexOverlaps(setA, setB);
+		int[] columns = overlaps.getColumns();
+		int[] values = overlaps.getRowOverlaps();
 		
 		int countA = setA.getComplexCount();
 		int countB = setB.getComplexCount();
@@ -207,9 +221,17 @@ public class ComplexSetComparison {
 		
 		// iterate over all overlaps and check for exakt matches
 		for (int a=0; a<countA; a++) {
-			for (int b=0; b<countB; b++) {
-				if (overlaps[a][b] == sizesA[a] && overlaps[a][b] == sizesB[b])
-					mappings.add(new ComplexMapping(a,b,overlaps[a][b]));
+			if (sizesA[a] == 0) {
+				// empty complexes match all empty complexes
+				for (int b=0; b<countB; b++) {
+					if (sizesB[b] == 0)
+						mappings.add(new ComplexMapping(a,b,0));
+				}
+			} else {
+				for (int k=overlaps.getRowStart(a); k<overlaps.getRowEnd(a); k++) {
+					if (values[k] == sizesA[a] && values[k] == sizesB[columns[k]])
+						mappings.add(new ComplexMapping(a,columns[k],values[k]));
+				}
 			}
 		}
 		
@@ -236,39 +258,43 @@ public class ComplexSetComparison {
 		if (overlapThreshold < 1)
 			throw new ProCopeException("Overlap threshold must be >= 1");
 		
-		ArrayList<ComplexMapping> mappings = new ArrayList<ComplexMapping>();
-
-		int[][] overlaps = complexSetsOverlap(setA, setB);
+		// highest overlaps first, mapped complexes are removed from the search
+		ComplexOverlaps overlaps = new ComplexOverlaps(setA, setB);
+		ArrayList<ComplexMapping> mappings = 
+			ComplexMatching.mapGreedy(overlaps, overlapThreshold);
 		
-		int countA = setA.getComplexCount();
-		int countB = setB.getComplexCount();
-			
-		int maxoverlap;
-		// now find highest overlaps iterativly
-		do {
-			maxoverlap=0;
-			int maxcluster1=-1, maxcluster2=-1;
-			for (int i=0; i<countA; i++) {
-				for (int j=0; j<countB; j++) {
-					if (maxoverlap < overlaps[i][j]) {
-						maxoverlap = overlaps[i][j];
-						maxcluster1 = i;
-						maxcluster2 = j;
-					}
-				}
-			}
-			// check if maximum overlap is still enough for a mapping, OR if exact hit
-			if (maxoverlap >= overlapThreshold) {
-				
-				// add mapping
-				mappings.add(new ComplexMapping(maxcluster1, maxcluster2, overlaps[maxcluster1][maxcluster2]));
-				// "remove" both clusters by settings all of their overlaps to zero
-				for (int i=0; i<countB; i++) overlaps[maxcluster1][i] = 0;
-				for (int i=0; i<countA; i++) overlaps[i][maxcluster2] = 0;
-				
-			}
-			
-		} while (maxoverlap >= overlapThreshold);
+		return new ComplexMappings(setA, setB, mappings);
+	}
+	
+	/**
+	 * Calculates a mapping between two given complex sets by comparing the 
+	 * protein overlaps of their complexes. Like 
+	 * {@link #mapComplexes(ComplexSet, ComplexSet, int)} this method only maps
+	 * each complex of a set <u>once</u>, but instead of greedily choosing the
+	 * largest remaining overlap it determines the mapping with the maximum
+	 * total overlap over all mapped complexes.
+	 * <p>Complexes are grouped into independent blocks of mutually overlapping
+	 * complexes which are solved using the Hungarian algorithm. The running
+	 * time is cubic in the size of the largest block, so very low thresholds
+	 * on large complex sets can be slow.
+	 * 
+	 * @param setA first complex set
+	 * @param setB second complex set
+	 * @param overlapThreshold minimum overlap of proteins needed to map two
+	 *        complexes to each other (the literature often recommends a value 
+	 *        of 2 here)
+	 * @return list of mappings between the two complex sets, sorted by the
+	 *         complexes of the first set
+	 */
+	public static ComplexMappings mapComplexesOptimally(
+			ComplexSet setA, ComplexSet setB, int overlapThreshold) {
+		
+		if (overlapThreshold < 1)
+			throw new ProCopeException("Overlap threshold must be >= 1");
+		
+		ComplexOverlaps overlaps = new ComplexOverlaps(setA, setB);
+		ArrayList<ComplexMapping> mappings = 
+			ComplexMatching.mapOptimally(overlaps, overlapThreshold);
 		
 		return new ComplexMappings(setA, setB, mappings);
 	}
@@ -292,18 +318,28 @@ public class ComplexSetComparison {
 		ArrayList<ComplexMapping> mappings = new ArrayList<ComplexMapping>();
 		
 		// calc overlaps
-		int[][] overlaps = complexSetsOverlap(setA, setB);
-		
+		ComplexOverlaps overlaps = new ComplexOverlaps(setA, setB);
+		int[] columns = overlaps.getColumns();
+		int[] values = overlaps.getRowOverlaps();
 		
 		int countA = setA.getComplexCount();
 		int countB = setB.getComplexCount();
 		
 		// any reference cluster which has at least one overlap of 'minoverlap'
 		// is counted as mappable, => collect them
-		for (int i=0; i<countA; i++) {
-			for (int j=0; j<countB; j++) {
-				if (overlaps[i][j] >= overlapThreshold) {
-					mappings.add(new ComplexMapping(i,j,overlaps[i][j]));
+		if (overlapThreshold > 0) {
+			for (int i=0; i<countA; i++) {
+				for (int k=overlaps.getRowStart(i); k<overlaps.getRowEnd(i); k++) {
+					if (values[k] >= overlapThreshold) {
+						mappings.add(new ComplexMapping(i,columns[k],values[k]));
+					}
+				}
+			}
+		} else {
+			// pairs without any overlap are mapped as well
+			for (int i=0; i<countA; i++) {
+				for (int j=0; j<countB; j++) {
+					mappings.add(new ComplexMapping(i,j,overlaps.getOverlap(i, j)));
 				}
 			}
 		}
@@ -336,44 +372,16 @@ public class ComplexSetComparison {
 	 * {@code m(i,j)} of the matrix contains the overlap between the 
 	 * <i>i-th</i> complex of the first set and the <i>j-th</i> complex
 	 * of the second complex set.
+	 * <p>Most entries of this matrix are usually zero, use the sparse
+	 * {@link ComplexOverlaps} for large complex sets.
 	 * 
 	 * @param setA first complex set
 	 * @param setB second complex set
 	 * @return overlap matrix for the two given complex sets
+	 * @see ComplexOverlaps
 	 */
 	public static int[][] complexSetsOverlap(ComplexSet setA, ComplexSet setB) {
-		
-		int numComplexesA = setA.getComplexCount();
-		int numComplexesB = setB.getComplexCount();
-		int[][] overlaps = new int[numComplexesA][numComplexesB];
-	
-		// do the count for complex seta
-		int maxID = Tools.findMax(setA.getProteins());
-		byte[][] counts = new byte[numComplexesA][maxID+1];
-		
-		int complexIDA=0;
-		for (Complex complex : setA) {
-			// count all proteins
-			for (int protein : complex)
-				counts[complexIDA][protein] = 1;
-			complexIDA++;
-		}
-		
-		// now iterate over complex set B
-		int complexIDB=0;
-		for (Complex complex : setB) {
-			// iterate over proteins in this complex
-			for (int protein : complex) {
-				// count all complexes it is contained in in set A
-				for (int i=0; i<numComplexesA; i++) {
-					if (protein <= maxID && counts[i][protein] == 1)
-						overlaps[i][complexIDB]++;
-				}
-			}
-			complexIDB++;
-		}
-		
-		return overlaps;
+		return new ComplexOverlaps(setA, setB).toMatrix();
 	}
 	
 
@@ -21,10 +21,9 @@
 package procope.evaluation.comparison;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
+import procope.data.networks.FrozenNetwork;
 import procope.data.networks.ProteinNetwork;
 import procope.tools.math.CorrelationCoefficient;
 
@@ -48,6 +47,9 @@ public class NetworkComparison {
 	 * in the result set stands for the two weights of the same edge in both
 	 * networks. If a edge does not exist in one of the networks, the value
 	 * 0 will be assumed.
+	 * <p>For large networks use 
+	 * {@link #weightPairs(ProteinNetwork, ProteinNetwork, boolean)} which
+	 * avoids creating one object per pair.
 	 * 
 	 * @param scores1 network 1
 	 * @param scores2 network 2
@@ -57,37 +59,101 @@ public class NetworkComparison {
 	 * @see CorrelationCoefficient
 	 */
 	public static List<Point> weightsOverlap(ProteinNetwork scores1, ProteinNetwork scores2, boolean excludeZeros) {
-		// javadoc: non-existing gewertet als 0
-
-		List<Point> result = new ArrayList<Point>();
 		
-		// get combined set of proteins
-		Set<Integer> allProteins = new HashSet<Integer>();
-		allProteins.addAll(scores1.getProteins());
-		allProteins.addAll(scores2.getProteins());
+		WeightPairs pairs = weightPairs(scores1, scores2, excludeZeros);
+		float[] x = pairs.getX();
+		float[] y = pairs.getY();
+		List<Point> result = new ArrayList<Point>(pairs.size());
+		for (int i=0; i<pairs.size(); i++)
+			result.add(new Point(x[i], y[i]));
+		
+		return result;
+	}
+	
+	/**
+	 * Compares the weights of all edges of two networks. Works like 
+	 * {@link #weightsOverlap(ProteinNetwork, ProteinNetwork, boolean)} but
+	 * stores the value pairs in two primitive arrays.
+	 * <p>The sorted neighbor lists of each protein in both networks are 
+	 * merged, so only pairs of proteins which have an edge in at least one 
+	 * of the networks are visited. The pairs are ordered by the internal IDs 
+	 * of the proteins. For directed networks the weight of the edge from the
+	 * protein with the lower ID to the protein with the higher ID is used.
+	 * 
+	 * @param scores1 network 1
+	 * @param scores2 network 2
+	 * @param excludeZeros do not include values where an edge does not exist
+	 *                     in the other network or has a weight of 0
+	 * @return edge weight pairs
+	 * @see CorrelationCoefficient
+	 */
+	public static WeightPairs weightPairs(ProteinNetwork scores1, ProteinNetwork scores2, boolean excludeZeros) {
+		
+		FrozenNetwork frozen1 = scores1.freeze();
+		FrozenNetwork frozen2 = scores2.freeze();
+		int[] neighbors1 = frozen1.getNeighbors();
+		int[] neighbors2 = frozen2.getNeighbors();
+		float[] weights1 = frozen1.getWeights();
+		float[] weights2 = frozen2.getWeights();
 		
-		// iterate over all pairwise proteins
-		Integer[] arrProts = allProteins.toArray(new Integer[0]);
-		for (int i=0; i<arrProts.length; i++) {
-			for (int j=i+1; j<arrProts.length; j++) {
-				// get scores from both networks
-				float score1 = scores1.getEdge(arrProts[i], arrProts[j]);
-				float score2 = scores2.getEdge(arrProts[i], arrProts[j]);
+		WeightPairs result = new WeightPairs();
+		
+		int maxProtein = Math.max(frozen1.getHighestID(), frozen2.getHighestID());
+		for (int protein=0; protein<=maxProtein; protein++) {
+			// merge both rows, only proteins with higher IDs are visited
+			int k1 = firstAbove(neighbors1, frozen1.getNeighborStart(protein), 
+					frozen1.getNeighborEnd(protein), protein);
+			int k2 = firstAbove(neighbors2, frozen2.getNeighborStart(protein), 
+					frozen2.getNeighborEnd(protein), protein);
+			int end1 = frozen1.getNeighborEnd(protein);
+			int end2 = frozen2.getNeighborEnd(protein);
+			while (k1 < end1 || k2 < end2) {
+				float score1, score2;
+				if (k2 >= end2 || (k1 < end1 && neighbors1[k1] < neighbors2[k2])) {
+					// edge only in first network
+					score1 = weights1[k1++];
+					score2 = 0;
+				} else if (k1 >= end1 || neighbors2[k2] < neighbors1[k1]) {
+					// edge only in second network
+					score1 = 0;
+					score2 = weights2[k2++];
+				} else {
+					score1 = weights1[k1++];
+					score2 = weights2[k2++];
+				}
 				// treat non-existing (NaN) as zero
 				if (score1 != score1) score1 = 0;
 				if (score2 != score2) score2 = 0;
-				// add point
+				// add pair
 				if (excludeZeros) {
 					if (score1 != 0 && score2 != 0)
-						result.add(new Point(score1,score2));
+						result.add(score1, score2);
 				} else {
 					if (score1 != 0 || score2 != 0)
-						result.add(new Point(score1,score2));
+						result.add(score1, score2);
 				}
 			}
 		}
 		
+		result.trim();
 		return result;
 	}
+	
+	/**
+	 * position of the first neighbor in the given sorted range which is 
+	 * larger than the given protein
+	 */
+	private static int firstAbove(int[] neighbors, int from, int to, int protein) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (neighbors[mid] <= protein)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
 
 }
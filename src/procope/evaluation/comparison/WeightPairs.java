@@ -0,0 +1,107 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.evaluation.comparison;
+
+import procope.tools.Tools;
+import procope.tools.math.PearsonCoefficient;
+import procope.tools.math.SpearmanCoefficient;
+
+/**
+ * Pairs of edge weights of two networks stored in two primitive 
+ * {@code float} arrays. Generated by 
+ * {@link NetworkComparison#weightPairs(procope.data.networks.ProteinNetwork, procope.data.networks.ProteinNetwork, boolean)}.
+ * The arrays can directly be fed into correlation coefficients, e.g. using
+ * {@link PearsonCoefficient#feedData(float[], float[])} or 
+ * {@link SpearmanCoefficient#feedData(float[], float[])}.
+ * 
+ * @author Jan Krumsiek
+ * @see NetworkComparison
+ */
+public class WeightPairs {
+	
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private float[] x;
+	private float[] y;
+	private int size=0;
+	
+	/**
+	 * Creates an empty list of weight pairs, package-private
+	 */
+	WeightPairs() {
+		x = new float[INITIAL_CAPACITY];
+		y = new float[INITIAL_CAPACITY];
+	}
+	
+	/**
+	 * appends one pair, grows the arrays if necessary
+	 */
+	void add(float valueX, float valueY) {
+		if (size == x.length) {
+			int newLength = x.length * 2;
+			x = Tools.arrCopyOf(x, newLength);
+			y = Tools.arrCopyOf(y, newLength);
+		}
+		x[size] = valueX;
+		y[size] = valueY;
+		size++;
+	}
+	
+	/**
+	 * cuts the arrays down to the actual number of pairs
+	 */
+	void trim() {
+		if (x.length != size) {
+			x = Tools.arrCopyOf(x, size);
+			y = Tools.arrCopyOf(y, size);
+		}
+	}
+	
+	/**
+	 * Returns the number of weight pairs
+	 * 
+	 * @return number of weight pairs
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the weights in the first network. <b>Note:</b> The returned 
+	 * array is the internal array of this object and must not be modified.
+	 * 
+	 * @return weights in the first network, one entry per pair
+	 */
+	public float[] getX() {
+		return x;
+	}
+	
+	/**
+	 * Returns the weights in the second network. <b>Note:</b> The returned 
+	 * array is the internal array of this object and must not be modified.
+	 * 
+	 * @return weights in the second network, one entry per pair
+	 */
+	public float[] getY() {
+		return y;
+	}
+	
+}
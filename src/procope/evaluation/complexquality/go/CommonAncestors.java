@@ -21,23 +21,31 @@
 // done
 package procope.evaluation.complexquality.go;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 
+import procope.tools.Tools;
+
 
 /**
  * Calculates and holds common ancestors for a given GO network. The ancestors
  * of a GO Term are all parent terms on the way to the root node.
+ * <p>The ancestors of each term (including the term itsself) are stored as 
+ * a sorted array of the dense term indices of the network, common ancestors
+ * are determined by merging two of these arrays.
  * 
  * @see GONetwork
  * @author Jan Krumsiek
  */
 public class CommonAncestors {
 	
-	private HashMap<String, Set<String>> ancestorset;
+	private GONetwork goNetwork;
+	// sorted ancestor indices by term index
+	private int[][] ancestors;
 
 	
 	/**
@@ -47,11 +55,15 @@ public class CommonAncestors {
 	 * @param goNetwork the GO network for which common ancestors are calculated
 	 */
 	public CommonAncestors(GONetwork goNetwork)  {
-		ancestorset = new HashMap<String, Set<String>>();
+		this.goNetwork = goNetwork;
+		int termCount = goNetwork.getTermCount();
+		ancestors = new int[termCount][];
+		// scratch space for the union of the parents' ancestors
+		int[] stamps = new int[termCount];
+		int[] buffer = new int[termCount];
 		// iterate over all GO terms and calculate the ancestors recursively
-		for (GOTerm term : goNetwork.getAllTerms()) {
-			recFindAncestors(term);
-		}
+		for (int i=0; i<termCount; i++) 
+			findAncestors(goNetwork.getTerm(i), stamps, buffer);
 	}
 	
 	/**
@@ -61,7 +73,14 @@ public class CommonAncestors {
 	 * @return identifiers of all ancestors of that term
 	 */
 	public Collection<String> getAncestors(String term) {
-		return ancestorset.get(term);
+		int index = goNetwork.getTermIndex(term);
+		if (index < 0)
+			return null;
+		
+		Collection<String> result = new ArrayList<String>(ancestors[index].length);
+		for (int ancestor : ancestors[index])
+			result.add(goNetwork.getTerm(ancestor).ID);
+		return result;
 	}
 	
 	/**
@@ -72,37 +91,72 @@ public class CommonAncestors {
 	 * @return identifiers of the common ancestors of the two given terms
 	 */
 	public Set<String> getCommonAncestors(String term1, String term2) {
-		// get both ancestor lists from hashmap
-		Set<String> ancestors1 = ancestorset.get(term1);
-		Set<String> ancestors2 = ancestorset.get(term2);
+		int index1 = goNetwork.getTermIndex(term1);
+		int index2 = goNetwork.getTermIndex(term2);
 		
-		if (ancestors1 == null || ancestors2 == null)
+		if (index1 < 0 || index2 < 0)
 			return Collections.<String>emptySet(); 
 		
 		// calculate and return intersection
-		Set<String> intersection = new HashSet<String>(ancestors1);
-		intersection.retainAll(ancestors2);
+		int[] ancestors1 = ancestors[index1];
+		int[] ancestors2 = ancestors[index2];
+		Set<String> intersection = new HashSet<String>();
+		int i=0, j=0;
+		while (i < ancestors1.length && j < ancestors2.length) {
+			if (ancestors1[i] < ancestors2[j])
+				i++;
+			else if (ancestors1[i] > ancestors2[j])
+				j++;
+			else {
+				intersection.add(goNetwork.getTerm(ancestors1[i]).ID);
+				i++;
+				j++;
+			}
+		}
 		
 		return intersection;
 	}
 	
 	/**
-	 * Find ancestors recursively
+	 * Returns the sorted indices of all ancestors of the term with the given
+	 * index. The returned array must not be modified.
+	 */
+	int[] getAncestors(int term) {
+		return ancestors[term];
+	}
+	
+	/**
+	 * Find ancestors recursively, parents which are not contained in the 
+	 * network are ignored
 	 */
-	private Set<String> recFindAncestors(GOTerm curTerm) {
+	private int[] findAncestors(GOTerm curTerm, int[] stamps, int[] buffer) {
 		
-		Set<String> myancestors = ancestorset.get(curTerm.ID);
+		int[] myancestors = ancestors[curTerm.index];
 		
 		if (myancestors == null) {
-			// not cached yet
-			// add ancestors of all parents
-			myancestors = new HashSet<String>();
-			for (GOTerm parent : curTerm.parents)
-				myancestors.addAll(recFindAncestors(parent));
-			// add term itsself
-			myancestors.add(curTerm.ID);
+			// not cached yet, first calculate the ancestors of all parents
+			ArrayList<int[]> parentAncestors = new ArrayList<int[]>(curTerm.parents.size());
+			for (GOTerm parent : curTerm.parents) {
+				if (parent.index >= 0)
+					parentAncestors.add(findAncestors(parent, stamps, buffer));
+			}
+			// unite them using the stamps of the term itsself
+			int stamp = curTerm.index + 1;
+			int count=0;
+			stamps[curTerm.index] = stamp;
+			buffer[count++] = curTerm.index;
+			for (int[] list : parentAncestors) {
+				for (int ancestor : list) {
+					if (stamps[ancestor] != stamp) {
+						stamps[ancestor] = stamp;
+						buffer[count++] = ancestor;
+					}
+				}
+			}
+			myancestors = Tools.arrCopyOf(buffer, count);
+			Arrays.sort(myancestors);
 			// cache the list
-			ancestorset.put(curTerm.ID, myancestors);
+			ancestors[curTerm.index] = myancestors;
 		}
 
 		return myancestors;
@@ -21,11 +21,10 @@
 package procope.evaluation.complexquality.go;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Set;
 
-import procope.tools.namemapping.ProteinManager;
-
 /**
  * Implements the calculation of functional similarites between proteins as 
  * described in
@@ -34,6 +33,12 @@ import procope.tools.namemapping.ProteinManager;
  * A new measure for functional similarity of gene products based on Gene Ontology.<br/>
  * <i>BMC Bioinformatics</i>, 2006, 7, 302<br/>
  * Pubmed: 16776819
+ * <p>The GO terms of each protein are resolved once during construction
+ * into a sorted array of term indices, so later changes of the annotations
+ * are not reflected by the calculator. All measures are calculated in one 
+ * pass over the term similarity matrix without storing it.
+ * <p>The calculator is thread-safe if the given term similarity calculator
+ * is thread-safe, which is the case for {@link TermSimilaritiesSchlicker}.
  * 
  * @author Jan Krumsiek
  *
@@ -46,6 +51,19 @@ public class FunctionalSimilaritiesSchlicker extends FunctionalSimilarities {
 	private TermSimilarities termSim;
 	private FunctionalSimilarityMeasure goScoreMethod;
 	private GONetwork gonet;
+	
+	// term similarities by index, null if only identifiers can be used
+	private TermSimilaritiesSchlicker indexedTermSim;
+	// sorted term indices and corresponding identifiers of each protein
+	private int[][] proteinTerms;
+	private String[][] proteinTermIDs;
+	
+	// column maxima of the current matrix, one buffer per thread
+	private ThreadLocal<float[]> scratch = new ThreadLocal<float[]>() {
+		protected float[] initialValue() {
+			return new float[16];
+		}
+	};
 
 	/**
 	 * Creates a new functional similarity score calculator.
@@ -63,11 +81,23 @@ public class FunctionalSimilaritiesSchlicker extends FunctionalSimilarities {
 		this.goScoreMethod = funSim;
 		this.gonet = gonet;
 		
-		// delete non-ontology terms
-		for (int i=1; i<ProteinManager.getProteinCount(); i++) {
-			Collection<String> goTerms = annotations.getGOTerms(i);
-			if (goTerms != null)
+		// term indices can be passed directly to a calculator on the same network
+		if (termSim instanceof TermSimilaritiesSchlicker && 
+				((TermSimilaritiesSchlicker)termSim).getNetwork() == gonet)
+			indexedTermSim = (TermSimilaritiesSchlicker)termSim;
+		
+		// delete non-ontology terms and resolve the remaining ones
+		int maxProtein = 0;
+		for (int protein : annotations.getProteins())
+			maxProtein = Math.max(maxProtein, protein);
+		proteinTerms = new int[maxProtein+1][];
+		proteinTermIDs = new String[maxProtein+1][];
+		for (int protein : annotations.getProteins()) {
+			Collection<String> goTerms = annotations.getGOTerms(protein);
+			if (goTerms != null) {
 				deleteNonontologyTerms(goTerms);
+				resolveTerms(protein, goTerms);
+			}
 		}
 		
 	}
@@ -79,91 +109,99 @@ public class FunctionalSimilaritiesSchlicker extends FunctionalSimilarities {
 	 */
 	public float getScore(int protein1, int protein2) {
 		 
-		Collection<String> goTerms1 = annotations.getGOTerms(protein1);
-		Collection<String> goTerms2 = annotations.getGOTerms(protein2);
+		int[] goTerms1 = getTerms(protein1);
+		int[] goTerms2 = getTerms(protein2);
 		
-		if (goTerms1 == null || goTerms1.size() == 0) { 
+		if (goTerms1 == null || goTerms1.length == 0) { 
 			return 0; 
 		}
-		if (goTerms2 == null || goTerms2.size() == 0) { 
+		if (goTerms2 == null || goTerms2.length == 0) { 
 			return 0; 
 		}
-	
-		/*
-		// remove from both lists those terms which are not contained
-		// in the current ontology
-		deleteNonontologyTerms(goTerms1);
-		deleteNonontologyTerms(goTerms2);
-		*/
 		
-		// convert to arrays for convenience
-		String[] arrGoTerms1 = goTerms1.toArray(new String[0]);
-		String[] arrGoTerms2 = goTerms2.toArray(new String[0]);
+		String[] goTermIDs1 = proteinTermIDs[protein1];
+		String[] goTermIDs2 = proteinTermIDs[protein2];
+		int terms1 = goTerms1.length;
+		int terms2 = goTerms2.length;
 		
-		int terms1 = goTerms1.size();
-		int terms2 = goTerms2.size();
+		float[] colMax = scratch.get();
+		if (colMax.length < terms2) {
+			colMax = new float[Math.max(terms2, colMax.length*2)];
+			scratch.set(colMax);
+		}
+		Arrays.fill(colMax, 0, terms2, Float.NEGATIVE_INFINITY);
 		
-		// create & fill matrix
-		float[][] matrix = new float[terms1][terms2];
-		float totalMatrixSum = 0;
+		// one pass over the matrix for all measures
+		double totalMatrixSum = 0;
+		double rowScore = 0;
 		float maxMatrixValue = Float.NEGATIVE_INFINITY;
 		for (int i=0; i<terms1; i++) {
+			float rowMax = Float.NEGATIVE_INFINITY;
 			for (int j=0; j<terms2; j++) {
-				// write term similarity to matrix
-				float sim = termSim.calculateSimilarity(arrGoTerms1[i], arrGoTerms2[j]);
-				//System.out.println("go sim score " + arrGoTerms1[i] +"," +arrGoTerms2[j]+ "\t" + sim  );
+				// get term similarity
+				float sim = (indexedTermSim != null) 
+					? indexedTermSim.calculateSimilarity(goTerms1[i], goTerms2[j])
+					: termSim.calculateSimilarity(goTermIDs1[i], goTermIDs2[j]);
 				totalMatrixSum += sim;
-				matrix[i][j] = sim;
-				if (sim > maxMatrixValue) maxMatrixValue = sim;
+				if (sim > rowMax) rowMax = sim;
+				if (sim > colMax[j]) colMax[j] = sim;
 			}
+			rowScore += rowMax;
+			if (rowMax > maxMatrixValue) maxMatrixValue = rowMax;
 		}
 		
 		// use row score and col score?
-		if (goScoreMethod == FunctionalSimilarityMeasure.COLROW_MAX || goScoreMethod == FunctionalSimilarityMeasure.COLROW_AVERAGE) 
-                {
-			// calculate row score of matrix
-			float rowScore=0;
-			for (int i=0; i<terms1; i++) {
-				// calc max over this row
-				float max = Float.NEGATIVE_INFINITY;
-				for (int j=0; j<terms2; j++) {
-					if (matrix[i][j] > max) max = matrix[i][j];
-				}
-				rowScore += max;
-			}
+		if (goScoreMethod == FunctionalSimilarityMeasure.COLROW_MAX || goScoreMethod == FunctionalSimilarityMeasure.COLROW_AVERAGE) {
+			double colScore = 0;
+			for (int j=0; j<terms2; j++)
+				colScore += colMax[j];
 			// calc avg to derive score
-			rowScore /= terms1;
-			
-			// calculate col score of matrix
-			float colScore=0;
-			for (int j=0; j<terms2; j++) {		
-				// calc max over this row
-				float max = Float.NEGATIVE_INFINITY;
-				for (int i=0; i<terms1; i++) {
-					if (matrix[i][j] > max) max = matrix[i][j];
-				}
-				colScore += max;
-			}
-			// calc avg to derive score
-			colScore /= terms2;
+			float avgRowScore = (float)(rowScore / terms1);
+			float avgColScore = (float)(colScore / terms2);
 			
 			if (goScoreMethod == FunctionalSimilarityMeasure.COLROW_MAX)
-				return Math.max(rowScore, colScore);
+				return Math.max(avgRowScore, avgColScore);
 			else // (goScoreMethod == Constants.GO_SCORE_AVERAGE)
-				return (rowScore+colScore)/2;
+				return (avgRowScore+avgColScore)/2;
 			
 		} else if (goScoreMethod == FunctionalSimilarityMeasure.LORD) {
 			// lord's scoring method => get average over whole matrix
-			return totalMatrixSum / (float)(terms1*terms2);
+			return (float)(totalMatrixSum / ((double)terms1*terms2));
 		
 		} else if (goScoreMethod == FunctionalSimilarityMeasure.TOTALMAX) {
-			// lord's scoring method => get average over whole matrix
+			// maximum over the whole matrix
 			return maxMatrixValue;
 			
 		} else
 			// not a valid method
 			return Float.NaN;
 	}
+	
+	/**
+	 * returns the sorted term indices of a protein, null if not annotated
+	 */
+	private int[] getTerms(int protein) {
+		if (protein < 0 || protein >= proteinTerms.length)
+			return null;
+		return proteinTerms[protein];
+	}
+	
+	/**
+	 * stores the term indices of a protein in ascending order along with
+	 * the corresponding identifiers
+	 */
+	private void resolveTerms(int protein, Collection<String> goTerms) {
+		int[] terms = new int[goTerms.size()];
+		int count=0;
+		for (String term : goTerms)
+			terms[count++] = gonet.getTermIndex(term);
+		Arrays.sort(terms);
+		String[] termIDs = new String[terms.length];
+		for (int i=0; i<terms.length; i++)
+			termIDs[i] = gonet.getTerm(terms[i]).ID;
+		proteinTerms[protein] = terms;
+		proteinTermIDs[protein] = termIDs;
+	}
 
 	/**
 	 * Delete terms not contaned in the current network
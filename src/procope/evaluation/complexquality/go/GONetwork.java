@@ -25,6 +25,8 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 
@@ -33,6 +35,9 @@ import procope.tools.ProCopeException;
 
 /**
  * Represents the ontology network of one GO namespace.
+ * <p>The OBO file is parsed in a single pass. Optionally the parsed network
+ * is stored in a compact binary cache file, so later loads of the same 
+ * file with the same namespace and relationships skip the parsing.
  * 
  * @author Jan Krumsiek
  */
@@ -40,6 +45,8 @@ public class GONetwork {
 	
 	// collection of GO terms with ID as key
 	HashMap<String, GOTerm> goterms;
+	// all terms by their dense index, sorted by ID
+	private GOTerm[] termArray;
 	// namespace (biological process etc)
 	private Namespace namespace;
 	
@@ -58,6 +65,46 @@ public class GONetwork {
 		this(new File(fileOntologies), namespace, relationships);
 	}
 	
+	/**
+	 * Creates a GO network from a given file in OBO format, using a given
+	 * namespaces and the specified relationships. The network is read from 
+	 * a binary cache file in the given directory if the OBO file did not 
+	 * change since the cache file was written. Otherwise the OBO file is 
+	 * parsed and the cache file is (re)created. If the cache file cannot be 
+	 * read or written, the network is still created from the OBO file.
+	 * 
+	 * @param fileOntologies file with ontologies in OBO format
+	 * @param namespace the namespace to be used
+	 * @param relationships the relationships which are followed to contruct the network
+	 * @param cacheDirectory directory of the binary cache files, will be 
+	 *        created if it does not exist
+	 * @throws IOException if something went wrong reading the ontology file
+	 */
+	public GONetwork(String fileOntologies, Namespace namespace, 
+			Relationships relationships, String cacheDirectory) throws IOException {
+		this(new File(fileOntologies), namespace, relationships, new File(cacheDirectory));
+	}
+	
+	/**
+	 * Creates a GO network from a given file in OBO format, using a given
+	 * namespaces and the specified relationships. The network is read from 
+	 * a binary cache file in the given directory if the OBO file did not 
+	 * change since the cache file was written. Otherwise the OBO file is 
+	 * parsed and the cache file is (re)created. If the cache file cannot be 
+	 * read or written, the network is still created from the OBO file.
+	 * 
+	 * @param fileOntologies file with ontologies in OBO format
+	 * @param namespace the namespace to be used
+	 * @param relationships the relationships which are followed to contruct the network
+	 * @param cacheDirectory directory of the binary cache files, will be 
+	 *        created if it does not exist
+	 * @throws IOException if something went wrong reading the ontology file
+	 */
+	public GONetwork(File fileOntologies, Namespace namespace, 
+			Relationships relationships, File cacheDirectory) throws IOException {
+		init(fileOntologies, namespace, relationships, cacheDirectory);
+	}
+	
 	/**
 	 * Creates a GO network from a given file in OBO format, using a given
 	 * namespaces and the specified relationships
@@ -69,25 +116,77 @@ public class GONetwork {
 	 */
 	public GONetwork(File fileOntologies, Namespace namespace, 
 			Relationships relationships) throws IOException {
+		init(fileOntologies, namespace, relationships, null);
+	}
+	
+	/**
+	 * Loads the network from the cache directory (if not {@code null}) or
+	 * parses the OBO file. The cache is optional, any problems with it lead 
+	 * to parsing the OBO file.
+	 */
+	private void init(File fileOntologies, Namespace namespace, 
+			Relationships relationships, File cacheDirectory) throws IOException {
 		this.namespace = namespace;
 		
-		// create hashmap
-		goterms = new HashMap<String, GOTerm>();
-		
-		// what relations will be used?
-		boolean isa=false;
-		boolean partof=false;
-		if (relationships == Relationships.IS_A)		 isa = true;
-		else if (relationships == Relationships.PART_OF) partof = true;
-		else isa = partof = true;	// both
+		// try the cache first
+		GONetworkCache cache = null;
+		if (cacheDirectory != null) {
+			if (!fileOntologies.exists())
+				throw new IOException("File not found: " + fileOntologies);
+			try {
+				cache = new GONetworkCache(cacheDirectory, fileOntologies, 
+						namespace, relationships);
+				GOTerm[] terms = cache.read();
+				if (terms != null) {
+					termArray = terms;
+					goterms = new HashMap<String, GOTerm>(terms.length * 2);
+					for (GOTerm term : terms)
+						goterms.put(term.ID, term);
+					return;
+				}
+			} catch (IOException e) {
+				// unreadable cache, parse the OBO file instead
+			}
+		}
 		
-		// load ontologies from file
-		loadOntologies(fileOntologies, this.namespace, isa, partof);
+		// parse the OBO file, following the chosen relationships
+		goterms = new HashMap<String, GOTerm>();
+		loadOntologies(fileOntologies, namespace, 
+				relationships != Relationships.PART_OF, 
+				relationships != Relationships.IS_A);
+		// assign dense indices
+		indexTerms();
 		
+		// store the result
+		if (cache != null) {
+			try {
+				cache.write(termArray);
+			} catch (IOException e) {
+				// the cache is optional
+			}
+		}
 	}
 	
 	/**
-	 * Load ontologies from a file
+	 * Numbers the terms of the network consecutively in the order of their
+	 * identifiers. Term objects which are not contained in the network 
+	 * (e.g. parents from another namespace) keep the index -1.
+	 */
+	private void indexTerms() {
+		String[] ids = goterms.keySet().toArray(new String[0]);
+		Arrays.sort(ids);
+		termArray = new GOTerm[ids.length];
+		for (int i=0; i<ids.length; i++) {
+			termArray[i] = goterms.get(ids[i]);
+			termArray[i].index = i;
+		}
+	}
+	
+	/**
+	 * Load ontologies from a file in a single pass. Terms are created at the
+	 * end of their stanza if they belong to the namespace, relationships are
+	 * collected and resolved after the whole file was read. Relationships to
+	 * terms of other namespaces are ignored.
 	 */
 	private void loadOntologies(File file, Namespace namespace, boolean useisa, boolean usepartof) throws IOException {
 		
@@ -101,73 +200,67 @@ public class GONetwork {
 			else
 				strNamespace = "molecular_function";
 			
-			strNamespace = strNamespace.toLowerCase();
+			// relationships in the order of the file
+			ArrayList<GOTerm> relChildren = new ArrayList<GOTerm>();
+			ArrayList<String> relParents = new ArrayList<String>();
+			
+			// current stanza
+			String curid=null;
+			String curname=null;
+			boolean curInNamespace=false;
+			ArrayList<String> curParents = new ArrayList<String>();
 			
-			// first run: parse file once to get all GO terms
 			BufferedReader reader = new BufferedReader(new FileReader(file));
 			String line;
-			while ((line = reader.readLine()) != null) {
-				// id line?
-				if (line.startsWith("id: GO")) {
-					String id = line.substring(line.indexOf(' ')+1);
-					goterms.put(id, new GOTerm(id));
-				}
-			}
-			reader.close();
-			
-			// second run: parse file again to get relations
-			reader = new BufferedReader(new FileReader(file));
-			String curid=null;
-			String curnamespace=null;
-			while ((line = reader.readLine()) != null) {
+			boolean eof=false;
+			while (!eof) {
+				line = reader.readLine();
+				eof = (line == null);
 				
-				if (line.startsWith("id: GO"))
-					// id line
-					curid = line.substring(line.indexOf(' ')+1);
-				else if (line.startsWith("name: ")) {
-					// name
-					GOTerm term = goterms.get(curid); 
-					if (term != null) 
-						term.name = line.substring(line.indexOf(' ')+1);
-					
-				} else if (line.startsWith("namespace: ")) {
-					// namespace line
-					curnamespace = line.substring(line.indexOf(' ')+1).toLowerCase();
-					// remove from GO list if not the correct namespace
-					if (!curnamespace.equals(strNamespace)) {
-						goterms.remove(curid);
-					}
-				}			
-				else if (line.startsWith("is_a") && useisa) {
-					// only add to the network if correct namespace
-					if (curnamespace.equals(strNamespace)) {
-						// extract partner GO id & add relation (if the GO term exists, might be on the exclusion list)
-						String[] split = line.split(" ");
-						GOTerm child = goterms.get(curid);
-						GOTerm parent = goterms.get(split[1]);
-						// if the parent is zero it comes from another ontology (bp, mf, cc) => ignore relationship
-						if (parent !=  null) {
-							child.parents.add(parent);
-							parent.children.add(child);
-						}
-					}
-				} else if (line.startsWith("relationship: part_of") && usepartof) {
-					// only add to the network if correct namespace
-					if (curnamespace.equals(strNamespace)) {
-						// extract partner GO id & add relation (if the GO term exists, might be on the exclusion list)
-						String[] split = line.split(" ");
-						GOTerm child = goterms.get(curid);
-						GOTerm parent = goterms.get(split[2]);
-						// if the parent is zero it comes from another ontology (bp, mf, cc) => ignore relationship
-						if (parent !=  null) {
-							child.parents.add(parent);
-							parent.children.add(child);
+				if (eof || line.startsWith("[") || line.startsWith("id: ")) {
+					// end of the previous stanza
+					if (curid != null && curInNamespace) {
+						GOTerm term = new GOTerm(curid);
+						term.name = curname;
+						goterms.put(curid, term);
+						for (String parent : curParents) {
+							relChildren.add(term);
+							relParents.add(parent);
 						}
 					}
-				} 
+					curid = null;
+					curname = null;
+					curInNamespace = false;
+					curParents.clear();
+					// new term?
+					if (!eof && line.startsWith("id: GO"))
+						curid = line.substring(4);
+				} else if (curid == null) {
+					// not within a term
+					continue;
+				} else if (line.startsWith("name: ")) {
+					curname = line.substring(6);
+				} else if (line.startsWith("namespace: ")) {
+					curInNamespace = line.substring(11).toLowerCase().equals(strNamespace);
+				} else if (line.startsWith("is_a: ") && useisa) {
+					curParents.add(firstToken(line, 6));
+				} else if (line.startsWith("relationship: part_of ") && usepartof) {
+					curParents.add(firstToken(line, 22));
+				}
 			}
 			reader.close();
 			
+			// resolve the relationships, if the parent does not exist it 
+			// comes from another ontology (bp, mf, cc) => ignore relationship
+			for (int i=0; i<relChildren.size(); i++) {
+				GOTerm child = relChildren.get(i);
+				GOTerm parent = goterms.get(relParents.get(i));
+				if (parent != null) {
+					child.parents.add(parent);
+					parent.children.add(child);
+				}
+			}
+			
 		} catch (IOException e) {
 			// just a trick so this type of exception is not caught by the block below
 			throw e;
@@ -177,6 +270,15 @@ public class GONetwork {
 			
 	}
 	
+	/**
+	 * Returns the token starting at a given position of a line, tokens are 
+	 * separated by spaces
+	 */
+	private static String firstToken(String line, int from) {
+		int end = line.indexOf(' ', from);
+		return (end < 0) ? line.substring(from) : line.substring(from, end);
+	}
+	
 	/**
 	 * Return name of root term of a given namespace, hardcoded, 
 	 * hopefully this does not change!
@@ -214,6 +316,30 @@ public class GONetwork {
 		return goterms.get(ID);
 	}
 	
+	/**
+	 * Returns the number of terms in the network, the terms have the 
+	 * dense indices 0 to {@code getTermCount()-1}.
+	 */
+	int getTermCount() {
+		return termArray.length;
+	}
+	
+	/**
+	 * Returns the term with a given dense index.
+	 */
+	GOTerm getTerm(int index) {
+		return termArray[index];
+	}
+	
+	/**
+	 * Returns the dense index of the term with a given GO identifier or -1 
+	 * if the term is not contained in the network.
+	 */
+	int getTermIndex(String ID) {
+		GOTerm term = goterms.get(ID);
+		return (term == null) ? -1 : term.index;
+	}
+	
 	/**
 	 * Get set of all term objects in the current network.
 	 * 
@@ -0,0 +1,273 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.evaluation.complexquality.go;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import procope.evaluation.complexquality.go.GONetwork.Namespace;
+import procope.evaluation.complexquality.go.GONetwork.Relationships;
+import procope.tools.ProCopeException;
+
+/**
+ * Internal class, used by {@link GONetwork}. Stores the terms of a parsed 
+ * GO network in a compact binary file and reads them back.
+ * <p>The cache file is named after a fingerprint of the OBO file (path, 
+ * size and modification time), the namespace and the relationships. It 
+ * consists of a header (magic number, format version, fingerprint, number 
+ * of terms and relationships) followed by the parents and children of all 
+ * terms as dense indices in compressed sparse row format, the lengths of 
+ * the identifiers and names and a pool of all identifiers and names in 
+ * UTF-8. The terms are stored in the order of their dense indices.
+ * 
+ * @author Jan Krumsiek
+ */
+class GONetworkCache {
+	
+	private static final int MAGIC = 0x5043474F; // "PCGO"
+	private static final int VERSION = 1;
+	private static final int FINGERPRINT_LENGTH = 20;
+	private static final int HEADER_LENGTH = 16 + FINGERPRINT_LENGTH;
+	
+	private File directory;
+	private File file;
+	private byte[] fingerprint;
+	
+	/**
+	 * Creates the cache for a given OBO file, namespace and relationships.
+	 * 
+	 * @param directory directory of the cache files
+	 * @param oboFile the OBO file
+	 * @param namespace namespace of the network
+	 * @param relationships relationships of the network
+	 * @throws IOException if the path of the OBO file could not be determined
+	 */
+	public GONetworkCache(File directory, File oboFile, Namespace namespace, 
+			Relationships relationships) throws IOException {
+		this.directory = directory;
+		
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// every JRE has to provide SHA-1
+			throw new ProCopeException("SHA-1 not available: " + e.getMessage());
+		}
+		DataOutputStream out = new DataOutputStream(new DigestOutputStream(new OutputStream() {
+			public void write(int b) {
+				// the data only goes to the digest
+			}
+		}, digest));
+		out.writeUTF(oboFile.getCanonicalPath());
+		out.writeLong(oboFile.length());
+		out.writeLong(oboFile.lastModified());
+		out.writeUTF(namespace.name());
+		out.writeUTF(relationships.name());
+		out.close();
+		fingerprint = digest.digest();
+		
+		StringBuilder fileName = new StringBuilder();
+		for (byte b : fingerprint)
+			fileName.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+		fileName.append(".gonet");
+		file = new File(directory, fileName.toString());
+	}
+	
+	/**
+	 * Reads the terms from the cache file. The terms are linked with each 
+	 * other and have their dense indices assigned.
+	 * 
+	 * @return the terms in the order of their indices or {@code null} if 
+	 *         there is no valid cache file
+	 * @throws IOException if the cache file could not be read
+	 */
+	public GOTerm[] read() throws IOException {
+		if (!file.exists())
+			return null;
+		
+		// read the whole file at once
+		ByteBuffer buffer;
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			long length = channel.size();
+			if (length < HEADER_LENGTH || length > Integer.MAX_VALUE)
+				return null;
+			buffer = ByteBuffer.allocate((int)length);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0)
+					return null;
+			}
+			buffer.flip();
+		} finally {
+			in.close();
+		}
+		
+		// header
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+			return null;
+		byte[] stored = new byte[FINGERPRINT_LENGTH];
+		buffer.get(stored);
+		if (!Arrays.equals(stored, fingerprint))
+			return null;
+		int termCount = buffer.getInt();
+		int relCount = buffer.getInt();
+		long intCount = 2L * (termCount+1) + 2L * relCount + 2L * termCount;
+		if (termCount < 0 || relCount < 0 || 4 * intCount > buffer.remaining())
+			return null;
+		
+		// relationships and string lengths
+		IntBuffer ints = buffer.asIntBuffer();
+		int[] parentStart = new int[termCount+1];
+		int[] parents = new int[relCount];
+		int[] childStart = new int[termCount+1];
+		int[] children = new int[relCount];
+		int[] lengths = new int[2*termCount];
+		ints.get(parentStart).get(parents).get(childStart).get(children).get(lengths);
+		buffer.position(buffer.position() + 4 * (int)intCount);
+		
+		GOTerm[] terms = new GOTerm[termCount];
+		try {
+			// strings, a negative length denotes a missing name
+			byte[] pool = new byte[buffer.remaining()];
+			buffer.get(pool);
+			int offset=0;
+			for (int i=0; i<termCount; i++) {
+				terms[i] = new GOTerm(new String(pool, offset, lengths[i], "UTF-8"));
+				terms[i].index = i;
+				offset += lengths[i];
+			}
+			for (int i=0; i<termCount; i++) {
+				int length = lengths[termCount+i];
+				if (length >= 0) {
+					terms[i].name = new String(pool, offset, length, "UTF-8");
+					offset += length;
+				}
+			}
+			
+			// link the terms
+			for (int i=0; i<termCount; i++) {
+				for (int k=parentStart[i]; k<parentStart[i+1]; k++)
+					terms[i].parents.add(terms[parents[k]]);
+				for (int k=childStart[i]; k<childStart[i+1]; k++)
+					terms[i].children.add(terms[children[k]]);
+			}
+		} catch (IndexOutOfBoundsException e) {
+			// corrupt cache file
+			return null;
+		}
+		
+		return terms;
+	}
+	
+	/**
+	 * Writes the given terms to the cache file. The file is written to a 
+	 * temporary file first and renamed afterwards, so concurrent processes 
+	 * never see incomplete files.
+	 * 
+	 * @param terms the terms in the order of their indices
+	 * @throws IOException if the cache file could not be written
+	 */
+	public void write(GOTerm[] terms) throws IOException {
+		int termCount = terms.length;
+		
+		// relationships in compressed sparse row format
+		int relCount=0;
+		for (GOTerm term : terms)
+			relCount += term.parents.size();
+		int[] parentStart = new int[termCount+1];
+		int[] parents = new int[relCount];
+		int[] childStart = new int[termCount+1];
+		int[] children = new int[relCount];
+		int p=0, c=0;
+		for (int i=0; i<termCount; i++) {
+			parentStart[i] = p;
+			for (GOTerm parent : terms[i].parents)
+				parents[p++] = parent.index;
+			childStart[i] = c;
+			for (GOTerm child : terms[i].children)
+				children[c++] = child.index;
+		}
+		parentStart[termCount] = p;
+		childStart[termCount] = c;
+		if (c != relCount)
+			throw new ProCopeException("Inconsistent GO network");
+		
+		// string pool
+		byte[][] strings = new byte[2*termCount][];
+		int[] lengths = new int[2*termCount];
+		int poolLength=0;
+		for (int i=0; i<termCount; i++) {
+			strings[i] = terms[i].ID.getBytes("UTF-8");
+			if (terms[i].name != null)
+				strings[termCount+i] = terms[i].name.getBytes("UTF-8");
+		}
+		for (int i=0; i<2*termCount; i++) {
+			lengths[i] = (strings[i] == null) ? -1 : strings[i].length;
+			poolLength += Math.max(lengths[i], 0);
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH 
+				+ 4 * (2*(termCount+1) + 2*relCount + 2*termCount) + poolLength);
+		buffer.putInt(MAGIC).putInt(VERSION).put(fingerprint);
+		buffer.putInt(termCount).putInt(relCount);
+		IntBuffer ints = buffer.asIntBuffer();
+		ints.put(parentStart).put(parents).put(childStart).put(children).put(lengths);
+		buffer.position(buffer.position() + 4 * ints.position());
+		for (byte[] string : strings) {
+			if (string != null)
+				buffer.put(string);
+		}
+		buffer.flip();
+		
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Could not create directory " + directory);
+		File tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+		try {
+			FileOutputStream out = new FileOutputStream(tempFile);
+			try {
+				FileChannel channel = out.getChannel();
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+			} finally {
+				out.close();
+			}
+			// another process might have been faster
+			if (!tempFile.renameTo(file) && !file.exists())
+				throw new IOException("Could not rename " + tempFile + " to " + file);
+		} finally {
+			// only left over if something went wrong
+			tempFile.delete();
+		}
+	}
+
+}
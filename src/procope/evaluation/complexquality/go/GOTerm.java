@@ -49,6 +49,8 @@ public class GOTerm {
 	String name;
 
 	float prob = Float.NaN; // calculated probability of this term, not always set
+	
+	int index = -1; // dense index of this term in its network, -1 if not contained
 
 	/**
 	 * Creates a term object with the given GO term ID and name
@@ -0,0 +1,95 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.evaluation.complexquality.go;
+
+import procope.tools.LongHashIndex;
+import procope.tools.Tools;
+
+/**
+ * Internal class, used by {@link TermSimilaritiesSchlicker}. Maps pairs of 
+ * term indices which are packed into one {@code long} to similarity values
+ * using {@link LongHashIndex primitive hash tables}. The cache is 
+ * thread-safe, the keys are distributed over several independently locked
+ * segments so that concurrent threads rarely block each other.
+ * 
+ * @author Jan Krumsiek
+ */
+class TermPairCache {
+	
+	private static final int SEGMENTS = 64;
+	
+	private Segment[] segments;
+	
+	public TermPairCache() {
+		segments = new Segment[SEGMENTS];
+		for (int i=0; i<SEGMENTS; i++)
+			segments[i] = new Segment();
+	}
+	
+	/**
+	 * packs two term indices into one non-negative key, the smaller one first
+	 */
+	static long pack(int term1, int term2) {
+		if (term1 > term2) {
+			int swap = term1;
+			term1 = term2;
+			term2 = swap;
+		}
+		return ((long)term1 << 32) | term2;
+	}
+	
+	/**
+	 * returns the cached value or NaN if the pair is not cached
+	 */
+	public float get(long key) {
+		return segments[(int)(LongHashIndex.mix(key) >>> 58)].get(key);
+	}
+	
+	/**
+	 * stores the value of a pair
+	 */
+	public void put(long key, float value) {
+		segments[(int)(LongHashIndex.mix(key) >>> 58)].put(key, value);
+	}
+	
+	/**
+	 * One segment of the cache, values are stored by the entry numbers of 
+	 * the keys.
+	 */
+	private static class Segment {
+		
+		private LongHashIndex index = new LongHashIndex();
+		private float[] values = new float[64];
+		
+		synchronized float get(long key) {
+			int entry = index.get(key);
+			return (entry < 0) ? Float.NaN : values[entry];
+		}
+		
+		synchronized void put(long key, float value) {
+			int entry = index.add(key);
+			if (entry == values.length)
+				values = Tools.arrCopyOf(values, values.length * 2);
+			values[entry] = value;
+		}
+	}
+
+}
@@ -20,10 +20,18 @@
  */
 package procope.evaluation.complexquality.go;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.HashMap;
 
+import procope.tools.ParallelTools;
+import procope.tools.ProCopeException;
 import procope.tools.Tools;
 
 
@@ -34,6 +42,15 @@ import procope.tools.Tools;
  * A new measure for functional similarity of gene products based on Gene Ontology.<br/>
  * <i>BMC Bioinformatics</i>, 2006, 7, 302<br/>
  * Pubmed: 16776819
+ * <p>All three measures are determined by the common ancestor with the 
+ * lowest probability (the most informative common ancestor). The terms are
+ * ranked by their probability and the ancestors of each term are stored as 
+ * a sparse bitset over these ranks, so the most informative common ancestor
+ * of two terms is the first bit set in both bitsets.
+ * <p>Optionally the similarities of all pairs of annotated terms can be 
+ * precomputed and stored in a memory-mapped file, see 
+ * {@link #useMatrixCache(File, int)}.
+ * <p>Once constructed, the calculator is thread-safe.
  * 
  * @author Jan Krumsiek
  */
@@ -41,15 +58,26 @@ import procope.tools.Tools;
 public class TermSimilaritiesSchlicker implements TermSimilarities {
 	
 	private GONetwork gonet;
-//	private GOTerm root;
 	private TermSimilarityMeasure similarityMeasure;
 	private boolean caching; 
-	private HashMap<String, Float> simCache;
-	private CommonAncestors commonAncestors;
+	private TermPairCache simCache;
 	private GOAnnotations annotations;
 	
 	private HashMap<String, Integer> absFrequencies;	// mapping ID => absolute frequencies
 	
+	// probability of each term by term index
+	private float[] probs;
+	// term index of each rank, terms are ranked by increasing probability
+	private int[] termByRank;
+	// sparse ancestor bitsets over the ranks: word positions and words
+	private int[][] ancestorWords;
+	private long[][] ancestorBits;
+	
+	// precomputed similarities of the annotated terms and the matrix 
+	// position of each term index (-1 if not contained)
+	private TermSimilarityMatrix matrix;
+	private int[] matrixIndex;
+	
 	/**
 	 * Creates a new term similarity calculator.
 	 * 
@@ -65,13 +93,15 @@ public class TermSimilaritiesSchlicker implements TermSimilarities {
 		this.gonet = gonet;
 		this.similarityMeasure = similarityMeasure;
 		this.caching = caching;
-		this.commonAncestors = new CommonAncestors(gonet); 
-		if (caching) simCache = new HashMap<String, Float>();
+		if (caching) simCache = new TermPairCache();
 		this.annotations =  annotations;
 		
 		// take care of probabilities
 		absFrequencies = new HashMap<String, Integer>();
 		calculateProbabilities();
+		
+		// index the ancestors by information content
+		buildAncestorBitsets(new CommonAncestors(gonet));
 	}
 	
 
@@ -81,120 +111,334 @@ public class TermSimilaritiesSchlicker implements TermSimilarities {
 	 */
 	public float calculateSimilarity(String term1ID, String term2ID) {
 		
-		String key = Tools.min(term1ID, term2ID) + "#" + Tools.max(term1ID, term2ID); 
+		// get dense term indices
+		int term1 = gonet.getTermIndex(term1ID);
+		int term2 = gonet.getTermIndex(term2ID);
 		
-		Float cachedSim=null;
-		// cached?
-		if (caching && ( cachedSim = simCache.get(key) ) != null) {
-			return cachedSim;
-		} else {
-			
-			// get actual GOTerm objects
-			GOTerm term1 = gonet.getTerm(term1ID);
-			GOTerm term2 = gonet.getTerm(term2ID);
-			
-			if (term1 == null || term2 == null || (term1.prob == 1 && term2.prob == 1))
-				return 0;
-			
-			// switch between different similarity measures
-			float sim=Float.NaN;
-			if (similarityMeasure == TermSimilarityMeasure.RESNIK)
-				sim = resnikSimilarity(term1, term2);
-			else if (similarityMeasure == TermSimilarityMeasure.LIN)
-				sim = linSimilarity(term1, term2);
-			else // relevance similarity
-				sim = relevanceSimilarity(term1, term2);
-			
-			// cache?
-			if (caching) {
-				// generate hash key
-					simCache.put(key, sim);
-			}
-			
-			return sim;
+		if (term1 < 0 || term2 < 0)
+			return 0;
+		
+		return calculateSimilarity(term1, term2);
+	}
+	
+	/**
+	 * Returns the network on which the similarities are calculated.
+	 */
+	GONetwork getNetwork() {
+		return gonet;
+	}
+	
+	/**
+	 * Precomputes the similarities of all pairs of annotated terms and 
+	 * stores them in a file in the given directory. The file is named after a
+	 * fingerprint of the network, the annotation counts and the similarity 
+	 * measure. If a file for this fingerprint already exists, it is used 
+	 * directly instead. The file is memory-mapped, so the similarities are 
+	 * shared between processes using the same directory and need no 
+	 * warm-up.
+	 * <p>The matrix needs {@code 2*n*(n+1)} bytes of disk space for 
+	 * {@code n} annotated terms. This method must be called before the 
+	 * calculator is used by multiple threads.
+	 * 
+	 * @param directory directory of the matrix files, will be created if it
+	 *        does not exist
+	 * @param threads number of threads used to calculate a new matrix
+	 * @return the matrix file which is used
+	 * @throws IOException if the matrix file could not be read or written
+	 * @throws ProCopeException if {@code threads < 1}
+	 */
+	public File useMatrixCache(File directory, int threads) throws IOException, ProCopeException {
+		if (threads < 1)
+			throw new ProCopeException("Number of threads must be at least 1");
+		
+		// annotated terms in index order
+		int termCount = gonet.getTermCount();
+		int[] terms = new int[termCount];
+		int size=0;
+		for (int i=0; i<termCount; i++) {
+			if (annotations.getAnnotationCount(gonet.getTerm(i).ID) > 0)
+				terms[size++] = i;
 		}
+		terms = Tools.arrCopyOf(terms, size);
+		
+		byte[] fingerprint = fingerprint(terms);
+		StringBuilder fileName = new StringBuilder();
+		for (byte b : fingerprint)
+			fileName.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+		fileName.append(".tsm");
+		
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Could not create directory " + directory);
+		File file = new File(directory, fileName.toString());
+		
+		// reuse or create the matrix
+		TermSimilarityMatrix newMatrix = TermSimilarityMatrix.load(file, size, fingerprint);
+		if (newMatrix == null)
+			newMatrix = TermSimilarityMatrix.create(file, terms, fingerprint, this, threads);
+		
+		int[] newIndex = new int[termCount];
+		Arrays.fill(newIndex, -1);
+		for (int pos=0; pos<size; pos++)
+			newIndex[terms[pos]] = pos;
+		matrixIndex = newIndex;
+		matrix = newMatrix;
+		
+		return file;
 	}
-
-
+	
 	/**
-	 * Calculate term similarity based on "Resnik"
+	 * Precomputes the similarities of all pairs of annotated terms using 
+	 * the default number of threads, see {@link #useMatrixCache(File, int)}.
+	 * 
+	 * @param directory directory of the matrix files, will be created if it
+	 *        does not exist
+	 * @return the matrix file which is used
+	 * @throws IOException if the matrix file could not be read or written
 	 */
-	private float resnikSimilarity(GOTerm term1, GOTerm term2) {
-		// calc common ancestors
-		Collection<GOTerm> commonAncestors = getCommonAncestors(term1, term2);
+	public File useMatrixCache(File directory) throws IOException {
+		return useMatrixCache(directory, ParallelTools.getDefaultThreads());
+	}
+	
+	/**
+	 * Calculates the similarity of the terms with the given dense indices.
+	 */
+	float calculateSimilarity(int term1, int term2) {
 		
-		// iterate over common ancestors c and find max (-log(p(c))
-		float max = Float.NEGATIVE_INFINITY;
-		for (GOTerm ancestor : commonAncestors) {
-			float logSim = (float)(-Math.log(ancestor.prob));
-			if (logSim > max) max = logSim;
+		// precomputed?
+		if (matrix != null) {
+			int pos1 = matrixIndex[term1];
+			int pos2 = matrixIndex[term2];
+			if (pos1 >= 0 && pos2 >= 0)
+				return matrix.get(pos1, pos2);
 		}
 		
-		return max;
+		long key = TermPairCache.pack(term1, term2);
+		
+		// cached? (NaN values are never cached)
+		if (caching) {
+			float cachedSim = simCache.get(key);
+			if (cachedSim == cachedSim)
+				return cachedSim;
+		}
+		
+		float sim = computeSimilarity(term1, term2);
+		
+		// cache?
+		if (caching)
+			simCache.put(key, sim);
+		
+		return sim;
 	}
 	
 	/**
-	 * Calculate term similarity based on "Lin"
+	 * Calculates the similarity of the terms with the given dense indices
+	 * without using the cache or the matrix.
 	 */
-	private float linSimilarity(GOTerm term1, GOTerm term2)  {
-		// calc common ancestors
-		Collection<GOTerm> commonAncestors = getCommonAncestors(term1, term2);	// iterate over common ancestors c and find
+	float computeSimilarity(int term1, int term2) {
 		
-		// max (2*log p(c) /  (log p(c1) + log p(c2) )   )
-		float max = Float.NEGATIVE_INFINITY;
-		for (GOTerm ancestor : commonAncestors) {
-			
-			float logSim = (float) (
-				2 * Math.log(ancestor.prob) 
-				/ 
-				(Math.log(term1.prob) + Math.log(term2.prob))
-				);
-			if (logSim > max) max = logSim;
-			
-			if ( (Math.log(term1.prob) + Math.log(term2.prob)) == 0) {
+		float prob1 = probs[term1];
+		float prob2 = probs[term2];
+		if (prob1 == 1 && prob2 == 1)
+			return 0;
+		
+		float sim;
+		int mica = mostInformativeCommonAncestor(term1, term2);
+		if (mica < 0) 
+			// no common ancestor
+			sim = Float.NEGATIVE_INFINITY;
+		else {
+			sim = similarity(probs[termByRank[mica]], prob1, prob2);
+			// the maximum is only reached at the most informative common 
+			// ancestor if the similarity is defined there
+			if (sim != sim)
+				sim = maximumSimilarity(term1, term2, prob1, prob2);
+		}
+		
+		return sim;
+	}
+	
+	/**
+	 * Calculates a fingerprint of everything the similarities of the given 
+	 * terms depend on: the measure, the probabilities and the ranked 
+	 * ancestors of all terms.
+	 */
+	private byte[] fingerprint(int[] terms) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// every JRE has to provide SHA-1
+			throw new ProCopeException("SHA-1 not available: " + e.getMessage());
+		}
+		DataOutputStream out = new DataOutputStream(new DigestOutputStream(new OutputStream() {
+			public void write(int b) {
+				// the data only goes to the digest
+			}
+		}, digest));
+		
+		out.writeUTF(similarityMeasure.name());
+		int termCount = gonet.getTermCount();
+		out.writeInt(termCount);
+		for (int i=0; i<termCount; i++) {
+			out.writeUTF(gonet.getTerm(i).ID);
+			out.writeFloat(probs[i]);
+			out.writeInt(ancestorWords[i].length);
+			for (int w=0; w<ancestorWords[i].length; w++) {
+				out.writeInt(ancestorWords[i][w]);
+				out.writeLong(ancestorBits[i][w]);
 			}
 		}
+		out.writeInt(terms.length);
+		for (int term : terms)
+			out.writeInt(term);
+		out.close();
 		
-		return max;
+		return digest.digest();
 	}
-
+	
+	/**
+	 * Calculates the similarity of two terms for a given common ancestor 
+	 * depending on the chosen measure.
+	 */
+	private float similarity(float ancestorProb, float prob1, float prob2) {
+		if (similarityMeasure == TermSimilarityMeasure.RESNIK)
+			// -log(p(c))
+			return (float)(-Math.log(ancestorProb));
+		else if (similarityMeasure == TermSimilarityMeasure.LIN)
+			// 2*log p(c) /  (log p(c1) + log p(c2) )
+			return (float) (
+					2 * Math.log(ancestorProb) 
+					/ 
+					(Math.log(prob1) + Math.log(prob2))
+					);
+		else // relevance similarity
+			// 2*log p(c) /  (log p(c1) + log p(c2) ) * (1-p(c))
+			return (float) (
+					2 * Math.log(ancestorProb) 
+					/ 
+					(Math.log(prob1) + Math.log(prob2))
+					*
+					(1-ancestorProb)
+					);
+	}
+	
+	/**
+	 * Returns the rank of the most informative common ancestor of two terms
+	 * or -1 if the terms have no common ancestor
+	 */
+	private int mostInformativeCommonAncestor(int term1, int term2) {
+		int[] words1 = ancestorWords[term1];
+		int[] words2 = ancestorWords[term2];
+		long[] bits1 = ancestorBits[term1];
+		long[] bits2 = ancestorBits[term2];
+		int i=0, j=0;
+		while (i < words1.length && j < words2.length) {
+			if (words1[i] < words2[j])
+				i++;
+			else if (words1[i] > words2[j])
+				j++;
+			else {
+				long common = bits1[i] & bits2[j];
+				if (common != 0)
+					return (words1[i] << 6) + Long.numberOfTrailingZeros(common);
+				i++;
+				j++;
+			}
+		}
+		return -1;
+	}
+	
 	/**
-	 * Calculate term similarity based on "Relevance"
+	 * Calculates the maximum similarity over all common ancestors, undefined
+	 * (NaN) similarities are ignored. Only needed for terms whose 
+	 * probabilities are 0 or not defined.
 	 */
-	private float relevanceSimilarity(GOTerm term1, GOTerm term2)  {
-		// calc common ancestors
-		Collection<GOTerm> commonAncestors = getCommonAncestors(term1, term2);	// iterate over common ancestors c and find 
-		// max (2*log p(c) /  (log p(c1) + log p(c2) )   )
+	private float maximumSimilarity(int term1, int term2, float prob1, float prob2) {
+		int[] words1 = ancestorWords[term1];
+		int[] words2 = ancestorWords[term2];
+		long[] bits1 = ancestorBits[term1];
+		long[] bits2 = ancestorBits[term2];
 		float max = Float.NEGATIVE_INFINITY;
-		for (GOTerm ancestor : commonAncestors) {
-			float logSim = (float) (
-				2 * Math.log(ancestor.prob) 
-				/ 
-				(Math.log(term1.prob) + Math.log(term2.prob))
-				*
-				(1-ancestor.prob)
-				);
-                       
-			if (logSim > max) max = logSim;
+		int i=0, j=0;
+		while (i < words1.length && j < words2.length) {
+			if (words1[i] < words2[j])
+				i++;
+			else if (words1[i] > words2[j])
+				j++;
+			else {
+				long common = bits1[i] & bits2[j];
+				while (common != 0) {
+					int rank = (words1[i] << 6) + Long.numberOfTrailingZeros(common);
+					float sim = similarity(probs[termByRank[rank]], prob1, prob2);
+					if (sim > max) max = sim;
+					common &= common - 1;
+				}
+				i++;
+				j++;
+			}
 		}
-		
 		return max;
 	}
 	
 	/**
-	 * Retrieves the common ancestors of two GOTerms and returns them
-	 * as a collection of GOTerm objects
+	 * Ranks all terms with a defined probability by increasing probability
+	 * and creates the sparse ancestor bitsets of all terms. Terms without 
+	 * probability are left out as they never contribute to a similarity.
 	 */
-	private Collection<GOTerm> getCommonAncestors(GOTerm term1, GOTerm term2) {
-		Collection<String> ancestorIDs = 
-			commonAncestors.getCommonAncestors(term1.ID, term2.ID);
-		// iterate over string ids and get go term from map
-		Collection<GOTerm> terms = new ArrayList<GOTerm>();
-		for (String termID : ancestorIDs)
-			terms.add(gonet.getTerm(termID));
+	private void buildAncestorBitsets(CommonAncestors commonAncestors) {
+		int termCount = gonet.getTermCount();
+		
+		// snapshot of the probabilities
+		probs = new float[termCount];
+		for (int i=0; i<termCount; i++)
+			probs[i] = gonet.getTerm(i).prob;
 		
-		return terms;
+		// rank by probability, ties by index
+		long[] order = new long[termCount];
+		int ranked=0;
+		for (int i=0; i<termCount; i++) {
+			if (probs[i] == probs[i])
+				// probabilities are non-negative, so their bits are ordered
+				order[ranked++] = ((long)Float.floatToIntBits(probs[i]) << 32) | i;
+		}
+		order = Tools.arrCopyOf(order, ranked);
+		Arrays.sort(order);
+		termByRank = new int[ranked];
+		int[] rankOf = new int[termCount];
+		Arrays.fill(rankOf, -1);
+		for (int r=0; r<ranked; r++) {
+			termByRank[r] = (int)order[r];
+			rankOf[termByRank[r]] = r;
+		}
 		
+		// sparse bitsets
+		ancestorWords = new int[termCount][];
+		ancestorBits = new long[termCount][];
+		int[] ranks = new int[termCount];
+		for (int t=0; t<termCount; t++) {
+			int count=0;
+			for (int ancestor : commonAncestors.getAncestors(t)) {
+				if (rankOf[ancestor] >= 0)
+					ranks[count++] = rankOf[ancestor];
+			}
+			Arrays.sort(ranks, 0, count);
+			// count distinct words
+			int words=0;
+			for (int k=0; k<count; k++) {
+				if (k == 0 || (ranks[k] >> 6) != (ranks[k-1] >> 6))
+					words++;
+			}
+			int[] wordPositions = new int[words];
+			long[] bits = new long[words];
+			int w=-1;
+			for (int k=0; k<count; k++) {
+				if (k == 0 || (ranks[k] >> 6) != (ranks[k-1] >> 6))
+					wordPositions[++w] = ranks[k] >> 6;
+				bits[w] |= 1L << (ranks[k] & 63);
+			}
+			ancestorWords[t] = wordPositions;
+			ancestorBits[t] = bits;
+		}
 	}
 	
 	/**
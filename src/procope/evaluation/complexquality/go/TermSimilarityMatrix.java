@@ -0,0 +1,237 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.evaluation.complexquality.go;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import procope.tools.ParallelTools;
+import procope.tools.ParallelTools.RangeTask;
+
+/**
+ * Internal class, used by {@link TermSimilaritiesSchlicker}. Holds the 
+ * similarities of all pairs of a fixed list of terms in a file which is 
+ * memory-mapped, so lookups need no calculation and the file can be shared 
+ * between processes.
+ * <p>The file consists of a header (magic number, format version, number of 
+ * terms, fingerprint of the calculator) followed by the lower triangle of 
+ * the symmetric matrix including the diagonal, row by row, as big-endian 
+ * floats. The data is mapped in chunks as a single mapping is limited to 
+ * 2 GB.
+ * 
+ * @author Jan Krumsiek
+ */
+class TermSimilarityMatrix {
+	
+	private static final int MAGIC = 0x50435453; // "PCTS"
+	private static final int VERSION = 1;
+	private static final int FINGERPRINT_LENGTH = 20;
+	private static final int HEADER_LENGTH = 12 + FINGERPRINT_LENGTH;
+	
+	// number of floats per mapped chunk
+	private static final int CHUNK_BITS = 28;
+	private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+	
+	// number of floats written at once when creating the file
+	private static final int BATCH_SIZE = 1 << 22;
+	
+	private int size;
+	private FloatBuffer[] chunks;
+	
+	private TermSimilarityMatrix(int size, FloatBuffer[] chunks) {
+		this.size = size;
+		this.chunks = chunks;
+	}
+	
+	/**
+	 * Returns the number of terms of the matrix.
+	 */
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * Returns the similarity of the terms at the given matrix positions.
+	 */
+	public float get(int pos1, int pos2) {
+		if (pos1 < pos2) {
+			int swap = pos1;
+			pos1 = pos2;
+			pos2 = swap;
+		}
+		long element = ((long)pos1 * (pos1+1) >> 1) + pos2;
+		return chunks[(int)(element >>> CHUNK_BITS)].get((int)(element & CHUNK_MASK));
+	}
+	
+	/**
+	 * Maps an existing matrix file. Returns {@code null} if the file does 
+	 * not exist or does not belong to the given size and fingerprint.
+	 * 
+	 * @param file the matrix file
+	 * @param size expected number of terms
+	 * @param fingerprint expected fingerprint of the calculator
+	 * @return the mapped matrix or {@code null}
+	 * @throws IOException if the file could not be read
+	 */
+	public static TermSimilarityMatrix load(File file, int size, byte[] fingerprint) 
+			throws IOException {
+		
+		if (!file.exists())
+			return null;
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			// check the header
+			if (raf.length() != HEADER_LENGTH + 4 * elementCount(size))
+				return null;
+			if (raf.readInt() != MAGIC || raf.readInt() != VERSION || raf.readInt() != size)
+				return null;
+			byte[] stored = new byte[FINGERPRINT_LENGTH];
+			raf.readFully(stored);
+			if (!Arrays.equals(stored, fingerprint))
+				return null;
+			
+			// map the data, the mappings stay valid after closing the file
+			FileChannel channel = raf.getChannel();
+			long elements = elementCount(size);
+			FloatBuffer[] chunks = new FloatBuffer[(int)((elements + CHUNK_MASK) >>> CHUNK_BITS)];
+			for (int c=0; c<chunks.length; c++) {
+				long first = (long)c << CHUNK_BITS;
+				long count = Math.min(elements - first, 1L << CHUNK_BITS);
+				chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, 
+						HEADER_LENGTH + 4 * first, 4 * count).asFloatBuffer();
+			}
+			return new TermSimilarityMatrix(size, chunks);
+		} finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Calculates the similarities of all pairs of the given terms and writes 
+	 * them to a new matrix file which is then mapped. The file is written to
+	 * a temporary file first and renamed afterwards, so concurrent processes
+	 * never see incomplete files.
+	 * 
+	 * @param file the matrix file to be created
+	 * @param terms term indices of the matrix positions
+	 * @param fingerprint fingerprint of the calculator
+	 * @param calculator calculator of the similarities
+	 * @param threads number of threads to use for the calculation
+	 * @return the mapped matrix
+	 * @throws IOException if the file could not be written
+	 */
+	public static TermSimilarityMatrix create(File file, final int[] terms, 
+			byte[] fingerprint, final TermSimilaritiesSchlicker calculator, int threads) 
+			throws IOException {
+		
+		int size = terms.length;
+		File tempFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		try {
+			FileOutputStream out = new FileOutputStream(tempFile);
+			try {
+				FileChannel channel = out.getChannel();
+				// header
+				ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+				header.putInt(MAGIC).putInt(VERSION).putInt(size).put(fingerprint);
+				header.flip();
+				writeFully(channel, header);
+				
+				// calculate and write the rows in batches
+				final float[][] rows = new float[size][];
+				ByteBuffer batch = ByteBuffer.allocate(4 * (int)Math.min(elementCount(size), 
+						(long)Math.max(BATCH_SIZE, size)));
+				FloatBuffer batchFloats = batch.asFloatBuffer();
+				int from=0;
+				while (from < size) {
+					// determine the rows of this batch
+					int to=from;
+					long elements=0;
+					while (to < size && (to == from || elements + to + 1 <= batchFloats.capacity())) {
+						elements += to + 1;
+						to++;
+					}
+					// calculate them in parallel
+					final int batchStart = from;
+					RangeTask[] workers = new RangeTask[threads];
+					for (int i=0; i<threads; i++) {
+						workers[i] = new RangeTask() {
+							public void process(int rowFrom, int rowTo) {
+								for (int row=batchStart+rowFrom; row<batchStart+rowTo; row++) {
+									float[] values = new float[row+1];
+									for (int col=0; col<=row; col++)
+										values[col] = calculator.computeSimilarity(terms[row], terms[col]);
+									rows[row] = values;
+								}
+							}
+						};
+					}
+					ParallelTools.processRange(to-from, 
+							ParallelTools.getBlockSize(to-from, threads), workers);
+					// write them
+					batchFloats.clear();
+					for (int row=from; row<to; row++) {
+						batchFloats.put(rows[row]);
+						rows[row] = null;
+					}
+					batch.clear();
+					batch.limit(batchFloats.position() * 4);
+					writeFully(channel, batch);
+					from = to;
+				}
+				channel.force(false);
+			} finally {
+				out.close();
+			}
+			
+			// publish the file, another process might have been faster
+			if (!tempFile.renameTo(file) && !file.exists())
+				throw new IOException("Could not rename " + tempFile + " to " + file);
+		} finally {
+			// only left over if something went wrong
+			tempFile.delete();
+		}
+		
+		TermSimilarityMatrix matrix = load(file, size, fingerprint);
+		if (matrix == null)
+			throw new IOException("Invalid term similarity matrix file: " + file);
+		return matrix;
+	}
+	
+	/**
+	 * Returns the number of stored values for a given number of terms
+	 */
+	private static long elementCount(int size) {
+		return (long)size * (size+1) >> 1;
+	}
+	
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+}
@@ -28,6 +28,7 @@ import java.util.Set;
 
 import procope.data.LocalizationData;
 import procope.data.complexes.ComplexSet;
+import procope.data.networks.FrozenNetwork;
 import procope.data.networks.ProteinNetwork;
 import procope.tools.ProCopeException;
 import procope.tools.Tools;
@@ -120,19 +121,29 @@ public class ROC {
 		float[] scores = new float[numEdges];
 		byte[] real = new byte[numEdges];
 
-		// iterate over all edges
-		int[] edgeConnections = scoreNet.getEdgesArray();
-
-		for (int i=0; i<edgeConnections.length; i+=2) {
-
-			scores[i/2] = scoreNet.getEdge(edgeConnections[i], edgeConnections[i+1]);
-			// now assign if this is a real edge, a false edge or an unknown edge
-			if (negativeSet.hasEdge(edgeConnections[i], edgeConnections[i+1]))
-				real[i/2] = 0; // false edge
-			else if (positiveSet.hasEdge(edgeConnections[i], edgeConnections[i+1]))
-				real[i/2] = 1; // true edge
-			else
-				real[i/2] = -1; // unknown edge
+		// iterate over all edges using a read-only snapshot of the score network
+		FrozenNetwork frozenScores = scoreNet.freeze();
+		int[] neighbors = frozenScores.getNeighbors();
+		float[] weights = frozenScores.getWeights();
+		
+		int index=0;
+		for (int protein : frozenScores.getProteinArray()) {
+			int end = frozenScores.getNeighborEnd(protein);
+			for (int i=frozenScores.getNeighborStart(protein); i<end; i++) {
+				int partner = neighbors[i];
+				// each undirected edge only once
+				if (partner < protein) 
+					continue;
+				scores[index] = weights[i];
+				// now assign if this is a real edge, a false edge or an unknown edge
+				if (negativeSet.hasEdge(protein, partner))
+					real[index] = 0; // false edge
+				else if (positiveSet.hasEdge(protein, partner))
+					real[index] = 1; // true edge
+				else
+					real[index] = -1; // unknown edge
+				index++;
+			}
 		}
 
 		// sort list
@@ -36,7 +36,7 @@ import procope.data.networks.NetworkEdge;
 import procope.data.networks.NetworkReader;
 import procope.data.networks.ProteinNetwork;
 import procope.evaluation.comparison.NetworkComparison;
-import procope.evaluation.comparison.Point;
+import procope.evaluation.comparison.WeightPairs;
 import procope.evaluation.networkperformance.ComplexEnrichment;
 import procope.evaluation.networkperformance.ROC;
 import procope.evaluation.networkperformance.ROCCurve;
@@ -44,7 +44,6 @@ import procope.evaluation.networkperformance.ROCCurveHandler;
 import procope.tools.BooleanExpression;
 import procope.tools.ChartTools;
 import procope.tools.InvalidExpressionException;
-import procope.tools.math.CorrelationCoefficient;
 import procope.tools.math.PearsonCoefficient;
 import procope.tools.namemapping.ProteinManager;
 
@@ -80,9 +79,9 @@ public class UseCase2 {
 		
 		// compare scores of both networks with each other by calculating a correlation coefficient
 		System.out.println("Comparing networks...");
-		List<Point> overlap = NetworkComparison.weightsOverlap(hart, pe, false);
-		CorrelationCoefficient coeff = new PearsonCoefficient(); // could also use Spearman
-		coeff.feedData(overlap);
+		WeightPairs overlap = NetworkComparison.weightPairs(hart, pe, false);
+		PearsonCoefficient coeff = new PearsonCoefficient(); // could also use Spearman
+		coeff.feedData(overlap.getX(), overlap.getY());
 		System.out.println("Correlation between the networks: " + coeff.getCorrelationCoefficient());
 		
 		// cutoff all edges from both networks which are below a given threshold 
@@ -56,5 +56,20 @@ public class HierarchicalClusterer implements Clusterer {
 		HierarchicalTreeNode tree = HierarchicalClusteringTrees.clusterSimilarities(net, linkage);
 		return tree.extractClustering(threshold);
 	}
+	
+	/**
+	 * Performs hierarchical agglomerative clustering on given similarity 
+	 * network and cuts the tree at multiple thresholds. The tree is only
+	 * calculated once, the threshold given in the constructor is ignored.
+	 * 
+	 * @param net similarity network to be clustered
+	 * @param thresholds cutoff thresholds
+	 * @return one clustering for each threshold in the given order
+	 * @see HierarchicalTreeNode#extractClusterings(float[])
+	 */
+	public ComplexSet[] cluster(ProteinNetwork net, float[] thresholds) {
+		HierarchicalTreeNode tree = HierarchicalClusteringTrees.clusterSimilarities(net, linkage);
+		return tree.extractClusterings(thresholds);
+	}
 
 }
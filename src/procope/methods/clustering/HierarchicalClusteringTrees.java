@@ -27,7 +27,9 @@ import java.util.List;
 import java.util.Set;
 import java.util.Stack;
 
+import procope.data.networks.FrozenNetwork;
 import procope.data.networks.ProteinNetwork;
+import procope.tools.ParallelTools;
 import procope.tools.ProCopeException;
 import procope.tools.Tools;
 
@@ -42,6 +44,12 @@ import procope.tools.Tools;
  * <i>Computational Statistics Quarterly</i>, 1984, 1, 101-113<br/>
  * 
  * <p>Supports single linkage, complete linkage, UPGMA and WPGMA clustering
+ * <p>For sparse similarity networks the clustering works on sparse rows
+ * which only contain the non-zero similarities of each cluster, so the 
+ * memory needed grows with the number of edges instead of the squared 
+ * number of proteins. Single linkage is then calculated from a maximum 
+ * spanning forest. The dense similarity matrix is only used for networks 
+ * with many edges. Both variants result in the same clustering.
  * <p><b>Note:</b> As there are seems to be a confusion in the literature about
  * UPGMA and WPGMA we adapt the notation of the paper above. UPGMA calculates
  * the average of two clusters as the average similarty between all members.
@@ -62,6 +70,14 @@ import procope.tools.Tools;
 
 public class HierarchicalClusteringTrees {
 
+	// the sparse implementation is used if the number of similarities is 
+	// less than 1/SPARSE_FACTOR of the size of the dense matrix
+	private static final int SPARSE_FACTOR = 8;
+	
+	// minimum number of active clusters for parallel nearest neighbor 
+	// searches and matrix updates
+	private static final int PARALLEL_SIZE = 4096;
+
 	// avoid instantiation
 	private HierarchicalClusteringTrees() {
 	}
@@ -98,11 +114,43 @@ public class HierarchicalClusteringTrees {
 		Collections.sort(protList);
 		int[] mapBack = HierarchicalClusteringTrees.getBackMapping(protList);
 		
-		// create matrix
-		float[][] simMatrix = generateMatrix(net, protList, mapBack);
+		// collect similarities between the proteins
+		int size = protList.size();
+		FrozenNetwork frozen = net.freeze();
+		int[] neighbors = frozen.getNeighbors();
+		float[] weights = frozen.getWeights();
+		int maxEdges=0;
+		for (int protein : protList)
+			maxEdges += frozen.getDegree(protein);
+		int[] first = new int[maxEdges];
+		int[] second = new int[maxEdges];
+		float[] sims = new float[maxEdges];
+		int count=0;
+		for (int i=0; i<size; i++) {
+			int protein = protList.get(i);
+			int end = frozen.getNeighborEnd(protein);
+			for (int pos=frozen.getNeighborStart(protein); pos<end; pos++) {
+				// each edge once, both proteins must be in the restricted set
+				int partner = neighbors[pos];
+				if (partner > protein && partner < mapBack.length && mapBack[partner] >= 0) {
+					first[count] = i;
+					second[count] = mapBack[partner];
+					sims[count++] = weights[pos];
+				}
+			}
+		}
+		frozen = null;
 		
-		// do clustering
-		HierarchicalTreeNode root = clusterSimilarities(simMatrix, linkage);
+		// do clustering, use sparse rows unless the network is rather dense
+		HierarchicalTreeNode root;
+		if ((long)count * SPARSE_FACTOR < (long)size * size) 
+			root = SparseHierarchicalEngine.cluster(size, first, second, sims, count, linkage);
+		else {
+			float[][] simMatrix = generateMatrix(size, first, second, sims, count);
+			first = second = null;
+			sims = null;
+			root = clusterSimilarities(simMatrix, linkage);
+		}
 		
 		mapTree(root, protList);
 		
@@ -113,23 +161,24 @@ public class HierarchicalClusteringTrees {
 	/**
 	 * Performs the clustering using NN chains
 	 */
-	@SuppressWarnings("unchecked")
 	private static HierarchicalTreeNode clusterSimilarities(float[][] sims, HierarchicalLinkage linkage) {
 		
 		final int numElements = sims.length;
 		int numClusters = numElements;
 		
 		// generate initial clusters
-		ArrayList<Integer>[] arrClusters = new ArrayList[numElements];
+		int[] clusterSizes = new int[numElements];
 		HierarchicalTreeNode[] arrTree = new HierarchicalTreeNode[numElements]; 
 		for (int i=0; i<numElements; i++) {
-			ArrayList<Integer> newcluster = new ArrayList<Integer>();
-			newcluster.add(i);
-		//	clusters.add(newcluster);
-			arrClusters[i] = newcluster;
+			clusterSizes[i] = 1;
 			arrTree[i] = new HierarchicalTreeNode(i);
 		}
 		
+		// nearest neighbor searches and matrix updates only iterate over the 
+		// compact, sorted list of active clusters
+		DenseMatrix matrix = new DenseMatrix(sims, linkage, 
+				numElements >= PARALLEL_SIZE ? ParallelTools.getDefaultThreads() : 1);
+		
 		// generate NNchain objects
 		int curChainIndex=0;
 		int[] nnChain = new int[numElements];
@@ -141,30 +190,17 @@ public class HierarchicalClusteringTrees {
 		while (numClusters > 1) {
 			
 			// get nearest neighbor
-			int NN=-1;
-			float maxSim = Float.NEGATIVE_INFINITY;
-			for (int i=0; i<arrClusters.length; i++) {
-				if (arrClusters[i] != null && i!=last) {
-					// calculate similarity according to formula
-					if (sims[last][i] > maxSim) {
-						maxSim = sims[last][i];
-						NN = i;
-					}
-				}
-			}
+			int NN = matrix.nearestNeighbor(last);
+			float maxSim = sims[last][NN];
 			
 			// RNN?
 			if (curChainIndex>0 && NN == nnChain[curChainIndex-1]) {
 				int index1 = nnChain[curChainIndex-1];
 				int index2 = nnChain[curChainIndex];
-				int size1 = arrClusters[index1].size();
-				int size2 = arrClusters[index2].size();
+				int size1 = clusterSizes[index1];
+				int size2 = clusterSizes[index2];
 				// merge clusters
-				ArrayList<Integer> merged = arrClusters[index1];
-				merged.addAll(arrClusters[index2]);
-				// remove old references, get new int value and add reference
-				arrClusters[index1] = merged;
-				arrClusters[index2] = null;
+				clusterSizes[index1] += size2;
 				// now merge trees
 				HierarchicalTreeNode newNode = new HierarchicalTreeNode(-1, maxSim);
 				newNode.addChild(arrTree[index1]);
@@ -173,41 +209,7 @@ public class HierarchicalClusteringTrees {
 				arrTree[index2] = null;
 
 				// now update scores in matrix according to linkage
-				if (linkage == HierarchicalLinkage.UPGMA) {
-					for (int i=0; i<numElements; i++) {
-						if (arrClusters[i] != null && i!=index1 && i!=index2) {
-							// new score = avg of old scores
-							sims[index1][i] = sims[i][index1] =  
-								((float)size1 / (float)(size1+size2)) * sims[index1][i] +
-								((float)size2 / (float)(size1+size2)) * sims[index2][i];
-							//
-						}
-					}
-				} else if (linkage == HierarchicalLinkage.SINGLE_LINK) {
-					for (int i=0; i<numElements; i++) {
-						if (arrClusters[i] != null && i!=index1 && i!=index2) {
-							// new score = max of old scores
-							sims[index1][i] = sims[i][index1] =  
-								max(sims[index1][i], sims[index2][i]);
-						}
-					}
-				} else if (linkage == HierarchicalLinkage.WPGMA) {
-					for (int i=0; i<numElements; i++) {
-						if (arrClusters[i] != null && i!=index1 && i!=index2) {
-							// new score = 50% of each old score
-							sims[index1][i] = sims[i][index1] =  
-								sims[index1][i] * 0.5f + sims[index2][i] * 0.5f;
-						}
-					}
-				} else if (linkage == HierarchicalLinkage.COMPLETE_LINK) {
-					for (int i=0; i<numElements; i++) {
-						if (arrClusters[i] != null && i!=index1 && i!=index2) {
-							// new score = min of old scores
-							sims[index1][i] = sims[i][index1] =  
-								min(sims[index1][i], sims[index2][i]);
-						}
-					}
-				}
+				matrix.merge(index1, index2, size1, size2);
 				
 				if (curChainIndex > 1) {
 					// there is something left => step backward in the chain  
@@ -215,9 +217,7 @@ public class HierarchicalClusteringTrees {
 					last = nnChain[curChainIndex];
 				} else {
 					// need to start a new chain
-					int nextChain=0;
-					while (arrClusters[nextChain] == null)
-						nextChain++;
+					int nextChain = matrix.firstActive();
 					nnChain[0] = nextChain;
 					last = nextChain;
 					curChainIndex = 0;
@@ -234,7 +234,191 @@ public class HierarchicalClusteringTrees {
 			
 		}
 		
-		return arrTree[last];
+		// the only remaining cluster
+		return arrTree[matrix.firstActive()];
+	}
+	
+	/**
+	 * Dense similarity matrix with a compact list of the active clusters. 
+	 * Nearest neighbor searches and updates after merges can be split over
+	 * multiple threads.
+	 */
+	private static class DenseMatrix {
+		
+		private float[][] sims;
+		private HierarchicalLinkage linkage;
+		
+		// sorted list of active clusters
+		private int[] active;
+		private int activeCount;
+		
+		// workers, only one of them for sequential processing
+		private int threads;
+		private NNSearch sequential = new NNSearch();
+		private NNSearch[] searchers;
+		private ParallelTools.RangeTask[] updaters;
+		
+		// parameters of the current step
+		private int current;
+		private int index1, index2;
+		private float weight1, weight2;
+		
+		DenseMatrix(float[][] sims, HierarchicalLinkage linkage, int threads) {
+			this.sims = sims;
+			this.linkage = linkage;
+			this.threads = threads;
+			activeCount = sims.length;
+			active = new int[activeCount];
+			for (int i=0; i<activeCount; i++)
+				active[i] = i;
+			
+			if (threads > 1) {
+				searchers = new NNSearch[threads];
+				updaters = new ParallelTools.RangeTask[threads];
+				for (int t=0; t<threads; t++) {
+					searchers[t] = new NNSearch();
+					updaters[t] = new ParallelTools.RangeTask() {
+						public void process(int from, int to) {
+							update(from, to);
+						}
+					};
+				}
+			}
+		}
+		
+		/**
+		 * returns the smallest active cluster
+		 */
+		int firstActive() {
+			return active[0];
+		}
+		
+		/**
+		 * finds the most similar active cluster, ties are resolved towards
+		 * the cluster with the smallest index
+		 */
+		int nearestNeighbor(int cluster) {
+			current = cluster;
+			if (threads == 1 || activeCount < PARALLEL_SIZE) {
+				sequential.reset();
+				sequential.process(0, activeCount);
+				return sequential.nn;
+			}
+			
+			for (NNSearch search : searchers)
+				search.reset();
+			ParallelTools.processRange(activeCount, 
+					ParallelTools.getBlockSize(activeCount, threads), searchers);
+			// combine the results of the workers
+			int NN=-1;
+			float maxSim = Float.NEGATIVE_INFINITY;
+			for (NNSearch search : searchers) {
+				if (search.nn >= 0 && (search.maxSim > maxSim || 
+						(search.maxSim == maxSim && search.nn < NN))) {
+					maxSim = search.maxSim;
+					NN = search.nn;
+				}
+			}
+			return NN;
+		}
+		
+		/**
+		 * updates the similarities of the merged cluster index1 and removes 
+		 * cluster index2 from the list of active clusters
+		 */
+		void merge(int index1, int index2, int size1, int size2) {
+			this.index1 = index1;
+			this.index2 = index2;
+			weight1 = (float)size1 / (float)(size1+size2);
+			weight2 = (float)size2 / (float)(size1+size2);
+			
+			if (threads == 1 || activeCount < PARALLEL_SIZE)
+				update(0, activeCount);
+			else
+				ParallelTools.processRange(activeCount, 
+						ParallelTools.getBlockSize(activeCount, threads), updaters);
+			
+			// remove from active list
+			int pos = Arrays.binarySearch(active, 0, activeCount, index2);
+			System.arraycopy(active, pos+1, active, pos, activeCount-pos-1);
+			activeCount--;
+		}
+		
+		/**
+		 * updates the similarities of the merged cluster to the active 
+		 * clusters at the given positions of the active list, one loop for
+		 * each linkage method
+		 */
+		private void update(int from, int to) {
+			float[] row1 = sims[index1];
+			float[] row2 = sims[index2];
+			switch (linkage) {
+			case UPGMA:
+				// new score = avg of old scores
+				for (int pos=from; pos<to; pos++) {
+					int i = active[pos];
+					if (i!=index1 && i!=index2)
+						row1[i] = sims[i][index1] = weight1 * row1[i] + weight2 * row2[i];
+				}
+				break;
+			case SINGLE_LINK:
+				// new score = max of old scores
+				for (int pos=from; pos<to; pos++) {
+					int i = active[pos];
+					if (i!=index1 && i!=index2)
+						row1[i] = sims[i][index1] = max(row1[i], row2[i]);
+				}
+				break;
+			case WPGMA:
+				// new score = 50% of each old score
+				for (int pos=from; pos<to; pos++) {
+					int i = active[pos];
+					if (i!=index1 && i!=index2)
+						row1[i] = sims[i][index1] = row1[i] * 0.5f + row2[i] * 0.5f;
+				}
+				break;
+			case COMPLETE_LINK:
+				// new score = min of old scores
+				for (int pos=from; pos<to; pos++) {
+					int i = active[pos];
+					if (i!=index1 && i!=index2)
+						row1[i] = sims[i][index1] = min(row1[i], row2[i]);
+				}
+				break;
+			}
+		}
+		
+		/**
+		 * nearest neighbor search on a part of the active list, keeps the 
+		 * best cluster over all processed parts
+		 */
+		private class NNSearch implements ParallelTools.RangeTask {
+			int nn=-1;
+			float maxSim = Float.NEGATIVE_INFINITY;
+			
+			void reset() {
+				nn = -1;
+				maxSim = Float.NEGATIVE_INFINITY;
+			}
+			
+			public void process(int from, int to) {
+				float[] row = sims[current];
+				// ascending order, so the first maximum has the smallest index
+				int bestNN=-1;
+				float bestSim = Float.NEGATIVE_INFINITY;
+				for (int pos=from; pos<to; pos++) {
+					int i = active[pos];
+					if (row[i] > bestSim && i != current) {
+						bestSim = row[i];
+						bestNN = i;
+					}
+				}
+				if (bestNN >= 0 && (bestSim > maxSim || (bestSim == maxSim && bestNN < nn))) {
+					maxSim = bestSim;
+					nn = bestNN;
+				}
+			}
+		}
 	}
 	
 
@@ -285,34 +469,20 @@ public class HierarchicalClusteringTrees {
 	}
 	
 	/**
-	 * generates a 2D similarity matrix from a given scores network
+	 * generates a 2D similarity matrix from the given similarities
 	 */
-	private static float[][] generateMatrix(ProteinNetwork network, List<Integer> proteins, int[] mapBack) {
+	private static float[][] generateMatrix(int size, int[] first, int[] second, float[] sims, int count) {
 	
-		// only allow undirected networks
-		if (network.isDirected())
-			throw new UnsupportedOperationException("Cannot generate networks of directed networks");
-		
-		// create boolean matrix for proteins
-		int maxVal = Tools.findMax(proteins);
-		boolean[] inList = new boolean[maxVal+1];
-		for (int protein : proteins)
-			inList[protein] = true;
-		
 		// generate empty matrix
-		float[][] matrix = new float[proteins.size()][proteins.size()];
+		float[][] matrix = new float[size][size];
 		
 		// iterate over all edges
-		int[] edges = network.getEdgesArray();
-		for (int i=0; i<edges.length; i+=2) {
-			// verify that both proteins are in the restricted protein set
-			if (!(edges[i] > maxVal) && inList[edges[i]] && !(edges[i+1] > maxVal) && inList[edges[i+1]]) {
-				float score = network.getEdge(edges[i], edges[i+1]);
-				if (score != score) // check for NaN
-					score = 0;
-				// write to matrix
-				matrix[mapBack[edges[i]]][mapBack[edges[i+1]]] = matrix[mapBack[edges[i+1]]][mapBack[edges[i]]] = score; 
-			}
+		for (int i=0; i<count; i++) {
+			float score = sims[i];
+			if (score != score) // check for NaN
+				score = 0;
+			// write to matrix
+			matrix[first[i]][second[i]] = matrix[second[i]][first[i]] = score; 
 		}
 		
 		return matrix;
@@ -20,10 +20,23 @@
  */
 package procope.methods.clustering;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Stack;
 
 import procope.data.complexes.ComplexSet;
+import procope.tools.ProCopeException;
+import procope.tools.namemapping.ProteinManager;
 
 
 /**
@@ -43,6 +56,9 @@ import procope.data.complexes.ComplexSet;
 
 public class HierarchicalTreeNode {
 	
+	// identifies the binary tree format
+	private static final int BINARY_MAGIC = 0x48434c31;
+	
 	/**
 	 * Similarity at which the children of this node were merged
 	 */
@@ -94,57 +110,217 @@ public class HierarchicalTreeNode {
 	 * @return resulting clustering
 	 */
 	public ComplexSet extractClustering(float threshold) {
-		// initialize builder
-		ArrayList<ArrayList<Integer>> complexBuilder = new ArrayList<ArrayList<Integer>>();
-		recFindCuts(threshold, complexBuilder);
-		return new ComplexSet(complexBuilder);
+		return extractClusterings(new float[] {threshold})[0];
 	}
 	
 	/**
-	 * get all complexes in this subtree (recursive method)
+	 * Extracts the clusterings for multiple similarity thresholds in one
+	 * traversal of the tree. This is much faster than calling
+	 * {@link #extractClustering(float)} for each threshold.
+	 * 
+	 * @param thresholds cutoff similarity values, may be in any order
+	 * @return resulting clusterings, one for each threshold in the order 
+	 *         of the given thresholds
 	 */
-	private void accumulateClusterBelow(ArrayList<Integer> accumulator) {
-		if (children.size() == 0) 
-			// leaf
-			accumulator.add(label);
-		else {
-			// recursively call children
-			for (HierarchicalTreeNode child : children)
-				child.accumulateClusterBelow(accumulator);
+	public ComplexSet[] extractClusterings(float[] thresholds) {
+		
+		FlatTree flat = new FlatTree(this);
+		int nodes = flat.parents.length;
+		
+		// sort thresholds, remember original positions
+		final int count = thresholds.length;
+		final float[] values = thresholds;
+		Integer[] order = new Integer[count];
+		for (int t=0; t<count; t++)
+			order[t] = t;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer t1, Integer t2) {
+				return Float.compare(values[t1], values[t2]);
+			}
+		});
+		float[] sorted = new float[count];
+		for (int t=0; t<count; t++)
+			sorted[t] = thresholds[order[t]];
+		
+		// maximum similarity of all ancestors of each node
+		float[] maxAncestor = new float[nodes];
+		maxAncestor[0] = Float.NEGATIVE_INFINITY;
+		for (int i=1; i<nodes; i++) {
+			int parent = flat.parents[i];
+			maxAncestor[i] = Math.max(maxAncestor[parent], flat.similarities[parent]);
+		}
+		
+		// a node is a cluster for all thresholds above the similarities of 
+		// its ancestors up to its own similarity, leaves are singletons for
+		// all thresholds above the similarities of their ancestors
+		List<ArrayList<ArrayList<Integer>>> builders = new ArrayList<ArrayList<ArrayList<Integer>>>();
+		for (int t=0; t<count; t++)
+			builders.add(new ArrayList<ArrayList<Integer>>());
+		for (int i=0; i<nodes; i++) {
+			// first threshold above maxAncestor
+			int from = upperBound(sorted, maxAncestor[i]);
+			int to = flat.isLeaf[i] ? count : upperBound(sorted, flat.similarities[i]);
+			if (from >= to)
+				continue;
+			ArrayList<Integer> cluster = new ArrayList<Integer>(flat.leafCounts[i]);
+			int leafEnd = flat.leafStarts[i] + flat.leafCounts[i];
+			for (int leaf=flat.leafStarts[i]; leaf<leafEnd; leaf++) 
+				cluster.add(flat.leaves[leaf]);
+			for (int t=from; t<to; t++) 
+				builders.get(t).add(cluster);
 		}
+		
+		// map back to the original order of the thresholds
+		ComplexSet[] results = new ComplexSet[count];
+		for (int t=0; t<count; t++) 
+			results[order[t]] = new ComplexSet(builders.get(t));
+		return results;
 	}
 	
 	/**
-	 * find nodes below which we will cut
+	 * Writes this tree to a stream in a compact binary format. The tree is
+	 * stored as an array of parent indices and an array of similarities, 
+	 * followed by the labels of the leaf proteins. Proteins are stored by 
+	 * their {@link ProteinManager labels}, so the tree can be read again in 
+	 * a later run.
+	 * 
+	 * @param outstream stream to write the tree to
+	 * @throws IOException if the tree could not be written
+	 * @see #readTree(InputStream)
+	 */
+	public void writeTree(OutputStream outstream) throws IOException {
+		FlatTree flat = new FlatTree(this);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outstream));
+		out.writeInt(BINARY_MAGIC);
+		out.writeInt(flat.parents.length);
+		for (int parent : flat.parents)
+			out.writeInt(parent);
+		for (float similarity : flat.similarities)
+			out.writeFloat(similarity);
+		for (int leaf : flat.leaves)
+			out.writeUTF(ProteinManager.getLabel(leaf));
+		out.flush();
+	}
+	
+	/**
+	 * Reads a tree which was written by {@link #writeTree(OutputStream)}.
+	 * 
+	 * @param instream stream to read the tree from
+	 * @return root node of the tree
+	 * @throws IOException if the tree could not be read
+	 * @throws ProCopeException if the stream does not contain a tree
 	 */
-	private void recFindCuts(float threshold, ArrayList<ArrayList<Integer>> complexBuilder) {
-		// current cluster similarty above threshold
-		if (this.similarity >= threshold) {
-			// add all leafs as new cluster
-			ArrayList<Integer> newCluster = new ArrayList<Integer>();
-			accumulateClusterBelow(newCluster);
-			complexBuilder.add(newCluster);
-		} else {
-			// if this is a leaf => add as singleton cluster
-			if (children.size() == 0) {
-				complexBuilder.add(singleton(label));
-			} else {
-				// go deeper
-				for (HierarchicalTreeNode child : children)
-					child.recFindCuts(threshold, complexBuilder);
+	public static HierarchicalTreeNode readTree(InputStream instream) throws IOException, ProCopeException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(instream));
+		if (in.readInt() != BINARY_MAGIC)
+			throw new ProCopeException("Invalid hierarchical tree file");
+		int nodes = in.readInt();
+		int[] parents = new int[nodes];
+		for (int i=0; i<nodes; i++)
+			parents[i] = in.readInt();
+		
+		// create nodes, parents always come before their children
+		HierarchicalTreeNode[] tree = new HierarchicalTreeNode[nodes];
+		for (int i=0; i<nodes; i++) {
+			tree[i] = new HierarchicalTreeNode(-1, in.readFloat());
+			if (i > 0) {
+				if (parents[i] < 0 || parents[i] >= i)
+					throw new ProCopeException("Invalid hierarchical tree file");
+				tree[parents[i]].addChild(tree[i]);
 			}
 		}
 		
+		// leaves get their proteins in the stored order
+		for (int i=0; i<nodes; i++) {
+			if (tree[i].children.size() == 0)
+				tree[i].label = ProteinManager.getInternalID(in.readUTF());
+		}
+		
+		return nodes > 0 ? tree[0] : null;
 	}
 	
 	/**
-	 * create a singleton cluster
+	 * returns the index of the first value greater than the given value
 	 */
-	private ArrayList<Integer> singleton(int prot) {
-		ArrayList<Integer> single = new ArrayList<Integer>();
-		single.add(prot);
-		return single;
+	private static int upperBound(float[] sorted, float value) {
+		int low=0, high=sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] <= value)
+				low = mid+1;
+			else
+				high = mid;
+		}
+		return low;
 	}
-
 	
+	/**
+	 * Array representation of a tree. Nodes are numbered in pre-order so
+	 * the leaves below each node form a contiguous range of the leaves array.
+	 * Built without recursion as trees can be very deep.
+	 */
+	private static class FlatTree {
+		
+		int[] parents;
+		float[] similarities;
+		int[] labels;
+		boolean[] isLeaf;
+		int[] leafStarts;
+		int[] leafCounts;
+		int[] leaves;
+		
+		FlatTree(HierarchicalTreeNode root) {
+			// pre-order traversal
+			ArrayList<HierarchicalTreeNode> order = new ArrayList<HierarchicalTreeNode>();
+			ArrayList<Integer> parentList = new ArrayList<Integer>();
+			Stack<HierarchicalTreeNode> stack = new Stack<HierarchicalTreeNode>();
+			Stack<Integer> parentStack = new Stack<Integer>();
+			stack.push(root);
+			parentStack.push(-1);
+			while (!stack.empty()) {
+				HierarchicalTreeNode node = stack.pop();
+				int index = order.size();
+				order.add(node);
+				parentList.add(parentStack.pop());
+				// push children in reverse order so they are visited in order
+				HierarchicalTreeNode[] children = node.children.toArray(new HierarchicalTreeNode[0]);
+				for (int i=children.length-1; i>=0; i--) {
+					stack.push(children[i]);
+					parentStack.push(index);
+				}
+			}
+			
+			int nodes = order.size();
+			parents = new int[nodes];
+			similarities = new float[nodes];
+			labels = new int[nodes];
+			isLeaf = new boolean[nodes];
+			leafCounts = new int[nodes];
+			int leafCount=0;
+			for (int i=0; i<nodes; i++) {
+				HierarchicalTreeNode node = order.get(i);
+				parents[i] = parentList.get(i);
+				similarities[i] = node.similarity;
+				labels[i] = node.label;
+				if (node.children.size() == 0) {
+					isLeaf[i] = true;
+					leafCounts[i] = 1;
+					leafCount++;
+				}
+			}
+			
+			// leaves in pre-order, count leaves below each node
+			leaves = new int[leafCount];
+			leafStarts = new int[nodes];
+			int leaf=0;
+			for (int i=0; i<nodes; i++) {
+				leafStarts[i] = leaf;
+				if (isLeaf[i])
+					leaves[leaf++] = labels[i];
+			}
+			for (int i=nodes-1; i>0; i--)
+				leafCounts[parents[i]] += leafCounts[i];
+		}
+	}
+
 }
@@ -21,13 +21,14 @@
 package procope.methods.clustering;
 
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Set;
+import java.util.List;
 
 import procope.data.complexes.Complex;
 import procope.data.complexes.ComplexSet;
+import procope.data.networks.FrozenNetwork;
 import procope.data.networks.ProteinNetwork;
-import procope.tools.Tools;
+import procope.tools.ParallelTools;
+import procope.tools.ProCopeException;
 
 
 
@@ -44,12 +45,19 @@ import procope.tools.Tools;
  * are between 0.0 and 1.0.
  * <p> Note that it might not make very much sense to evaluate a clustering 
  * with a scores network it was <u>not</u> derived from.
+ * <p>The calculation works on a {@link ProteinNetwork#freeze() snapshot} 
+ * of the network and only touches the neighbors of each protein. Several
+ * clusterings of the same network (e.g. the results of an inflation sweep
+ * of the {@link MarkovClusterer}) can be evaluated at once using
+ * {@link #calculateEfficiencies(ProteinNetwork, List, int)}, the costly
+ * per-protein part of the calculation is then done only once.
  * 
  * @author Jan Krumsiek
  */
 
 public class MCLEfficiencyCalculator {
-
+	
+	private static final float DEFAULT_R = 2.0f;
 
 	/**
 	 * Calculate performance of the clustering using a given complex network.
@@ -60,104 +68,202 @@ public class MCLEfficiencyCalculator {
 	 * @return efficiency value between 0.0 and 1.0
 	 */
 	public static double calculateEfficiency(ProteinNetwork network, ComplexSet clustering) {
-		return calculateEfficiency(network, clustering, 2.0f);
+		return calculateEfficiency(network, clustering, 1);
 	}
 	
 	/**
-	 * Calculate performance of the clustering using a given complex network.
-	 * Requires a value for the <i>r</i> parameter. If you have no idea what
-	 * that parameter is just call 
-	 * {@link #calculateEfficiency(ProteinNetwork, ComplexSet)}.
+	 * Calculate performance of the clustering using a given complex network
+	 * using multiple threads. Uses a value of 2.0 for the <i>r</i> parameter.
 	 * 
 	 * @param network scores network used for evaluation
 	 * @param clustering clustering to be evaluated
-	 * @param value for the <i>r</i> parameter
+	 * @param threads number of threads to use
 	 * @return efficiency value between 0.0 and 1.0
+	 * @throws ProCopeException if {@code threads < 1}
+	 * @see ParallelTools#getDefaultThreads()
+	 */
+	public static double calculateEfficiency(ProteinNetwork network, ComplexSet clustering, 
+			int threads) throws ProCopeException {
+		return calculateEfficiencies(network, new ComplexSet[] {clustering}, DEFAULT_R, threads)[0];
+	}
+	
+	/**
+	 * Calculates the performance of several clusterings of the same network 
+	 * at once, e.g. the clusterings for different inflation coefficients.
+	 * The weights of the edges around each protein are only processed once 
+	 * for all clusterings. Uses a value of 2.0 for the <i>r</i> parameter.
+	 * <p>The result is the same as calling 
+	 * {@link #calculateEfficiency(ProteinNetwork, ComplexSet)} for each 
+	 * clustering. 
+	 * 
+	 * @param network scores network used for evaluation
+	 * @param clusterings clusterings to be evaluated
+	 * @param threads number of threads to use
+	 * @return efficiency values in the order of the given clusterings
+	 * @throws ProCopeException if {@code threads < 1}
+	 * @see ParallelTools#getDefaultThreads()
+	 */
+	public static double[] calculateEfficiencies(ProteinNetwork network, 
+			List<ComplexSet> clusterings, int threads) throws ProCopeException {
+		return calculateEfficiencies(network, 
+				clusterings.toArray(new ComplexSet[clusterings.size()]), DEFAULT_R, threads);
+	}
+	
+	/**
+	 * Calculate performance of the clusterings using a given complex network.
+	 * Requires a value for the <i>r</i> parameter.
+	 * 
+	 * @param network scores network used for evaluation
+	 * @param clusterings clusterings to be evaluated
+	 * @param r value for the <i>r</i> parameter
+	 * @param threads number of threads to use
+	 * @return efficiency values between 0.0 and 1.0
 	 */
-	private static double calculateEfficiency(ProteinNetwork network, ComplexSet clustering, float r) {
+	private static double[] calculateEfficiencies(ProteinNetwork network, 
+			ComplexSet[] clusterings, final float r, int threads) {
 		
-		Set<Integer> proteins = network.getProteins();
-		int maxID = Tools.findMax(proteins);
+		if (threads < 1)
+			throw new ProCopeException("Number of threads must be at least 1");
 		
-		// get a mapping of each protein to its cluster(s)
-		HashMap<Integer, Complex> clustersForProteins = new HashMap<Integer, Complex>();
-		for (Complex complex : clustering) {
-			for (int protein : complex)
-				clustersForProteins.put(protein, complex);
-		}
+		final FrozenNetwork frozen = network.freeze();
+		final int[] proteins = frozen.getProteinArray();
+		final ClusterIndex[] indices = new ClusterIndex[clusterings.length];
+		for (int c=0; c<clusterings.length; c++)
+			indices[c] = new ClusterIndex(clusterings[c], frozen.getHighestID());
+		
+		// largest neighborhood determines the size of the scratch buffers
+		int maxDegree = 0;
+		for (int protein : proteins)
+			maxDegree = Math.max(maxDegree, frozen.getDegree(protein));
 		
-		// sum up scores for all proteins
-		double sum=0;
-		for (int protein : proteins) {
-			float cov = calculateCoverage(protein, network, clustersForProteins.get(protein), r, maxID);
-			sum += cov; 
+		// coverage of each protein for each clustering
+		final float[][] coverages = new float[clusterings.length][proteins.length];
+		final int scratchSize = maxDegree;
+		ParallelTools.RangeTask[] workers = new ParallelTools.RangeTask[threads];
+		for (int t=0; t<threads; t++) {
+			workers[t] = new ParallelTools.RangeTask() {
+				// relative frequencies of the current neighborhood
+				private float[] pi = new float[scratchSize];
+				public void process(int from, int to) {
+					for (int i=from; i<to; i++)
+						calculateCoverages(proteins[i], i, frozen, indices, r, pi, coverages);
+				}
+			};
 		}
+		ParallelTools.processRange(proteins.length, 
+				ParallelTools.getBlockSize(proteins.length, threads), workers);
 		
-		sum /= (float)proteins.size();
-
-		return sum;
+		// sum up scores for all proteins, always in the same order
+		double[] result = new double[clusterings.length];
+		for (int c=0; c<clusterings.length; c++) {
+			double sum=0;
+			for (int i=0; i<proteins.length; i++)
+				sum += coverages[c][i];
+			result[c] = sum / (float)proteins.length;
+		}
+		return result;
 	}
 
-	private static float calculateCoverage(int protein, ProteinNetwork network,
-			Complex complex, float r, int maxID) {
+	/**
+	 * calculates the coverage of one protein for all clusterings, the 
+	 * distribution of the edge weights only depends on the protein and is 
+	 * shared by all clusterings
+	 */
+	private static void calculateCoverages(int protein, int position, FrozenNetwork frozen,
+			ClusterIndex[] indices, float r, float[] pi, float[][] coverages) {
 		
-		// get network partners for this protein as boolean array for efficiency
-		float[] partnerScores = new float[maxID+1];
-		Arrays.fill(partnerScores, Float.NaN);
-		for (int partner : network.getNeighborArray(protein)) {
-			float score = network.getEdge(protein, partner);
-			if (score == score) // NaN check
-				partnerScores[partner] = score; 
-		}
+		int[] neighbors = frozen.getNeighbors();
+		float[] weights = frozen.getWeights();
+		int start = frozen.getNeighborStart(protein);
+		int degree = frozen.getNeighborEnd(protein) - start;
 		
-		int sizeP = complex.size();
-		int sizeP_and_S = complex.size();
+		// sum of all scores of the neighbors
 		float sum=0;
-		// iterate over all other proteins 
-		for (int other : network.getNeighborArray(protein)) {
-				sum += partnerScores[other];
-				// also contained in complex?
-				if (!complex.contains(other))
-					sizeP_and_S++;
-				
+		for (int k=0; k<degree; k++)
+			sum += weights[start+k];
+		
+		// calculate relative frequencies and their r-norm
+		float ctr = 0;
+		for (int k=0; k<degree; k++) {
+			pi[k] = weights[start+k] / sum;
+			ctr += (float) Math.pow(pi[k], r);
 		}
-		// if the protein has no self-edge: add another value to P u S
+		ctr = (float) Math.pow(ctr, 1 / (r - 1));
 		
-		// calculate relative frequencies
-		float[] pi = new float[maxID+1];
-		for (int other : network.getNeighborArray(protein)) {
-			pi[other] = partnerScores[other] / sum;
+		for (int c=0; c<indices.length; c++) {
+			ClusterIndex index = indices[c];
+			int cluster = index.getCluster(protein);
+			int sizeP = index.getSize(cluster);
+			int sizeP_and_S = sizeP;
+			float pi_sum_div = 0;
+			for (int k=0; k<degree; k++) {
+				int other = neighbors[start+k];
+				// also contained in complex?
+				if (index.contains(cluster, protein, other)) {
+					pi_sum_div += pi[k];
+				} else {
+					pi_sum_div -= pi[k];
+					sizeP_and_S++;
+				}
+			}
+			coverages[c][position] = 1 - (sizeP - (pi_sum_div) / ctr) / sizeP_and_S;
 		}
+	}
+	
+	/**
+	 * maps the proteins to the clusters of a clustering and provides fast
+	 * membership lookups using the sorted members of each cluster 
+	 */
+	private static class ClusterIndex {
 		
-		// calculate rest whatever that is
-		float pi_sum_div = 0;
-		float ctr = ctr(pi, r);
+		private int[] clusterOf;
+		private int[][] members;
+		private int[] sizes;
 		
-		for (int i = 1; i < maxID+1; i++) {
-			if (complex.contains(i)) {
-				pi_sum_div += pi[i];
-			} else {
-				pi_sum_div -= pi[i];
+		public ClusterIndex(ComplexSet clustering, int maxID) {
+			clusterOf = new int[maxID+1];
+			Arrays.fill(clusterOf, -1);
+			List<Complex> complexes = clustering.getComplexes();
+			members = new int[complexes.size()][];
+			sizes = new int[complexes.size()];
+			for (int i=0; i<complexes.size(); i++) {
+				Complex complex = complexes.get(i);
+				int[] sorted = new int[complex.size()];
+				int count=0;
+				for (int protein : complex) {
+					sorted[count++] = protein;
+					// the last cluster of a protein counts
+					if (protein <= maxID)
+						clusterOf[protein] = i;
+				}
+				Arrays.sort(sorted);
+				members[i] = sorted;
+				sizes[i] = complex.size();
 			}
 		}
-		// ...
 		
-		float result = 1 - (sizeP - (pi_sum_div) / ctr) / sizeP_and_S;
+		/**
+		 * cluster of a protein, -1 if the protein is not clustered
+		 */
+		public int getCluster(int protein) {
+			return clusterOf[protein];
+		}
 		
-		return result;
-	}
-
-	private static float ctr(float[] pi, float r) {
-		float sum = 0;
-		float value;
-		for (int i = 0; i < pi.length; i++) {
-			value = (float) Math.pow(pi[i], r);
-			sum += value;
-
+		/**
+		 * size of a cluster, unclustered proteins form a cluster on their own 
+		 */
+		public int getSize(int cluster) {
+			return cluster < 0 ? 1 : sizes[cluster];
 		}
-		sum = (float) Math.pow(sum, 1 / (r - 1));
 		
-		return sum;
+		/**
+		 * checks whether a given protein is in the cluster of another protein
+		 */
+		public boolean contains(int cluster, int protein, int other) {
+			if (cluster < 0)
+				return other == protein;
+			return Arrays.binarySearch(members[cluster], other) >= 0;
+		}
 	}
 
 }
@@ -0,0 +1,418 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.methods.clustering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import procope.data.complexes.Complex;
+import procope.data.complexes.ComplexSet;
+import procope.data.networks.FrozenNetwork;
+import procope.data.networks.ProteinNetwork;
+import procope.tools.ParallelTools;
+import procope.tools.ProCopeException;
+
+/**
+ * Internal class, used by MarkovClusterer. Sparse implementation of the 
+ * iterative MCL process (expansion, pruning, inflation) on a column-
+ * stochastic matrix. The columns of the matrix are processed in parallel.
+ */
+class MCLEngine {
+	
+	// chaos value below which the process is considered as converged
+	private static final float CONVERGENCE_CHAOS = 0.0001f;
+	// maximum number of iterations, mcl usually converges after 10-50 iterations
+	private static final int MAX_ITERATIONS = 1000;
+	
+	// resource schemes 1-7: pruning number, selection number, recovery number, recovery percentage
+	private static final float[][] SCHEMES = new float[][] {
+		{2000, 300, 400, 90},
+		{3000, 400, 500, 90},
+		{4000, 500, 600, 90},
+		{5000, 600, 700, 90},
+		{6000, 700, 800, 90},
+		{7000, 800, 900, 90},
+		{8000, 1000, 1100, 90}
+	};
+	private static final int DEFAULT_SCHEME = 3;
+
+	// number of nodes, internal protein IDs
+	private int size;
+	private int[] proteins;
+	
+	// current matrix, column-wise: row indices and values of each column
+	private int[][] rows;
+	private float[][] values;
+	
+	// next matrix, written by the workers
+	private int[][] newRows;
+	private float[][] newValues;
+	
+	// algorithm settings
+	private float inflation;
+	private float pruneThreshold;
+	private int selection;
+	private int recovery;
+	private float recoveryPct;
+	
+	/**
+	 * Initializes the engine for a given network. Adds loops to each node 
+	 * and normalizes the columns of the matrix.
+	 */
+	MCLEngine(ProteinNetwork net, MCLParameters params) {
+		
+		// resolve parameters
+		int scheme = params.getScheme();
+		if (scheme == -1)
+			scheme = DEFAULT_SCHEME;
+		if (scheme < 1 || scheme > SCHEMES.length)
+			throw new ProCopeException("Invalid MCL scheme: " + scheme + ", must be within [1," + SCHEMES.length + "]");
+		float[] defaults = SCHEMES[scheme-1];
+		inflation = params.getInflation();
+		pruneThreshold = 1f / valueOrDefault(params.getP(), defaults[0]);
+		selection = (int)valueOrDefault(params.getS(), defaults[1]);
+		recovery = (int)valueOrDefault(params.getR(), defaults[2]);
+		recoveryPct = valueOrDefault(params.getPct(), defaults[3]) / 100f;
+		
+		if (!(inflation > 0))
+			throw new ProCopeException("Inflation coefficient must be positive");
+		
+		// map internal IDs to matrix indices
+		FrozenNetwork frozen = net.freeze();
+		proteins = frozen.getProteinArray();
+		size = proteins.length;
+		int[] neighbors = frozen.getNeighbors();
+		float[] weights = frozen.getWeights();
+		
+		// build matrix, only positive weights are used
+		rows = new int[size][];
+		values = new float[size][];
+		for (int i=0; i<size; i++) {
+			int protein = proteins[i];
+			int start = frozen.getNeighborStart(protein);
+			int end = frozen.getNeighborEnd(protein);
+			int[] colRows = new int[end-start+1];
+			float[] colValues = new float[end-start+1];
+			int count=0;
+			float max=0;
+			boolean loopInserted=false;
+			for (int j=start; j<end; j++) {
+				if (neighbors[j] == protein)
+					continue;
+				float weight = weights[j];
+				if (weight > 0) { // also excludes NaN
+					int row = Arrays.binarySearch(proteins, neighbors[j]);
+					// neighbors are sorted, insert the loop at the right position
+					if (!loopInserted && row > i) {
+						colRows[count++] = i;
+						loopInserted = true;
+					}
+					colRows[count] = row;
+					colValues[count] = weight;
+					count++;
+					if (weight > max) max = weight;
+				}
+			}
+			if (!loopInserted) 
+				colRows[count++] = i;
+			// loop gets the maximum weight of the column
+			if (max == 0) max = 1;
+			for (int j=0; j<count; j++) {
+				if (colRows[j] == i)
+					colValues[j] = max;
+			}
+			rows[i] = trim(colRows, count);
+			values[i] = trim(colValues, count);
+			normalize(values[i], count);
+		}
+	}
+	
+	/**
+	 * Runs the MCL process until convergence and interprets the resulting
+	 * matrix as a clustering.
+	 * 
+	 * @param threads number of threads to be used
+	 * @param timeoutSeconds maximum running time
+	 * @return resulting clustering
+	 * @throws ProCopeException if the calculation times out
+	 */
+	ComplexSet run(int threads, int timeoutSeconds) throws ProCopeException {
+		
+		long start = System.currentTimeMillis();
+		
+		// create one worker per thread
+		ColumnWorker[] workers = new ColumnWorker[Math.max(1, threads)];
+		for (int i=0; i<workers.length; i++)
+			workers[i] = new ColumnWorker();
+		int blockSize = ParallelTools.getBlockSize(size, workers.length);
+
+		int iteration=0;
+		float chaos = Float.POSITIVE_INFINITY;
+		while (chaos > CONVERGENCE_CHAOS && iteration < MAX_ITERATIONS) {
+			newRows = new int[size][];
+			newValues = new float[size][];
+			for (ColumnWorker worker : workers)
+				worker.chaos = 0;
+			// expand, prune and inflate all columns
+			ParallelTools.processRange(size, blockSize, workers);
+			// swap matrices
+			rows = newRows;
+			values = newValues;
+			newRows = null;
+			newValues = null;
+			// global chaos is the maximum over all columns
+			chaos = 0;
+			for (ColumnWorker worker : workers)
+				chaos = Math.max(chaos, worker.chaos);
+			iteration++;
+			// timed out?
+			long now = System.currentTimeMillis();
+			if ( ((now-start) / 1000) > timeoutSeconds)
+				throw new ProCopeException("MCL timed out after " + timeoutSeconds + " seconds");
+		}
+
+		return interpret();
+	}
+	
+	/**
+	 * Interprets the converged matrix. Each node is clustered together with 
+	 * all attractors it flows to, connected components form the clusters.
+	 */
+	private ComplexSet interpret() {
+		// union-find over all non-zero entries
+		int[] parent = new int[size];
+		for (int i=0; i<size; i++)
+			parent[i] = i;
+		for (int col=0; col<size; col++) {
+			int[] colRows = rows[col];
+			for (int j=0; j<colRows.length; j++)
+				union(parent, col, colRows[j]);
+		}
+		// collect members of each component
+		int[] componentOf = new int[size];
+		Arrays.fill(componentOf, -1);
+		List<List<Integer>> components = new ArrayList<List<Integer>>();
+		for (int i=0; i<size; i++) {
+			int root = find(parent, i);
+			if (componentOf[root] == -1) {
+				componentOf[root] = components.size();
+				components.add(new ArrayList<Integer>());
+			}
+			components.get(componentOf[root]).add(proteins[i]);
+		}
+		// largest clusters first (like mcl), stable regarding the protein order
+		Collections.sort(components, new Comparator<List<Integer>>() {
+			public int compare(List<Integer> o1, List<Integer> o2) {
+				return o2.size() - o1.size();
+			}
+		});
+		ComplexSet result = new ComplexSet();
+		for (List<Integer> component : components)
+			result.addComplex(new Complex(component));
+		return result;
+	}
+	
+	/**
+	 * Worker which calculates a range of columns of the next matrix. Holds 
+	 * a dense accumulator which is reused for all columns.
+	 */
+	private class ColumnWorker implements ParallelTools.RangeTask {
+		
+		private float[] accumulator = new float[size];
+		private int[] touched = new int[size];
+		private float[] sortBuffer = new float[size];
+		private float chaos=0;
+		
+		public void process(int from, int to) {
+			for (int col=from; col<to; col++) 
+				processColumn(col);
+		}
+		
+		private void processColumn(int col) {
+			// *** expansion: column col of M*M is the linear combination of 
+			// all columns k weighted with M[k][col]
+			int[] colRows = rows[col];
+			float[] colValues = values[col];
+			int count=0;
+			for (int i=0; i<colRows.length; i++) {
+				int k = colRows[i];
+				float weight = colValues[i];
+				int[] kRows = rows[k];
+				float[] kValues = values[k];
+				for (int j=0; j<kRows.length; j++) {
+					int row = kRows[j];
+					if (accumulator[row] == 0)
+						touched[count++] = row;
+					accumulator[row] += weight * kValues[j];
+				}
+			}
+			Arrays.sort(touched, 0, count);
+			
+			// *** pruning
+			float mass=0;
+			int kept=0;
+			for (int i=0; i<count; i++) {
+				float value = accumulator[touched[i]];
+				mass += value;
+				if (value >= pruneThreshold)
+					kept++;
+			}
+			float threshold = pruneThreshold;
+			if (kept > selection) {
+				// selection: only keep the largest entries
+				threshold = kthLargest(count, selection);
+				kept = selection;
+			}
+			// recovery if too much mass was pruned away
+			float keptMass = sumAbove(count, threshold, kept);
+			if (keptMass < recoveryPct * mass && kept < recovery) {
+				kept = Math.min(recovery, count);
+				threshold = kthLargest(count, kept);
+			}
+			if (kept == 0) {
+				// keep at least the largest entry
+				kept = 1;
+				threshold = kthLargest(count, 1);
+			}
+			
+			// entries equal to the threshold are only kept until 'kept' is reached
+			int ties = kept;
+			for (int i=0; i<count; i++) {
+				if (accumulator[touched[i]] > threshold)
+					ties--;
+			}
+			
+			// *** extract column, inflation and normalization
+			int[] resultRows = new int[kept];
+			float[] resultValues = new float[kept];
+			int index=0;
+			float sum=0;
+			for (int i=0; i<count; i++) {
+				int row = touched[i];
+				float value = accumulator[row];
+				accumulator[row] = 0;
+				if (value > threshold || (value == threshold && ties-- > 0)) {
+					resultRows[index] = row;
+					resultValues[index] = (float)Math.pow(value, inflation);
+					sum += resultValues[index];
+					index++;
+				}
+			}
+			if (index < kept) {
+				resultRows = trim(resultRows, index);
+				resultValues = trim(resultValues, index);
+			}
+			// normalize and calculate chaos of this column
+			float max=0, sumSquares=0;
+			for (int i=0; i<index; i++) {
+				float value = resultValues[i] / sum;
+				resultValues[i] = value;
+				if (value > max) max = value;
+				sumSquares += value*value;
+			}
+			float colChaos = (max - sumSquares) * index;
+			if (colChaos > chaos) chaos = colChaos;
+			
+			newRows[col] = resultRows;
+			newValues[col] = resultValues;
+		}
+		
+		/**
+		 * returns the k-th largest value of the current column
+		 */
+		private float kthLargest(int count, int k) {
+			for (int i=0; i<count; i++)
+				sortBuffer[i] = accumulator[touched[i]];
+			Arrays.sort(sortBuffer, 0, count);
+			return sortBuffer[count-k];
+		}
+		
+		/**
+		 * sum of the first 'max' values of the current column which are
+		 * greater or equal than the threshold
+		 */
+		private float sumAbove(int count, float threshold, int max) {
+			float sum=0;
+			int found=0;
+			for (int i=0; i<count && found<max; i++) {
+				float value = accumulator[touched[i]];
+				if (value >= threshold) {
+					sum += value;
+					found++;
+				}
+			}
+			return sum;
+		}
+	}
+	
+	private static float valueOrDefault(float value, float defaultValue) {
+		if (Float.isNaN(value))
+			return defaultValue;
+		else
+			return value;
+	}
+	
+	private static void normalize(float[] values, int count) {
+		float sum=0;
+		for (int i=0; i<count; i++)
+			sum += values[i];
+		for (int i=0; i<count; i++)
+			values[i] /= sum;
+	}
+	
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+	
+	private static void union(int[] parent, int i, int j) {
+		int rootI = find(parent, i);
+		int rootJ = find(parent, j);
+		if (rootI != rootJ) {
+			// smaller root becomes the parent, keeps results deterministic
+			if (rootI < rootJ) 
+				parent[rootJ] = rootI;
+			else
+				parent[rootI] = rootJ;
+		}
+	}
+	
+	private static int[] trim(int[] array, int length) {
+		if (array.length == length) return array;
+		int[] result = new int[length];
+		System.arraycopy(array, 0, result, 0, length);
+		return result;
+	}
+	
+	private static float[] trim(float[] array, int length) {
+		if (array.length == length) return array;
+		float[] result = new float[length];
+		System.arraycopy(array, 0, result, 0, length);
+		return result;
+	}
+
+}
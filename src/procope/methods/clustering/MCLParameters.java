@@ -20,11 +20,16 @@
  */
 package procope.methods.clustering;
 
+import procope.tools.ParallelTools;
+import procope.tools.ProCopeException;
+
 /**
  * Represents a set of parameters for {@link MarkovClusterer MCL clustering}.
  * <p>The <i>inflation coefficient</i> is the most important parameter and
- * affects the granularity of the clustering. For a more detailed description
- * of all parameters consult the MCL manual at 
+ * affects the granularity of the clustering. Parameters which are not set 
+ * are taken from the selected scheme, higher schemes use more resources
+ * (scheme 3 by default). For a more detailed description of all parameters 
+ * consult the MCL manual at 
  * <a target="_blank" href="http://micans.org/mcl/">
  * http://micans.org/mcl/</a>
  * 
@@ -39,6 +44,7 @@ public class MCLParameters {
 	private float s=Float.NaN;
 	private int scheme=-1;
 	int timeoutSeconds=Integer.MAX_VALUE;
+	private int threads=-1;
 	
 	/**
 	 * Creates a set of MCL parameters with default settings. By default the
@@ -107,7 +113,7 @@ public class MCLParameters {
 	}
 	
 	/**
-	 * Set the timeout (in seconds) after which the mcl call will be 
+	 * Set the timeout (in seconds) after which the mcl calculation will be 
 	 * terminated. This setting can be used to avoid too long or non-converging
 	 * calculations.
 	 * 
@@ -135,32 +141,83 @@ public class MCLParameters {
 	}
 
 	/**
-	 * Assemble command line parameters, directly used in command call
+	 * Sets the number of threads used for the calculation. By default the
+	 * {@link ParallelTools#getDefaultThreads() default number of threads}
+	 * is used.
 	 * 
-	 * @return command line parameters string
+	 * @param threads number of threads, must be at least 1
+	 * @throws ProCopeException if {@code threads < 1}
 	 */
-	protected String getCommandLineParameters() {
-		StringBuffer cmd = new StringBuffer();
-		
-		if (!Float.isNaN(i))
-			cmd.append(" -I " + i);
-		
-		if (!Float.isNaN(p))
-			cmd.append(" -P " + p);
-		if (!Float.isNaN(s))
-			cmd.append(" -S " + s);
-		if (!Float.isNaN(r))
-			cmd.append(" -R " + r);
-		if (!Float.isNaN(pct))
-			cmd.append(" -pct " + pct);
-		
-		if (scheme != -1)
-			cmd.append(" -scheme " + scheme);
-		
-		cmd.append(" ");
-		
-		return cmd.toString();
-		
+	public void setThreads(int threads) throws ProCopeException {
+		if (threads < 1)
+			throw new ProCopeException("Number of threads must be at least 1");
+		this.threads = threads;
+	}
+	
+	/**
+	 * Returns the inflation coefficient
+	 * 
+	 * @return inflation coefficient
+	 */
+	public float getInflation() {
+		return i;
+	}
+	
+	/**
+	 * Returns the pruning number
+	 * 
+	 * @return pruning number or {@code Float.NaN} if not set
+	 */
+	public float getP() {
+		return p;
+	}
+	
+	/**
+	 * Returns the selection number
+	 * 
+	 * @return selection number or {@code Float.NaN} if not set
+	 */
+	public float getS() {
+		return s;
+	}
+	
+	/**
+	 * Returns the recover number
+	 * 
+	 * @return recover number or {@code Float.NaN} if not set
+	 */
+	public float getR() {
+		return r;
+	}
+	
+	/**
+	 * Returns the <i>mass percentage below which to apply recovery</i>
+	 * 
+	 * @return mass percentage or {@code Float.NaN} if not set
+	 */
+	public float getPct() {
+		return pct;
+	}
+	
+	/**
+	 * Returns the scheme for the parameters p,s,r and pct
+	 * 
+	 * @return scheme or {@code -1} if not set
+	 */
+	public int getScheme() {
+		return scheme;
+	}
+	
+	/**
+	 * Returns the number of threads used for the calculation
+	 * 
+	 * @return number of threads
+	 */
+	public int getThreads() {
+		if (threads == -1)
+			return ParallelTools.getDefaultThreads();
+		else
+			return threads;
 	}
 
 }
@@ -0,0 +1,483 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.methods.clustering;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import procope.tools.IntSet;
+import procope.tools.Tools;
+
+/**
+ * Internal class, used by HierarchicalClusteringTrees. Sparse implementation
+ * of hierarchical agglomerative clustering. Each cluster keeps a sorted row 
+ * containing only its non-zero similarities to other clusters, missing 
+ * entries have an implicit similarity of zero. When two clusters are merged
+ * their rows are combined by a merge of the two sorted rows.
+ * <p>UPGMA, WPGMA and complete linkage use the same nearest neighbor chain 
+ * as the dense implementation, including the tie-breaking towards the 
+ * smallest cluster index, and therefore produce the same tree. Single 
+ * linkage first builds a maximum spanning forest over the positive edges 
+ * using union-find and only clusters the remaining components with the
+ * nearest neighbor chain.
+ */
+class SparseHierarchicalEngine {
+	
+	private HierarchicalLinkage linkage;
+	
+	// sparse similarity rows, sorted by cluster index
+	private int[][] keys;
+	private float[][] values;
+	private int[] rowSizes;
+	
+	// current clusters
+	private int[] clusterSizes;
+	private HierarchicalTreeNode[] trees;
+	private IntSet active;
+	
+	/**
+	 * Initializes the engine with given initial clusters and similarities
+	 * between them. Each pair of clusters must be given at most once, zero
+	 * and NaN similarities are ignored.
+	 */
+	private SparseHierarchicalEngine(HierarchicalLinkage linkage, HierarchicalTreeNode[] trees, 
+			int[] clusterSizes, int[] first, int[] second, float[] weights, int count) {
+		
+		this.linkage = linkage;
+		this.trees = trees;
+		this.clusterSizes = clusterSizes;
+		int size = trees.length;
+		active = new IntSet();
+		for (int i=0; i<size; i++)
+			active.add(i);
+		
+		// count row sizes
+		rowSizes = new int[size];
+		for (int i=0; i<count; i++) {
+			if (isEntry(first[i], second[i], weights[i])) {
+				rowSizes[first[i]]++;
+				rowSizes[second[i]]++;
+			}
+		}
+		// fill rows
+		keys = new int[size][];
+		values = new float[size][];
+		for (int i=0; i<size; i++) {
+			keys[i] = new int[rowSizes[i]];
+			values[i] = new float[rowSizes[i]];
+			rowSizes[i] = 0;
+		}
+		for (int i=0; i<count; i++) {
+			if (isEntry(first[i], second[i], weights[i])) {
+				int a = first[i], b = second[i];
+				keys[a][rowSizes[a]] = b;
+				values[a][rowSizes[a]++] = weights[i];
+				keys[b][rowSizes[b]] = a;
+				values[b][rowSizes[b]++] = weights[i];
+			}
+		}
+		// sort rows if necessary
+		for (int i=0; i<size; i++)
+			sortRow(i);
+	}
+	
+	/**
+	 * Clusters {@code size} items with the given similarities. Each 
+	 * undirected pair of items must be given at most once. Leaf labels of
+	 * the resulting tree are the item indices.
+	 */
+	static HierarchicalTreeNode cluster(int size, int[] first, int[] second, float[] weights, 
+			int count, HierarchicalLinkage linkage) {
+		
+		HierarchicalTreeNode[] trees = new HierarchicalTreeNode[size];
+		int[] clusterSizes = new int[size];
+		for (int i=0; i<size; i++) {
+			trees[i] = new HierarchicalTreeNode(i);
+			clusterSizes[i] = 1;
+		}
+		
+		if (linkage == HierarchicalLinkage.SINGLE_LINK)
+			return singleLinkage(trees, first, second, weights, count);
+		
+		return new SparseHierarchicalEngine(linkage, trees, clusterSizes, 
+				first, second, weights, count).nnChain();
+	}
+	
+	/**
+	 * Single linkage: all positive similarities are processed in 
+	 * descending order using union-find (Kruskal's algorithm for a maximum
+	 * spanning forest). The remaining components are connected at the 
+	 * implicit similarity of zero unless all pairs of members have negative
+	 * similarities, this is done by the nearest neighbor chain on the
+	 * component level.
+	 */
+	private static HierarchicalTreeNode singleLinkage(HierarchicalTreeNode[] leaves, 
+			int[] first, int[] second, float[] weights, int count) {
+		
+		int size = leaves.length;
+		
+		// sort positive edges by descending similarity, ties by position
+		int positive=0;
+		for (int i=0; i<count; i++)
+			if (weights[i] > 0)
+				positive++;
+		long[] order = new long[positive];
+		int index=0;
+		for (int i=0; i<count; i++) {
+			if (weights[i] > 0) 
+				// positive floats sort like their bit patterns
+				order[index++] = ((long)(Integer.MAX_VALUE - Float.floatToIntBits(weights[i])) << 32) | i;
+		}
+		Arrays.sort(order);
+		
+		// union-find with a tree and a size for each root
+		int[] parent = new int[size];
+		int[] rank = new int[size];
+		int[] clusterSizes = new int[size];
+		HierarchicalTreeNode[] trees = leaves.clone();
+		for (int i=0; i<size; i++) {
+			parent[i] = i;
+			clusterSizes[i] = 1;
+		}
+		for (long entry : order) {
+			int edge = (int)entry;
+			int root1 = find(parent, first[edge]);
+			int root2 = find(parent, second[edge]);
+			if (root1 == root2)
+				continue;
+			HierarchicalTreeNode newNode = new HierarchicalTreeNode(-1, weights[edge]);
+			newNode.addChild(trees[root1]);
+			newNode.addChild(trees[root2]);
+			// union by rank
+			if (rank[root1] < rank[root2]) {
+				int swap = root1; root1 = root2; root2 = swap;
+			}
+			parent[root2] = root1;
+			if (rank[root1] == rank[root2])
+				rank[root1]++;
+			trees[root1] = newNode;
+			clusterSizes[root1] += clusterSizes[root2];
+			trees[root2] = null;
+		}
+		
+		// number the components in order of their smallest member
+		int[] component = new int[size];
+		int components=0;
+		int[] rootComponent = new int[size];
+		Arrays.fill(rootComponent, -1);
+		for (int i=0; i<size; i++) {
+			int root = find(parent, i);
+			if (rootComponent[root] < 0)
+				rootComponent[root] = components++;
+			component[i] = rootComponent[root];
+		}
+		if (components == 1)
+			return trees[find(parent, 0)];
+		HierarchicalTreeNode[] compTrees = new HierarchicalTreeNode[components];
+		int[] compSizes = new int[components];
+		for (int i=0; i<size; i++) {
+			if (parent[i] == i) {
+				compTrees[rootComponent[i]] = trees[i];
+				compSizes[rootComponent[i]] = clusterSizes[i];
+			}
+		}
+		
+		// similarity of two components is the maximum over all member pairs,
+		// this is only negative if all pairs have an explicit negative similarity
+		Map<Long, double[]> negative = new HashMap<Long, double[]>();
+		for (int i=0; i<count; i++) {
+			if (weights[i] < 0) {
+				int comp1 = Math.min(component[first[i]], component[second[i]]);
+				int comp2 = Math.max(component[first[i]], component[second[i]]);
+				Long key = ((long)comp1 << 32) | comp2;
+				double[] stats = negative.get(key);
+				if (stats == null) 
+					negative.put(key, new double[] {1, weights[i]});
+				else {
+					stats[0]++;
+					stats[1] = Math.max(stats[1], weights[i]);
+				}
+			}
+		}
+		int[] compFirst = new int[negative.size()];
+		int[] compSecond = new int[negative.size()];
+		float[] compWeights = new float[negative.size()];
+		int compCount=0;
+		for (Map.Entry<Long, double[]> entry : negative.entrySet()) {
+			int comp1 = (int)(entry.getKey() >>> 32);
+			int comp2 = (int)(long)entry.getKey();
+			double[] stats = entry.getValue();
+			if (stats[0] == (double)compSizes[comp1] * (double)compSizes[comp2]) {
+				compFirst[compCount] = comp1;
+				compSecond[compCount] = comp2;
+				compWeights[compCount++] = (float)stats[1];
+			}
+		}
+		
+		return new SparseHierarchicalEngine(HierarchicalLinkage.SINGLE_LINK, compTrees, compSizes, 
+				compFirst, compSecond, compWeights, compCount).nnChain();
+	}
+	
+	/**
+	 * union-find lookup with path halving
+	 */
+	private static int find(int[] parent, int item) {
+		while (parent[item] != item) {
+			parent[item] = parent[parent[item]];
+			item = parent[item];
+		}
+		return item;
+	}
+	
+	/**
+	 * Performs the clustering using NN chains, exactly like the dense
+	 * implementation in HierarchicalClusteringTrees
+	 */
+	private HierarchicalTreeNode nnChain() {
+		
+		int numClusters = trees.length;
+		int curChainIndex=0;
+		int[] nnChain = new int[numClusters];
+		
+		// select arbitrary object, store in chain
+		nnChain[0] = 0;
+		int last=0;
+		
+		while (numClusters > 1) {
+			
+			// get nearest neighbor, explicit entries first
+			int NN=-1;
+			float maxSim = Float.NEGATIVE_INFINITY;
+			int[] rowKeys = keys[last];
+			float[] rowValues = values[last];
+			int rowSize = rowSizes[last];
+			for (int i=0; i<rowSize; i++) {
+				if (rowValues[i] > maxSim) {
+					maxSim = rowValues[i];
+					NN = rowKeys[i];
+				}
+			}
+			// an implicit zero wins over negative entries
+			if (!(maxSim > 0)) {
+				int zero = firstImplicit(last);
+				if (zero >= 0) {
+					NN = zero;
+					maxSim = 0f;
+				}
+			}
+			
+			// RNN?
+			if (curChainIndex>0 && NN == nnChain[curChainIndex-1]) {
+				int index1 = nnChain[curChainIndex-1];
+				int index2 = nnChain[curChainIndex];
+				merge(index1, index2, maxSim);
+				
+				if (curChainIndex > 1) {
+					// there is something left => step backward in the chain  
+					curChainIndex-=2;
+					last = nnChain[curChainIndex];
+				} else {
+					// need to start a new chain
+					int nextChain = active.nextMember(0);
+					nnChain[0] = nextChain;
+					last = nextChain;
+					curChainIndex = 0;
+				}
+					
+				numClusters--; 
+			
+			} else {
+				// elongate chain
+				curChainIndex++;
+				nnChain[curChainIndex] = NN;
+				last = NN;
+			}
+		}
+		
+		// the only remaining cluster
+		return trees[active.nextMember(0)];
+	}
+	
+	/**
+	 * returns the smallest active cluster other than the given one which 
+	 * has no explicit entry in its row, or -1 if there is none
+	 */
+	private int firstImplicit(int cluster) {
+		int[] rowKeys = keys[cluster];
+		int rowSize = rowSizes[cluster];
+		int pos=0;
+		for (int other=active.nextMember(0); other>=0; other=active.nextMember(other+1)) {
+			if (other == cluster)
+				continue;
+			while (pos < rowSize && rowKeys[pos] < other)
+				pos++;
+			if (pos == rowSize || rowKeys[pos] != other)
+				return other;
+		}
+		return -1;
+	}
+	
+	/**
+	 * merges cluster index2 into cluster index1 and updates all rows
+	 */
+	private void merge(int index1, int index2, float similarity) {
+		
+		int size1 = clusterSizes[index1];
+		int size2 = clusterSizes[index2];
+		
+		// merge trees
+		HierarchicalTreeNode newNode = new HierarchicalTreeNode(-1, similarity);
+		newNode.addChild(trees[index1]);
+		newNode.addChild(trees[index2]);
+		trees[index1] = newNode;
+		trees[index2] = null;
+		
+		// merge the two sorted rows
+		int[] keys1 = keys[index1], keys2 = keys[index2];
+		float[] values1 = values[index1], values2 = values[index2];
+		int rowSize1 = rowSizes[index1], rowSize2 = rowSizes[index2];
+		int[] newKeys = new int[rowSize1 + rowSize2];
+		float[] newValues = new float[rowSize1 + rowSize2];
+		int newSize=0;
+		int pos1=0, pos2=0;
+		while (pos1 < rowSize1 || pos2 < rowSize2) {
+			int key;
+			float sim1=0, sim2=0;
+			if (pos2 == rowSize2 || (pos1 < rowSize1 && keys1[pos1] < keys2[pos2])) {
+				key = keys1[pos1];
+				sim1 = values1[pos1++];
+			} else if (pos1 == rowSize1 || keys2[pos2] < keys1[pos1]) {
+				key = keys2[pos2];
+				sim2 = values2[pos2++];
+			} else {
+				key = keys1[pos1];
+				sim1 = values1[pos1++];
+				sim2 = values2[pos2++];
+			}
+			if (key == index1 || key == index2)
+				continue;
+			
+			// new similarity according to linkage, missing entries are zero
+			float sim = combine(sim1, sim2, size1, size2);
+			if (sim != 0) {
+				newKeys[newSize] = key;
+				newValues[newSize++] = sim;
+			}
+			updateNeighbor(key, index1, index2, sim);
+		}
+		keys[index1] = newKeys;
+		values[index1] = newValues;
+		rowSizes[index1] = newSize;
+		keys[index2] = null;
+		values[index2] = null;
+		rowSizes[index2] = 0;
+		
+		clusterSizes[index1] = size1 + size2;
+		active.remove(index2);
+	}
+	
+	/**
+	 * calculates the similarity of a merged cluster like the dense 
+	 * implementation does
+	 */
+	private float combine(float sim1, float sim2, int size1, int size2) {
+		if (linkage == HierarchicalLinkage.UPGMA) 
+			return ((float)size1 / (float)(size1+size2)) * sim1 +
+				((float)size2 / (float)(size1+size2)) * sim2;
+		else if (linkage == HierarchicalLinkage.SINGLE_LINK) 
+			return (sim1 > sim2) ? sim1 : sim2;
+		else if (linkage == HierarchicalLinkage.WPGMA) 
+			return sim1 * 0.5f + sim2 * 0.5f;
+		else
+			return (sim1 < sim2) ? sim1 : sim2;
+	}
+	
+	/**
+	 * in the row of the given neighbor removes the entry for index2 and sets
+	 * the entry for index1 to the new similarity
+	 */
+	private void updateNeighbor(int neighbor, int index1, int index2, float sim) {
+		int[] rowKeys = keys[neighbor];
+		float[] rowValues = values[neighbor];
+		int rowSize = rowSizes[neighbor];
+		
+		// remove both entries
+		int write=0;
+		for (int read=0; read<rowSize; read++) {
+			int key = rowKeys[read];
+			if (key != index1 && key != index2) {
+				rowKeys[write] = key;
+				rowValues[write++] = rowValues[read];
+			}
+		}
+		rowSize = write;
+		
+		// insert the new entry at its sorted position
+		if (sim != 0) {
+			if (rowSize == rowKeys.length) {
+				rowKeys = keys[neighbor] = Tools.arrCopyOf(rowKeys, rowSize+1);
+				rowValues = values[neighbor] = Tools.arrCopyOf(rowValues, rowSize+1);
+			}
+			int pos = rowSize;
+			while (pos > 0 && rowKeys[pos-1] > index1) {
+				rowKeys[pos] = rowKeys[pos-1];
+				rowValues[pos] = rowValues[pos-1];
+				pos--;
+			}
+			rowKeys[pos] = index1;
+			rowValues[pos] = sim;
+			rowSize++;
+		}
+		rowSizes[neighbor] = rowSize;
+	}
+	
+	/**
+	 * checks if an edge results in a row entry
+	 */
+	private static boolean isEntry(int first, int second, float weight) {
+		return first != second && weight != 0 && weight == weight;
+	}
+	
+	/**
+	 * sorts a row by cluster index if it is not sorted yet
+	 */
+	private void sortRow(int row) {
+		int[] rowKeys = keys[row];
+		int rowSize = rowSizes[row];
+		boolean sorted=true;
+		for (int i=1; i<rowSize && sorted; i++)
+			sorted = rowKeys[i-1] < rowKeys[i];
+		if (sorted)
+			return;
+		// sort index and value packed together
+		float[] rowValues = values[row];
+		long[] packed = new long[rowSize];
+		for (int i=0; i<rowSize; i++)
+			packed[i] = ((long)rowKeys[i] << 32) | (Float.floatToRawIntBits(rowValues[i]) & 0xffffffffL);
+		Arrays.sort(packed);
+		for (int i=0; i<rowSize; i++) {
+			rowKeys[i] = (int)(packed[i] >>> 32);
+			rowValues[i] = Float.intBitsToFloat((int)packed[i]);
+		}
+	}
+
+}
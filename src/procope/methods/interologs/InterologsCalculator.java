@@ -20,6 +20,7 @@
  */
 package procope.methods.interologs;
 
+import procope.data.networks.FrozenNetwork;
 import procope.data.networks.ProteinNetwork;
 import procope.methods.interologs.blast.BlastHits;
 
@@ -65,19 +66,27 @@ public class InterologsCalculator {
 
 		ProteinNetwork newNet = new ProteinNetwork(toTransfer.isDirected()); 
 		
+		// read-only snapshot of the mapping for fast neighbor access
+		FrozenNetwork frozenMapping = mapping.freeze();
+		int[] bbhs = frozenMapping.getNeighbors();
+		
 		// iterate over network
 		int[] edges = toTransfer.getEdgesArray();
 		for (int i=0; i<edges.length; i+=2) {
 			int protein1 = edges[i];
 			int protein2 = edges[i+1];
 			// get BBHs for both proteins
-			int[] bbhs1 = mapping.getNeighborArray(protein1);
-			int[] bbhs2 = mapping.getNeighborArray(protein2);
+			int start1 = frozenMapping.getNeighborStart(protein1);
+			int end1 = frozenMapping.getNeighborEnd(protein1);
+			int start2 = frozenMapping.getNeighborStart(protein2);
+			int end2 = frozenMapping.getNeighborEnd(protein2);
 			                   
-			if (bbhs1.length > 0 && bbhs2.length > 0) {
+			if (end1 > start1 && end2 > start2) {
 				// there might be more than one BBH per source protein => transfer everything
-				for (int bbh1 : bbhs1) {
-					for (int bbh2 : bbhs2) {
+				for (int b1=start1; b1<end1; b1++) {
+					int bbh1 = bbhs[b1];
+					for (int b2=start2; b2<end2; b2++) {
+						int bbh2 = bbhs[b2];
 						// get protein ids of the BBHs
 						float score = (scorer != null) ? 
 								scorer.getInterologScore(protein1, bbh1, protein2, bbh2) : 1.0f;
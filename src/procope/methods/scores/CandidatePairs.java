@@ -0,0 +1,60 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.methods.scores;
+
+/**
+ * Optional capability of {@link ScoresCalculator scores calculators} which
+ * only assign relevant scores to a small subset of all protein pairs, e.g. 
+ * to pairs of proteins which were co-purified in at least one experiment.
+ * <p>Calculators implementing this interface enumerate these candidate 
+ * pairs so that score networks can be generated without evaluating all 
+ * pairs of proteins (see 
+ * {@link procope.data.networks.NetworkGenerator#generateNetwork(ScoresCalculator, float, int)}).
+ * 
+ * @author Jan Krumsiek
+ */
+public interface CandidatePairs {
+	
+	/**
+	 * Returns all proteins which form a candidate pair with the given 
+	 * protein. The pairs are symmetric, i.e. if {@code b} is a candidate 
+	 * partner of {@code a} then {@code a} also is a candidate partner of
+	 * {@code b}.
+	 * 
+	 * @param protein protein for which candidate partners are requested
+	 * @return sorted array of candidate partners, without {@code protein}
+	 *         itself
+	 */
+	public int[] getCandidatePartners(int protein);
+	
+	/**
+	 * Checks if the candidate pairs contain all pairs which pass a given 
+	 * cut-off. This is the case if all pairs which are not enumerated by
+	 * {@link #getCandidatePartners(int)} have a score of zero or a score
+	 * less than the cut-off.
+	 * 
+	 * @param cutOff score cut-off
+	 * @return {@code true} if all pairs not in the candidate set can be 
+	 *         skipped for this cut-off
+	 */
+	public boolean candidatesComplete(float cutOff);
+
+}
@@ -26,6 +26,7 @@ import java.util.Vector;
 
 import procope.data.purifications.PurificationData;
 import procope.data.purifications.PurificationExperiment;
+import procope.data.purifications.PurificationIndex;
 import procope.tools.SparseMatrixInt;
 import procope.tools.Tools;
 
@@ -41,12 +42,13 @@ import procope.tools.Tools;
  * @author Jan Krumsiek
  */
 
-public class DiceCoefficients extends ScoresCalculator {
+public class DiceCoefficients extends ScoresCalculator implements CandidatePairs {
 	
 	private Set<Integer> proteins;
 	private int maxProt;
 	private SparseMatrixInt sameExperiment;
 	private int[] experimentCount;
+	private PurificationIndex index;
 	
 	/**
 	 * Creates a new Dice coefficients calculator
@@ -55,6 +57,7 @@ public class DiceCoefficients extends ScoresCalculator {
 	 */
 	public DiceCoefficients(PurificationData data) {
 		this.proteins = data.getProteins();
+		index = new PurificationIndex(data);
 		// create counter array
 		maxProt = Tools.findMax(proteins);
 		sameExperiment = new SparseMatrixInt(true);
@@ -85,6 +88,22 @@ public class DiceCoefficients extends ScoresCalculator {
 		return proteins;
 	}
 
+	/**
+	 * Returns all proteins which were co-purified with the given protein,
+	 * only these pairs can have a score different from zero.
+	 */
+	public int[] getCandidatePartners(int protein) {
+		return index.getCoPurified(protein);
+	}
+	
+	/**
+	 * Always {@code true}, pairs of proteins which were never co-purified
+	 * have a score of zero.
+	 */
+	public boolean candidatesComplete(float cutOff) {
+		return true;
+	}
+	
 	/**
 	 * Returns the Dice coefficient for two given proteins, returns 0
 	 * if the protein indices are out of range or if protein1==protein2
@@ -27,6 +27,7 @@ import java.util.Vector;
 
 import procope.data.purifications.PurificationData;
 import procope.data.purifications.PurificationExperiment;
+import procope.data.purifications.PurificationIndex;
 import procope.tools.SparseMatrixInt;
 import procope.tools.math.HypergeometricDistribution;
 import procope.tools.namemapping.ProteinManager;
@@ -42,10 +43,11 @@ import procope.tools.namemapping.ProteinManager;
  * <p>For more information about this scoring method please check out the
  * online manual.
  */
-public class HartCalculator extends ScoresCalculator {
+public class HartCalculator extends ScoresCalculator implements CandidatePairs {
 	
 	private SingleModel[] models;
 	private Set<Integer> proteins;
+	private PurificationIndex index;
 	
 	/**
 	 * Creates a new scores calculator from a given purification data set.
@@ -79,9 +81,27 @@ public class HartCalculator extends ScoresCalculator {
 		proteins = new HashSet<Integer>();
 		for (int i=0; i<datasets.length; i++)
 			proteins.addAll(datasets[i].getProteins());
+		index = new PurificationIndex(datasets);
 			
 	}
 
+	/**
+	 * Returns all proteins which were co-purified with the given protein in
+	 * any of the data sets, only these pairs can have a score different 
+	 * from zero.
+	 */
+	public int[] getCandidatePartners(int protein) {
+		return index.getCoPurified(protein);
+	}
+	
+	/**
+	 * Always {@code true}, pairs of proteins which were never co-purified
+	 * have a score of zero.
+	 */
+	public boolean candidatesComplete(float cutOff) {
+		return true;
+	}
+	
 	/**
 	 * Calculates the score of the given protein.
 	 */
@@ -26,6 +26,7 @@ import java.util.Set;
 
 import procope.data.purifications.PurificationData;
 import procope.data.purifications.PurificationExperiment;
+import procope.data.purifications.PurificationIndex;
 import procope.tools.SparseMatrixInt;
 import procope.tools.namemapping.ProteinManager;
 
@@ -45,7 +46,7 @@ import procope.tools.namemapping.ProteinManager;
  * 
  * @author Jan Krumsiek
  */
-public class PECalculator extends ScoresCalculator {
+public class PECalculator extends ScoresCalculator implements CandidatePairs {
 	
 	// exparray[i][k]
 	private PurificationExperiment[][] exparray;
@@ -66,6 +67,7 @@ public class PECalculator extends ScoresCalculator {
 	private float[] f;
 
 	private Set<Integer> proteins;
+	private PurificationIndex index;
 	
 	/**
 	 * Creates a new Purification Enrichment calculator. 
@@ -78,6 +80,7 @@ public class PECalculator extends ScoresCalculator {
 		
 		// save protein list
 		proteins = data.getProteins();
+		index = new PurificationIndex(data);
 		// save parameters
 		this.r = r;
 		this.n_pseudo = pseudocount;
@@ -155,6 +158,23 @@ public class PECalculator extends ScoresCalculator {
 		}
 	}
 
+	/**
+	 * Returns all proteins which were co-purified with the given protein.
+	 */
+	public int[] getCandidatePartners(int protein) {
+		return index.getCoPurified(protein);
+	}
+	
+	/**
+	 * Pairs of proteins which were never co-purified get a score 
+	 * {@code <= 0} if {@code 0 <= r < 1}, as both the spokes and the 
+	 * matrix terms are non-positive for these pairs. Therefore the candidate
+	 * pairs are complete for all non-negative cut-offs.
+	 */
+	public boolean candidatesComplete(float cutOff) {
+		return cutOff >= 0 && r >= 0 && r < 1;
+	}
+	
 	/**
 	 * Calculates the Purification Enrichment score for two given proteins.
 	 */
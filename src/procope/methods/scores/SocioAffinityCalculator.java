@@ -20,13 +20,12 @@
  */
 package procope.methods.scores;
 
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
 import procope.data.purifications.PurificationData;
-import procope.data.purifications.PurificationExperiment;
-import procope.tools.SparseMatrixInt;
+import procope.tools.ProCopeException;
 import procope.tools.namemapping.ProteinManager;
 
 
@@ -43,20 +42,21 @@ import procope.tools.namemapping.ProteinManager;
  * @author Jan Krumsiek
  *
  */
-public class SocioAffinityCalculator extends ScoresCalculator  {
+public class SocioAffinityCalculator extends ScoresCalculator implements CandidatePairs {
 	
 	private float[] baitfrac;
 	private float[] preyfrac;
 	private int[] preysperbait;
 	private int numexperiments;
-	private SparseMatrixInt aretrievesb;
-	private SparseMatrixInt abpreynobait;
+	private int[] aretrievesb;
+	private int[] abpreynobait;
 	private int bigsum;
     
     boolean noMatrix=false;
 
     private Set<Integer> proteins;
 	private int protcount;
+	private SocioAffinityStatistics statistics;
     
     /**
      * Creates a new socio affinity scores calculator based on a given
@@ -65,90 +65,127 @@ public class SocioAffinityCalculator extends ScoresCalculator  {
      * @param data purification data set used for scores calculation
      */
     public SocioAffinityCalculator(PurificationData data) {
-
-    	// save protein list
-		proteins = data.getProteins();
-	
-    	// get experiments from purification data set
-    	Collection<PurificationExperiment> experiments = data.getExperiments();
+    	this(new SocioAffinityStatistics(data), null);
+    }
+    
+    /**
+     * Creates a new socio affinity scores calculator for a weighted subset 
+     * of the experiments of precomputed statistics. Each experiment is 
+     * counted as often as given by its weight, an experiment with weight 0
+     * is left out. The resulting scores are the same as for a purification 
+     * data set which contains each experiment as often as given by its 
+     * weight, e.g. a bootstrap sample.
+     * <p>Use this constructor if scores have to be calculated for many 
+     * subsets of the same experiments. The statistics can be shared by 
+     * all calculators.
+     * 
+     * @param statistics precomputed statistics of the experiments
+     * @param weights multiplicity of each experiment, {@code null} to use 
+     *                each experiment once
+     * @throws ProCopeException if the length of the weights vector does not
+     *         match the number of experiments or a weight is negative
+     * @see procope.methods.scores.bootstrap.PurificationBootstrapSamples#getSampleWeights(int)
+     */
+    public SocioAffinityCalculator(SocioAffinityStatistics statistics, int[] weights) 
+    		throws ProCopeException {
+    	
+    	int expcount = statistics.getNumberOfExperiments();
+    	if (weights == null) {
+    		weights = new int[expcount];
+    		Arrays.fill(weights, 1);
+    	} else if (weights.length != expcount) 
+    		throw new ProCopeException("Number of weights (" + weights.length + 
+    				") does not match the number of experiments (" + expcount + ")");
+    	
+    	this.statistics = statistics;
+    	
     	// counter variables, arrays
     	protcount = ProteinManager.getProteinCount();
     	int[] baitcount = new int[protcount+1];
     	int[] preycount = new int[protcount+1];
     	preysperbait = new int[protcount+1];
-    	aretrievesb = new SparseMatrixInt(false);
-    	abpreynobait = new SparseMatrixInt(false);
+    	aretrievesb = new int[statistics.getSpokePairCount()];
+    	abpreynobait = new int[statistics.getMatrixPairCount()];
 
     	baitfrac = new float[protcount+1];
     	preyfrac = new float[protcount+1];
-    	int[] preycount_nobait = new int[experiments.size()];
-    	HashSet<Integer> baits = new HashSet<Integer>();
+    	proteins = new HashSet<Integer>();
     	int totalpreycount=0;
-    	this.numexperiments = experiments.size() ;
+    	numexperiments=0;
+    	bigsum=0;
 
-    	// do all the statistics!
-    	
-    	// loop
-    	int expnum=0;
-    	for (PurificationExperiment exp : experiments) {
-    		int bait = exp.getBait();
-    		Collection<Integer> colpreys = exp.getPreys();
-    		Integer[] preys = colpreys.toArray(new Integer[0]);
+    	// do all the statistics, each experiment is counted with its weight
+    	for (int exp=0; exp<expcount; exp++) {
+    		int weight = weights[exp];
+    		if (weight == 0)
+    			continue;
+    		else if (weight < 0)
+    			throw new ProCopeException("Negative weight for experiment " + exp);
+    		
     		// now count prey and bait occurrences for the corresponding fractions
-    		// also count how often A retrieves B
-    		// and which baits there are and which unique preys they have
-    		baitcount[bait]++;
-    		baits.add(bait);
-    		preysperbait[bait] += preys.length;
-    		totalpreycount += preys.length;
-    		for (int prey : preys) {
-    			preycount[prey]++;
-    			aretrievesb.add(bait,prey,1);
-    			// count unique preys (excluding bait itself)
-    			if (prey != bait)
-    				preycount_nobait[expnum]++;
-
-    		}
-    		// we also need to check how often A and B appear together when they are no baits
-    		// check all against all preys
-    		for (int i=0; i<preys.length; i++) {
-    			for (int j=i+1; j<preys.length; j++) {
-    				if ((bait != preys[i]) && (bait != preys[j])) {
-    					abpreynobait.add(preys[i], preys[j], 1);
-    					abpreynobait.add(preys[j], preys[i], 1);
-    				}
-    			}
-    		}
-    		expnum++;
+    		numexperiments += weight;
+    		int bait = statistics.getBait(exp);
+    		int preys = statistics.getPreyCount(exp);
+    		baitcount[bait] += weight;
+    		preysperbait[bait] += weight * preys;
+    		totalpreycount += weight * preys;
+    		int[] distinctPreys = statistics.getPreys(exp);
+    		int[] preyMult = statistics.getPreyMultiplicities(exp);
+    		for (int i=0; i<distinctPreys.length; i++)
+    			preycount[distinctPreys[i]] += weight * preyMult[i];
+    		for (int protein : statistics.getProteins(exp))
+    			proteins.add(protein);
+    		
+    		// how often A retrieves B
+    		int[] pairs = statistics.getSpokePairs(exp);
+    		int[] mult = statistics.getSpokeMultiplicities(exp);
+    		for (int i=0; i<pairs.length; i++)
+    			aretrievesb[pairs[i]] += weight * mult[i];
+    		// how often A and B appear together when they are no baits
+    		pairs = statistics.getMatrixPairs(exp);
+    		mult = statistics.getMatrixMultiplicities(exp);
+    		for (int i=0; i<pairs.length; i++)
+    			abpreynobait[pairs[i]] += weight * mult[i];
+    		
+    		// big sum
+    		int nobait = statistics.getPreysNoBait(exp);
+    		bigsum += weight * (nobait * (nobait-1) / 2);
     	}
 
-
     	// calculate fractions
     	for (int i=0; i<protcount; i++) {
     		if (baitcount[i] == 0 && preycount[i] == 1) {
     			baitfrac[i] = 0;
     			preyfrac[i] = 0;
     		} else {
-    			baitfrac[i] = (float)baitcount[i] / (float)experiments.size();
+    			baitfrac[i] = (float)baitcount[i] / (float)numexperiments;
     			preyfrac[i] = (float)preycount[i] / (float)totalpreycount;
     		}
     	}
-
-    	// calculate big sum
-    	bigsum=0;
-    	for (int i=0; i<experiments.size(); i++) {
-    		//bigsum += (   uniquepreys[bait].size() * (uniquepreys[bait].size()-1) / 2 ); 
-    		bigsum += (   preycount_nobait[i] * (preycount_nobait[i]-1) / 2 );
-    	}
-    	
     	
     }
+    
+    /**
+     * number of times A retrieves B
+     */
+    private int retrieves(int i, int j) {
+    	int pair = statistics.getSpokePair(i, j);
+    	return pair >= 0 ? aretrievesb[pair] : 0;
+    }
+    
+    /**
+     * number of times A and B appear together as preys
+     */
+    private int copurified(int i, int j) {
+    	int pair = statistics.getMatrixPair(i, j);
+    	return pair >= 0 ? abpreynobait[pair] : 0;
+    }
 
     /**
      * spokes term
      */
     private double S(int i, int j) {
-		double odd =  (double)aretrievesb.get(i, j) / (baitfrac[i] * numexperiments * preyfrac[j] * preysperbait[i] );
+		double odd =  (double)retrieves(i, j) / (baitfrac[i] * numexperiments * preyfrac[j] * preysperbait[i] );
 		return Math.log(odd);
 	}
 
@@ -156,7 +193,7 @@ public class SocioAffinityCalculator extends ScoresCalculator  {
      * matrix term
      */
 	private double M(int i, int j) {
-		double odd =  (double)abpreynobait.get(i, j) / (preyfrac[i] * preyfrac[j] * (double)bigsum);
+		double odd =  (double)copurified(i, j) / (preyfrac[i] * preyfrac[j] * (double)bigsum);
 		return Math.log( odd);
 	}
 	
@@ -196,6 +233,23 @@ public class SocioAffinityCalculator extends ScoresCalculator  {
 			return false;
 	}
 
+	/**
+	 * Returns all proteins which were co-purified with the given protein in
+	 * any experiment of the statistics, only these pairs can have a score 
+	 * different from zero.
+	 */
+	public int[] getCandidatePartners(int protein) {
+		return statistics.getIndex().getCoPurified(protein);
+	}
+	
+	/**
+	 * Always {@code true}, pairs of proteins which were never co-purified
+	 * have a score of zero.
+	 */
+	public boolean candidatesComplete(float cutOff) {
+		return true;
+	}
+	
 	/**
 	 * Returns all proteins of the purification data set used in this 
 	 * scores calculator
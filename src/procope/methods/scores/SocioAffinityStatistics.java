@@ -0,0 +1,397 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.methods.scores;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import procope.data.purifications.PurificationData;
+import procope.data.purifications.PurificationExperiment;
+import procope.data.purifications.PurificationIndex;
+import procope.tools.Tools;
+
+/**
+ * Precomputed per-experiment statistics of a purification data set which 
+ * are needed for the {@link SocioAffinityCalculator socio affinity scores}.
+ * All bait-prey pairs and all prey-prey pairs (not involving the bait) of
+ * all experiments are numbered once in the constructor. Each experiment 
+ * stores the numbers of its pairs along with their multiplicities.
+ * <p>A subset of the experiments in which each experiment may occur multiple
+ * times, e.g. a bootstrap sample, can then be described by an integer 
+ * weight for each experiment (see 
+ * {@link SocioAffinityCalculator#SocioAffinityCalculator(SocioAffinityStatistics, int[])}).
+ * The pair counts of such a subset are obtained by simply summing up the 
+ * weighted counts of the experiments, no sparse matrices have to be built.
+ * <p>The statistics do not change after construction and can be shared by
+ * multiple threads.
+ * 
+ * @author Jan Krumsiek
+ * @see procope.methods.scores.bootstrap.PurificationBootstrapSamples#getSampleWeights(int)
+ */
+public class SocioAffinityStatistics {
+	
+	private int[] baits;
+	// number of preys (with duplicates) and distinct proteins of each experiment
+	private int[] preyCounts;
+	private int[][] proteins;
+	// preys of each experiment which are not the bait itself
+	private int[] preysNoBait;
+	// distinct preys of each experiment along with their multiplicity
+	private int[][] preys;
+	private int[][] preyMult;
+	
+	// bait retrieves prey pairs (directed) and prey-prey pairs (undirected)
+	private PairIndex spokeIndex;
+	private PairIndex matrixIndex;
+	private int[][] spokePairs;
+	private int[][] spokeMult;
+	private int[][] matrixPairs;
+	private int[][] matrixMult;
+	
+	private PurificationIndex index;
+	
+	/**
+	 * Calculates the statistics for the experiments of a given purification 
+	 * data set. The weights used later on refer to the order of 
+	 * {@link PurificationData#getExperiments()}.
+	 * 
+	 * @param data purification data set
+	 */
+	public SocioAffinityStatistics(PurificationData data) {
+		this(data.getExperiments());
+	}
+	
+	/**
+	 * Calculates the statistics for a list of purification experiments. The
+	 * weights used later on refer to the order of this list.
+	 * 
+	 * @param experiments list of purification experiments
+	 */
+	public SocioAffinityStatistics(List<PurificationExperiment> experiments) {
+		
+		int count = experiments.size();
+		baits = new int[count];
+		preyCounts = new int[count];
+		proteins = new int[count][];
+		preysNoBait = new int[count];
+		preys = new int[count][];
+		preyMult = new int[count][];
+		long[][] spokeKeys = new long[count][];
+		long[][] matrixKeys = new long[count][];
+		spokeMult = new int[count][];
+		matrixMult = new int[count][];
+		
+		int exp=0;
+		for (PurificationExperiment experiment : experiments) {
+			int bait = experiment.getBait();
+			Collection<Integer> colpreys = experiment.getPreys();
+			int[] expPreys = new int[colpreys.size()];
+			int p=0;
+			for (int prey : colpreys) 
+				expPreys[p++] = prey;
+			
+			baits[exp] = bait;
+			preyCounts[exp] = expPreys.length;
+			
+			// spokes: bait retrieves each prey, count unique preys (excluding bait itself)
+			long[] keys = new long[expPreys.length];
+			for (int i=0; i<expPreys.length; i++) {
+				keys[i] = key(bait, expPreys[i]);
+				if (expPreys[i] != bait)
+					preysNoBait[exp]++;
+			}
+			spokeKeys[exp] = keys;
+			spokeMult[exp] = countRuns(keys);
+			
+			// distinct preys and all proteins
+			int[] sorted = Tools.arrCopyOf(expPreys, expPreys.length);
+			Arrays.sort(sorted);
+			long[] preyKeys = new long[sorted.length];
+			for (int i=0; i<sorted.length; i++)
+				preyKeys[i] = sorted[i];
+			preyMult[exp] = countRuns(preyKeys);
+			preys[exp] = new int[preyMult[exp].length];
+			for (int i=0; i<preys[exp].length; i++)
+				preys[exp][i] = (int)preyKeys[i];
+			int[] members = new int[preys[exp].length+1];
+			System.arraycopy(preys[exp], 0, members, 0, preys[exp].length);
+			members[members.length-1] = bait;
+			proteins[exp] = members;
+			
+			// matrix: all prey pairs in which none of the preys is the bait,
+			// a prey which occurs twice forms a pair with itself, which is
+			// counted in both directions
+			int pairs=0;
+			for (int i=0; i<expPreys.length; i++) {
+				if (expPreys[i] == bait) continue;
+				for (int j=i+1; j<expPreys.length; j++) {
+					if (expPreys[j] != bait)
+						pairs += (expPreys[i] == expPreys[j]) ? 2 : 1;
+				}
+			}
+			keys = new long[pairs];
+			pairs=0;
+			for (int i=0; i<expPreys.length; i++) {
+				if (expPreys[i] == bait) continue;
+				for (int j=i+1; j<expPreys.length; j++) {
+					if (expPreys[j] != bait) {
+						int a = Math.min(expPreys[i], expPreys[j]);
+						int b = Math.max(expPreys[i], expPreys[j]);
+						keys[pairs++] = key(a, b);
+						if (a == b)
+							keys[pairs++] = key(a, b);
+					}
+				}
+			}
+			matrixKeys[exp] = keys;
+			matrixMult[exp] = countRuns(keys);
+			
+			exp++;
+		}
+		
+		// number all pairs and convert the keys of the experiments
+		spokeIndex = new PairIndex(spokeKeys, spokeMult);
+		spokePairs = spokeIndex.toIndices(spokeKeys, spokeMult);
+		matrixIndex = new PairIndex(matrixKeys, matrixMult);
+		matrixPairs = matrixIndex.toIndices(matrixKeys, matrixMult);
+		
+		PurificationData data = new PurificationData();
+		data.addExperiments(experiments);
+		index = new PurificationIndex(data);
+	}
+	
+	/**
+	 * Returns the number of experiments, i.e. the length of the weight 
+	 * vectors.
+	 * 
+	 * @return number of experiments
+	 */
+	public int getNumberOfExperiments() {
+		return baits.length;
+	}
+	
+	/**
+	 * Returns the inverted index of all experiments
+	 * 
+	 * @return inverted index
+	 */
+	public PurificationIndex getIndex() {
+		return index;
+	}
+	
+	/**
+	 * bait of an experiment
+	 */
+	int getBait(int exp) {
+		return baits[exp];
+	}
+	
+	/**
+	 * number of preys of an experiment, duplicates included
+	 */
+	int getPreyCount(int exp) {
+		return preyCounts[exp];
+	}
+	
+	/**
+	 * number of preys of an experiment which are not the bait
+	 */
+	int getPreysNoBait(int exp) {
+		return preysNoBait[exp];
+	}
+	
+	/**
+	 * sorted distinct preys of an experiment
+	 */
+	int[] getPreys(int exp) {
+		return preys[exp];
+	}
+	
+	/**
+	 * multiplicity of the distinct preys of an experiment
+	 */
+	int[] getPreyMultiplicities(int exp) {
+		return preyMult[exp];
+	}
+	
+	/**
+	 * all proteins of an experiment
+	 */
+	int[] getProteins(int exp) {
+		return proteins[exp];
+	}
+	
+	/**
+	 * total number of bait-prey pairs
+	 */
+	int getSpokePairCount() {
+		return spokeIndex.size();
+	}
+	
+	/**
+	 * total number of prey-prey pairs
+	 */
+	int getMatrixPairCount() {
+		return matrixIndex.size();
+	}
+	
+	/**
+	 * bait-prey pairs of an experiment and their multiplicities
+	 */
+	int[] getSpokePairs(int exp) {
+		return spokePairs[exp];
+	}
+	
+	int[] getSpokeMultiplicities(int exp) {
+		return spokeMult[exp];
+	}
+	
+	/**
+	 * prey-prey pairs of an experiment and their multiplicities
+	 */
+	int[] getMatrixPairs(int exp) {
+		return matrixPairs[exp];
+	}
+	
+	int[] getMatrixMultiplicities(int exp) {
+		return matrixMult[exp];
+	}
+	
+	/**
+	 * number of the pair in which bait retrieves prey, -1 if it never occurs
+	 */
+	int getSpokePair(int bait, int prey) {
+		return spokeIndex.indexOf(bait, prey);
+	}
+	
+	/**
+	 * number of the pair of two preys, -1 if it never occurs
+	 */
+	int getMatrixPair(int prey1, int prey2) {
+		if (prey1 <= prey2)
+			return matrixIndex.indexOf(prey1, prey2);
+		else
+			return matrixIndex.indexOf(prey2, prey1);
+	}
+	
+	/**
+	 * combines two protein IDs into one sortable key
+	 */
+	private static long key(int a, int b) {
+		return ((long)a << 32) | (b & 0xffffffffL);
+	}
+	
+	/**
+	 * sorts the keys, collapses equal keys and returns their multiplicities,
+	 * the distinct keys are moved to the beginning of the array
+	 */
+	private static int[] countRuns(long[] keys) {
+		Arrays.sort(keys);
+		int[] mult = new int[keys.length];
+		int unique=0;
+		for (int i=0; i<keys.length; i++) {
+			if (unique == 0 || keys[i] != keys[unique-1]) {
+				keys[unique] = keys[i];
+				mult[unique++] = 1;
+			} else
+				mult[unique-1]++;
+		}
+		return Tools.arrCopyOf(mult, unique);
+	}
+	
+	/**
+	 * Internal class, numbers pairs of proteins by their position in a 
+	 * compressed row structure
+	 */
+	private static class PairIndex {
+		
+		private int[] rowStarts;
+		private int[] columns;
+		
+		/**
+		 * creates the index from the distinct keys (the first mult.length 
+		 * keys) of all experiments
+		 */
+		public PairIndex(long[][] keys, int[][] mult) {
+			int total=0;
+			for (int[] m : mult)
+				total += m.length;
+			long[] all = new long[total];
+			int count=0;
+			for (int exp=0; exp<keys.length; exp++) {
+				System.arraycopy(keys[exp], 0, all, count, mult[exp].length);
+				count += mult[exp].length;
+			}
+			Arrays.sort(all);
+			int unique=0;
+			for (int i=0; i<count; i++) {
+				if (unique == 0 || all[i] != all[unique-1])
+					all[unique++] = all[i];
+			}
+			
+			int maxRow = unique > 0 ? (int)(all[unique-1] >>> 32) : 0;
+			rowStarts = new int[maxRow+2];
+			columns = new int[unique];
+			for (int i=0; i<unique; i++) {
+				rowStarts[(int)(all[i] >>> 32)+1]++;
+				columns[i] = (int)all[i];
+			}
+			for (int i=1; i<rowStarts.length; i++)
+				rowStarts[i] += rowStarts[i-1];
+		}
+		
+		/**
+		 * converts the distinct keys of each experiment to pair numbers
+		 */
+		public int[][] toIndices(long[][] keys, int[][] mult) {
+			int[][] result = new int[keys.length][];
+			for (int exp=0; exp<keys.length; exp++) {
+				result[exp] = new int[mult[exp].length];
+				for (int i=0; i<mult[exp].length; i++)
+					result[exp][i] = indexOf((int)(keys[exp][i] >>> 32), (int)keys[exp][i]);
+			}
+			return result;
+		}
+		
+		public int indexOf(int row, int column) {
+			if (row < 0 || row >= rowStarts.length-1)
+				return -1;
+			// binary search within the row
+			int low = rowStarts[row], high = rowStarts[row+1]-1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (columns[mid] < column)
+					low = mid+1;
+				else if (columns[mid] > column)
+					high = mid-1;
+				else
+					return mid;
+			}
+			return -1;
+		}
+		
+		public int size() {
+			return columns.length;
+		}
+	}
+
+}
@@ -22,10 +22,14 @@ package procope.methods.scores.bootstrap;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import procope.data.complexes.Complex;
 import procope.data.complexes.ComplexSet;
+import procope.data.networks.NetworkBuilder;
 import procope.data.networks.ProteinNetwork;
+import procope.tools.ParallelTools;
+import procope.tools.ProCopeException;
 
 
 /**
@@ -76,45 +80,83 @@ public class Bootstrap {
 	 * @return bootstrap network for the given clusterings
 	 */
 	public static ProteinNetwork createBootstrapNetwork(Collection<ComplexSet> clusterings) {
+		return createBootstrapNetwork(clusterings, 1);
+	}
+	
+	/**
+	 * Creates the bootstrap network for a given set of clusterings using 
+	 * multiple threads. Each thread counts the co-occurrences of the protein
+	 * pairs in its share of the clusterings, the partial counts are merged
+	 * afterwards and the network is built in one step. The result is the
+	 * same as for the sequential calculation.
+	 * <p>Note that each thread keeps its own counts, the memory needed 
+	 * grows with the number of threads.
+	 * 
+	 * @param clusterings set of clusterings for which the boostrap network is calculated
+	 * @param threads number of threads to use
+	 * @return bootstrap network for the given clusterings
+	 * @throws ProCopeException if {@code threads < 1}
+	 * @see ParallelTools#getDefaultThreads()
+	 */
+	public static ProteinNetwork createBootstrapNetwork(Collection<ComplexSet> clusterings, 
+			int threads) throws ProCopeException {
 		
-		ProteinNetwork btnet = new ProteinNetwork(false);
-
-		// iterate over all complex sets
-		for (ComplexSet set : clusterings) {
-			// for each complex set we need a helper network so each protein pair is only counted once
-			ProteinNetwork setEdges = new ProteinNetwork(false);
-			// iterate over all complexes
-			for (Complex complex : set) {
-				// iterate over all pairwise edges
-				Integer[] proteins = complex.getComplex().toArray(
-						new Integer[0]);
-				for (int i = 0; i < proteins.length; i++) {
-					for (int j = i + 1; j < proteins.length; j++) {
-						// only count this edge if we havent counted it yet for this complex set
-						if (Float.isNaN(setEdges.getEdge(proteins[i], proteins[j]))) {
-							// increase edge
-							float score = btnet.getEdge(proteins[i], proteins[j]);
-							if (score != score) // NaN check
-								score = 1;
-							else
-								score++;
-							btnet.setEdge(proteins[i], proteins[j], score);
-							// mark edge for this complexset
-							setEdges.setEdge(proteins[i], proteins[j]);
+		if (threads < 1)
+			throw new ProCopeException("Number of threads must be at least 1");
+		
+		final ComplexSet[] sets = clusterings.toArray(new ComplexSet[clusterings.size()]);
+		threads = Math.max(1, Math.min(threads, sets.length));
+		
+		// each worker counts the pairs of its clusterings, each pair only 
+		// once per clustering
+		final PairCounter[] partial = new PairCounter[threads];
+		ParallelTools.RangeTask[] workers = new ParallelTools.RangeTask[threads];
+		for (int t=0; t<threads; t++) {
+			final PairCounter counter = new PairCounter();
+			partial[t] = counter;
+			workers[t] = new ParallelTools.RangeTask() {
+				public void process(int from, int to) {
+					for (int set=from; set<to; set++) {
+						for (Complex complex : sets[set]) {
+							// iterate over all pairwise edges
+							List<Integer> members = complex.getComplex();
+							int[] proteins = new int[members.size()];
+							for (int i=0; i<proteins.length; i++)
+								proteins[i] = members.get(i);
+							for (int i = 0; i < proteins.length; i++) {
+								for (int j = i + 1; j < proteins.length; j++) 
+									counter.count(PairCounter.pack(proteins[i], proteins[j]), set);
+							}
 						}
 					}
 				}
+			};
+		}
+		ParallelTools.processRange(sets.length, 1, workers);
+		
+		// merge the partial counts into the largest one
+		int largest=0;
+		for (int t=1; t<threads; t++) {
+			if (partial[t].size() > partial[largest].size())
+				largest = t;
+		}
+		PairCounter counts = partial[largest];
+		for (int t=0; t<threads; t++) {
+			if (t != largest) {
+				counts.addAll(partial[t]);
+				partial[t] = null;
 			}
 		}
-
-		// normalize
+		
+		// build the normalized network
 		float numSets = clusterings.size();
-		int[] edges = btnet.getEdgesArray();
-		for (int i = 0; i < edges.length; i += 2) {
-			btnet.setEdge(edges[i], edges[i + 1], btnet.getEdge(edges[i], edges[i + 1]) / numSets);
+		NetworkBuilder builder = new NetworkBuilder(false, counts.size());
+		for (int i=0; i<counts.size(); i++) {
+			long key = counts.getKey(i);
+			builder.addEdge((int)(key >>> 32), (int)key, (float)counts.getCount(i) / numSets);
 		}
 
-		return btnet;
+		return builder.build();
 	}
 
 
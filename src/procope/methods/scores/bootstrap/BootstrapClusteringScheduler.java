@@ -0,0 +1,449 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.methods.scores.bootstrap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import procope.data.complexes.ComplexSet;
+import procope.data.networks.NetworkGenerator;
+import procope.data.networks.ProteinNetwork;
+import procope.methods.clustering.MCLEfficiencyCalculator;
+import procope.methods.clustering.MCLParameters;
+import procope.methods.clustering.MarkovClusterer;
+import procope.methods.scores.SocioAffinityCalculator;
+import procope.methods.scores.SocioAffinityStatistics;
+import procope.tools.ParallelTools;
+import procope.tools.ProCopeException;
+
+/**
+ * Runs the MCL clusterings of a range of 
+ * {@link PurificationBootstrapSamples bootstrap samples} with several 
+ * inflation coefficients in parallel. Each (sample, inflation) pair is a 
+ * task of its own which is processed by a fixed number of worker threads.
+ * The scores network of a sample is calculated once and shared by all 
+ * clusterings of that sample. The socio affinity scores of all samples are
+ * calculated from {@link SocioAffinityStatistics shared statistics} of the 
+ * original experiments.
+ * <p>As the scores networks are the largest objects of the calculation, 
+ * only a limited number of samples is in progress at the same time. A new 
+ * sample is only started when the number of alive scores networks falls 
+ * below this limit. Workers always prefer the clusterings of samples which
+ * are already in progress, so finished samples release their networks as 
+ * soon as possible.
+ * <p>Whenever all clusterings of a sample are finished, their efficiencies 
+ * are calculated and the results are passed to a {@link SampleListener}. 
+ * If a checkpoint file is set, the number of the sample is appended to 
+ * that file after the listener returned. An interrupted run can be resumed
+ * by skipping all samples contained in the checkpoint file.
+ * <p>This class belongs to the helper classes needed for parallelizable 
+ * bootstrap scores calculation.
+ * 
+ * @author Jan Krumsiek
+ */
+public class BootstrapClusteringScheduler {
+	
+	/**
+	 * Receives the results of the samples as soon as they are finished. Calls
+	 * are synchronized, i.e. only one sample is passed to the listener at a 
+	 * time, but the order of the samples is arbitrary.
+	 */
+	public interface SampleListener {
+		/**
+		 * Called when all clusterings of a sample are finished
+		 * 
+		 * @param sample the number of the sample (1-based)
+		 * @param scores the scores network of the sample
+		 * @param clusterings the clusterings of the sample in the order of 
+		 *                    the inflation coefficients
+		 * @throws IOException if writing the results fails, stops the
+		 *         calculation
+		 */
+		public void sampleFinished(int sample, ProteinNetwork scores, 
+				BootstrapClusterings clusterings) throws IOException;
+	}
+	
+	private PurificationBootstrapSamples samples;
+	private float[] inflations;
+	private float cutOff;
+	private int threads;
+	private int maxNetworks;
+	private File checkpointFile = null;
+	private SocioAffinityStatistics statistics = null;
+	
+	// state of the current run
+	private LinkedList<Integer> waiting;
+	private List<SampleState> running;
+	private int aliveNetworks;
+	private SampleListener listener;
+	private PrintWriter checkpoint;
+	private volatile boolean aborted;
+	private Object listenerLock = new Object();
+	private RuntimeException failure;
+	private IOException ioFailure;
+	
+	/**
+	 * Creates a new scheduler for the given samples. Uses the 
+	 * {@link ParallelTools#getDefaultThreads() default number of threads}
+	 * and keeps as many scores networks alive as there are threads.
+	 * 
+	 * @param samples the bootstrap samples
+	 * @param inflations the MCL inflation coefficients to be used for each 
+	 *                   sample
+	 * @param cutOff only use socio affinity scores greater than or equal to
+	 *               this value, use {@code Float.NEGATIVE_INFINITY} to use
+	 *               all scores
+	 * @throws ProCopeException if no inflation coefficient is given
+	 */
+	public BootstrapClusteringScheduler(PurificationBootstrapSamples samples, 
+			float[] inflations, float cutOff) throws ProCopeException {
+		if (inflations.length == 0)
+			throw new ProCopeException("At least one inflation coefficient is needed");
+		this.samples = samples;
+		this.inflations = inflations;
+		this.cutOff = cutOff;
+		this.threads = ParallelTools.getDefaultThreads();
+		this.maxNetworks = threads;
+	}
+	
+	/**
+	 * Sets the number of worker threads.
+	 * 
+	 * @param threads number of threads, must be at least 1
+	 * @throws ProCopeException if {@code threads < 1}
+	 */
+	public void setThreads(int threads) throws ProCopeException {
+		if (threads < 1)
+			throw new ProCopeException("Number of threads must be at least 1");
+		this.threads = threads;
+	}
+	
+	/**
+	 * Sets the maximum number of scores networks which are kept in memory
+	 * at the same time, i.e. the number of samples in progress.
+	 * 
+	 * @param maxNetworks maximum number of networks, must be at least 1
+	 * @throws ProCopeException if {@code maxNetworks < 1}
+	 */
+	public void setMaxNetworks(int maxNetworks) throws ProCopeException {
+		if (maxNetworks < 1)
+			throw new ProCopeException("Maximum number of networks must be at least 1");
+		this.maxNetworks = maxNetworks;
+	}
+	
+	/**
+	 * Sets the checkpoint file. The numbers of all finished samples will be
+	 * appended to this file. Use {@code null} to disable checkpointing.
+	 * 
+	 * @param checkpointFile the checkpoint file
+	 */
+	public void setCheckpointFile(File checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+	
+	/**
+	 * Reads the numbers of the finished samples from the checkpoint file.
+	 * Incomplete lines (e.g. from an interrupted write) are ignored.
+	 * 
+	 * @return finished samples, empty if there is no checkpoint file or the
+	 *         file does not exist yet
+	 * @throws IOException if reading the file fails
+	 */
+	public Set<Integer> getFinishedSamples() throws IOException {
+		Set<Integer> finished = new HashSet<Integer>();
+		if (checkpointFile == null || !checkpointFile.exists())
+			return finished;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(checkpointFile)));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				try {
+					finished.add(Integer.parseInt(line.trim()));
+				} catch (NumberFormatException e) {
+					// incomplete line, ignore it
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return finished;
+	}
+	
+	/**
+	 * Clusters all samples within a given range with all inflation 
+	 * coefficients. Must not be called concurrently for the same scheduler.
+	 * 
+	 * @param from first sample (1-based, inclusively)
+	 * @param to last sample (1-based, inclusively)
+	 * @param resume if {@code true} all samples contained in the checkpoint
+	 *               file will be skipped, otherwise the checkpoint file is
+	 *               cleared first
+	 * @param listener receives the results of the samples
+	 * @return number of samples which were clustered
+	 * @throws IOException if the listener or the checkpoint file fail
+	 * @throws ProCopeException if the range is invalid or the clustering 
+	 *         fails
+	 */
+	public int run(int from, int to, boolean resume, SampleListener listener) 
+		throws IOException, ProCopeException {
+		
+		if (from < 1 || to < from || to > samples.getNumberOfSamples())
+			throw new ProCopeException("Invalid sample range. Range must be within [1," 
+					+ samples.getNumberOfSamples() + "]");
+		
+		// samples to be processed
+		Set<Integer> finished = resume ? getFinishedSamples() : new HashSet<Integer>();
+		waiting = new LinkedList<Integer>();
+		for (int sample=from; sample<=to; sample++) {
+			if (!finished.contains(sample))
+				waiting.add(sample);
+		}
+		int count = waiting.size();
+		running = new ArrayList<SampleState>();
+		aliveNetworks = 0;
+		aborted = false;
+		failure = null;
+		ioFailure = null;
+		this.listener = listener;
+		
+		// statistics of the original experiments, shared by all samples
+		if (statistics == null && count > 0)
+			statistics = new SocioAffinityStatistics(samples.getExperiments());
+		
+		if (checkpointFile != null) {
+			boolean incompleteLine = resume && endsWithIncompleteLine(checkpointFile);
+			checkpoint = new PrintWriter(new FileOutputStream(checkpointFile, resume));
+			if (incompleteLine)
+				checkpoint.println();
+		}
+		try {
+			// start the workers
+			Runnable[] workers = new Runnable[threads];
+			for (int t=0; t<threads; t++) {
+				workers[t] = new Runnable() {
+					public void run() {
+						work();
+					}
+				};
+			}
+			ParallelTools.runAll(workers);
+		} finally {
+			if (checkpoint != null) 
+				checkpoint.close();
+			checkpoint = null;
+			this.listener = null;
+			running = null;
+			waiting = null;
+		}
+		
+		if (ioFailure != null)
+			throw ioFailure;
+		if (failure != null)
+			throw failure;
+		return count;
+	}
+	
+	/**
+	 * checks whether the last line of a file lacks its line break 
+	 */
+	private static boolean endsWithIncompleteLine(File file) throws IOException {
+		if (!file.exists() || file.length() == 0)
+			return false;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(file.length()-1);
+			return raf.read() != '\n';
+		} finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * main loop of a worker thread
+	 */
+	private void work() {
+		try {
+			Task task;
+			while ((task = nextTask()) != null) {
+				if (task.inflation < 0)
+					buildNetwork(task.state);
+				else
+					cluster(task.state, task.inflation);
+			}
+		} catch (RuntimeException e) {
+			abort(e, null);
+		} catch (IOException e) {
+			abort(null, e);
+		} catch (Error e) {
+			abort(new ProCopeException("Error in bootstrap clustering: " + e), null);
+			throw e;
+		}
+	}
+	
+	/**
+	 * returns the next task or {@code null} if there is nothing left to do,
+	 * blocks if all tasks are waiting for networks
+	 */
+	private synchronized Task nextTask() {
+		while (!aborted) {
+			// prefer clusterings of samples which are already running
+			for (SampleState state : running) {
+				if (state.scores != null && state.nextInflation < inflations.length)
+					return new Task(state, state.nextInflation++);
+			}
+			// start a new sample if the networks limit allows it
+			if (waiting.size() > 0 && aliveNetworks < maxNetworks) {
+				SampleState state = new SampleState(waiting.removeFirst());
+				running.add(state);
+				aliveNetworks++;
+				return new Task(state, -1);
+			}
+			// finished?
+			if (waiting.size() == 0 && running.size() == 0)
+				return null;
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				throw new ProCopeException("Bootstrap clustering was interrupted.");
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * calculates the scores network of a sample
+	 */
+	private void buildNetwork(SampleState state) {
+		ProteinNetwork scores = NetworkGenerator.generateNetwork(new SocioAffinityCalculator(
+				statistics, samples.getSampleWeights(state.sample)), cutOff, 1);
+		synchronized (this) {
+			state.scores = scores;
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * clusters a sample with one inflation coefficient, the worker which 
+	 * finishes the last clustering of a sample also finishes the sample
+	 */
+	private void cluster(SampleState state, int inflation) throws IOException {
+		MCLParameters params = new MCLParameters();
+		params.setInflation(inflations[inflation]);
+		params.setThreads(1);
+		state.clusterings[inflation] = new MarkovClusterer(params).cluster(state.scores);
+		
+		boolean last;
+		synchronized (this) {
+			last = ++state.finishedClusterings == inflations.length;
+		}
+		if (last)
+			finishSample(state);
+	}
+	
+	/**
+	 * evaluates the clusterings of a sample and passes them to the listener
+	 */
+	private void finishSample(SampleState state) throws IOException {
+		List<ComplexSet> sweep = new ArrayList<ComplexSet>();
+		for (ComplexSet clustering : state.clusterings)
+			sweep.add(clustering);
+		double[] efficiencies = MCLEfficiencyCalculator.calculateEfficiencies(state.scores, sweep, 1);
+		BootstrapClusterings result = new BootstrapClusterings();
+		for (int i=0; i<inflations.length; i++) {
+			result.addClustering(new BootstrapClustering(state.clusterings[i], 
+					inflations[i]+"", (float)efficiencies[i]));
+		}
+		
+		// one sample at a time for the listener and the checkpoint file
+		synchronized (listenerLock) {
+			if (aborted)
+				return;
+			listener.sampleFinished(state.sample, state.scores, result);
+			if (checkpoint != null) {
+				checkpoint.println(state.sample);
+				checkpoint.flush();
+				if (checkpoint.checkError())
+					throw new IOException("Could not write checkpoint file " + checkpointFile);
+			}
+		}
+		
+		// release the network
+		synchronized (this) {
+			running.remove(state);
+			aliveNetworks--;
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * stops all workers after a failure, only the first failure is kept
+	 */
+	private synchronized void abort(RuntimeException e, IOException ioe) {
+		if (!aborted) {
+			failure = e;
+			ioFailure = ioe;
+		}
+		aborted = true;
+		notifyAll();
+	}
+	
+	/**
+	 * Internal class, progress of a sample
+	 */
+	private class SampleState {
+		private int sample;
+		private ProteinNetwork scores = null;
+		private ComplexSet[] clusterings;
+		private int nextInflation = 0;
+		private int finishedClusterings = 0;
+		
+		public SampleState(int sample) {
+			this.sample = sample;
+			this.clusterings = new ComplexSet[inflations.length];
+		}
+	}
+	
+	/**
+	 * Internal class, a network calculation (inflation -1) or a clustering
+	 */
+	private static class Task {
+		private SampleState state;
+		private int inflation;
+		
+		public Task(SampleState state, int inflation) {
+			this.state = state;
+			this.inflation = inflation;
+		}
+	}
+
+}
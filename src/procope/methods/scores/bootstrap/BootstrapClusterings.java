@@ -20,22 +20,34 @@
  */
 package procope.methods.scores.bootstrap;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import procope.data.complexes.Complex;
 import procope.data.complexes.ComplexSet;
 import procope.tools.ProCopeException;
+import procope.tools.Tools;
 import procope.tools.namemapping.ProteinManager;
 
 
@@ -43,6 +55,19 @@ import procope.tools.namemapping.ProteinManager;
  * Container for {@link BootstrapClustering bootstrap MCL clustering} lists.
  * Contains methods to write and load these clustering collections to and from
  * the file system.
+ * <p>Clusterings can be stored in two formats which are both recognized
+ * automatically when reading a file:
+ * <ul>
+ * <li>gzipped text, each complex is one line of protein labels</li>
+ * <li>binary (see {@link #writeToFile(String, boolean)}): a header with a 
+ * dictionary of all protein labels, the parameters and efficiencies of all 
+ * clusterings and the position of each clustering in the file, followed by
+ * one compressed block per clustering which contains the complexes as 
+ * arrays of dictionary indices. Header and blocks are compressed 
+ * separately. Each label is only resolved once and a 
+ * single clustering can be read without parsing the others (see
+ * {@link #readClustering(String, int)}).</li>
+ * </ul>
  * <p>This class belongs to the helper classes needed for parallelizable 
  * bootstrap scores calculation.
  * 
@@ -50,6 +75,16 @@ import procope.tools.namemapping.ProteinManager;
  */
 public class BootstrapClusterings implements Iterable<BootstrapClustering> {
 	
+	/**
+	 * Magic number at the beginning of binary clusterings files ("BTC1")
+	 */
+	public static final int BINARY_MAGIC = 0x42544331;
+	
+	/**
+	 * Current version of the binary clusterings file format
+	 */
+	public static final int BINARY_VERSION = 1;
+	
 	private ArrayList<BootstrapClustering> clusterings;
 
 	/**
@@ -91,21 +126,113 @@ public class BootstrapClusterings implements Iterable<BootstrapClustering> {
 	 */
 	public BootstrapClusterings(String file, boolean noRealClusterings) throws IOException {
 		
+		if (isBinaryFile(file)) {
+			readBinary(file, noRealClusterings);
+			return;
+		}
+		
+		List<UnresolvedClustering> unresolved = readText(file, !noRealClusterings);
+		clusterings = new ArrayList<BootstrapClustering>(unresolved.size());
+		int[] ids = null;
+		for (UnresolvedClustering clustering : unresolved) {
+			if (noRealClusterings) {
+				clusterings.add(new BootstrapClustering(null, clustering.getParameters(), 
+						clustering.getEfficiency()));
+			} else {
+				// all clusterings share the dictionary of the file
+				if (ids == null)
+					ids = UnresolvedClustering.resolveLabels(clustering.getLabels());
+				clusterings.add(clustering.resolve(ids));
+			}
+		}
+		
+	}
+	
+	/**
+	 * Reads a single clustering from a clusterings file. For binary files 
+	 * only the header and the block of the requested clustering are read,
+	 * text files have to be parsed completely.
+	 * 
+	 * @param file file from which the clustering will be read
+	 * @param index index of the clustering in the file
+	 * @return the clustering at the given index
+	 * @throws IOException if the file could not be read
+	 * @throws ProCopeException if the file format is invalid or the index 
+	 *         is out of range
+	 */
+	public static BootstrapClustering readClustering(String file, int index) 
+		throws IOException, ProCopeException {
+		return readUnresolvedClustering(file, index).resolve();
+	}
+	
+	/**
+	 * Reads a single clustering from a clusterings file without mapping the 
+	 * protein labels to internal IDs. This does not access the 
+	 * {@link ProteinManager}, so several files can be read in parallel.
+	 * 
+	 * @param file file from which the clustering will be read
+	 * @param index index of the clustering in the file
+	 * @return the clustering at the given index, still containing labels
+	 * @throws IOException if the file could not be read
+	 * @throws ProCopeException if the file format is invalid or the index 
+	 *         is out of range
+	 * @see UnresolvedClustering#resolve()
+	 */
+	public static UnresolvedClustering readUnresolvedClustering(String file, int index) 
+		throws IOException, ProCopeException {
+		
+		if (!isBinaryFile(file)) {
+			List<UnresolvedClustering> all = readText(file, true);
+			if (index < 0 || index >= all.size())
+				throw new ProCopeException("Invalid clustering index: " + index);
+			return all.get(index);
+		}
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			BinaryHeader header = readBinaryHeader(new DataInputStream(
+					new BufferedInputStream(new FileInputStream(raf.getFD()))));
+			if (index < 0 || index >= header.efficiencies.length)
+				throw new ProCopeException("Invalid clustering index: " + index);
+			// jump to the block of the clustering
+			byte[] block = new byte[header.lengths[index]];
+			raf.seek(header.blocksStart + header.offsets[index]);
+			raf.readFully(block);
+			return new UnresolvedClustering(header.labels, readBlock(block, header.labels.length), 
+					header.parameters[index], header.efficiencies[index]);
+		} catch (EOFException e) {
+			throw new ProCopeException("File probably has invalid format!");
+		} finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * reads all clusterings of a gzipped text file, the labels are collected 
+	 * in one dictionary in the order of their first occurrence
+	 */
+	private static List<UnresolvedClustering> readText(String file, boolean readComplexes) 
+		throws IOException {
+		
 		try {
 			
 			BufferedReader reader = new BufferedReader(new InputStreamReader(
 					new GZIPInputStream(new FileInputStream(file))));
 			
-			clusterings = new ArrayList<BootstrapClustering>();
+			HashMap<String, Integer> dictionary = new HashMap<String, Integer>();
+			ArrayList<String> labels = new ArrayList<String>();
+			ArrayList<int[][]> complexes = new ArrayList<int[][]>();
+			ArrayList<String> parameters = new ArrayList<String>();
+			ArrayList<Float> efficiencies = new ArrayList<Float>();
 			
 			String line;
 			boolean readNumbers=true;
 			float curEfficiency=Float.NaN;
 			String curParas = null;
-			ComplexSet curComplexes = null;
+			ArrayList<int[]> curComplexes = null;
 			while ((line = reader.readLine())!=null) {
 				if (readNumbers) {
-					curComplexes =  new ComplexSet();
+					curComplexes = new ArrayList<int[]>();
 					// get efficiency
 					curEfficiency = Float.parseFloat(line);
 					curParas = reader.readLine();
@@ -113,21 +240,26 @@ public class BootstrapClusterings implements Iterable<BootstrapClustering> {
 				} else {
 					// end of this clustering?
 					if (line.charAt(0) == '#') {
-						if (!noRealClusterings)
-							clusterings.add(new BootstrapClustering(curComplexes, curParas, curEfficiency));
-						else
-							clusterings.add(new BootstrapClustering(null, curParas, curEfficiency));
+						complexes.add(curComplexes.toArray(new int[curComplexes.size()][]));
+						parameters.add(curParas);
+						efficiencies.add(curEfficiency);
 						curEfficiency = Float.NaN;
 						readNumbers = true;
 					} else {
-						if (!noRealClusterings) {
+						if (readComplexes) {
 							// line with complexes
 							String[] split = line.split("\t");
-							Complex complex = new Complex();
-							for (String protein : split) {
-								complex.addProtein(ProteinManager.getInternalID(protein));
+							int[] members = new int[split.length];
+							for (int i=0; i<split.length; i++) {
+								Integer label = dictionary.get(split[i]);
+								if (label == null) {
+									label = labels.size();
+									dictionary.put(split[i], label);
+									labels.add(split[i]);
+								}
+								members[i] = label;
 							}
-							curComplexes.addComplex(complex);
+							curComplexes.add(members);
 						}
 					}
 				}
@@ -135,6 +267,13 @@ public class BootstrapClusterings implements Iterable<BootstrapClustering> {
 			
 			reader.close();
 			
+			String[] dictionaryLabels = labels.toArray(new String[labels.size()]);
+			ArrayList<UnresolvedClustering> result = new ArrayList<UnresolvedClustering>(complexes.size());
+			for (int i=0; i<complexes.size(); i++)
+				result.add(new UnresolvedClustering(dictionaryLabels, complexes.get(i), 
+						parameters.get(i), efficiencies.get(i)));
+			return result;
+			
 		} catch (IOException e) {
 			// just a trick so this type of exception is not caught by the block below
 			throw e;
@@ -142,7 +281,150 @@ public class BootstrapClusterings implements Iterable<BootstrapClustering> {
 			throw new ProCopeException("File probably has invalid format!");
 		}
 		
+	}
+	
+	/**
+	 * checks the magic number at the beginning of the file
+	 */
+	private static boolean isBinaryFile(String file) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			return in.readInt() == BINARY_MAGIC;
+		} catch (EOFException e) {
+			return false;
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * reads all clusterings from a binary file
+	 */
+	private void readBinary(String file, boolean noRealClusterings) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			BinaryHeader header = readBinaryHeader(in);
+			int count = header.efficiencies.length;
+			clusterings = new ArrayList<BootstrapClustering>(count);
+			if (noRealClusterings) {
+				for (int i=0; i<count; i++) 
+					clusterings.add(new BootstrapClustering(null, header.parameters[i], header.efficiencies[i]));
+			} else {
+				// blocks are stored in the order of the clusterings
+				int[] ids = UnresolvedClustering.resolveLabels(header.labels);
+				for (int i=0; i<count; i++) {
+					byte[] block = new byte[header.lengths[i]];
+					in.readFully(block);
+					clusterings.add(new UnresolvedClustering(header.labels, 
+							readBlock(block, ids.length), header.parameters[i], 
+							header.efficiencies[i]).resolve(ids));
+				}
+			}
+		} catch (EOFException e) {
+			throw new ProCopeException("File probably has invalid format!");
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * reads magic number, version and header of a binary file, the stream 
+	 * is positioned at the first block afterwards
+	 */
+	private static BinaryHeader readBinaryHeader(DataInputStream in) throws IOException {
+		if (in.readInt() != BINARY_MAGIC)
+			throw new ProCopeException("File probably has invalid format!");
+		int version = in.readInt();
+		if (version != BINARY_VERSION)
+			throw new ProCopeException("Unsupported version of bootstrap clusterings file: " + version);
 		
+		BinaryHeader header = new BinaryHeader();
+		int headerLength = in.readInt();
+		if (headerLength < 0)
+			throw new ProCopeException("File probably has invalid format!");
+		header.blocksStart = 12 + headerLength;
+		byte[] compressed = new byte[headerLength];
+		in.readFully(compressed);
+		in = new DataInputStream(new BufferedInputStream(
+				new InflaterInputStream(new ByteArrayInputStream(compressed))));
+		int labelCount = in.readInt();
+		if (labelCount < 0)
+			throw new ProCopeException("File probably has invalid format!");
+		header.labels = new String[labelCount];
+		for (int i=0; i<header.labels.length; i++)
+			header.labels[i] = in.readUTF();
+		int count = in.readInt();
+		if (count < 0)
+			throw new ProCopeException("File probably has invalid format!");
+		header.efficiencies = new float[count];
+		header.parameters = new String[count];
+		header.offsets = new long[count];
+		header.lengths = new int[count];
+		for (int i=0; i<count; i++) {
+			header.efficiencies[i] = in.readFloat();
+			header.parameters[i] = in.readUTF();
+			header.offsets[i] = in.readLong();
+			header.lengths[i] = in.readInt();
+			if (header.offsets[i] < 0 || header.lengths[i] < 0)
+				throw new ProCopeException("File probably has invalid format!");
+		}
+		return header;
+	}
+	
+	/**
+	 * writes a non-negative integer using 7 bits per byte, small values 
+	 * only need one byte
+	 */
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+	
+	/**
+	 * reads an integer written by {@link #writeVarInt(DataOutputStream, int)}
+	 */
+	private static int readVarInt(DataInputStream in) throws IOException {
+		int value=0;
+		for (int shift=0; shift<32; shift+=7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new ProCopeException("File probably has invalid format!");
+	}
+	
+	/**
+	 * decompresses the complexes of one clustering, the proteins are returned
+	 * as indices into the label dictionary
+	 */
+	private static int[][] readBlock(byte[] block, int labels) throws IOException, ProCopeException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new InflaterInputStream(new ByteArrayInputStream(block))));
+		int complexes = readVarInt(in);
+		if (complexes < 0)
+			throw new ProCopeException("File probably has invalid format!");
+		// counts are not trusted for allocation, they might be corrupted
+		ArrayList<int[]> result = new ArrayList<int[]>();
+		for (int c=0; c<complexes; c++) {
+			int size = readVarInt(in);
+			if (size < 0)
+				throw new ProCopeException("File probably has invalid format!");
+			int[] members = new int[Math.min(size, 16)];
+			for (int i=0; i<size; i++) {
+				int label = readVarInt(in);
+				if (label < 0 || label >= labels)
+					throw new ProCopeException("File probably has invalid format!");
+				if (i == members.length)
+					members = Tools.arrCopyOf(members, Math.min(size, members.length*2));
+				members[i] = label;
+			}
+			result.add(members);
+		}
+		return result.toArray(new int[result.size()][]);
 	}
 	
 	/**
@@ -172,13 +454,32 @@ public class BootstrapClusterings implements Iterable<BootstrapClustering> {
 	}
 	
 	/**
-	 * Writes this clustering collection to a given file.
+	 * Writes this clustering collection to a given file in the gzipped text
+	 * format.
 	 * 
 	 * @see #BootstrapClusterings(String)
 	 * @param outfile path of the file the clusterings will be written to
 	 * @throws IOException if the file could not be written
 	 */
 	public void writeToFile(String outfile) throws IOException {
+		writeToFile(outfile, false);
+	}
+	
+	/**
+	 * Writes this clustering collection to a given file either in the 
+	 * gzipped text format or in the binary format. Both formats can be read
+	 * using {@link #BootstrapClusterings(String)}.
+	 * 
+	 * @param outfile path of the file the clusterings will be written to
+	 * @param binary {@code true} to write the binary format
+	 * @throws IOException if the file could not be written
+	 */
+	public void writeToFile(String outfile, boolean binary) throws IOException {
+		
+		if (binary) {
+			writeBinary(outfile);
+			return;
+		}
 		
 		PrintWriter writer = new PrintWriter(new OutputStreamWriter(
 				new GZIPOutputStream(new FileOutputStream(outfile))));
@@ -203,4 +504,84 @@ public class BootstrapClusterings implements Iterable<BootstrapClustering> {
 		
 	}
 	
+	/**
+	 * writes the binary format, the blocks are compressed in memory first so
+	 * their positions are known when the header is written
+	 */
+	private void writeBinary(String outfile) throws IOException {
+		
+		// build the label dictionary
+		HashMap<Integer, Integer> dictionary = new HashMap<Integer, Integer>();
+		ArrayList<String> labels = new ArrayList<String>();
+		for (BootstrapClustering clustering : clusterings) {
+			for (Complex complex : clustering.getClustering()) {
+				for (int protein : complex) {
+					if (!dictionary.containsKey(protein)) {
+						dictionary.put(protein, labels.size());
+						labels.add(ProteinManager.getLabel(protein));
+					}
+				}
+			}
+		}
+		
+		// compress the complexes of each clustering
+		byte[][] blocks = new byte[clusterings.size()][];
+		for (int i=0; i<blocks.length; i++) {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			DataOutputStream block = new DataOutputStream(new BufferedOutputStream(
+					new DeflaterOutputStream(buffer)));
+			ComplexSet set = clusterings.get(i).getClustering();
+			writeVarInt(block, set.getComplexCount());
+			for (Complex complex : set) {
+				writeVarInt(block, complex.size());
+				for (int protein : complex)
+					writeVarInt(block, dictionary.get(protein));
+			}
+			block.close();
+			blocks[i] = buffer.toByteArray();
+		}
+		
+		// header: dictionary and table of contents
+		ByteArrayOutputStream headerBuffer = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(new BufferedOutputStream(
+				new DeflaterOutputStream(headerBuffer)));
+		header.writeInt(labels.size());
+		for (String label : labels)
+			header.writeUTF(label);
+		header.writeInt(clusterings.size());
+		long offset=0;
+		for (int i=0; i<blocks.length; i++) {
+			BootstrapClustering clustering = clusterings.get(i);
+			header.writeFloat(clustering.getEfficiency());
+			header.writeUTF(clustering.getParameters());
+			header.writeLong(offset);
+			header.writeInt(blocks[i].length);
+			offset += blocks[i].length;
+		}
+		header.close();
+		
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(outfile)));
+		out.writeInt(BINARY_MAGIC);
+		out.writeInt(BINARY_VERSION);
+		out.writeInt(headerBuffer.size());
+		headerBuffer.writeTo(out);
+		for (byte[] block : blocks)
+			out.write(block);
+		out.close();
+	}
+	
+	/**
+	 * Internal class, header of a binary clusterings file
+	 */
+	private static class BinaryHeader {
+		private String[] labels;
+		private float[] efficiencies;
+		private String[] parameters;
+		private long[] offsets;
+		private int[] lengths;
+		// position of the first block in the file
+		private long blocksStart;
+	}
+	
 }
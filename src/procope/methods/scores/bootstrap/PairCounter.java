@@ -0,0 +1,122 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.methods.scores.bootstrap;
+
+import procope.tools.LongHashIndex;
+import procope.tools.Tools;
+
+/**
+ * Internal class, used by {@link Bootstrap}. Counts protein pairs which 
+ * are packed into one {@code long} using a {@link LongHashIndex}. Each pair
+ * is counted at most once per stamp (e.g. the index of a clustering), 
+ * repeated occurrences with the same stamp are ignored.
+ * 
+ * @author Jan Krumsiek
+ */
+class PairCounter {
+	
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private LongHashIndex index;
+	// counts and stamps by entry number
+	private int[] counts;
+	private int[] stamps;
+	
+	public PairCounter() {
+		index = new LongHashIndex(INITIAL_CAPACITY);
+		counts = new int[INITIAL_CAPACITY];
+		stamps = new int[INITIAL_CAPACITY];
+	}
+	
+	/**
+	 * packs two proteins into one non-negative key, the smaller one first
+	 */
+	public static long pack(int prot1, int prot2) {
+		if (prot2 < prot1)
+			return ((long)prot2 << 32) | prot1;
+		else
+			return ((long)prot1 << 32) | prot2;
+	}
+	
+	/**
+	 * increments the count of a pair unless it was already counted with the
+	 * given stamp
+	 */
+	public void count(long key, int stamp) {
+		int before = index.size();
+		int entry = index.add(key);
+		if (entry == before) {
+			grow(entry);
+			counts[entry] = 1;
+			stamps[entry] = stamp;
+		} else if (stamps[entry] != stamp) {
+			counts[entry]++;
+			stamps[entry] = stamp;
+		}
+	}
+	
+	/**
+	 * adds all counts of another counter to this one, stamps are not 
+	 * considered
+	 */
+	public void addAll(PairCounter other) {
+		for (int i=0; i<other.size(); i++) {
+			int before = index.size();
+			int entry = index.add(other.index.getKey(i));
+			if (entry == before) {
+				grow(entry);
+				counts[entry] = other.counts[i];
+				stamps[entry] = -1;
+			} else
+				counts[entry] += other.counts[i];
+		}
+	}
+	
+	public int size() {
+		return index.size();
+	}
+	
+	/**
+	 * returns the pair of an entry, entries are numbered from 0 to 
+	 * {@code size()-1}
+	 */
+	public long getKey(int entry) {
+		return index.getKey(entry);
+	}
+	
+	/**
+	 * returns the count of an entry
+	 */
+	public int getCount(int entry) {
+		return counts[entry];
+	}
+	
+	/**
+	 * makes sure the value arrays can hold the given entry
+	 */
+	private void grow(int entry) {
+		if (entry == counts.length) {
+			counts = Tools.arrCopyOf(counts, counts.length * 2);
+			stamps = Tools.arrCopyOf(stamps, stamps.length * 2);
+		}
+	}
+
+}
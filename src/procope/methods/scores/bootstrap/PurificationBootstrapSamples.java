@@ -173,6 +173,38 @@ public class PurificationBootstrapSamples {
 
 	}
 
+	/**
+	 * Returns a given sample as the multiplicity of each experiment of the 
+	 * {@link #getExperiments() original experiments}. This avoids 
+	 * constructing the purification data set of the sample, e.g. when 
+	 * calculating scores using 
+	 * {@link procope.methods.scores.SocioAffinityStatistics}. <b>Note:</b> 
+	 * The first bootstrap sample has the index 1, not 0.
+	 * 
+	 * @param sample sample to be returned (1-based)
+	 * @return number of times each experiment was drawn for this sample
+	 */
+	public int[] getSampleWeights(int sample) {
+		if (sample < 1 || sample > numSamples)
+			throw new IndexOutOfBoundsException("Invalid sample number: " + sample);
+		
+		int[] weights = new int[list.size()];
+		for (int i=0; i<numExperiments; i++)
+			weights[samples[sample-1][i]]++;
+		return weights;
+	}
+	
+	/**
+	 * Returns the original experiments the samples are drawn from. 
+	 * <b>Note:</b> This returns the internal list which must not be 
+	 * modified.
+	 * 
+	 * @return list of the original experiments
+	 */
+	public List<PurificationExperiment> getExperiments() {
+		return list;
+	}
+
 	/**
 	 * Writes the bootstrap samples contained in this set to a file.
 	 * 
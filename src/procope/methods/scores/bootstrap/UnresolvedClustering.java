@@ -0,0 +1,117 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.methods.scores.bootstrap;
+
+import procope.data.complexes.Complex;
+import procope.data.complexes.ComplexSet;
+import procope.tools.namemapping.ProteinManager;
+
+/**
+ * A single bootstrap clustering whose proteins are still given as labels.
+ * Such clusterings can be read in parallel, the labels are mapped to 
+ * internal IDs by {@link #resolve()} afterwards. As the {@link ProteinManager}
+ * assigns new IDs in the order of the calls, clusterings have to be resolved
+ * in a fixed order to obtain the same IDs on every run.
+ * <p>This class belongs to the helper classes needed for parallelizable 
+ * bootstrap scores calculation.
+ * 
+ * @see BootstrapClusterings#readUnresolvedClustering(String, int)
+ * @author Jan Krumsiek
+ */
+public class UnresolvedClustering {
+	
+	// dictionary of all labels of the file the clustering was read from
+	private String[] labels;
+	// complexes as indices into the dictionary
+	private int[][] complexes;
+	private String parameters;
+	private float efficiency;
+	
+	UnresolvedClustering(String[] labels, int[][] complexes, String parameters, float efficiency) {
+		this.labels = labels;
+		this.complexes = complexes;
+		this.parameters = parameters;
+		this.efficiency = efficiency;
+	}
+	
+	/**
+	 * Returns the MCL efficiency of the clustering with respect to the
+	 * clustered network.
+	 * 
+	 * @return MCL efficiency of the clustering
+	 */
+	public float getEfficiency() {
+		return efficiency;
+	}
+	
+	/**
+	 * Returns the identifier of the parameters of the clustering.
+	 * 
+	 * @return parameters of the clustering
+	 */
+	public String getParameters() {
+		return parameters;
+	}
+	
+	/**
+	 * dictionary of the file, shared by all clusterings read from it
+	 */
+	String[] getLabels() {
+		return labels;
+	}
+	
+	/**
+	 * Maps the labels to internal IDs and creates the actual clustering.
+	 * All labels of the file the clustering was read from are resolved (in 
+	 * the order of their first occurrence), so the internal IDs do not depend 
+	 * on which clustering of the file was read.
+	 * 
+	 * @return the resolved clustering
+	 */
+	public BootstrapClustering resolve() {
+		return resolve(resolveLabels(labels));
+	}
+	
+	/**
+	 * creates the clustering using already resolved labels
+	 */
+	BootstrapClustering resolve(int[] ids) {
+		ComplexSet set = new ComplexSet();
+		for (int[] members : complexes) {
+			Complex complex = new Complex();
+			for (int label : members)
+				complex.addProtein(ids[label]);
+			set.addComplex(complex);
+		}
+		return new BootstrapClustering(set, parameters, efficiency);
+	}
+	
+	/**
+	 * resolves the labels of a dictionary to internal IDs
+	 */
+	static int[] resolveLabels(String[] labels) {
+		int[] ids = new int[labels.length];
+		for (int i=0; i<labels.length; i++)
+			ids[i] = ProteinManager.getInternalID(labels[i]);
+		return ids;
+	}
+	
+}
@@ -0,0 +1,196 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.tools;
+
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Set of non-negative integers like internal protein IDs, stored as a bitset.
+ * This needs one bit per possible value up to the largest member instead of 
+ * a boxed {@link Integer} and a hash table entry per member as with 
+ * {@link java.util.HashSet}. Members are always enumerated in ascending order.
+ * <p>Iterating over the members without boxing works like this:
+ * <pre>  for (int id=set.nextMember(0); id&gt;=0; id=set.nextMember(id+1)) {
+ *      // do something with 'id'
+ *  }</pre>
+ * <p>Code which requires a {@link Set} can use the view returned by 
+ * {@link #asSet()} which is created once and reflects all changes of the set.
+ * 
+ * @author Jan Krumsiek
+ */
+public class IntSet {
+	
+	private BitSet bits;
+	private int size=0;
+	
+	private Set<Integer> view = null;
+	
+	/**
+	 * Creates an empty set.
+	 */
+	public IntSet() {
+		bits = new BitSet();
+	}
+	
+	/**
+	 * Adds a value to the set.
+	 * 
+	 * @param value value to be added, must not be negative
+	 * @return {@code true} if the value was not yet contained in the set
+	 */
+	public boolean add(int value) {
+		if (bits.get(value))
+			return false;
+		bits.set(value);
+		size++;
+		return true;
+	}
+	
+	/**
+	 * Removes a value from the set.
+	 * 
+	 * @param value value to be removed
+	 * @return {@code true} if the value was contained in the set
+	 */
+	public boolean remove(int value) {
+		if (value < 0 || !bits.get(value))
+			return false;
+		bits.clear(value);
+		size--;
+		return true;
+	}
+	
+	/**
+	 * Checks whether a value is contained in the set.
+	 * 
+	 * @param value value to be checked
+	 * @return {@code true} if the value is contained in the set
+	 */
+	public boolean contains(int value) {
+		return value >= 0 && bits.get(value);
+	}
+	
+	/**
+	 * Returns the number of values in the set.
+	 * 
+	 * @return number of values
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns whether the set is empty.
+	 * 
+	 * @return {@code true} if the set contains no values
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Removes all values from the set.
+	 */
+	public void clear() {
+		bits.clear();
+		size = 0;
+	}
+	
+	/**
+	 * Returns the smallest member of the set which is greater than or equal
+	 * to a given value.
+	 * 
+	 * @param from value where to start the search
+	 * @return next member or {@code -1} if there is no such member
+	 */
+	public int nextMember(int from) {
+		return bits.nextSetBit(from);
+	}
+	
+	/**
+	 * Returns all members of the set as sorted array.
+	 * 
+	 * @return sorted array of all members
+	 */
+	public int[] toArray() {
+		int[] result = new int[size];
+		int index=0;
+		for (int value=bits.nextSetBit(0); value>=0; value=bits.nextSetBit(value+1))
+			result[index++] = value;
+		return result;
+	}
+	
+	/**
+	 * Returns a {@link Set} view of this set. The view is backed by this set,
+	 * changes of the set are reflected by the view and vice versa.
+	 * 
+	 * @return set view of this set
+	 */
+	public Set<Integer> asSet() {
+		if (view == null) {
+			view = new AbstractSet<Integer>() {
+				public boolean add(Integer value) {
+					return IntSet.this.add(value);
+				}
+				public boolean contains(Object value) {
+					return (value instanceof Integer) && IntSet.this.contains((Integer)value);
+				}
+				public boolean remove(Object value) {
+					return (value instanceof Integer) && IntSet.this.remove((Integer)value);
+				}
+				public void clear() {
+					IntSet.this.clear();
+				}
+				public int size() {
+					return size;
+				}
+				public Iterator<Integer> iterator() {
+					return new Iterator<Integer>() {
+						private int next = bits.nextSetBit(0);
+						private int last = -1;
+						public boolean hasNext() {
+							return next >= 0;
+						}
+						public Integer next() {
+							if (next < 0)
+								throw new NoSuchElementException();
+							last = next;
+							next = bits.nextSetBit(next+1);
+							return last;
+						}
+						public void remove() {
+							if (last < 0)
+								throw new IllegalStateException();
+							IntSet.this.remove(last);
+							last = -1;
+						}
+					};
+				}
+			};
+		}
+		return view;
+	}
+
+}
@@ -0,0 +1,169 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.tools;
+
+import java.util.Arrays;
+
+/**
+ * Assigns consecutive entry numbers 0, 1, 2, ... to {@code long} keys in the
+ * order of their insertion, using a primitive open addressing hash table 
+ * with linear probing. Classes which associate values with the keys store
+ * them in their own arrays indexed by the entry numbers, so the values never
+ * have to be moved when the hash table grows.
+ * <p>Example:
+ * <pre>  int before = index.size();
+ *  int entry = index.add(key);
+ *  if (entry == before) {
+ *      // new key
+ *  }</pre>
+ * <p>The index is not thread-safe.
+ * 
+ * @author Jan Krumsiek
+ */
+public class LongHashIndex {
+	
+	private static final int INITIAL_CAPACITY = 64;
+	
+	// keys by entry number
+	private long[] keys;
+	// hash table of entry numbers, -1 for empty slots
+	private int[] slots;
+	private int size=0;
+	private int mask;
+	
+	/**
+	 * Creates an empty index.
+	 */
+	public LongHashIndex() {
+		this(INITIAL_CAPACITY);
+	}
+	
+	/**
+	 * Creates an empty index with an initial capacity for the given number 
+	 * of keys. The index grows automatically if more keys are added.
+	 * 
+	 * @param expectedSize expected number of keys
+	 */
+	public LongHashIndex(int expectedSize) {
+		int capacity = INITIAL_CAPACITY;
+		while (capacity < expectedSize)
+			capacity <<= 1;
+		keys = new long[capacity];
+		allocateSlots(capacity * 2);
+	}
+	
+	/**
+	 * Returns the entry number of a key.
+	 * 
+	 * @param key the key to look up
+	 * @return entry number of the key or -1 if the key is not contained
+	 */
+	public int get(long key) {
+		int entry;
+		int slot = (int)mix(key) & mask;
+		while ((entry = slots[slot]) >= 0) {
+			if (keys[entry] == key)
+				return entry;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns the entry number of a key and adds the key if it is not 
+	 * contained yet. New keys get the entry number {@link #size()} had 
+	 * before the call.
+	 * 
+	 * @param key the key to look up or add
+	 * @return entry number of the key
+	 */
+	public int add(long key) {
+		int entry;
+		int slot = (int)mix(key) & mask;
+		while ((entry = slots[slot]) >= 0) {
+			if (keys[entry] == key)
+				return entry;
+			slot = (slot + 1) & mask;
+		}
+		// new key
+		entry = size++;
+		if (entry == keys.length)
+			keys = Tools.arrCopyOf(keys, keys.length * 2);
+		keys[entry] = key;
+		slots[slot] = entry;
+		if (size * 2 > slots.length)
+			rehash();
+		return entry;
+	}
+	
+	/**
+	 * Returns the key of an entry.
+	 * 
+	 * @param entry entry number, must be less than {@link #size()}
+	 * @return the key of that entry
+	 */
+	public long getKey(int entry) {
+		return keys[entry];
+	}
+	
+	/**
+	 * Returns the number of keys.
+	 * 
+	 * @return number of keys
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Mixes the bits of a key, the result can be used as a hash value.
+	 * Classes which distribute keys over several indices should select the
+	 * index by the upper bits of this value, as the lower bits determine the
+	 * slot within the index.
+	 * 
+	 * @param key the key
+	 * @return mixed bits of the key
+	 */
+	public static long mix(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return hash ^ (hash >>> 29);
+	}
+	
+	private void allocateSlots(int capacity) {
+		slots = new int[capacity];
+		Arrays.fill(slots, -1);
+		mask = capacity - 1;
+	}
+	
+	/**
+	 * doubles the capacity of the hash table
+	 */
+	private void rehash() {
+		allocateSlots(slots.length * 2);
+		for (int entry=0; entry<size; entry++) {
+			int slot = (int)mix(keys[entry]) & mask;
+			while (slots[slot] >= 0)
+				slot = (slot + 1) & mask;
+			slots[slot] = entry;
+		}
+	}
+
+}
@@ -0,0 +1,286 @@
+/*
+ * This file is part of ProCope
+ *
+ * ProCope is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCope is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ProCope.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2008, Teaching and Research Unit Bioinformatics, LMU Munich
+ * http://www.bio.ifi.lmu.de/Complexes/ProCope/
+ *
+ */
+package procope.tools;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Contains helper methods for the parallel execution of calculations on 
+ * multiple processor cores.
+ * <p>Parallel loops are executed by splitting the range of indices into 
+ * small blocks. Each worker fetches the next unprocessed block as soon as it
+ * is finished with its current one, which balances the load between the 
+ * workers even if the blocks differ strongly in their calculation time.
+ * <p>This class is not instantiatable.
+ * 
+ * @author Jan Krumsiek
+ */
+public class ParallelTools {
+	
+	// minimum number of elements per part of a parallel sort
+	private static final int MIN_SORT_PART = 1 << 15;
+	
+	private static int defaultThreads = Runtime.getRuntime().availableProcessors();
+	
+	private static ExecutorService executor = null;
+	
+	// avoid instantiation
+	private ParallelTools() {
+	}
+	
+	/**
+	 * Callback interface for the workers of a parallel loop. Each worker
+	 * object is only used by one thread at a time and can therefore safely 
+	 * keep its own scratch buffers.
+	 */
+	public interface RangeTask {
+		/**
+		 * Processes all indices {@code from <= i < to} of the loop.
+		 * 
+		 * @param from first index to be processed
+		 * @param to index after the last index to be processed
+		 */
+		public void process(int from, int to);
+	}
+	
+	/**
+	 * Returns the number of threads used by default for parallel 
+	 * calculations. Initially this is the number of available processors.
+	 * 
+	 * @return default number of threads
+	 */
+	public static int getDefaultThreads() {
+		return defaultThreads;
+	}
+	
+	/**
+	 * Sets the number of threads used by default for parallel calculations
+	 * throughout the library.
+	 * 
+	 * @param threads default number of threads, must be at least 1
+	 * @throws ProCopeException if {@code threads < 1}
+	 */
+	public static void setDefaultThreads(int threads) throws ProCopeException {
+		if (threads < 1)
+			throw new ProCopeException("Number of threads must be at least 1");
+		defaultThreads = threads;
+	}
+	
+	/**
+	 * Processes the indices {@code 0 <= i < size} in parallel. One thread
+	 * is started for each given worker. If only one worker is given the loop 
+	 * will be processed in the calling thread.
+	 * 
+	 * @param size number of indices to be processed
+	 * @param blockSize number of consecutive indices a worker processes at once
+	 * @param workers worker objects, one for each thread
+	 * @throws ProCopeException if one of the workers throws an exception, 
+	 *         runtime exceptions of the workers are passed through unchanged
+	 */
+	public static void processRange(final int size, final int blockSize, RangeTask[] workers) 
+			throws ProCopeException {
+		
+		if (workers.length == 1 || size <= blockSize) {
+			// no need to start any threads
+			workers[0].process(0, size);
+			return;
+		}
+		
+		// shared counter, workers fetch the next block from here
+		final AtomicInteger nextBlock = new AtomicInteger(0);
+		Future<?>[] futures = new Future<?>[workers.length];
+		for (int i=0; i<workers.length; i++) {
+			final RangeTask worker = workers[i];
+			futures[i] = getExecutor().submit(new Runnable() {
+				public void run() {
+					int from;
+					while ((from = nextBlock.getAndAdd(blockSize)) < size) 
+						worker.process(from, Math.min(from+blockSize, size));
+				}
+			});
+		}
+		
+		// wait for all workers
+		waitFor(futures);
+	}
+	
+	/**
+	 * Runs the given tasks in parallel and waits until all of them are 
+	 * finished.
+	 * 
+	 * @param tasks tasks to be executed
+	 * @throws ProCopeException if one of the tasks throws an exception, 
+	 *         runtime exceptions of the tasks are passed through unchanged
+	 */
+	public static void runAll(Runnable[] tasks) throws ProCopeException {
+		Future<?>[] futures = new Future<?>[tasks.length];
+		for (int i=0; i<tasks.length; i++)
+			futures[i] = getExecutor().submit(tasks[i]);
+		waitFor(futures);
+	}
+	
+	/**
+	 * Returns a suitable block size for a parallel loop over {@code size} 
+	 * indices which results in some blocks per thread for load balancing.
+	 * 
+	 * @param size number of indices of the loop
+	 * @param threads number of threads
+	 * @return block size, at least 1
+	 */
+	public static int getBlockSize(int size, int threads) {
+		return Math.max(1, size / (threads * 16));
+	}
+	
+	/**
+	 * Sorts the given array ascendingly using multiple threads. The array is
+	 * split into one part per thread, the parts are sorted in parallel and
+	 * then merged pairwise, again in parallel. Small arrays are sorted in 
+	 * the calling thread.
+	 * 
+	 * @param array the array to be sorted
+	 * @param threads number of threads to use
+	 * @throws ProCopeException if {@code threads < 1}
+	 */
+	public static void sort(final long[] array, int threads) throws ProCopeException {
+		if (threads < 1)
+			throw new ProCopeException("Number of threads must be at least 1");
+		
+		int parts = Math.min(threads, array.length / MIN_SORT_PART);
+		if (parts < 2) {
+			Arrays.sort(array);
+			return;
+		}
+		
+		// sort the parts
+		final int[] bounds = new int[parts+1];
+		for (int i=0; i<=parts; i++)
+			bounds[i] = (int)((long)array.length * i / parts);
+		Runnable[] sorters = new Runnable[parts];
+		for (int i=0; i<parts; i++) {
+			final int from = bounds[i];
+			final int to = bounds[i+1];
+			sorters[i] = new Runnable() {
+				public void run() {
+					Arrays.sort(array, from, to);
+				}
+			};
+		}
+		runAll(sorters);
+		
+		// merge neighboring runs until only one is left
+		long[] source = array;
+		long[] target = new long[array.length];
+		int[] runs = bounds;
+		while (runs.length > 2) {
+			int runCount = runs.length-1;
+			int[] merged = new int[(runCount+1)/2 + 1];
+			Runnable[] mergers = new Runnable[(runCount+1)/2];
+			for (int i=0; i<mergers.length; i++) {
+				final int from = runs[2*i];
+				final int middle = runs[Math.min(2*i+1, runCount)];
+				final int to = runs[Math.min(2*i+2, runCount)];
+				final long[] mergeSource = source;
+				final long[] mergeTarget = target;
+				mergers[i] = new Runnable() {
+					public void run() {
+						merge(mergeSource, mergeTarget, from, middle, to);
+					}
+				};
+				merged[i] = from;
+			}
+			merged[mergers.length] = array.length;
+			runAll(mergers);
+			long[] swap = source;
+			source = target;
+			target = swap;
+			runs = merged;
+		}
+		if (source != array)
+			System.arraycopy(source, 0, array, 0, array.length);
+	}
+	
+	/**
+	 * merges the sorted ranges [from,middle) and [middle,to) of source into
+	 * the same range of target
+	 */
+	private static void merge(long[] source, long[] target, int from, int middle, int to) {
+		int i = from;
+		int j = middle;
+		int k = from;
+		while (i < middle && j < to) 
+			target[k++] = (source[j] < source[i]) ? source[j++] : source[i++];
+		while (i < middle)
+			target[k++] = source[i++];
+		while (j < to)
+			target[k++] = source[j++];
+	}
+	
+	/**
+	 * wait for all futures, the first exception is rethrown
+	 */
+	private static void waitFor(Future<?>[] futures) {
+		RuntimeException firstException = null;
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				if (firstException == null) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException)
+						firstException = (RuntimeException)cause;
+					else if (cause instanceof Error)
+						throw (Error)cause;
+					else
+						firstException = new ProCopeException("Error in parallel calculation: " + cause.getMessage());
+				}
+			} catch (InterruptedException e) {
+				throw new ProCopeException("Parallel calculation was interrupted.");
+			}
+		}
+		if (firstException != null)
+			throw firstException;
+	}
+	
+	/**
+	 * lazily creates the shared thread pool, uses daemon threads so the 
+	 * pool does not prevent the virtual machine from exiting
+	 */
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newCachedThreadPool(new ThreadFactory() {
+				private AtomicInteger count = new AtomicInteger(0);
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "procope-worker-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+}
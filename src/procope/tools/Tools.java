@@ -538,6 +538,17 @@ public class Tools {
                          Math.min(original.length, newLength));
         return copy;
     }
+    
+    /**
+	 * Exact copy of the Arrays#copyOf method from the Sun JRE 6.0
+	 * Copied into this project to assure Java 5.0 compatibility
+	 */
+    public static long[] arrCopyOf(long[] original, int newLength) {
+    	long[] copy = new long[newLength];
+        System.arraycopy(original, 0, copy, 0,
+                         Math.min(original.length, newLength));
+        return copy;
+    }
 
 
 	
@@ -20,8 +20,6 @@
  */
 package procope.tools.math;
 
-import java.util.ArrayList;
-
 /**
  * Contains static methods for the rapid calculation of values from the
  * hypergeometric distribution. All functions return <u>logarithms</u> of the
@@ -37,15 +35,9 @@ import java.util.ArrayList;
 public class HypergeometricDistribution {
 
 	private static double DBL_EPSILON = 2.2204460492503131e-16;
-	// cached values
-	private static ArrayList<Double> lfactorial;
-	
-	// static initialization code
-	static {
-		lfactorial = new ArrayList<Double>();
-		lfactorial.add(0, new Double(0.0)); /* 0! = 1, therefore let log(0)=0 */
-		lfactorial.add(1, new Double(0.0));
-	}
+	// cached values, the array is replaced by a larger copy when it has to
+	// grow, so concurrent readers always see a completely filled table
+	private static volatile double[] lfactorial = new double[]{0.0, 0.0}; /* 0! = 1, therefore let log(0)=0 */
 
 	/**
 	 * Approximation from the R project
@@ -172,22 +164,27 @@ public class HypergeometricDistribution {
 	 * last valid cache value to the value we currently need.
 	 */
 	private static double logfact(int i) {
-		
+		double[] cache = lfactorial;
+		if (i < cache.length)
+			return cache[i];
+		return growCache(i)[i];
+	}
 	
+	/**
+	 * extends the log factorial cache up to (at least) the given value, 
+	 * synchronized so that calculations in multiple threads are safe
+	 */
+	private static synchronized double[] growCache(int i) {
+		double[] cache = lfactorial;
+		if (i < cache.length)
+			return cache; // someone else was faster
 		
-		/*
-		 * Make sure value is already in lfactorial. If not, calculate all
-		 * values up to that for i
-		 */
-		if (i > (lfactorial.size() - 1)) {
-			for (int j = lfactorial.size(); j <= i; j++) {
-				double lf = lfactorial.get(j - 1).doubleValue()
-						+ java.lang.Math.log(j);
-				lfactorial.add(j, new Double(lf));
-			}
-		}
-
-		return lfactorial.get(i).doubleValue();
+		double[] newCache = new double[Math.max(i+1, cache.length*2)];
+		System.arraycopy(cache, 0, newCache, 0, cache.length);
+		for (int j = cache.length; j < newCache.length; j++) 
+			newCache[j] = newCache[j - 1] + java.lang.Math.log(j);
+		lfactorial = newCache;
+		return newCache;
 	}
 
 }
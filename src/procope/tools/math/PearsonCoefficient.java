@@ -23,6 +23,7 @@ package procope.tools.math;
 import java.util.Collection;
 
 import procope.evaluation.comparison.Point;
+import procope.tools.ProCopeException;
 
 
 /**
@@ -55,6 +56,20 @@ public class PearsonCoefficient implements CorrelationCoefficient {
 		feedData(p.getX(), p.getY());
 	}
 	
+	/**
+	 * Feeds a list of data points given as two arrays into the dataset.
+	 * 
+	 * @param x x values of the data points
+	 * @param y y values of the data points
+	 * @throws ProCopeException if the arrays have different lengths
+	 */
+	public void feedData(float[] x, float[] y) {
+		if (x.length != y.length)
+			throw new ProCopeException("Data arrays must have the same length");
+		for (int i=0; i<x.length; i++)
+			feedData(x[i], y[i]);
+	}
+	
 	// javadoc copied from interface
 	public void feedData(float x, float y) {
 		// increase Pearson coefficient variables
@@ -20,11 +20,12 @@
  */
 package procope.tools.math;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 
 import procope.evaluation.comparison.Point;
+import procope.tools.ParallelTools;
+import procope.tools.ProCopeException;
 import procope.tools.Tools;
 
 
@@ -32,63 +33,179 @@ import procope.tools.Tools;
  * Implements Spearman's rank correlation coefficient to calulate the 
  * correlation between two given rows of data points. It is defined as the
  * {@link PearsonCoefficient Pearson coefficient} of the 
- * {@link #rankArray(Comparable[]) rankings} of both data rows.
+ * {@link #rankArray(float[]) rankings} of both data rows.
+ * <p>The data points are stored in primitive arrays. The rankings are 
+ * determined by sorting the values together with their positions (in 
+ * parallel for large datasets), the coefficient of the rankings is 
+ * accumulated with double precision.
  * 
  * @author Jan Krumsiek
  */
 
 public class SpearmanCoefficient implements CorrelationCoefficient {
+	
+	private static final int INITIAL_CAPACITY = 1024;
 
-	private ArrayList<Float> X;
-	private ArrayList<Float> Y;
+	private float[] X;
+	private float[] Y;
+	private int size=0;
+	
+	private int threads;
 
 	/**
-	 * Creates the Spearman rank coefficient object.
+	 * Creates the Spearman rank coefficient object. Large datasets are 
+	 * ranked using the {@link ParallelTools#getDefaultThreads() default 
+	 * number of threads}.
 	 */
 	public SpearmanCoefficient() {
-		X = new ArrayList<Float>();
-		Y = new ArrayList<Float>();		
+		this(ParallelTools.getDefaultThreads());
+	}
+	
+	/**
+	 * Creates the Spearman rank coefficient object which ranks large 
+	 * datasets using a given number of threads.
+	 * 
+	 * @param threads number of threads used for sorting the data
+	 * @throws ProCopeException if {@code threads < 1}
+	 */
+	public SpearmanCoefficient(int threads) throws ProCopeException {
+		if (threads < 1)
+			throw new ProCopeException("Number of threads must be at least 1");
+		this.threads = threads;
+		X = new float[INITIAL_CAPACITY];
+		Y = new float[INITIAL_CAPACITY];
 	}
 	
 	// javadoc copied from interface
 	public void feedData(float x, float y) {
 		// gather data
-		X.add(x);
-		Y.add(y);
+		ensureCapacity(size+1);
+		X[size] = x;
+		Y[size] = y;
+		size++;
 	}
 
 	// javadoc copied from interface
 	public void feedData(Collection<Point> data) {
+		ensureCapacity(size + data.size());
 		for (Point p : data) {
-			X.add(p.getX());
-			Y.add(p.getY());
+			X[size] = p.getX();
+			Y[size] = p.getY();
+			size++;
 		}
 		
 	}
+	
+	/**
+	 * Feeds a list of data points given as two arrays into the dataset.
+	 * 
+	 * @param x x values of the data points
+	 * @param y y values of the data points
+	 * @throws ProCopeException if the arrays have different lengths
+	 */
+	public void feedData(float[] x, float[] y) {
+		if (x.length != y.length)
+			throw new ProCopeException("Data arrays must have the same length");
+		ensureCapacity(size + x.length);
+		System.arraycopy(x, 0, X, size, x.length);
+		System.arraycopy(y, 0, Y, size, y.length);
+		size += x.length;
+	}
 
 	// javadoc copied from interface
 	public void feedData(Point p) {
-		X.add(p.getX());
-		Y.add(p.getY());
+		feedData(p.getX(), p.getY());
+	}
+	
+	/**
+	 * grows the data arrays to hold at least the given number of points
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > X.length) {
+			int newLength = Math.max(capacity, X.length * 2);
+			X = Tools.arrCopyOf(X, newLength);
+			Y = Tools.arrCopyOf(Y, newLength);
+		}
 	}
 	
 	/**
 	 * Calculates Scorrelation coefficient for the current dataset.
 	 */
 	public float getCorrelationCoefficient() {
-		// convert to arrays & calculate ranks
-		float[] rankX = SpearmanCoefficient.rankArray(X.toArray(new Float[0]));
-		float[] rankY = SpearmanCoefficient.rankArray(Y.toArray(new Float[0]));
+		// calculate ranks
+		double[] rankX = rank(X, size, threads);
+		double[] rankY = rank(Y, size, threads);
+		
+		// calculate pearson coefficient between ranks, the mean of both
+		// rankings is always (n+1)/2
+		double mean = (size + 1) / 2.0;
+		double sumXY=0, sumX2=0, sumY2=0;
+		for (int i=0; i<size; i++) {
+			double x = rankX[i] - mean;
+			double y = rankY[i] - mean;
+			sumXY += x*y;
+			sumX2 += x*x;
+			sumY2 += y*y;
+		}
+		
+		return (float)(sumXY / Math.sqrt(sumX2*sumY2));
 		
-		// calculate pearson coefficient between ranks
-		PearsonCoefficient pearson = new PearsonCoefficient();
-		for (int i=0; i<rankX.length; i++) 
-			pearson.feedData(rankX[i], rankY[i]);
+	}
+	
+	/**
+	 * Calculates the ranking for a given array of values. The ranking 
+	 * contains ascending numbers in the ordering of 
+	 * {@link Float#compare(float, float)}, equal values get averaged ranks.
+	 * The values are sorted using the {@link ParallelTools#getDefaultThreads()
+	 * default number of threads}, the time complexity of the ranking is 
+	 * <i>O(n log n)</i>.
+	 * 
+	 * @param data values to be ranked
+	 * @return ranking array for the given input array
+	 */
+	public static float[] rankArray(float[] data) {
+		double[] ranks = rank(data, data.length, ParallelTools.getDefaultThreads());
+		float[] result = new float[ranks.length];
+		for (int i=0; i<ranks.length; i++)
+			result[i] = (float)ranks[i];
+		return result;
+	}
+	
+	/**
+	 * ranks the first size values of the given array, the values are sorted
+	 * together with their positions as a primitive long array. The ranks are
+	 * doubles as averaged ranks are not exact as floats for large datasets.
+	 */
+	private static double[] rank(float[] data, int size, int threads) {
 		
-		float cor = (float)pearson.getCorrelationCoefficient();
+		// sort key: order preserving int of the value, followed by the index
+		long[] keys = new long[size];
+		for (int i=0; i<size; i++) {
+			int bits = Float.floatToIntBits(data[i]);
+			bits ^= (bits >> 31) & 0x7FFFFFFF;
+			keys[i] = ((long)bits << 32) | i;
+		}
+		ParallelTools.sort(keys, threads);
 		
-		return cor;
+		double[] ranks = new double[size];
+		int i=0;
+		while (i < size) {
+			// find if there are more items with the same value
+			int value = (int)(keys[i] >> 32);
+			int next = i+1;
+			while (next < size && (int)(keys[next] >> 32) == value)
+				next++;
+			// average of the ranks i+1 ... next
+			long count = next - i;
+			long totalRank = count * (i+1) + count * (count-1) / 2;
+			double realRank = (double)totalRank / (double)count;
+			// apply ranks
+			for (int j=i; j<next; j++)
+				ranks[(int)keys[j]] = realRank;
+			i = next;
+		}
 		
+		return ranks;
 	}
 	
 	/**
@@ -20,24 +20,19 @@
  */
 package procope.userinterface.cmdline;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.zip.GZIPOutputStream;
 
-import procope.data.complexes.ComplexSet;
-import procope.data.networks.NetworkGenerator;
 import procope.data.networks.NetworkWriter;
 import procope.data.networks.ProteinNetwork;
-import procope.data.purifications.PurificationData;
-import procope.methods.clustering.MCLEfficiencyCalculator;
-import procope.methods.clustering.MCLParameters;
-import procope.methods.clustering.MarkovClusterer;
-import procope.methods.scores.SocioAffinityCalculator;
-import procope.methods.scores.bootstrap.BootstrapClustering;
+import procope.methods.scores.bootstrap.BootstrapClusteringScheduler;
 import procope.methods.scores.bootstrap.BootstrapClusterings;
 import procope.methods.scores.bootstrap.PurificationBootstrapSamples;
+import procope.tools.ParallelTools;
 import procope.tools.ProCopeException;
 import procope.tools.Tools;
 
@@ -51,8 +46,11 @@ public class BTClusterer {
 	private static final String DEFAULT_PREFIX = "bt_";
 	private static final Float[] DEFAULT_INFLATIONS = new Float[]{2.0f,2.1f,2.2f,2.3f,2.4f,2.5f,2.6f,2.7f,2.8f,2.9f,3.0f};
 	
-	private static final String[] allowed = Commons.getList("i", "s", "prefix", "inf", "mclbin", "c");
+	private static final String CHECKPOINT_SUFFIX = "checkpoint";
+	
+	private static final String[] allowed = Commons.getList("i", "s", "prefix", "inf", "c", "threads", "maxnets", "resume", "binary", "mclbin");
 	private static final String[] numeric = Commons.getList("lambda");
+	private static final String[] integer = Commons.getList("threads", "maxnets");
 	
 	public static void main(String[] args) {
 		// no command line arguments => print usage
@@ -66,11 +64,16 @@ public class BTClusterer {
 		try {
 			arguments = new CommandLineArguments(args, allowed);
 			arguments.checkNumericArguments(numeric);
+			arguments.checkIntegerArguments(integer);
 		} catch (InvalidArgumentsException e) {
 			System.err.println(e.getMessage());
 			System.exit(1);
 		}
 		
+		// the mcl binary is not needed anymore
+		if (arguments.isSet("mclbin"))
+			System.err.println("Note: -mclbin is deprecated and ignored, MCL is now built in");
+		
 		// samples file
 		String samplesFile = arguments.requireValue("i", "You must specify a purification samples file using -i");
 		
@@ -107,11 +110,6 @@ public class BTClusterer {
 				cutOff = Float.parseFloat(arguments.getValue("c"));
 		}
 		
-		// mcl binary
-		arguments.avoidSwitch("mclbin", "When using -mclbin you have to specify a path to the mcl binary");
-		if (arguments.isSet("mclbin"))
-			MarkovClusterer.setMCLBinary(arguments.getValue("mclbin"));
-		
 		// load coefficients
 		Float[] inflations = DEFAULT_INFLATIONS;
 		arguments.avoidSwitch("inf"	, "When using -inf you have to specify a list of inflation coefficients");
@@ -129,6 +127,11 @@ public class BTClusterer {
 				System.err.println("Must be a list of numeric values, e.g. 1.5,2.0,2.5");
 				System.exit(1);
 			}
+			if (inflations.length == 0) {
+				System.err.println("Invalid argument for -inf: '" + strInf + "'");
+				System.err.println("Must be a list of numeric values, e.g. 1.5,2.0,2.5");
+				System.exit(1);
+			}
 		}
 	
 		// load samples
@@ -149,53 +152,67 @@ public class BTClusterer {
 			System.exit(1);
 		}
 		
-		// iterate over samples
-		for (int sample=from; sample<=to; sample++) {
-			// get actual sample
-			PurificationData dataSample = samples.getSample(sample);
-			System.out.println("Clustering sample number " + sample + "...");
-			// calculate scores network
-			ProteinNetwork scores;
-			if (!Float.isNaN(cutOff))
-				scores = NetworkGenerator.generateNetwork(new SocioAffinityCalculator(dataSample), cutOff);
-			else
-				scores = NetworkGenerator.generateNetwork(new SocioAffinityCalculator(dataSample));
-			
-			// do the mcl clusterings with all inflation coefficients
-			BootstrapClusterings clusterings = new BootstrapClusterings();
-			try {
-				MCLParameters mclParam = new MCLParameters();
-				MarkovClusterer clusterer = new MarkovClusterer(mclParam);
-				for (float inflation : inflations) {
-					mclParam.setInflation(inflation);
-					ComplexSet clustering = clusterer.cluster(scores);
-					clusterings.addClustering(new BootstrapClustering(clustering, inflation+"",
-							(float)MCLEfficiencyCalculator.calculateEfficiency(scores, clustering)));
+		// threads and networks limit
+		int threads = ParallelTools.getDefaultThreads();
+		int maxNetworks = -1;
+		arguments.avoidSwitch("threads", "When using -threads you must specify the number of threads.");
+		arguments.avoidSwitch("maxnets", "When using -maxnets you must specify the maximum number of networks.");
+		if (arguments.isSet("threads"))
+			threads = Integer.parseInt(arguments.getValue("threads"));
+		if (arguments.isSet("maxnets"))
+			maxNetworks = Integer.parseInt(arguments.getValue("maxnets"));
+		if (threads < 1 || (arguments.isSet("maxnets") && maxNetworks < 1)) {
+			System.err.println("Number of threads and networks must be at least 1");
+			System.exit(1);
+		}
+		
+		// set up the scheduler for all (sample, inflation) pairs
+		float[] arrInflations = new float[inflations.length];
+		for (int i=0; i<inflations.length; i++)
+			arrInflations[i] = inflations[i];
+		BootstrapClusteringScheduler scheduler = new BootstrapClusteringScheduler(samples, 
+				arrInflations, Float.isNaN(cutOff) ? Float.NEGATIVE_INFINITY : cutOff);
+		scheduler.setThreads(threads);
+		scheduler.setMaxNetworks(maxNetworks > 0 ? maxNetworks : threads);
+		// each range has a checkpoint file of its own, so several runs with 
+		// different ranges on the same prefix do not interfere
+		scheduler.setCheckpointFile(new File(prefix + CHECKPOINT_SUFFIX + "_" + from + "-" + to));
+		boolean resume = arguments.isSet("resume");
+		
+		final String outPrefix = prefix;
+		final boolean binary = arguments.isSet("binary");
+		try {
+			int count = scheduler.run(from, to, resume, new BootstrapClusteringScheduler.SampleListener() {
+				public void sampleFinished(int sample, ProteinNetwork scores,
+						BootstrapClusterings clusterings) throws IOException {
+					// save clusterings to file
+					try {
+						clusterings.writeToFile(outPrefix + sample, binary);
+					} catch (IOException e) {
+						throw new IOException("Error writing sample number " + sample + ": " 
+								+ e.getMessage());
+					}
+					// save network to file
+					try {
+						OutputStream out = new GZIPOutputStream(new FileOutputStream(outPrefix+sample+"_net"));
+						NetworkWriter.writeNetwork(scores, out, "\t");
+						out.close();
+					} catch (IOException e) {
+						throw new IOException("Error writing network number " + sample + ": " 
+								+ e.getMessage());
+					}
+					System.out.println("Finished sample number " + sample);
 				}
-			} catch (ProCopeException e) {
-				System.err.println("Error while clustering:");
-				System.err.println(e.getMessage());
-				System.exit(2);
-			
-			}
-			// save them to file
-			try {
-				clusterings.writeToFile(prefix + sample);
-			} catch (IOException e) {
-				System.err.println("Error writing sample number " + sample + ":");
-				System.err.println(e.getMessage());
-				System.exit(2);
-			}
-			// save network to file
-			try {
-				OutputStream out = new GZIPOutputStream(new FileOutputStream(prefix+sample+"_net"));
-				NetworkWriter.writeNetwork(scores, out, "\t");
-				out.close();
-			} catch (IOException e) {
-				System.err.println("Error writing network number " + sample + ":");
-				System.err.println(e.getMessage());
-				System.exit(2);
-			}
+			});
+			if (resume)
+				System.out.println("Clustered " + count + " remaining samples.");
+		} catch (ProCopeException e) {
+			System.err.println("Error while clustering:");
+			System.err.println(e.getMessage());
+			System.exit(2);
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
 		}
 		System.out.println("Done.");
 		
@@ -217,7 +234,14 @@ public class BTClusterer {
 		System.err.println("              default: 2.0-3.0 in 0.1 steps");
 		System.err.println(" -c       apply cutoff, do not use scores less than this value");
 		System.err.println(" -prefix  prefix for output files, can be a full path, default: bt_");
-		System.err.println(" -mclbin  path to 'mcl' binary if not in current PATH");
+		System.err.println(" -threads number of worker threads, defaults to the number of");
+		System.err.println("          available processors");
+		System.err.println(" -maxnets maximum number of samples (scores networks) in memory at");
+		System.err.println("          the same time, default: number of threads");
+		System.err.println(" -resume  skip all samples listed in the checkpoint file of a previous");
+		System.err.println("          run with the same range (<prefix>checkpoint_<from>-<to>)");
+		System.err.println(" -binary  write the clusterings in the compact binary format instead");
+		System.err.println("          of gzipped text, can only be read by this version");
 		System.err.println();
 	}
 	
@@ -20,26 +20,34 @@
  */
 package procope.userinterface.cmdline;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import procope.data.complexes.ComplexSet;
 import procope.data.complexes.ComplexSetWriter;
+import procope.data.networks.NetworkBuilder;
 import procope.data.networks.NetworkReader;
 import procope.data.networks.NetworkWriter;
 import procope.data.networks.ProteinNetwork;
 import procope.methods.clustering.MCLParameters;
 import procope.methods.clustering.MarkovClusterer;
 import procope.methods.scores.bootstrap.Bootstrap;
-import procope.methods.scores.bootstrap.BootstrapClustering;
 import procope.methods.scores.bootstrap.BootstrapClusterings;
+import procope.methods.scores.bootstrap.UnresolvedClustering;
+import procope.tools.ParallelTools;
+import procope.tools.ProCopeException;
 import procope.tools.Tools;
+import procope.tools.namemapping.ProteinManager;
 
 /**
  * This file is part of the ProCope command line tools
@@ -50,9 +58,10 @@ public class BTFinisher {
 
 	private static final float DEFAULT_LAMBDA = 0.95f;
 	
-	private static final String[] allowed = Commons.getList("prefix", "net", "o", "oz", "c", "lambda", "clust"
-			);
+	private static final String[] allowed = Commons.getList("prefix", "net", "o", "oz", "c", "lambda", "clust",
+			"threads");
 	private static final String[] numeric = Commons.getList("c");
+	private static final String[] integer = Commons.getList("threads");
 	
 	public static void main(String[] args) {
 		
@@ -67,6 +76,7 @@ public class BTFinisher {
 		try {
 			arguments = new CommandLineArguments(args, allowed);
 			arguments.checkNumericArguments(numeric);
+			arguments.checkIntegerArguments(integer);
 		} catch (InvalidArgumentsException e) {
 			System.err.println(e.getMessage());
 			System.exit(1);
@@ -93,6 +103,17 @@ public class BTFinisher {
 			}
 		}
 		
+		// number of threads
+		arguments.avoidSwitch("threads", "When using -threads you must specify the number of threads.");
+		int threads = ParallelTools.getDefaultThreads();
+		if (arguments.isSet("threads")) {
+			threads = Integer.parseInt(arguments.getValue("threads"));
+			if (threads < 1) {
+				System.err.println("Number of threads must be at least 1");
+				System.exit(1);
+			}
+		}
+		
 		// clustering output?
 		arguments.avoidSwitch("clust", "When using -clust you have to specify an output file name");
 		String clusteringFile = null;
@@ -158,52 +179,123 @@ public class BTFinisher {
 			}
 		}
 		
-		// only load efficiencies 
-		ArrayList<BootstrapClusterings> clusteringsOnlyParas = new ArrayList<BootstrapClusterings>();
-		for (int i=1; i<=samples; i++) {
-			try {
-				clusteringsOnlyParas.add(new BootstrapClusterings(prefix+i,  true));
-			} catch (Exception e) {
-				System.err.println("An error occured while reading clustering number " + i + ":");
-				System.err.println(e.getMessage());
-				System.exit(1);
-			}
+		// only load efficiencies, files are read in parallel
+		final String filePrefix = prefix;
+		final LoadFailure failure = new LoadFailure();
+		final BootstrapClusterings[] paras = new BootstrapClusterings[samples];
+		ParallelTools.RangeTask[] workers = new ParallelTools.RangeTask[threads];
+		for (int t=0; t<threads; t++) {
+			workers[t] = new ParallelTools.RangeTask() {
+				public void process(int from, int to) {
+					for (int i=from; i<to; i++) {
+						try {
+							paras[i] = new BootstrapClusterings(filePrefix+(i+1),  true);
+						} catch (Exception e) {
+							failure.record(i+1, "reading clustering file " + filePrefix+(i+1), e);
+						}
+					}
+				}
+			};
 		}
-		int bestIndex = Bootstrap.findBestIndex(clusteringsOnlyParas);
+		ParallelTools.processRange(samples, 1, workers);
+		failure.exitOnFailure();
+		ArrayList<BootstrapClusterings> clusteringsOnlyParas = new ArrayList<BootstrapClusterings>();
+		for (BootstrapClusterings clusterings : paras)
+			clusteringsOnlyParas.add(clusterings);
+		final int bestIndex = Bootstrap.findBestIndex(clusteringsOnlyParas);
 		String bestPara = clusteringsOnlyParas.get(0).getClustering(bestIndex).getParameters();  
 		System.out.println("best parameter: " + bestPara);
 		
 		
 		System.out.print("Loading best clusterings and calculating shared proteins...");
-		// iterate over files again and get the ones with the best inflation
-		ArrayList<ComplexSet> sets = new ArrayList<ComplexSet>();
-		for (int i=1; i<=samples; i++) {
-			try {
-				// load clustering
-				BootstrapClusterings curClusts = new BootstrapClusterings(prefix+i);
-				BootstrapClustering clustering = curClusts.getClustering(bestIndex);
-				// load scores network for this sample
-				ProteinNetwork scores = NetworkReader.readNetwork(
-						new GZIPInputStream(new FileInputStream(prefix+i+"_net")), false);
-				ComplexSet set = clustering.getClustering();
-				// calculate shared proteins
-				set = set.calculateSharedProteinsBootstrap(scores, lambda);
-				sets.add(set);
-				if (samples >= 20 && i%(samples/20)==0)
+		// the files are parsed in parallel, but the labels are mapped to 
+		// internal IDs in the order of the samples so the proteins always get
+		// the same internal IDs
+		final UnresolvedClustering[] unresolved = new UnresolvedClustering[samples];
+		for (int t=0; t<threads; t++) {
+			workers[t] = new ParallelTools.RangeTask() {
+				public void process(int from, int to) {
+					for (int i=from; i<to; i++) {
+						try {
+							unresolved[i] = BootstrapClusterings.readUnresolvedClustering(
+									filePrefix+(i+1), bestIndex);
+						} catch (Exception e) {
+							failure.record(i+1, "reading clustering file " + filePrefix+(i+1), e);
+						}
+					}
+				}
+			};
+		}
+		ParallelTools.processRange(samples, 1, workers);
+		failure.exitOnFailure();
+		final ComplexSet[] best = new ComplexSet[samples];
+		for (int i=0; i<samples; i++) {
+			best[i] = unresolved[i].resolve().getClustering();
+			unresolved[i] = null;
+		}
+		// the scores networks may contain proteins which were not seen before,
+		// they are parsed in batches to limit the memory usage, mapped in the 
+		// order of the samples and the shared proteins of each batch are 
+		// calculated in parallel
+		final float sharedLambda = lambda;
+		final ScoresFile[] parsed = new ScoresFile[threads];
+		final ProteinNetwork[] scores = new ProteinNetwork[threads];
+		int dots = Math.max(1, samples/20);
+		for (int batchStart=0; batchStart<samples; batchStart+=threads) {
+			final int batchFrom = batchStart;
+			int batchSize = Math.min(threads, samples-batchStart);
+			for (int t=0; t<threads; t++) {
+				workers[t] = new ParallelTools.RangeTask() {
+					public void process(int from, int to) {
+						for (int i=from; i<to; i++) {
+							String file = filePrefix+(batchFrom+i+1)+"_net";
+							try {
+								parsed[i] = new ScoresFile(file);
+							} catch (Exception e) {
+								failure.record(batchFrom+i+1, "reading scores network file " + file, e);
+							}
+						}
+					}
+				};
+			}
+			ParallelTools.processRange(batchSize, 1, workers);
+			failure.exitOnFailure();
+			for (int i=0; i<batchSize; i++) {
+				scores[i] = parsed[i].toNetwork();
+				parsed[i] = null;
+			}
+			for (int t=0; t<threads; t++) {
+				workers[t] = new ParallelTools.RangeTask() {
+					public void process(int from, int to) {
+						for (int i=from; i<to; i++) {
+							try {
+								best[batchFrom+i] = best[batchFrom+i].calculateSharedProteinsBootstrap(
+										scores[i], sharedLambda);
+							} catch (Exception e) {
+								failure.record(batchFrom+i+1, "calculating the shared proteins of sample " 
+										+ (batchFrom+i+1), e);
+							}
+						}
+					}
+				};
+			}
+			ParallelTools.processRange(batchSize, 1, workers);
+			failure.exitOnFailure();
+			Arrays.fill(scores, null);
+			for (int sample=batchStart+1; sample<=batchStart+batchSize; sample++) {
+				if (samples >= 20 && sample%dots == 0)
 					System.err.print(".");
-			
-			} catch (Exception e) {
-				System.err.println("An error occured while reading clustering number " + i + ":");
-				System.err.println(e.getMessage());
-				System.exit(1);
 			}
 		}
+		ArrayList<ComplexSet> sets = new ArrayList<ComplexSet>();
+		for (ComplexSet set : best)
+			sets.add(set);
 		System.err.println("done.");
 		
 		
 		// calculate bootstrap network
 		System.err.print("Calculating bootstrap scores network... ");
-		ProteinNetwork btnet = Bootstrap.createBootstrapNetwork(sets);
+		ProteinNetwork btnet = Bootstrap.createBootstrapNetwork(sets, threads);
 		// cut off?
 		if (!Float.isNaN(cutoff))
 			btnet = btnet.getCutOffNetwork(cutoff);
@@ -246,6 +338,9 @@ public class BTFinisher {
 		System.err.println("  -net      output the bootstrap scoring network to a file");
 		System.err.println("  -lambda   parameter for shared protein calculation, default: 0.95");
 		System.err.println("  -c        apply cutoff, do not output scores less than this value");
+		System.err.println("  -threads  number of threads used to read the clustering and network");
+		System.err.println("            files, to calculate the shared proteins and the bootstrap network,");
+		System.err.println("            defaults to the number of available processors");
 		System.err.println();
 		System.err.println("Input/Output options");
 		System.err.println("  -nz       GZIP the network file");
@@ -253,4 +348,110 @@ public class BTFinisher {
 	
 	}
 	
+	/**
+	 * Internal class, collects errors of the parallel loading, the error of
+	 * the smallest sample number is reported
+	 */
+	private static class LoadFailure {
+		private int sample = -1;
+		private String task;
+		private Exception exception;
+		
+		public synchronized void record(int sample, String task, Exception exception) {
+			if (this.sample == -1 || sample < this.sample) {
+				this.sample = sample;
+				this.task = task;
+				this.exception = exception;
+			}
+		}
+		
+		public synchronized void exitOnFailure() {
+			if (sample != -1) {
+				System.err.println("An error occured while " + task + ":");
+				System.err.println(exception.getMessage());
+				System.exit(1);
+			}
+		}
+	}
+	
+	/**
+	 * Internal class, the edges of a gzipped scores network file written by
+	 * the bootstrap clusterer. The proteins are kept as labels, so files can
+	 * be parsed in parallel, and are mapped to internal IDs when the network
+	 * is created. The line format is the one of {@link NetworkReader}, edge
+	 * annotations are not supported.
+	 */
+	private static class ScoresFile {
+		// labels in the order of their first occurrence
+		private ArrayList<String> labels = new ArrayList<String>();
+		// two label indices per edge
+		private int[] proteins = new int[1024];
+		private float[] weights = new float[512];
+		private int edges = 0;
+		
+		public ScoresFile(String file) throws IOException {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new GZIPInputStream(new FileInputStream(file))));
+			try {
+				HashMap<String, Integer> dictionary = new HashMap<String, Integer>();
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] split = line.split("\t");
+					int prot1 = getIndex(dictionary, split[0]);
+					int prot2 = getIndex(dictionary, split[1]);
+					// score
+					float score=Float.NaN;
+					if (split.length > 2 && split[2].length() > 0) 
+						score = Float.parseFloat(split[2]);
+					else {
+						if (split.length < 3) // no annotations and no score
+							score = 1.0f;
+					}
+					if (score == score) // NaN check
+						addEdge(prot1, prot2, score);
+				}
+			} catch (IOException e) {
+				// just a trick so this type of exception is not caught by the block below
+				throw e;
+			} catch (Exception e) {
+				throw new ProCopeException("File probably has invalid format!");
+			} finally {
+				reader.close();
+			}
+		}
+		
+		private int getIndex(HashMap<String, Integer> dictionary, String label) {
+			Integer index = dictionary.get(label);
+			if (index == null) {
+				index = labels.size();
+				dictionary.put(label, index);
+				labels.add(label);
+			}
+			return index;
+		}
+		
+		private void addEdge(int prot1, int prot2, float weight) {
+			if (edges == weights.length) {
+				weights = Tools.arrCopyOf(weights, edges*2);
+				proteins = Tools.arrCopyOf(proteins, edges*4);
+			}
+			proteins[edges*2] = prot1;
+			proteins[edges*2+1] = prot2;
+			weights[edges++] = weight;
+		}
+		
+		/**
+		 * maps the labels to internal IDs and builds the undirected network
+		 */
+		public ProteinNetwork toNetwork() {
+			int[] ids = new int[labels.size()];
+			for (int i=0; i<ids.length; i++)
+				ids[i] = ProteinManager.getInternalID(labels.get(i));
+			NetworkBuilder builder = new NetworkBuilder(false, edges);
+			for (int i=0; i<edges; i++)
+				builder.addEdge(ids[proteins[i*2]], ids[proteins[i*2+1]], weights[i]);
+			return builder.build();
+		}
+	}
+	
 }
@@ -75,6 +75,10 @@ public class Clusterer {
 			System.exit(1);
 		}
 		
+		// the mcl binary is not needed anymore
+		if (arguments.isSet("mclbin"))
+			System.err.println("Note: -mclbin is deprecated and ignored, MCL is now built in");
+		
 		// get network file
 		if (!arguments.hasValue("net")) {
 			System.err.println("You must specify a scores network using -net");
@@ -135,8 +139,6 @@ public class Clusterer {
 						MCLParameters params = new MCLParameters();
 						// get parameters
 						params.setInflation(Float.parseFloat(arguments.getValue("I")));
-						if (arguments.hasValue("mclbin"))
-							MarkovClusterer.setMCLBinary(arguments.getValue("mclbin"));
 						// advanced parameters
 						if (arguments.hasValue("P"))
 							params.setP(Float.parseFloat(arguments.getValue("P")));
@@ -293,9 +295,8 @@ public class Clusterer {
 		System.err.println("  hcl          hierarchical agglomerative clustering");
 		System.err.println("    -linkage   one of: single, complete, upgma, wpgma");
 		System.err.println("    -cutoff    cutoff value to create clusters from dendrogram");
-		System.err.println("  mcl          Markov Cluster Algorithm (requires installed 'mcl' program)");
+		System.err.println("  mcl          Markov Cluster Algorithm (built-in implementation)");
 		System.err.println("    -I         inflation coefficient");
-		System.err.println("    -mclbin    [optional] path to 'mcl' binary if not in current PATH");
 		System.err.println("    -P         [optional] pruning number");
 		System.err.println("    -S         [optional] selection number");
 		System.err.println("    -R         [optional] recover number");
@@ -22,10 +22,10 @@ package procope.userinterface.cmdline;
 
 import java.util.List;
 
-import procope.data.complexes.Complex;
 import procope.data.complexes.ComplexSet;
 import procope.data.complexes.ComplexSetReader;
 import procope.evaluation.comparison.BroheeSimilarity;
+import procope.evaluation.comparison.ComplexOverlaps;
 import procope.evaluation.comparison.ComplexSetComparison;
 import procope.tools.Tools;
 
@@ -200,37 +200,40 @@ public class ComplexSetComparer {
 
 	private static void printMappableComplexes(ComplexSet set1, ComplexSet set2, String nameA, String nameB) {
 	
-		Complex[] arrSet1 = set1.getComplexes().toArray(new Complex[0]);
-		Complex[] arrSet2 = set2.getComplexes().toArray(new Complex[0]);
+		int countA = set1.getComplexCount();
+		int countB = set2.getComplexCount();
 		
 		// print sizes
 		output.println("Mappables");
-		output.println(nameA + " (A):\t" + arrSet1.length + " complexes");
-		output.println(nameB + " (B):\t" + arrSet2.length + " complexes");
+		output.println(nameA + " (A):\t" + countA + " complexes");
+		output.println(nameB + " (B):\t" + countB + " complexes");
 		
 		// count mappables complexes in both directions
-		int AtoB = countMappables(arrSet1, arrSet2);
-		int BtoA = countMappables(arrSet2, arrSet1);
+		ComplexOverlaps overlaps = new ComplexOverlaps(set1, set2);
+		int AtoB = countMappables(overlaps, true);
+		int BtoA = countMappables(overlaps, false);
 		
 		// print results
 		output.println("Mappable (Set A to Set B): " + AtoB + 
-				" (" +  String.format("%.3f%%", (float)AtoB / (float)arrSet1.length*100f) + ")");
+				" (" +  String.format("%.3f%%", (float)AtoB / (float)countA*100f) + ")");
 		output.println("Mappable (Set B to Set A): " + BtoA + 
-				" (" +  String.format("%.3f%%", (float)BtoA / (float)arrSet2.length*100f) + ")");
+				" (" +  String.format("%.3f%%", (float)BtoA / (float)countB*100f) + ")");
 		
 		
 	}
 	
-	private static int countMappables(Complex[] checkSet, Complex[] refSet) {
-		// iterate over pairwise complexes
+	private static int countMappables(ComplexOverlaps overlaps, boolean checkA) {
+		// iterate over the overlapping complexes of each complex
 		int mappables = 0;
-		for (int i=0; i<checkSet.length; i++) {
+		int count = checkA ? overlaps.getCountA() : overlaps.getCountB();
+		int[] values = checkA ? overlaps.getRowOverlaps() : overlaps.getColumnOverlaps();
+		for (int i=0; i<count; i++) {
 			boolean isMappable=false;
-			for (int j=0; j<refSet.length && !isMappable; j++) {
-				// calc overlap
-				int overlap = ComplexSetComparison.complexesOverlap(checkSet[i], refSet[j]);
+			int start = checkA ? overlaps.getRowStart(i) : overlaps.getColumnStart(i);
+			int end = checkA ? overlaps.getRowEnd(i) : overlaps.getColumnEnd(i);
+			for (int k=start; k<end && !isMappable; k++) {
 				// mappable?
-				if (overlap >= procope.tools.Tools.MINOVERLAP) 
+				if (values[k] >= procope.tools.Tools.MINOVERLAP) 
 					isMappable = true;
 			}	
 			// complex was mappable?
@@ -22,6 +22,7 @@ package procope.userinterface.cmdline;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
@@ -29,6 +30,7 @@ import java.util.List;
 import java.util.Vector;
 
 import procope.data.networks.NetworkGenerator;
+import procope.data.networks.NetworkStreamWriter;
 import procope.data.networks.NetworkWriter;
 import procope.data.networks.ProteinNetwork;
 import procope.data.purifications.PurificationData;
@@ -38,6 +40,7 @@ import procope.methods.scores.HartCalculator;
 import procope.methods.scores.PECalculator;
 import procope.methods.scores.ScoresCalculator;
 import procope.methods.scores.SocioAffinityCalculator;
+import procope.tools.ParallelTools;
 import procope.tools.ProCopeException;
 import procope.tools.Tools;
 import procope.tools.userclasses.UserParameter;
@@ -51,8 +54,9 @@ import procope.tools.userclasses.UserScoresCalculator;
 public class GenerateScores {
 	
 	private static final String[] scoreTypes = Commons.getList("socio", "hart", "pe", "dice", "user");
-	private static final String[] allowed = Commons.getList("p", "o", "score", "c", "peR", "peP", "oz", "namemap", "name");
+	private static final String[] allowed = Commons.getList("p", "o", "score", "c", "peR", "peP", "oz", "namemap", "name", "threads", "stream");
 	private static final String[] numeric = Commons.getList("c", "peR", "peP");
+	private static final String[] integer = Commons.getList("threads");
 	
 	public static void main(String[] args) {
 		
@@ -67,6 +71,7 @@ public class GenerateScores {
 		try {
 			arguments = new CommandLineArguments(args, allowed);
 			arguments.checkNumericArguments(numeric);
+			arguments.checkIntegerArguments(integer);
 		} catch (InvalidArgumentsException e) {
 			System.err.println(e.getMessage());
 			System.exit(1);
@@ -129,6 +134,33 @@ public class GenerateScores {
 			System.exit(1);
 		}
 	
+		// get number of threads, user calculators are not necessarily
+		// thread-safe and are run single-threaded unless requested otherwise
+		int threads = scoreType.equals("user") ? 1 : ParallelTools.getDefaultThreads();
+		if (arguments.isSet("threads")) {
+			if (!arguments.hasValue("threads")) {
+				System.err.println("When using -threads you must specify the number of threads.");
+				System.exit(1);
+			}
+			threads = Integer.parseInt(arguments.getValue("threads"));
+			if (threads < 1) {
+				System.err.println("Number of threads must be at least 1");
+				System.exit(1);
+			}
+		}
+	
+		// streaming output?
+		boolean stream = arguments.isSet("stream");
+		boolean ordered = true;
+		if (arguments.hasValue("stream")) {
+			if (arguments.getValue("stream").equals("unordered"))
+				ordered = false;
+			else {
+				System.err.println("Invalid value for -stream, must be empty or 'unordered'");
+				System.exit(1);
+			}
+		}
+	
 		// check for name mappings
 		Commons.checkForMappings(arguments);
 		
@@ -218,10 +250,23 @@ public class GenerateScores {
 
 		// create network
 		if (Float.isNaN(cutOff)) cutOff = Float.NEGATIVE_INFINITY;
-		ProteinNetwork scores = NetworkGenerator.generateNetwork(scoreCalc, cutOff);
-		
-		// write to output
-		NetworkWriter.writeNetwork(scores, outstream , "\t");
+		if (stream) {
+			// write the scores directly without creating the network
+			NetworkStreamWriter writer = new NetworkStreamWriter(outstream, "\t");
+			NetworkGenerator.generateEdges(scoreCalc, cutOff, threads, writer, ordered);
+			try {
+				writer.close();
+			} catch (IOException e) {
+				System.err.println("Error while writing output file:");
+				System.err.println(e.getMessage());
+				System.exit(2);
+			}
+		} else {
+			ProteinNetwork scores = NetworkGenerator.generateNetwork(scoreCalc, cutOff, threads);
+			
+			// write to output
+			NetworkWriter.writeNetwork(scores, outstream , "\t");
+		}
 		
 		Commons.closeOutput(outstream);
 		
@@ -259,6 +304,11 @@ public class GenerateScores {
 		System.err.println();
 		System.err.println("Optional parameters");
 		System.err.println("  -c        apply cutoff, do not output scores less than this value");
+		System.err.println("  -threads  number of threads used for the calculation, defaults to");
+		System.err.println("            the number of processors (1 for -score user)");
+		System.err.println("  -stream   write the scores while they are calculated, requires less");
+		System.err.println("            memory. Use '-stream unordered' to write the scores in the");
+		System.err.println("            order they are finished instead of sorted");
 		System.err.println("  -namemap  use name mapping file");
 		System.err.println("  -synfirst    name mappings file contains synonyms first,");
 		System.err.println("                   otherwise targets first is assumed");
@@ -21,20 +21,27 @@
 package procope.userinterface.cmdline;
 
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
+import procope.data.networks.EdgeSink;
+import procope.data.networks.NetworkGenerator;
 import procope.evaluation.complexquality.go.FunctionalSimilarities;
 import procope.evaluation.complexquality.go.FunctionalSimilaritiesSchlicker;
 import procope.evaluation.complexquality.go.GOAnnotationReader;
 import procope.evaluation.complexquality.go.GOAnnotations;
 import procope.evaluation.complexquality.go.GONetwork;
-import procope.evaluation.complexquality.go.TermSimilarities;
 import procope.evaluation.complexquality.go.TermSimilaritiesSchlicker;
 import procope.evaluation.complexquality.go.FunctionalSimilaritiesSchlicker.FunctionalSimilarityMeasure;
 import procope.evaluation.complexquality.go.GONetwork.Namespace;
 import procope.evaluation.complexquality.go.GONetwork.Relationships;
 import procope.evaluation.complexquality.go.TermSimilaritiesSchlicker.TermSimilarityMeasure;
+import procope.tools.ParallelTools;
+import procope.tools.ProCopeException;
 import procope.tools.Tools;
 import procope.tools.namemapping.ProteinManager;
 
@@ -45,8 +52,9 @@ import procope.tools.namemapping.ProteinManager;
  */
 public class SemanticSimilarities {
 	
-	private static final String[] allowed =	Commons.getList("gonet", "name", "anno", "termsim", "funsim", "c", "o", "oz", "rel", "namemap","synfirst");
+	private static final String[] allowed =	Commons.getList("gonet", "name", "anno", "termsim", "funsim", "c", "o", "oz", "rel", "namemap","synfirst", "threads", "termcache", "gocache");
 	private static final String[] numeric = Commons.getList("c");
+	private static final String[] integer = Commons.getList("threads");
 	
 	private static String[] NAMESPACES = Commons.getList("bp","cc", "mf");
 	private static String[] TERMSIMS = Commons.getList("resnik", "lin", "relevance");
@@ -71,6 +79,7 @@ public class SemanticSimilarities {
 		try {
 			arguments = new CommandLineArguments(args, allowed);
 			arguments.checkNumericArguments(numeric);
+			arguments.checkIntegerArguments(integer);
 		} catch (InvalidArgumentsException e) {
 			System.err.println(e.getMessage());
 			System.exit(1);
@@ -187,6 +196,29 @@ public class SemanticSimilarities {
 				cutOff = Float.parseFloat(arguments.getValue("c"));
 		}
 		
+		// number of threads
+		arguments.avoidSwitch("threads", "When using -threads you must specify the number of threads.");
+		int threads = ParallelTools.getDefaultThreads();
+		if (arguments.isSet("threads")) {
+			threads = Integer.parseInt(arguments.getValue("threads"));
+			if (threads < 1) {
+				System.err.println("Number of threads must be at least 1");
+				System.exit(1);
+			}
+		}
+		
+		// directory of the precomputed term similarity matrices
+		arguments.avoidSwitch("termcache", "When using -termcache you must specify a directory.");
+		File termCacheDir = null;
+		if (arguments.isSet("termcache"))
+			termCacheDir = new File(arguments.getValue("termcache"));
+		
+		// directory of the binary GO network cache
+		arguments.avoidSwitch("gocache", "When using -gocache you must specify a directory.");
+		File goCacheDir = null;
+		if (arguments.isSet("gocache"))
+			goCacheDir = new File(arguments.getValue("gocache"));
+		
 		// check for name mappings
 		Commons.checkForMappings(arguments);
 		
@@ -196,7 +228,10 @@ public class SemanticSimilarities {
 		// load go network
 		GONetwork gonet = null;
 		try {
-			gonet = new GONetwork(goNetFile, namespace, relships);
+			if (goCacheDir != null)
+				gonet = new GONetwork(new File(goNetFile), namespace, relships, goCacheDir);
+			else
+				gonet = new GONetwork(goNetFile, namespace, relships);
 		} catch (Exception e) {
 			System.err.println("Error while reading go network:");
 			System.err.println(e.getMessage());
@@ -214,26 +249,47 @@ public class SemanticSimilarities {
 		}
 		
 		// create term similarity calculator
-		TermSimilarities termSimCalc = new TermSimilaritiesSchlicker(gonet, annos, termSim, true);
+		TermSimilaritiesSchlicker termSimCalc = new TermSimilaritiesSchlicker(gonet, annos, termSim, true);
+		// precompute or map the term similarities of all annotated terms
+		if (termCacheDir != null) {
+			try {
+				termSimCalc.useMatrixCache(termCacheDir, threads);
+			} catch (IOException e) {
+				System.err.println("Error while preparing term similarity matrix:");
+				System.err.println(e.getMessage());
+				System.exit(2);
+			}
+		}
 		// create functional similarity calculator
 		FunctionalSimilarities funSimCalc =	new FunctionalSimilaritiesSchlicker(gonet, annos, termSimCalc, funSim);
 		
-		PrintWriter writer = new PrintWriter(outstream);
-		// now iterate over all pairwise proteins and calculate their semantic similarity value
-		
-		Integer[] arrProteins = annos.getProteins().toArray(new Integer[0]);
-		for (int i=0; i<arrProteins.length; i++) {
-			for (int j=i+1; j<arrProteins.length; j++) {
-				float score = funSimCalc.getScore(arrProteins[i], arrProteins[j]);
-				if (score >= cutOff && score != 0) {
-					writer.print(
-							ProteinManager.getLabel(arrProteins[i]) + "\t"+ ProteinManager.getLabel(arrProteins[j]) + " "
-					);
-					writer.println(score);
+		// now calculate the semantic similarity values of all pairwise 
+		// proteins, the rows are distributed over the threads and written 
+		// in the order of the proteins
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(outstream), 1 << 16);
+		final String lineSeparator = System.getProperty("line.separator");
+		EdgeSink sink = new EdgeSink() {
+			public void addEdge(int prot1, int prot2, float weight) {
+				try {
+					writer.write(ProteinManager.getLabel(prot1));
+					writer.write('\t');
+					writer.write(ProteinManager.getLabel(prot2));
+					writer.write(' ');
+					writer.write(Float.toString(weight));
+					writer.write(lineSeparator);
+				} catch (IOException e) {
+					throw new ProCopeException("Could not write scores: " + e.getMessage());
 				}
 			}
+		};
+		NetworkGenerator.generateEdges(funSimCalc, cutOff, threads, sink, true);
+		try {
+			writer.flush();
+		} catch (IOException e) {
+			System.err.println("Error while writing output file:");
+			System.err.println(e.getMessage());
+			System.exit(2);
 		}
-		writer.close();
 		
 		Commons.closeOutput(outstream);
 	}
@@ -256,6 +312,12 @@ public class SemanticSimilarities {
 		System.err.println("  -funsim    functional similarity measure (" + Commons.formatList(FUNSIMS) +"), default: " + DEFAULT_FUNSIM);
 		System.err.println("  -rel       GO relationsships to use (" + Commons.formatList(RELATIONSHIPS) + "), default: " + DEFAULT_RELATIONSHIP);
 		System.err.println("  -c         apply cutoff, do not output scores less than this value");
+		System.err.println("  -threads   number of threads used for the calculation, defaults to");
+		System.err.println("             the number of processors");
+		System.err.println("  -termcache directory of precomputed term similarity matrices, the");
+		System.err.println("             matrix is created there if it does not exist yet");
+		System.err.println("  -gocache   directory of binary GO network caches, speeds up loading");
+		System.err.println("             the same GO network file again");
 		System.err.println("  -namemap   use name mapping file");
 		System.err.println("  -synfirst  name mappings file contains synonyms first,");
 		System.err.println("                   otherwise targets first is assumed");
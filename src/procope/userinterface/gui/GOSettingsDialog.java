@@ -26,6 +26,8 @@ import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
@@ -49,7 +51,6 @@ import procope.evaluation.complexquality.go.FunctionalSimilaritiesSchlicker;
 import procope.evaluation.complexquality.go.GOAnnotationReader;
 import procope.evaluation.complexquality.go.GOAnnotations;
 import procope.evaluation.complexquality.go.GONetwork;
-import procope.evaluation.complexquality.go.TermSimilarities;
 import procope.evaluation.complexquality.go.TermSimilaritiesSchlicker;
 import procope.evaluation.complexquality.go.FunctionalSimilaritiesSchlicker.FunctionalSimilarityMeasure;
 import procope.evaluation.complexquality.go.GONetwork.Namespace;
@@ -195,6 +196,7 @@ public class GOSettingsDialog extends JFrame implements ActionListener, TreeSele
 		settings.addRadioOptions("GO term similarity:", "Resnik", "Lin", "@Relevance");
 		settings.addRadioOptions("GO functional similarity: ", 
 				"column/row max", "column/row average", "lord", "@total max");
+		settings.addCheckParameter("Precompute term similarities on disk?", false);
 		// show dialog
 		Object[] result = ParameterDialog.showDialog(settings);
 		if (result != null) {
@@ -206,6 +208,7 @@ public class GOSettingsDialog extends JFrame implements ActionListener, TreeSele
 			String annoFile = (String)result[3];
 			int termChoice = (Integer)result[4];
 			int funChoice = (Integer)result[5];
+			boolean termCache = (Boolean)result[6];
 
 			// check if one of the files was not choosen
 			if (goFile == null) {
@@ -227,6 +230,7 @@ public class GOSettingsDialog extends JFrame implements ActionListener, TreeSele
 			parameters.put("relationships", rel+"");
 			parameters.put("term", termChoice+"");
 			parameters.put("fun", funChoice+"");
+			parameters.put("termcache", termCache+"");
 			
 			GOSetting newSetting = settingFromMap(parameters);
 			this.settings.add(newSetting);
@@ -408,13 +412,24 @@ public class GOSettingsDialog extends JFrame implements ActionListener, TreeSele
 		// load the network
 		GONetwork gonet = null;
 		try {
-			gonet = new GONetwork(goFile, namespace, relationships);
+			gonet = new GONetwork(new File(goFile), namespace, relationships, 
+					new File(Tools.CONFIGPATH + "gocache"));
 		} catch (Exception e) {
 			GUICommons.warning("Could not load GO network. Reason:\n\n" + e.getMessage());
 			return null;
 		}
 		// create term similarity calculator
-		TermSimilarities termSim = new TermSimilaritiesSchlicker(gonet, annotations, termSimMeasure, true);
+		TermSimilaritiesSchlicker termSim = new TermSimilaritiesSchlicker(gonet, annotations, termSimMeasure, true);
+		// precomputed term similarities (missing in older settings)
+		if (Boolean.parseBoolean(parameters.get("termcache"))) {
+			try {
+				termSim.useMatrixCache(new File(Tools.CONFIGPATH + "termcache"));
+				strParameters.add("Term similarities: precomputed");
+			} catch (IOException e) {
+				GUICommons.warning("Could not precompute term similarities, " +
+						"they will be calculated on demand. Reason:\n\n" + e.getMessage());
+			}
+		}
 		// create functional similarity calculator
 		FunctionalSimilarities funSim = new FunctionalSimilaritiesSchlicker(gonet, annotations, termSim, funSimMeasure);
 		
@@ -106,7 +106,7 @@ import procope.evaluation.comparison.ComplexMapping;
 import procope.evaluation.comparison.ComplexMappings;
 import procope.evaluation.comparison.ComplexSetComparison;
 import procope.evaluation.comparison.NetworkComparison;
-import procope.evaluation.comparison.Point;
+import procope.evaluation.comparison.WeightPairs;
 import procope.evaluation.complexquality.Colocalization;
 import procope.evaluation.complexquality.go.FunctionalSimilarities;
 import procope.evaluation.complexquality.go.GOAnnotations;
@@ -128,9 +128,9 @@ import procope.methods.scores.SocioAffinityCalculator;
 import procope.tools.BooleanExpression;
 import procope.tools.ChartTools;
 import procope.tools.InvalidExpressionException;
+import procope.tools.ParallelTools;
 import procope.tools.ProCopeException;
 import procope.tools.Tools;
-import procope.tools.math.CorrelationCoefficient;
 import procope.tools.math.PearsonCoefficient;
 import procope.tools.math.SpearmanCoefficient;
 import procope.tools.namemapping.ProteinManager;
@@ -1619,10 +1619,12 @@ public class GUIMain extends JFrame {
 					"@Only one mapping per complex",
 					"Multiple mappings per complex",
 					"Unambiguous mapping", 
+					"Maximum total overlap mapping", 
 			"Exact mapping (identical complexes)");
 			settings.setHelpText("Only one mapping per complex - Each complex can only be mapped once. If there are multiple overlaps with complexes in the other set, the one with the largest overlap will be the mapping partner.\n\n" +
 					"Multiple mappings per complex - Each complex will be mapped to all complexes in the other set for which the protein overlap is large enough.\n\n" +
 					"Unambigous mapping - A complex is only mapped if it has only one mapping candidate in the other complex set.\n\n" +
+					"Maximum total overlap mapping - Each complex can only be mapped once. The mapping partners are chosen such that the sum of the overlaps of all mappings is maximal.\n\n" +
 			"Exact mapping (identical complexes) - Finds identical complexes between the two complex sets.");
 
 			Object[] result = ParameterDialog.showDialog(this, settings);
@@ -1630,7 +1632,7 @@ public class GUIMain extends JFrame {
 				ComplexMappings mappings=null;
 				int mappingChoice = (Integer)result[0];
 				// what kind of mapping?
-				if (mappingChoice <= 2) {
+				if (mappingChoice <= 3) {
 					// we need an overlap
 					DialogSettings overlapSettings = new DialogSettings("Minimum overlap");
 					overlapSettings.addInfoLabel("Please specify the minimum protein overlap " +
@@ -1656,6 +1658,10 @@ public class GUIMain extends JFrame {
 							// consistently
 							mappings = ComplexSetComparison.mapComplexesConsistently(set1.set, set2.set, minOverlap);
 							break;
+						case 3:
+							// maximum total overlap
+							mappings = ComplexSetComparison.mapComplexesOptimally(set1.set, set2.set, minOverlap);
+							break;
 						}
 					} else
 						// user cancelled
@@ -2189,17 +2195,11 @@ public class GUIMain extends JFrame {
 				NetworkInList net1 = networks.get(selected[0]);
 				NetworkInList net2 = networks.get(selected[1]);
 				// do the comparison
-				List<Point> points = NetworkComparison.weightsOverlap(net1.network, net2.network, false);
+				WeightPairs points = NetworkComparison.weightPairs(net1.network, net2.network, false);
 
 				if (plot) {
-					// convert to array
-					float[][] data = new float[2][points.size()];
-					int index=0;
-					for (Point p : points) {
-						data[0][index] = p.getX();
-						data[1][index] = p.getY();
-						index++;
-					}
+					// plot data is given as two rows
+					float[][] data = new float[][] {points.getX(), points.getY()};
 					// plot it
 					final NumberAxis domainAxis = new NumberAxis(net1.name);
 					domainAxis.setAutoRangeIncludesZero(false);
@@ -2215,10 +2215,10 @@ public class GUIMain extends JFrame {
 
 				if (cor) {
 					// calculate correlations
-					CorrelationCoefficient pearson = new PearsonCoefficient();
-					CorrelationCoefficient spearman = new SpearmanCoefficient();
-					pearson.feedData(points);
-					spearman.feedData(points);
+					PearsonCoefficient pearson = new PearsonCoefficient();
+					SpearmanCoefficient spearman = new SpearmanCoefficient();
+					pearson.feedData(points.getX(), points.getY());
+					spearman.feedData(points.getX(), points.getY());
 
 					// show it
 					new TextWindow(this, "Network comparison - correlation", 
@@ -2232,8 +2232,10 @@ public class GUIMain extends JFrame {
 						File outFile = GUICommons.chooseFile(this, "Save comparison", "general", false);
 						if (outFile != null) {
 							PrintWriter writer = new PrintWriter(new FileOutputStream(outFile));
-							for (Point p : points) 
-								writer.println(p.getX() + "\t" + p.getY());
+							float[] x = points.getX();
+							float[] y = points.getY();
+							for (int i=0; i<points.size(); i++) 
+								writer.println(x[i] + "\t" + y[i]);
 							writer.close();
 						}
 					} catch (IOException e) {
@@ -2582,30 +2584,24 @@ public class GUIMain extends JFrame {
 					// mcl
 					DialogSettings mclSettings = new DialogSettings("MCL");
 					mclSettings.addFloatParameter("Inflation coefficient: ", 2.0f, new FloatVerifier(1.0f,30.0f, 1));
-					mclSettings.addStringParameter("Path to 'mcl' binary (optional)", "mcl"); 
 					mclSettings.addIntegerParameter("Timeout (seconds):", 300, new IntVerifier(1, Integer.MAX_VALUE));
 					mclSettings.addInfoLabel("Additional parameters (optional)");
 					mclSettings.addFloatParameter("Pruning number:", Float.NaN);
 					mclSettings.addFloatParameter("Selection number:", Float.NaN);
 					mclSettings.addFloatParameter("Recover number:", Float.NaN);
 					mclSettings.addFloatParameter("Mass percentage:", Float.NaN);
-					mclSettings.setHelpText("If the 'mcl' binary is not in your PATH, please specifiy the full path to the file.");
 					Object[] mclResult = ParameterDialog.showDialog(this, mclSettings);
 					if (mclResult != null) {
 						workingShow("Clustering...");
 						// set parameters
 						MCLParameters params = new MCLParameters();
 						params.setInflation((Float)mclResult[0]);
-						params.setTimeout((Integer)mclResult[2]);
+						params.setTimeout((Integer)mclResult[1]);
 						// optional parameters
-						params.setP((Float)mclResult[3]);
-						params.setS((Float)mclResult[4]);
-						params.setR((Float)mclResult[5]);
-						params.setPct((Float)mclResult[6]);
-						// binary
-						String bin = (String)mclResult[1];
-						if (bin.length() == 0) bin = MarkovClusterer.DEFAULT_BINARY;
-						MarkovClusterer.setMCLBinary(bin);
+						params.setP((Float)mclResult[2]);
+						params.setS((Float)mclResult[3]);
+						params.setR((Float)mclResult[4]);
+						params.setPct((Float)mclResult[5]);
 						// do the clustering
 						Clusterer clusterer = new MarkovClusterer(params);
 						ComplexSet clustering = null;
@@ -2614,13 +2610,8 @@ public class GUIMain extends JFrame {
 						} catch (ProCopeException e) {
 							if (e.getMessage().contains("timed out"))
 								GUICommons.warning("MCL timed out.");
-							else {
-								if (e.getMessage().contains("Cannot run program"))
-									GUICommons.error("Could not start MCL.\n\n" +
-									"Is the path to the mcl binary correct?");
-								else
-									GUICommons.error("Error while running mcl:\n\n" + e.getMessage());
-							}
+							else 
+								GUICommons.error("Error while running mcl:\n\n" + e.getMessage());
 							workingHide();
 							return;
 						}
@@ -2654,12 +2645,12 @@ public class GUIMain extends JFrame {
 							// do it
 							HierarchicalTreeNode hclTree = 
 								HierarchicalClusteringTrees.clusterSimilarities(toCluster, LINKAGES[(Integer)hclResult[0]]);
-							// iterate over cutoffs
-							for (float cutoff : cutoffs) {
-								ComplexSet clustering = hclTree.extractClustering(cutoff);
-								addComplexSet(new ComplexSetInList(	clustering, 
+							// cut the tree at all cutoffs at once
+							ComplexSet[] clusterings = hclTree.extractClusterings(cutoffs);
+							for (int i=0; i<cutoffs.length; i++) {
+								addComplexSet(new ComplexSetInList(	clusterings[i], 
 										inList.name	+ "; hierarchical, "
-										+ LINKAGES[(Integer) hclResult[0]] + ", cutoff: " + cutoff));
+										+ LINKAGES[(Integer) hclResult[0]] + ", cutoff: " + cutoffs[i]));
 							}
 							workingHide();
 						}
@@ -2882,7 +2873,7 @@ public class GUIMain extends JFrame {
 				// socio scores
 				PurificationDataInList inList = purifications.get(lstPurifications.getSelectedIndex());
 				ProteinNetwork socios = 
-					NetworkGenerator.generateNetwork(new SocioAffinityCalculator(inList.data), cutoff);
+					NetworkGenerator.generateNetwork(new SocioAffinityCalculator(inList.data), cutoff, ParallelTools.getDefaultThreads());
 				addNetwork(socios, "Socio affinity scores from " + inList.name + cutoffAdd);
 
 			} else if (scoreObj.equals("pe")) {
@@ -2897,7 +2888,7 @@ public class GUIMain extends JFrame {
 					float r = (Float)peResult[0];
 					float pseudo = (Float)peResult[1];
 					ProteinNetwork pe = 
-						NetworkGenerator.generateNetwork(new PECalculator(inList.data, r, pseudo), cutoff);
+						NetworkGenerator.generateNetwork(new PECalculator(inList.data, r, pseudo), cutoff, ParallelTools.getDefaultThreads());
 					addNetwork(pe, "PE scores from " + inList.name + cutoffAdd);
 				}
 
@@ -2912,7 +2903,7 @@ public class GUIMain extends JFrame {
 					if (i<selected.length-1) puriNames += ", ";
 				}
 				// do it
-				ProteinNetwork hart = NetworkGenerator.generateNetwork(new HartCalculator(puriData), cutoff);
+				ProteinNetwork hart = NetworkGenerator.generateNetwork(new HartCalculator(puriData), cutoff, ParallelTools.getDefaultThreads());
 				addNetwork(hart, "Hart scores from " + puriNames + cutoffAdd);
 
 			} else if (scoreObj.equals("dice")) {
@@ -2920,7 +2911,7 @@ public class GUIMain extends JFrame {
 				// socio scores
 				PurificationDataInList inList = purifications.get(lstPurifications.getSelectedIndex());
 				ProteinNetwork socios = 
-					NetworkGenerator.generateNetwork(new DiceCoefficients(inList.data), cutoff);
+					NetworkGenerator.generateNetwork(new DiceCoefficients(inList.data), cutoff, ParallelTools.getDefaultThreads());
 				addNetwork(socios, "Dice coefficients from " + inList.name + cutoffAdd);
 
 			} else {